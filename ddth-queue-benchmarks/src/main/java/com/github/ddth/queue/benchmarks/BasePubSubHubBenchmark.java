@@ -0,0 +1,191 @@
+package com.github.ddth.queue.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.ddth.pubsub.impl.AbstractPubSubHub;
+import com.github.ddth.pubsub.impl.CountingSubscriber;
+
+/**
+ * Base class for pub/sub hub benchmarks.
+ *
+ * <p>
+ * Benchmarks:
+ * <ul>
+ * <li>{@code publish}: publish one message to a channel that has
+ * {@link #numSubscribers} subscribers, without waiting for delivery
+ * (publisher-side throughput). Number of threads is controlled by JMH's
+ * {@code -t} option.</li>
+ * <li>{@code publishDeliver}: publish one message and wait until all
+ * {@link #numSubscribers} subscribers have received it (end-to-end
+ * throughput).</li>
+ * </ul>
+ * </p>
+ *
+ * <p>
+ * Parameters: {@link #payloadSize} and {@link #numSubscribers} (override with
+ * JMH's {@code -p} option).
+ * </p>
+ *
+ * @author Thanh Ba Nguyen <bnguyen2k@gmail.com>
+ * @since 0.7.1.3
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public abstract class BasePubSubHubBenchmark {
+
+    /**
+     * Max time to wait for a published message to reach all subscribers.
+     */
+    public final static long DELIVERY_TIMEOUT_MS = 10000;
+
+    /**
+     * Size of message's content, in bytes.
+     */
+    @Param({ "64", "1024", "65536" })
+    public int payloadSize;
+
+    /**
+     * Number of subscribers of the benchmarked channel.
+     */
+    @Param({ "1", "4" })
+    public int numSubscribers;
+
+    protected AbstractPubSubHub<Long, byte[]> hub;
+    protected String channel;
+    protected byte[] payload;
+    private List<CountingSubscriber<Long, byte[]>> subscribers = new ArrayList<>();
+    private AtomicLong numPublished = new AtomicLong();
+
+    /**
+     * Create and initialize the hub under test.
+     *
+     * @return
+     * @throws Exception
+     */
+    protected abstract AbstractPubSubHub<Long, byte[]> createHub() throws Exception;
+
+    /**
+     * Destroy the hub under test and clean up its resources.
+     *
+     * @param hub
+     * @throws Exception
+     */
+    protected void destroyHub(AbstractPubSubHub<Long, byte[]> hub) throws Exception {
+        hub.destroy();
+    }
+
+    /**
+     * Name of the benchmarked channel; sub-classes backed by a shared server
+     * should return a name that is unique to the trial.
+     *
+     * @return
+     */
+    protected String createChannelName() {
+        return "benchmark";
+    }
+
+    private long totalReceived() {
+        long result = 0;
+        for (CountingSubscriber<Long, byte[]> sub : subscribers) {
+            result += sub.getTotalMessages();
+        }
+        return result;
+    }
+
+    private boolean allSubscribersReceived() {
+        for (CountingSubscriber<Long, byte[]> sub : subscribers) {
+            if (sub.getTotalMessages() == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void awaitDelivery(long expected) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(DELIVERY_TIMEOUT_MS);
+        while (totalReceived() < expected) {
+            if (System.nanoTime() - deadline > 0) {
+                throw new IllegalStateException("Messages were not delivered to all "
+                        + numSubscribers + " subscribers within " + DELIVERY_TIMEOUT_MS + "ms.");
+            }
+            LockSupport.parkNanos(this, 1000);
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        payload = new byte[payloadSize];
+        new Random(payloadSize).nextBytes(payload);
+        hub = createHub();
+        channel = createChannelName();
+        for (int i = 0; i < numSubscribers; i++) {
+            CountingSubscriber<Long, byte[]> sub = new CountingSubscriber<>();
+            subscribers.add(sub);
+            hub.subscribe(channel, sub);
+        }
+
+        /* subscriptions may become active asynchronously: probe until they are */
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(DELIVERY_TIMEOUT_MS);
+        while (!allSubscribersReceived()) {
+            if (System.nanoTime() - deadline > 0) {
+                throw new IllegalStateException(
+                        "Subscribers did not receive messages within " + DELIVERY_TIMEOUT_MS
+                                + "ms.");
+            }
+            hub.publish(channel, hub.createMessage(payload));
+            LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(10));
+        }
+        LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(100));
+        subscribers.forEach(CountingSubscriber::resetCounter);
+        numPublished.set(0);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        if (hub != null) {
+            for (CountingSubscriber<Long, byte[]> sub : subscribers) {
+                hub.unsubscribe(channel, sub);
+            }
+            subscribers.clear();
+            destroyHub(hub);
+            hub = null;
+        }
+    }
+
+    @Benchmark
+    public boolean publish() {
+        numPublished.incrementAndGet();
+        return hub.publish(channel, hub.createMessage(payload));
+    }
+
+    @Benchmark
+    public long publishDeliver() {
+        long expected = numPublished.incrementAndGet() * numSubscribers;
+        hub.publish(channel, hub.createMessage(payload));
+        awaitDelivery(expected);
+        return expected;
+    }
+}
@@ -0,0 +1,159 @@
+package com.github.ddth.queue.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.ddth.queue.IQueueMessage;
+import com.github.ddth.queue.impl.AbstractQueue;
+import com.github.ddth.queue.utils.QueueException;
+
+/**
+ * Base class for queue benchmarks.
+ *
+ * <p>
+ * Benchmarks:
+ * <ul>
+ * <li>{@code queueTakeFinish}: queue one message, take one message and finish
+ * it. Number of threads is controlled by JMH's {@code -t} option.</li>
+ * <li>{@code queueAllTakeBatchFinish}: queue {@link #batchSize} messages with
+ * {@code queueAll}, take them back with {@code take(int)} and finish them;
+ * score is in batches (divide by {@code batchSize} for messages).</li>
+ * <li>{@code producerConsumer} group: separate producer and consumer threads;
+ * use JMH's {@code -tg <producers>,<consumers>} option to change the number
+ * of threads of each side.</li>
+ * </ul>
+ * </p>
+ *
+ * <p>
+ * Parameters: {@link #payloadSize}, {@link #batchSize} and
+ * {@link #ephemeralDisabled} (override with JMH's {@code -p} option).
+ * </p>
+ *
+ * @author Thanh Ba Nguyen <bnguyen2k@gmail.com>
+ * @since 0.7.1.3
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public abstract class BaseQueueBenchmark {
+
+    /**
+     * Size of message's content, in bytes.
+     */
+    @Param({ "64", "1024", "65536" })
+    public int payloadSize;
+
+    /**
+     * Number of messages per batch in {@code queueAllTakeBatchFinish}.
+     */
+    @Param({ "16" })
+    public int batchSize;
+
+    @Param({ "false", "true" })
+    public boolean ephemeralDisabled;
+
+    protected AbstractQueue<Long, byte[]> queue;
+    protected byte[] payload;
+
+    /**
+     * Create and initialize the queue under test. The queue should be empty.
+     *
+     * @param ephemeralDisabled
+     * @return
+     * @throws Exception
+     */
+    protected abstract AbstractQueue<Long, byte[]> createQueue(boolean ephemeralDisabled)
+            throws Exception;
+
+    /**
+     * Destroy the queue under test and clean up its resources.
+     *
+     * @param queue
+     * @throws Exception
+     */
+    protected void destroyQueue(AbstractQueue<Long, byte[]> queue) throws Exception {
+        queue.destroy();
+    }
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        payload = new byte[payloadSize];
+        new Random(payloadSize).nextBytes(payload);
+        queue = createQueue(ephemeralDisabled);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        if (queue != null) {
+            destroyQueue(queue);
+            queue = null;
+        }
+    }
+
+    protected IQueueMessage<Long, byte[]> takeAndFinish() {
+        IQueueMessage<Long, byte[]> msg = queue.take();
+        if (msg != null) {
+            queue.finish(msg);
+        }
+        return msg;
+    }
+
+    @Benchmark
+    public IQueueMessage<Long, byte[]> queueTakeFinish() {
+        queue.queue(queue.createMessage(payload));
+        return takeAndFinish();
+    }
+
+    @Benchmark
+    public int queueAllTakeBatchFinish() {
+        List<IQueueMessage<Long, byte[]>> msgs = new ArrayList<>(batchSize);
+        for (int i = 0; i < batchSize; i++) {
+            msgs.add(queue.createMessage(payload));
+        }
+        queue.queueAll(msgs);
+        List<IQueueMessage<Long, byte[]>> taken = queue.take(batchSize);
+        for (IQueueMessage<Long, byte[]> msg : taken) {
+            queue.finish(msg);
+        }
+        return taken.size();
+    }
+
+    @Benchmark
+    @Group("producerConsumer")
+    @GroupThreads(1)
+    public boolean produce() {
+        try {
+            return queue.queue(queue.createMessage(payload));
+        } catch (QueueException.QueueIsFull e) {
+            return false;
+        }
+    }
+
+    @Benchmark
+    @Group("producerConsumer")
+    @GroupThreads(1)
+    public IQueueMessage<Long, byte[]> consume() {
+        return takeAndFinish();
+    }
+}
@@ -0,0 +1,36 @@
+package com.github.ddth.queue.benchmarks;
+
+import org.openjdk.jmh.annotations.Param;
+
+import com.github.ddth.queue.impl.AbstractQueue;
+import com.github.ddth.queue.impl.universal.idint.UniversalDisruptorQueue;
+
+/**
+ * Benchmarks for {@link UniversalDisruptorQueue}.
+ * 
+ * <pre>
+ * java -jar target/benchmarks.jar DisruptorQueueBenchmark
+ * </pre>
+ * 
+ * @author Thanh Ba Nguyen <bnguyen2k@gmail.com>
+ * @since 0.7.1.3
+ */
+public class DisruptorQueueBenchmark extends BaseQueueBenchmark {
+
+    public final static int RING_SIZE = 64 * 1024;
+
+    /**
+     * Lock-free multi-producer mode, see
+     * {@link UniversalDisruptorQueue#setMultiProducer(boolean)}.
+     */
+    @Param({ "false", "true" })
+    public boolean multiProducer;
+
+    @Override
+    protected AbstractQueue<Long, byte[]> createQueue(boolean ephemeralDisabled)
+            throws Exception {
+        UniversalDisruptorQueue queue = new UniversalDisruptorQueue(RING_SIZE);
+        queue.setMultiProducer(multiProducer).setEphemeralDisabled(ephemeralDisabled);
+        return queue.init();
+    }
+}
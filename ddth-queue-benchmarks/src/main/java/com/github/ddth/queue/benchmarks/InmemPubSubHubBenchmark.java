@@ -0,0 +1,22 @@
+package com.github.ddth.queue.benchmarks;
+
+import com.github.ddth.pubsub.impl.AbstractPubSubHub;
+import com.github.ddth.pubsub.impl.universal.idint.UniversalInmemPubSubHub;
+
+/**
+ * Benchmarks for {@link UniversalInmemPubSubHub}.
+ * 
+ * <pre>
+ * java -jar target/benchmarks.jar InmemPubSubHubBenchmark
+ * </pre>
+ * 
+ * @author Thanh Ba Nguyen <bnguyen2k@gmail.com>
+ * @since 0.7.1.3
+ */
+public class InmemPubSubHubBenchmark extends BasePubSubHubBenchmark {
+
+    @Override
+    protected AbstractPubSubHub<Long, byte[]> createHub() throws Exception {
+        return new UniversalInmemPubSubHub().init();
+    }
+}
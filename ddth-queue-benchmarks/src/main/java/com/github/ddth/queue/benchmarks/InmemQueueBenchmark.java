@@ -0,0 +1,30 @@
+package com.github.ddth.queue.benchmarks;
+
+import com.github.ddth.queue.impl.AbstractQueue;
+import com.github.ddth.queue.impl.universal.idint.UniversalInmemQueue;
+
+/**
+ * Benchmarks for {@link UniversalInmemQueue}.
+ * 
+ * <pre>
+ * java -jar target/benchmarks.jar InmemQueueBenchmark
+ * </pre>
+ * 
+ * @author Thanh Ba Nguyen <bnguyen2k@gmail.com>
+ * @since 0.7.1.3
+ */
+public class InmemQueueBenchmark extends BaseQueueBenchmark {
+
+    /**
+     * Queue's boundary, so that producers can not run out of memory.
+     */
+    public final static int BOUNDARY = 64 * 1024;
+
+    @Override
+    protected AbstractQueue<Long, byte[]> createQueue(boolean ephemeralDisabled)
+            throws Exception {
+        UniversalInmemQueue queue = new UniversalInmemQueue(BOUNDARY);
+        queue.setEphemeralDisabled(ephemeralDisabled);
+        return queue.init();
+    }
+}
@@ -0,0 +1,66 @@
+package com.github.ddth.queue.benchmarks;
+
+import java.sql.Connection;
+import java.sql.Statement;
+
+import org.h2.jdbcx.JdbcConnectionPool;
+
+import com.github.ddth.queue.impl.AbstractQueue;
+import com.github.ddth.queue.impl.universal.idint.UniversalJdbcQueue;
+
+/**
+ * Benchmarks for {@link UniversalJdbcQueue}, backed by an embedded in-memory
+ * H2 database (MySQL compatibility mode).
+ * 
+ * <pre>
+ * java -jar target/benchmarks.jar JdbcQueueBenchmark
+ * </pre>
+ * 
+ * @author Thanh Ba Nguyen <bnguyen2k@gmail.com>
+ * @since 0.7.1.3
+ */
+public class JdbcQueueBenchmark extends BaseQueueBenchmark {
+
+    public final static String TABLE_QUEUE = "queue", TABLE_EPHEMERAL = "queue_ephemeral";
+
+    private final static String[] SQL_CREATE_TABLES = {
+            "DROP TABLE IF EXISTS " + TABLE_QUEUE,
+            "CREATE TABLE " + TABLE_QUEUE + " (queue_id BIGINT AUTO_INCREMENT PRIMARY KEY"
+                    + ", msg_org_timestamp TIMESTAMP NOT NULL, msg_timestamp TIMESTAMP NOT NULL"
+                    + ", msg_num_requeues INT NOT NULL DEFAULT 0, msg_content BLOB)",
+            "DROP TABLE IF EXISTS " + TABLE_EPHEMERAL,
+            "CREATE TABLE " + TABLE_EPHEMERAL + " (queue_id BIGINT NOT NULL PRIMARY KEY"
+                    + ", msg_org_timestamp TIMESTAMP NOT NULL, msg_timestamp TIMESTAMP NOT NULL"
+                    + ", msg_num_requeues INT NOT NULL DEFAULT 0, msg_content BLOB)",
+            "CREATE INDEX idx_" + TABLE_EPHEMERAL + "_timestamp ON " + TABLE_EPHEMERAL
+                    + " (msg_timestamp)" };
+
+    private JdbcConnectionPool dataSource;
+
+    @Override
+    protected AbstractQueue<Long, byte[]> createQueue(boolean ephemeralDisabled)
+            throws Exception {
+        dataSource = JdbcConnectionPool.create(
+                "jdbc:h2:mem:ddth_queue_benchmark;DB_CLOSE_DELAY=-1;MODE=MySQL", "sa", "");
+        dataSource.setMaxConnections(64);
+        try (Connection conn = dataSource.getConnection();
+                Statement stm = conn.createStatement()) {
+            for (String sql : SQL_CREATE_TABLES) {
+                stm.execute(sql);
+            }
+        }
+        UniversalJdbcQueue queue = new UniversalJdbcQueue();
+        queue.setDataSource(dataSource).setTableName(TABLE_QUEUE)
+                .setTableNameEphemeral(TABLE_EPHEMERAL).setEphemeralDisabled(ephemeralDisabled);
+        return queue.init();
+    }
+
+    @Override
+    protected void destroyQueue(AbstractQueue<Long, byte[]> queue) throws Exception {
+        try {
+            super.destroyQueue(queue);
+        } finally {
+            dataSource.dispose();
+        }
+    }
+}
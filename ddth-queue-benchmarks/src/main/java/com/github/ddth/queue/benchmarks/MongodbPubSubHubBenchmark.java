@@ -0,0 +1,64 @@
+package com.github.ddth.queue.benchmarks;
+
+import com.github.ddth.pubsub.impl.AbstractPubSubHub;
+import com.github.ddth.pubsub.impl.universal.idint.UniversalMongodbPubSubHub;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+
+/**
+ * Benchmarks for {@link UniversalMongodbPubSubHub}, against an external
+ * MongoDB server.
+ * 
+ * <p>
+ * Connection string is read from system property {@code mongodb.uri}
+ * (default {@code mongodb://localhost:27017}), database from
+ * {@code mongodb.db} (default {@code ddth_queue_benchmark}), e.g.
+ * {@code -jvmArgs -Dmongodb.uri=mongodb://host:27017}. Each trial publishes to
+ * its own capped collection, which is dropped after the trial; other
+ * collections are left untouched.
+ * </p>
+ * 
+ * <pre>
+ * java -jar target/benchmarks.jar MongodbPubSubHubBenchmark
+ * </pre>
+ * 
+ * @author Thanh Ba Nguyen <bnguyen2k@gmail.com>
+ * @since 0.7.1.3
+ */
+public class MongodbPubSubHubBenchmark extends BasePubSubHubBenchmark {
+
+    private MongoClient mongoClient;
+    private String databaseName;
+
+    @Override
+    protected String createChannelName() {
+        return "benchmark_" + System.currentTimeMillis();
+    }
+
+    @Override
+    protected AbstractPubSubHub<Long, byte[]> createHub() throws Exception {
+        String mongoUri = System.getProperty("mongodb.uri", "mongodb://localhost:27017");
+        databaseName = System.getProperty("mongodb.db", "ddth_queue_benchmark");
+        mongoClient = MongoClients.create(mongoUri);
+        UniversalMongodbPubSubHub hub = new UniversalMongodbPubSubHub();
+        hub.setMongoClient(mongoClient);
+        hub.setDatabaseName(databaseName);
+        /* capped collection must hold the messages published while subscribers catch up */
+        hub.setMaxDocuments(1024 * 1024).setMaxCollectionSize(1024L * 1024 * 1024);
+        return hub.init();
+    }
+
+    @Override
+    protected void destroyHub(AbstractPubSubHub<Long, byte[]> hub) throws Exception {
+        try {
+            super.destroyHub(hub);
+        } finally {
+            try {
+                mongoClient.getDatabase(databaseName).getCollection(channel).drop();
+            } finally {
+                mongoClient.close();
+                mongoClient = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.github.ddth.queue.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import com.github.ddth.pubsub.impl.AbstractPubSubHub;
+import com.github.ddth.pubsub.impl.universal.idint.UniversalRedisPubSubHub;
+
+import redis.embedded.RedisServer;
+
+/**
+ * Benchmarks for {@link UniversalRedisPubSubHub}.
+ * 
+ * <p>
+ * By default, an embedded Redis server is started on port
+ * {@code redis.port} (default {@code 16379}). Set system property
+ * {@code redis.host} (e.g. {@code -jvmArgs -Dredis.host=localhost}) to
+ * benchmark against an external server instead. Messages are published to a
+ * channel unique to each trial; pub/sub does not store data on the server.
+ * </p>
+ * 
+ * <pre>
+ * java -jar target/benchmarks.jar RedisPubSubHubBenchmark
+ * </pre>
+ * 
+ * @author Thanh Ba Nguyen <bnguyen2k@gmail.com>
+ * @since 0.7.1.3
+ */
+public class RedisPubSubHubBenchmark extends BasePubSubHubBenchmark {
+
+    private RedisServer redisServer;
+
+    @Override
+    protected String createChannelName() {
+        return "ddth-queue-benchmark:" + System.currentTimeMillis();
+    }
+
+    @Override
+    protected AbstractPubSubHub<Long, byte[]> createHub() throws Exception {
+        String redisHost = System.getProperty("redis.host");
+        int redisPort = Integer.parseInt(System.getProperty("redis.port",
+                redisHost != null ? "6379" : "16379"));
+        if (redisHost == null) {
+            redisServer = new RedisServer(redisPort);
+            redisServer.start();
+            redisHost = "localhost";
+        }
+        UniversalRedisPubSubHub hub = new UniversalRedisPubSubHub();
+        hub.setRedisHostAndPort(redisHost + ":" + redisPort);
+        hub.init();
+        while (!hub.isReady()) {
+            LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(1));
+        }
+        return hub;
+    }
+
+    @Override
+    protected void destroyHub(AbstractPubSubHub<Long, byte[]> hub) throws Exception {
+        try {
+            super.destroyHub(hub);
+        } finally {
+            if (redisServer != null) {
+                redisServer.stop();
+                redisServer = null;
+            }
+        }
+    }
+}
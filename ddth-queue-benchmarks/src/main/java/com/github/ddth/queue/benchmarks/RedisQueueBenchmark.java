@@ -0,0 +1,80 @@
+package com.github.ddth.queue.benchmarks;
+
+import com.github.ddth.queue.impl.AbstractQueue;
+import com.github.ddth.queue.impl.BaseRedisQueue;
+import com.github.ddth.queue.impl.universal.idint.UniversalRedisQueue;
+
+import redis.clients.jedis.Jedis;
+import redis.embedded.RedisServer;
+
+/**
+ * Benchmarks for {@link UniversalRedisQueue}.
+ * 
+ * <p>
+ * By default, an embedded Redis server is started on port
+ * {@code redis.port} (default {@code 16379}). Set system property
+ * {@code redis.host} (e.g. {@code -jvmArgs -Dredis.host=localhost}) to
+ * benchmark against an external server instead. The queue uses its own keys
+ * (prefixed with {@link #KEY_PREFIX}), which are deleted before and after
+ * each trial; other keys on the server are left untouched.
+ * </p>
+ * 
+ * <pre>
+ * java -jar target/benchmarks.jar RedisQueueBenchmark
+ * </pre>
+ * 
+ * @author Thanh Ba Nguyen <bnguyen2k@gmail.com>
+ * @since 0.7.1.3
+ */
+public class RedisQueueBenchmark extends BaseQueueBenchmark {
+
+    /**
+     * Prefix of the Redis keys used by the benchmarked queue.
+     */
+    public final static String KEY_PREFIX = "ddth-queue-benchmark:";
+
+    private RedisServer redisServer;
+
+    private static void deleteKeys(UniversalRedisQueue queue) {
+        try (Jedis jedis = queue.getJedisConnector().getJedis()) {
+            jedis.del(queue.getRedisHashName(), queue.getRedisListName(),
+                    queue.getRedisSortedSetName());
+        }
+    }
+
+    @Override
+    protected AbstractQueue<Long, byte[]> createQueue(boolean ephemeralDisabled)
+            throws Exception {
+        String redisHost = System.getProperty("redis.host");
+        int redisPort = Integer.parseInt(System.getProperty("redis.port",
+                redisHost != null ? "6379" : "16379"));
+        if (redisHost == null) {
+            redisServer = new RedisServer(redisPort);
+            redisServer.start();
+            redisHost = "localhost";
+        }
+        String keyPrefix = KEY_PREFIX + System.currentTimeMillis() + ":";
+        UniversalRedisQueue queue = new UniversalRedisQueue();
+        queue.setRedisHashName(keyPrefix + BaseRedisQueue.DEFAULT_HASH_NAME)
+                .setRedisListName(keyPrefix + BaseRedisQueue.DEFAULT_LIST_NAME)
+                .setRedisSortedSetName(keyPrefix + BaseRedisQueue.DEFAULT_SORTED_SET_NAME);
+        queue.setRedisHostAndPort(redisHost + ":" + redisPort)
+                .setEphemeralDisabled(ephemeralDisabled);
+        queue.init();
+        deleteKeys(queue);
+        return queue;
+    }
+
+    @Override
+    protected void destroyQueue(AbstractQueue<Long, byte[]> queue) throws Exception {
+        try {
+            deleteKeys((UniversalRedisQueue) queue);
+            super.destroyQueue(queue);
+        } finally {
+            if (redisServer != null) {
+                redisServer.stop();
+                redisServer = null;
+            }
+        }
+    }
+}
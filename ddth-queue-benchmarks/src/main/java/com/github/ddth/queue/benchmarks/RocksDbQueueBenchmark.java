@@ -0,0 +1,72 @@
+package com.github.ddth.queue.benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Param;
+
+import com.github.ddth.queue.impl.AbstractQueue;
+import com.github.ddth.queue.impl.RocksDbQueue;
+import com.github.ddth.queue.impl.universal.idint.UniversalRocksDbQueue;
+
+/**
+ * Benchmarks for {@link UniversalRocksDbQueue}, storage directory is created
+ * under {@code java.io.tmpdir} and removed after each trial.
+ * 
+ * <pre>
+ * java -jar target/benchmarks.jar RocksDbQueueBenchmark
+ * </pre>
+ * 
+ * @author Thanh Ba Nguyen <bnguyen2k@gmail.com>
+ * @since 0.7.1.3
+ */
+public class RocksDbQueueBenchmark extends BaseQueueBenchmark {
+
+    /**
+     * Format of queue keys, see
+     * {@link UniversalRocksDbQueue#setKeyFormat(RocksDbQueue.KeyFormat)}.
+     */
+    @Param({ "HEX_128", "SEQUENCE_64" })
+    public RocksDbQueue.KeyFormat keyFormat;
+
+    /**
+     * Group-commit mode, see
+     * {@link UniversalRocksDbQueue#setGroupCommit(boolean)}.
+     */
+    @Param({ "false", "true" })
+    public boolean groupCommit;
+
+    private Path storageDir;
+
+    @Override
+    protected AbstractQueue<Long, byte[]> createQueue(boolean ephemeralDisabled)
+            throws Exception {
+        storageDir = Files.createTempDirectory("ddth-queue-benchmark-");
+        UniversalRocksDbQueue queue = new UniversalRocksDbQueue();
+        queue.setKeyFormat(keyFormat);
+        queue.setGroupCommit(groupCommit);
+        queue.setStorageDir(storageDir.toString()).setEphemeralDisabled(ephemeralDisabled);
+        return queue.init();
+    }
+
+    @Override
+    protected void destroyQueue(AbstractQueue<Long, byte[]> queue) throws Exception {
+        try {
+            super.destroyQueue(queue);
+        } finally {
+            deleteRecursively(storageDir);
+        }
+    }
+
+    static void deleteRecursively(Path dir) throws IOException {
+        if (dir == null || !Files.exists(dir)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(dir)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+}
@@ -1,9 +1,10 @@
 package com.github.ddth.pubsub.impl;
 
-import com.github.ddth.commons.utils.SerializationUtils;
 import com.github.ddth.pubsub.IPubSubHub;
 import com.github.ddth.queue.IMessage;
+import com.github.ddth.queue.IMessageCodec;
 import com.github.ddth.queue.IMessageFactory;
+import com.github.ddth.queue.impl.SerializationMessageCodec;
 
 /**
  * Abstract implementation of {@link IPubSubHub}.
@@ -14,6 +15,7 @@ import com.github.ddth.queue.IMessageFactory;
 public abstract class AbstractPubSubHub<ID, DATA> implements IPubSubHub<ID, DATA>, AutoCloseable {
 
     private IMessageFactory<ID, DATA> messageFactory;
+    private IMessageCodec<ID, DATA> messageCodec = new SerializationMessageCodec<>();
 
     /**
      * Getter for {@link #messageFactory}.
@@ -35,6 +37,37 @@ public abstract class AbstractPubSubHub<ID, DATA> implements IPubSubHub<ID, DATA
         return this;
     }
 
+    /**
+     * Codec used by {@link #serialize(IMessage)} and
+     * {@link #deserialize(byte[], Class)} (default:
+     * {@link SerializationMessageCodec}).
+     * 
+     * @return
+     * @since 0.7.1.3
+     */
+    public IMessageCodec<ID, DATA> getMessageCodec() {
+        return messageCodec;
+    }
+
+    /**
+     * Codec used by {@link #serialize(IMessage)} and
+     * {@link #deserialize(byte[], Class)}. Set to {@code null} to use the
+     * default {@link SerializationMessageCodec}.
+     * 
+     * <p>
+     * Note: publishers and subscribers of a channel must use the same codec.
+     * </p>
+     * 
+     * @param messageCodec
+     * @return
+     * @since 0.7.1.3
+     */
+    public AbstractPubSubHub<ID, DATA> setMessageCodec(IMessageCodec<ID, DATA> messageCodec) {
+        this.messageCodec = messageCodec != null ? messageCodec
+                : new SerializationMessageCodec<>();
+        return this;
+    }
+
     /**
      * Initializing method.
      * 
@@ -84,13 +117,13 @@ public abstract class AbstractPubSubHub<ID, DATA> implements IPubSubHub<ID, DATA
     }
 
     /**
-     * Serialize a queue message to store in Redis.
+     * Serialize a message to bytes, using {@link #getMessageCodec()}.
      * 
      * @param msg
      * @return
      */
     protected byte[] serialize(IMessage<ID, DATA> msg) {
-        return msg != null ? SerializationUtils.toByteArray(msg) : null;
+        return msg != null ? messageCodec.encode(msg) : null;
     }
 
     /**
@@ -105,12 +138,12 @@ public abstract class AbstractPubSubHub<ID, DATA> implements IPubSubHub<ID, DATA
     }
 
     /**
-     * Deserialize a message.
+     * Deserialize a message, using {@link #getMessageCodec()}.
      * 
      * @param msgData
      * @return
      */
     protected <T extends IMessage<ID, DATA>> T deserialize(byte[] msgData, Class<T> clazz) {
-        return msgData != null ? SerializationUtils.fromByteArray(msgData, clazz) : null;
+        return msgData != null ? messageCodec.decode(msgData, clazz) : null;
     }
 }
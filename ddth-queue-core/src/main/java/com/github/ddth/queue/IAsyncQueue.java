@@ -0,0 +1,53 @@
+package com.github.ddth.queue;
+
+import java.util.concurrent.CompletableFuture;
+
+import com.github.ddth.queue.utils.QueueException;
+
+/**
+ * Asynchronous companion APIs of {@link IQueue}.
+ * 
+ * <p>
+ * Each method returns immediately with a {@link CompletableFuture} that is
+ * completed when the backend round-trip finishes; a {@link QueueException}
+ * thrown by the underlying operation completes the future exceptionally.
+ * </p>
+ * 
+ * <p>
+ * Note: the supplied message may be read after the method returns, caller
+ * should not modify it until the returned future completes.
+ * </p>
+ * 
+ * @author Thanh Ba Nguyen <bnguyen2k@gmail.com>
+ * @since 0.7.1.3
+ */
+public interface IAsyncQueue<ID, DATA> extends IQueue<ID, DATA> {
+
+    /**
+     * Queue a message asynchronously.
+     * 
+     * @param msg
+     * @return a future completed with the result of
+     *         {@link #queue(IQueueMessage)}
+     * @see #queue(IQueueMessage)
+     */
+    CompletableFuture<Boolean> queueAsync(IQueueMessage<ID, DATA> msg);
+
+    /**
+     * Take a message out of queue asynchronously.
+     * 
+     * @return a future completed with the result of {@link #take()}
+     *         ({@code null} if queue is empty)
+     * @see #take()
+     */
+    CompletableFuture<IQueueMessage<ID, DATA>> takeAsync();
+
+    /**
+     * Finish processing a message asynchronously.
+     * 
+     * @param msg
+     * @return a future completed when {@link #finish(IQueueMessage)} is done
+     * @see #finish(IQueueMessage)
+     */
+    CompletableFuture<Void> finishAsync(IQueueMessage<ID, DATA> msg);
+}
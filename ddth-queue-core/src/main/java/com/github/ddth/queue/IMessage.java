@@ -14,6 +14,15 @@ import java.util.Date;
  */
 public interface IMessage<ID, DATA> extends Cloneable {
 
+    /**
+     * Value of {@link #getTimestampMillis()} (and
+     * {@link IQueueMessage#getQueueTimestampMillis()}) if the timestamp is
+     * {@code null}.
+     * 
+     * @since 0.7.1.3
+     */
+    long NO_TIMESTAMP = Long.MIN_VALUE;
+
     /**
      * Clone this message.
      * 
@@ -51,6 +60,35 @@ public interface IMessage<ID, DATA> extends Cloneable {
      */
     IMessage<ID, DATA> setTimestamp(Date timestamp);
 
+    /**
+     * Message's timestamp, in epoch milliseconds.
+     * 
+     * <p>
+     * The default implementation converts {@link #getTimestamp()};
+     * implementations that store timestamps as epoch milliseconds should
+     * override it so that no {@link Date} is created.
+     * </p>
+     * 
+     * @return {@link #NO_TIMESTAMP} if the timestamp is {@code null}
+     * @since 0.7.1.3
+     */
+    default long getTimestampMillis() {
+        Date timestamp = getTimestamp();
+        return timestamp != null ? timestamp.getTime() : NO_TIMESTAMP;
+    }
+
+    /**
+     * Set message's timestamp, in epoch milliseconds.
+     * 
+     * @param timestampMillis
+     *            {@link #NO_TIMESTAMP} to set the timestamp to {@code null}
+     * @return
+     * @since 0.7.1.3
+     */
+    default IMessage<ID, DATA> setTimestampMillis(long timestampMillis) {
+        return setTimestamp(timestampMillis != NO_TIMESTAMP ? new Date(timestampMillis) : null);
+    }
+
     /**
      * Data/content attached to the queue message.
      * 
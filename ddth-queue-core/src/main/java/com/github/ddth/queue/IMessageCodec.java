@@ -0,0 +1,42 @@
+package com.github.ddth.queue;
+
+import com.github.ddth.queue.utils.QueueException;
+
+/**
+ * API Interface to encode/decode messages to/from {@code byte[]}, used by
+ * queue implementations that store messages as bytes (e.g. Redis, RocksDB,
+ * Kafka) and by pub/sub hubs that transport messages as bytes (e.g. Redis,
+ * MongoDB).
+ * 
+ * <p>
+ * Implementations must be thread-safe.
+ * </p>
+ * 
+ * @author Thanh Ba Nguyen <bnguyen2k@gmail.com>
+ * @since 0.7.1.3
+ */
+public interface IMessageCodec<ID, DATA> {
+    /**
+     * Encode a message to bytes.
+     * 
+     * @param msg
+     * @return
+     * @throws QueueException.CannotSerializeQueueMessage
+     *             if the supplied message can not be encoded
+     */
+    byte[] encode(IMessage<ID, DATA> msg) throws QueueException.CannotSerializeQueueMessage;
+
+    /**
+     * Decode a message from bytes (was generated by
+     * {@link #encode(IMessage)}).
+     * 
+     * @param data
+     * @param clazz
+     *            expected class of the decoded message
+     * @return
+     * @throws QueueException.CannotDeserializeQueueMessage
+     *             if the supplied data can not be decoded
+     */
+    <T extends IMessage<ID, DATA>> T decode(byte[] data, Class<T> clazz)
+            throws QueueException.CannotDeserializeQueueMessage;
+}
@@ -1,6 +1,10 @@
 package com.github.ddth.queue;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
 
 import com.github.ddth.queue.utils.QueueException;
 
@@ -34,6 +38,22 @@ public interface IQueue<ID, DATA> {
      */
     static int SIZE_NOT_SUPPORTED = -1;
 
+    /**
+     * Default min back-off time (in milliseconds) when polling the queue in
+     * {@link #take(long, TimeUnit)}.
+     * 
+     * @since 0.7.1.3
+     */
+    static long DEFAULT_TAKE_MIN_BACKOFF_MS = 1;
+
+    /**
+     * Default max back-off time (in milliseconds) when polling the queue in
+     * {@link #take(long, TimeUnit)}.
+     * 
+     * @since 0.7.1.3
+     */
+    static long DEFAULT_TAKE_MAX_BACKOFF_MS = 100;
+
     /**
      * Create a new, empty queue message.
      * 
@@ -90,6 +110,45 @@ public interface IQueue<ID, DATA> {
      */
     boolean queue(IQueueMessage<ID, DATA> msg) throws QueueException;
 
+    /**
+     * Queue a batch of messages.
+     * 
+     * <p>
+     * Implementation flow:
+     * <ul>
+     * <li>Put messages to tail of queue storage, in iteration order of the
+     * supplied collection.</li>
+     * </ul>
+     * </p>
+     * 
+     * <p>
+     * Note: the default implementation simply calls {@link #queue(IQueueMessage)}
+     * for each message. Queue implementations that support batch writes
+     * natively should override this method to put all messages in one
+     * round-trip.
+     * </p>
+     * 
+     * @param msgs
+     * @return {@code true} if all messages have been queued
+     * @throws QueueException.QueueIsFull
+     *             if queue storage is full, can not take any more message
+     * @throws QueueException.CannotSerializeQueueMessage
+     *             if one of the supplied messages can not be serialize
+     * @throws QueueException
+     *             other queue exception
+     * @since 0.7.1.3
+     */
+    default boolean queueAll(Collection<? extends IQueueMessage<ID, DATA>> msgs)
+            throws QueueException {
+        boolean result = true;
+        if (msgs != null) {
+            for (IQueueMessage<ID, DATA> msg : msgs) {
+                result &= queue(msg);
+            }
+        }
+        return result;
+    }
+
     /**
      * Re-queue a message.
      * 
@@ -196,6 +255,139 @@ public interface IQueue<ID, DATA> {
      */
     IQueueMessage<ID, DATA> take() throws QueueException;
 
+    /**
+     * Take a message out of queue, waiting up to the specified wait time if
+     * necessary for a message to become available.
+     * 
+     * <p>
+     * Implementation flow: same as {@link #take()}, but blocks the calling
+     * thread until a message is available or the timeout elapses, so that
+     * callers need not busy-poll {@link #take()}.
+     * </p>
+     * 
+     * <p>
+     * Note: the default implementation polls {@link #take()} until a message
+     * is available or the timeout elapses, parking the calling thread between
+     * two empty polls (starting at {@link #getTakeMinBackoffMs()} and doubling
+     * up to {@link #getTakeMaxBackoffMs()}). Queue implementations whose
+     * storage supports blocking reads natively should override this method to
+     * block on the storage.
+     * </p>
+     * 
+     * @param timeout
+     *            how long to wait before giving up, in units of {@code unit}
+     * @param unit
+     *            a {@link TimeUnit} determining how to interpret the
+     *            {@code timeout} parameter
+     * @return the taken message, or {@code null} if the specified waiting time
+     *         elapses (or the calling thread is interrupted) before a message
+     *         is available
+     * @throws QueueException.EphemeralIsFull
+     *             if ephemeral storage is full, can not put message to
+     *             ephemeral storage
+     * @throws QueueException.CannotDeserializeQueueMessage
+     *             if the queue message can not be deserialized
+     * @throws QueueException
+     *             other queue exception
+     * @since 0.7.1.3
+     */
+    default IQueueMessage<ID, DATA> take(long timeout, TimeUnit unit) throws QueueException {
+        IQueueMessage<ID, DATA> msg = take();
+        if (msg != null || timeout <= 0) {
+            return msg;
+        }
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        long minBackoffMs = getTakeMinBackoffMs();
+        long backoffNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, minBackoffMs));
+        long maxBackoffNanos = TimeUnit.MILLISECONDS
+                .toNanos(Math.max(minBackoffMs, getTakeMaxBackoffMs()));
+        while (msg == null) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0 || Thread.currentThread().isInterrupted()) {
+                return null;
+            }
+            LockSupport.parkNanos(this, Math.min(backoffNanos, remaining));
+            backoffNanos = Math.min(backoffNanos * 2, maxBackoffNanos);
+            msg = take();
+        }
+        return msg;
+    }
+
+    /**
+     * Min back-off time (in milliseconds) between two empty polls of
+     * {@link #take(long, TimeUnit)}.
+     * 
+     * @return
+     * @since 0.7.1.3
+     */
+    default long getTakeMinBackoffMs() {
+        return DEFAULT_TAKE_MIN_BACKOFF_MS;
+    }
+
+    /**
+     * Max back-off time (in milliseconds) between two empty polls of
+     * {@link #take(long, TimeUnit)}.
+     * 
+     * @return
+     * @since 0.7.1.3
+     */
+    default long getTakeMaxBackoffMs() {
+        return DEFAULT_TAKE_MAX_BACKOFF_MS;
+    }
+
+    /**
+     * Take a batch of messages out of queue.
+     * 
+     * <p>
+     * Implementation flow:
+     * <ul>
+     * <li>Read up to {@code maxMessages} messages from head of queue
+     * storage.</li>
+     * <li>Write messages to ephemeral storage.</li>
+     * <li>Remove messages from queue storage.</li>
+     * </ul>
+     * </p>
+     * 
+     * <p>
+     * Note: the default implementation simply calls {@link #take()} until
+     * {@code maxMessages} messages have been taken, the queue is empty or the
+     * ephemeral storage is full. Queue implementations that support batch
+     * reads natively should override this method to take all messages in one
+     * round-trip.
+     * </p>
+     * 
+     * @param maxMessages
+     *            max number of messages to take
+     * @return list of taken messages, empty list if queue is empty
+     * @throws QueueException.EphemeralIsFull
+     *             if ephemeral storage is full before any message could be
+     *             taken
+     * @throws QueueException.CannotDeserializeQueueMessage
+     *             if a queue message can not be deserialized
+     * @throws QueueException
+     *             other queue exception
+     * @since 0.7.1.3
+     */
+    default List<IQueueMessage<ID, DATA>> take(int maxMessages) throws QueueException {
+        List<IQueueMessage<ID, DATA>> result = new ArrayList<>();
+        while (result.size() < maxMessages) {
+            IQueueMessage<ID, DATA> msg;
+            try {
+                msg = take();
+            } catch (QueueException.EphemeralIsFull e) {
+                if (result.isEmpty()) {
+                    throw e;
+                }
+                break;
+            }
+            if (msg == null) {
+                break;
+            }
+            result.add(msg);
+        }
+        return result;
+    }
+
     /**
      * Get all orphan messages (messages that were left in ephemeral storage for
      * a long time).
@@ -0,0 +1,40 @@
+package com.github.ddth.queue;
+
+/**
+ * API Interface used to receive messages pushed by a queue, in batches and in
+ * sequence order (see
+ * {@link com.github.ddth.queue.impl.DisruptorQueue#addEventHandler(IQueueEventHandler)}).
+ * 
+ * @author Thanh Ba Nguyen <bnguyen2k@gmail.com>
+ * @since 0.7.1.3
+ */
+public interface IQueueEventHandler<ID, DATA> {
+    /**
+     * Called for each message published to the queue, in sequence order, on
+     * the handler's own thread.
+     * 
+     * <p>
+     * If this method returns {@code true}, the message is finished for this
+     * handler. Otherwise (or if this method throws an exception), the message
+     * stays in the handler's ephemeral storage until it is finished
+     * explicitly.
+     * </p>
+     * 
+     * <p>
+     * The same message instance is passed to all handlers of the queue, it
+     * should be treated as read-only.
+     * </p>
+     * 
+     * @param msg
+     * @param sequence
+     *            sequence number of the message in the queue
+     * @param endOfBatch
+     *            {@code true} if this is the last message of the batch of
+     *            messages available to this handler (a good moment to flush
+     *            buffered work)
+     * @return {@code true} if the message has been processed successfully
+     * @throws Exception
+     */
+    boolean onMessage(IQueueMessage<ID, DATA> msg, long sequence, boolean endOfBatch)
+            throws Exception;
+}
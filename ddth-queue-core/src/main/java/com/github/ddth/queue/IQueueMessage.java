@@ -69,6 +69,47 @@ public interface IQueueMessage<ID, DATA> extends IMessage<ID, DATA> {
      */
     IQueueMessage<ID, DATA> setQueueTimestamp(Date timestamp);
 
+    /**
+     * Get message's last-queued timestamp, in epoch milliseconds.
+     * 
+     * <p>
+     * The default implementation converts {@link #getQueueTimestamp()};
+     * implementations that store timestamps as epoch milliseconds should
+     * override it so that no {@link Date} is created.
+     * </p>
+     * 
+     * @return {@link #NO_TIMESTAMP} if the timestamp is {@code null}
+     * @since 0.7.1.3
+     */
+    default long getQueueTimestampMillis() {
+        Date timestamp = getQueueTimestamp();
+        return timestamp != null ? timestamp.getTime() : NO_TIMESTAMP;
+    }
+
+    /**
+     * Set message's last-queued timestamp, in epoch milliseconds.
+     * 
+     * @param timestampMillis
+     *            {@link #NO_TIMESTAMP} to set the timestamp to {@code null}
+     * @return
+     * @since 0.7.1.3
+     */
+    default IQueueMessage<ID, DATA> setQueueTimestampMillis(long timestampMillis) {
+        return setQueueTimestamp(
+                timestampMillis != NO_TIMESTAMP ? new Date(timestampMillis) : null);
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @since 0.7.1.3
+     */
+    @Override
+    default IQueueMessage<ID, DATA> setTimestampMillis(long timestampMillis) {
+        setTimestamp(timestampMillis != NO_TIMESTAMP ? new Date(timestampMillis) : null);
+        return this;
+    }
+
     /**
      * Message's last-queued timestamp.
      * 
@@ -0,0 +1,26 @@
+package com.github.ddth.queue;
+
+/**
+ * API Interface used to process messages taken from a queue.
+ * 
+ * @author Thanh Ba Nguyen <bnguyen2k@gmail.com>
+ * @since 0.7.1.3
+ */
+public interface IQueueMessageHandler<ID, DATA> {
+    /**
+     * Called when a message has been taken from the queue.
+     * 
+     * <p>
+     * The caller finishes the message if this method returns {@code true}, and
+     * re-queues it if this method returns {@code false} or throws an
+     * exception.
+     * </p>
+     * 
+     * @param queue
+     *            the queue the message was taken from
+     * @param msg
+     * @return {@code true} if the message has been processed successfully
+     * @throws Exception
+     */
+    boolean handle(IQueue<ID, DATA> queue, IQueueMessage<ID, DATA> msg) throws Exception;
+}
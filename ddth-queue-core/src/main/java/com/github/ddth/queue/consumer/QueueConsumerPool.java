@@ -0,0 +1,828 @@
+package com.github.ddth.queue.consumer;
+
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.ddth.queue.IQueue;
+import com.github.ddth.queue.IQueueMessage;
+import com.github.ddth.queue.IQueueMessageHandler;
+import com.github.ddth.queue.utils.QueueException;
+
+/**
+ * Manage a pool of worker threads that take messages from an {@link IQueue} and
+ * pass them to an {@link IQueueMessageHandler}.
+ * 
+ * <p>
+ * Each worker runs the following loop:
+ * <ul>
+ * <li>Take a batch of up to {@link #getBatchSize()} messages with
+ * {@link IQueue#take(int)} (or a single message with {@link IQueue#take()} if
+ * batch size is {@code 1}).</li>
+ * <li>If the queue is empty, wait for a message with
+ * {@link IQueue#take(long, TimeUnit)}, which blocks natively where the queue
+ * supports it.</li>
+ * <li>Pass each message to the handler; finish the message if the handler
+ * returns {@code true}, re-queue it otherwise.</li>
+ * <li>If the queue throws {@link QueueException.EphemeralIsFull}, back off
+ * (exponentially, up to {@link #getMaxBackoffMs()}) so that in-flight messages
+ * get a chance to be finished.</li>
+ * </ul>
+ * </p>
+ * 
+ * <p>
+ * By default, handlers run on worker threads. If
+ * {@link #getMaxConcurrentHandlers()} is positive, workers only take messages
+ * and dispatch each one to a separate handler executor, with at most
+ * {@code maxConcurrentHandlers} messages in flight. This mode is meant for slow,
+ * blocking handlers: on a JVM that supports virtual threads (Java 21+), each
+ * message runs on its own virtual thread; otherwise handlers run on a bounded
+ * pool of platform threads (see {@link #getMaxHandlerThreads()}).
+ * </p>
+ * 
+ * <p>
+ * Shutdown:
+ * <ul>
+ * <li>{@link #shutdown()}: workers stop taking new messages, messages that
+ * have already been taken are processed. If {@link #isDrainOnShutdown()} is
+ * {@code true}, workers keep processing until the queue is empty.</li>
+ * <li>{@link #shutdownNow()}: messages that have already been taken but not yet
+ * processed are put back to the queue with
+ * {@link IQueue#requeueSilent(IQueueMessage)} and worker threads are
+ * interrupted.</li>
+ * </ul>
+ * </p>
+ * 
+ * @author Thanh Ba Nguyen <bnguyen2k@gmail.com>
+ * @since 0.7.1.3
+ */
+public class QueueConsumerPool<ID, DATA> implements AutoCloseable {
+
+    private final Logger LOGGER = LoggerFactory.getLogger(QueueConsumerPool.class);
+
+    public final static int DEFAULT_BATCH_SIZE = 1;
+    public final static long DEFAULT_IDLE_WAIT_MS = 1000;
+    public final static long DEFAULT_MAX_BACKOFF_MS = 1000;
+    public final static long DEFAULT_SHUTDOWN_TIMEOUT_MS = 10000;
+    public final static int DEFAULT_MAX_HANDLER_THREADS = 256;
+
+    private IQueue<ID, DATA> queue;
+    private IQueueMessageHandler<ID, DATA> handler;
+    private String name = "QueueConsumerPool";
+    private int numWorkers = Runtime.getRuntime().availableProcessors();
+    private int batchSize = DEFAULT_BATCH_SIZE;
+    private long idleWaitMs = DEFAULT_IDLE_WAIT_MS;
+    private long maxBackoffMs = DEFAULT_MAX_BACKOFF_MS;
+    private long shutdownTimeoutMs = DEFAULT_SHUTDOWN_TIMEOUT_MS;
+    private boolean drainOnShutdown = false;
+    private int maxConcurrentHandlers = 0;
+    private int maxHandlerThreads = DEFAULT_MAX_HANDLER_THREADS;
+    private boolean useVirtualThreads = true;
+
+    private ExecutorService executor;
+    private boolean myOwnExecutor = true;
+    private ExecutorService handlerExecutor;
+    private boolean myOwnHandlerExecutor = true;
+    private Semaphore handlerPermits;
+    private CountDownLatch workersDone;
+    private volatile boolean running = false, aborted = false;
+
+    private final AtomicLong counterFinished = new AtomicLong(0);
+    private final AtomicLong counterRequeued = new AtomicLong(0);
+    private final AtomicLong counterErrors = new AtomicLong(0);
+
+    public QueueConsumerPool() {
+    }
+
+    public QueueConsumerPool(IQueue<ID, DATA> queue, IQueueMessageHandler<ID, DATA> handler) {
+        setQueue(queue);
+        setHandler(handler);
+    }
+
+    public IQueue<ID, DATA> getQueue() {
+        return queue;
+    }
+
+    public QueueConsumerPool<ID, DATA> setQueue(IQueue<ID, DATA> queue) {
+        this.queue = queue;
+        return this;
+    }
+
+    public IQueueMessageHandler<ID, DATA> getHandler() {
+        return handler;
+    }
+
+    public QueueConsumerPool<ID, DATA> setHandler(IQueueMessageHandler<ID, DATA> handler) {
+        this.handler = handler;
+        return this;
+    }
+
+    /**
+     * Pool's name, used to name worker threads.
+     * 
+     * @return
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Pool's name, used to name worker threads.
+     * 
+     * @param name
+     * @return
+     */
+    public QueueConsumerPool<ID, DATA> setName(String name) {
+        this.name = name;
+        return this;
+    }
+
+    /**
+     * Number of worker threads (default: number of available processors).
+     * 
+     * @return
+     */
+    public int getNumWorkers() {
+        return numWorkers;
+    }
+
+    /**
+     * Number of worker threads.
+     * 
+     * @param numWorkers
+     * @return
+     */
+    public QueueConsumerPool<ID, DATA> setNumWorkers(int numWorkers) {
+        this.numWorkers = numWorkers;
+        return this;
+    }
+
+    /**
+     * Max number of messages each worker takes in one go (default
+     * {@link #DEFAULT_BATCH_SIZE}).
+     * 
+     * @return
+     */
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * Max number of messages each worker takes in one go.
+     * 
+     * <p>
+     * Note: up to {@code numWorkers x batchSize} messages can be in the
+     * queue's ephemeral storage at the same time.
+     * </p>
+     * 
+     * @param batchSize
+     * @return
+     */
+    public QueueConsumerPool<ID, DATA> setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+        return this;
+    }
+
+    /**
+     * Max time (in milliseconds) a worker blocks waiting for a message when
+     * the queue is empty (default {@link #DEFAULT_IDLE_WAIT_MS}).
+     * 
+     * @return
+     */
+    public long getIdleWaitMs() {
+        return idleWaitMs;
+    }
+
+    /**
+     * Max time (in milliseconds) a worker blocks waiting for a message when
+     * the queue is empty. This value also bounds how long {@link #shutdown()}
+     * waits for idle workers to notice. With a value {@code <=0}, idle workers
+     * poll the queue with a back-off up to {@link #getMaxBackoffMs()}.
+     * 
+     * @param idleWaitMs
+     * @return
+     */
+    public QueueConsumerPool<ID, DATA> setIdleWaitMs(long idleWaitMs) {
+        this.idleWaitMs = idleWaitMs;
+        return this;
+    }
+
+    /**
+     * Max back-off time (in milliseconds) when the ephemeral storage is full
+     * or the queue throws an error (default {@link #DEFAULT_MAX_BACKOFF_MS}).
+     * 
+     * @return
+     */
+    public long getMaxBackoffMs() {
+        return maxBackoffMs;
+    }
+
+    /**
+     * Max back-off time (in milliseconds) when the ephemeral storage is full,
+     * the queue throws an error or workers wait for in-flight handlers to
+     * finish while draining.
+     * 
+     * @param maxBackoffMs
+     * @return
+     */
+    public QueueConsumerPool<ID, DATA> setMaxBackoffMs(long maxBackoffMs) {
+        this.maxBackoffMs = maxBackoffMs;
+        return this;
+    }
+
+    /**
+     * Max time (in milliseconds) {@link #destroy()} waits for workers to
+     * finish before calling {@link #shutdownNow()} (default
+     * {@link #DEFAULT_SHUTDOWN_TIMEOUT_MS}).
+     * 
+     * @return
+     */
+    public long getShutdownTimeoutMs() {
+        return shutdownTimeoutMs;
+    }
+
+    /**
+     * Max time (in milliseconds) {@link #destroy()} waits for workers to
+     * finish before calling {@link #shutdownNow()}.
+     * 
+     * @param shutdownTimeoutMs
+     * @return
+     */
+    public QueueConsumerPool<ID, DATA> setShutdownTimeoutMs(long shutdownTimeoutMs) {
+        this.shutdownTimeoutMs = shutdownTimeoutMs;
+        return this;
+    }
+
+    /**
+     * If {@code true}, on {@link #shutdown()} workers keep processing messages
+     * until the queue is empty (default {@code false}).
+     * 
+     * @return
+     */
+    public boolean isDrainOnShutdown() {
+        return drainOnShutdown;
+    }
+
+    /**
+     * If {@code true}, on {@link #shutdown()} workers keep processing messages
+     * until the queue is empty.
+     * 
+     * @param drainOnShutdown
+     * @return
+     */
+    public QueueConsumerPool<ID, DATA> setDrainOnShutdown(boolean drainOnShutdown) {
+        this.drainOnShutdown = drainOnShutdown;
+        return this;
+    }
+
+    /**
+     * Max number of messages being handled concurrently, dispatched to the
+     * handler executor (default {@code 0}: handlers run on worker threads).
+     * 
+     * @return
+     */
+    public int getMaxConcurrentHandlers() {
+        return maxConcurrentHandlers;
+    }
+
+    /**
+     * Max number of messages being handled concurrently, dispatched to the
+     * handler executor. Set to {@code 0} to run handlers on worker threads.
+     * 
+     * <p>
+     * Note: up to {@code maxConcurrentHandlers + numWorkers x batchSize}
+     * messages can be in the queue's ephemeral storage at the same time.
+     * </p>
+     * 
+     * @param maxConcurrentHandlers
+     * @return
+     */
+    public QueueConsumerPool<ID, DATA> setMaxConcurrentHandlers(int maxConcurrentHandlers) {
+        this.maxConcurrentHandlers = maxConcurrentHandlers;
+        return this;
+    }
+
+    /**
+     * Max number of platform threads to run handlers, used when virtual
+     * threads are not available or disabled (default
+     * {@link #DEFAULT_MAX_HANDLER_THREADS}).
+     * 
+     * @return
+     */
+    public int getMaxHandlerThreads() {
+        return maxHandlerThreads;
+    }
+
+    /**
+     * Max number of platform threads to run handlers, used when virtual
+     * threads are not available or disabled.
+     * 
+     * @param maxHandlerThreads
+     * @return
+     */
+    public QueueConsumerPool<ID, DATA> setMaxHandlerThreads(int maxHandlerThreads) {
+        this.maxHandlerThreads = maxHandlerThreads;
+        return this;
+    }
+
+    /**
+     * Run each in-flight message on its own virtual thread if the JVM supports
+     * it (default {@code true}).
+     * 
+     * @return
+     */
+    public boolean isUseVirtualThreads() {
+        return useVirtualThreads;
+    }
+
+    /**
+     * Run each in-flight message on its own virtual thread if the JVM supports
+     * it.
+     * 
+     * @param useVirtualThreads
+     * @return
+     */
+    public QueueConsumerPool<ID, DATA> setUseVirtualThreads(boolean useVirtualThreads) {
+        this.useVirtualThreads = useVirtualThreads;
+        return this;
+    }
+
+    /**
+     * The executor that runs worker loops.
+     * 
+     * @return
+     */
+    public ExecutorService getExecutor() {
+        return executor;
+    }
+
+    /**
+     * The executor that runs worker loops.
+     * 
+     * @param executor
+     * @param setMyOwnExecutor
+     * @return
+     */
+    protected QueueConsumerPool<ID, DATA> setExecutor(ExecutorService executor,
+            boolean setMyOwnExecutor) {
+        if (myOwnExecutor && this.executor != null) {
+            this.executor.shutdown();
+        }
+        this.executor = executor;
+        myOwnExecutor = setMyOwnExecutor;
+        return this;
+    }
+
+    /**
+     * The executor that runs worker loops. The executor must be able to run
+     * {@link #getNumWorkers()} tasks concurrently; it is not shut down when
+     * this pool is destroyed.
+     * 
+     * @param executor
+     * @return
+     */
+    public QueueConsumerPool<ID, DATA> setExecutor(ExecutorService executor) {
+        return setExecutor(executor, false);
+    }
+
+    /**
+     * The executor that runs handlers when {@link #getMaxConcurrentHandlers()}
+     * is positive.
+     * 
+     * @return
+     */
+    public ExecutorService getHandlerExecutor() {
+        return handlerExecutor;
+    }
+
+    /**
+     * The executor that runs handlers when {@link #getMaxConcurrentHandlers()}
+     * is positive.
+     * 
+     * @param handlerExecutor
+     * @param setMyOwnHandlerExecutor
+     * @return
+     */
+    protected QueueConsumerPool<ID, DATA> setHandlerExecutor(ExecutorService handlerExecutor,
+            boolean setMyOwnHandlerExecutor) {
+        if (myOwnHandlerExecutor && this.handlerExecutor != null) {
+            this.handlerExecutor.shutdown();
+        }
+        this.handlerExecutor = handlerExecutor;
+        myOwnHandlerExecutor = setMyOwnHandlerExecutor;
+        return this;
+    }
+
+    /**
+     * The executor that runs handlers when {@link #getMaxConcurrentHandlers()}
+     * is positive. The executor is not shut down when this pool is destroyed.
+     * 
+     * @param handlerExecutor
+     * @return
+     */
+    public QueueConsumerPool<ID, DATA> setHandlerExecutor(ExecutorService handlerExecutor) {
+        return setHandlerExecutor(handlerExecutor, false);
+    }
+
+    /**
+     * Number of messages that have been processed and finished.
+     * 
+     * @return
+     */
+    public long getNumFinished() {
+        return counterFinished.get();
+    }
+
+    /**
+     * Number of messages that have been re-queued.
+     * 
+     * @return
+     */
+    public long getNumRequeued() {
+        return counterRequeued.get();
+    }
+
+    /**
+     * Number of errors (thrown by handler or queue).
+     * 
+     * @return
+     */
+    public long getNumErrors() {
+        return counterErrors.get();
+    }
+
+    /**
+     * Is the pool running (taking new messages)?
+     * 
+     * @return
+     */
+    public boolean isRunning() {
+        return running;
+    }
+
+    /*----------------------------------------------------------------------*/
+
+    /**
+     * Build an {@link ExecutorService} for my own use.
+     * 
+     * @return
+     */
+    protected ExecutorService buildExecutor() {
+        AtomicInteger counter = new AtomicInteger();
+        return Executors.newFixedThreadPool(numWorkers,
+                r -> new Thread(r, name + "-worker-" + counter.incrementAndGet()));
+    }
+
+    /**
+     * Check if the running JVM supports virtual threads.
+     * 
+     * @return
+     */
+    public static boolean isVirtualThreadSupported() {
+        ExecutorService executor = newVirtualThreadPerTaskExecutor();
+        if (executor != null) {
+            executor.shutdown();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Create a virtual-thread-per-task executor via reflection, so that this
+     * class still compiles and runs on Java 8.
+     * 
+     * @return {@code null} if virtual threads are not supported
+     */
+    protected static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) method.invoke(null);
+        } catch (Exception | LinkageError e) {
+            /* Java < 19, or Java 19/20 without --enable-preview */
+            return null;
+        }
+    }
+
+    /**
+     * Build an {@link ExecutorService} to run handlers, for my own use: a
+     * virtual-thread-per-task executor if supported and enabled, a fixed pool
+     * of {@code min(maxConcurrentHandlers, maxHandlerThreads)} platform
+     * threads otherwise.
+     * 
+     * @return
+     */
+    protected ExecutorService buildHandlerExecutor() {
+        ExecutorService result = useVirtualThreads ? newVirtualThreadPerTaskExecutor() : null;
+        if (result != null) {
+            LOGGER.info("[" + name + "] Handlers run on virtual threads.");
+            return result;
+        }
+        int numThreads = Math.max(1, Math.min(maxConcurrentHandlers, maxHandlerThreads));
+        AtomicInteger counter = new AtomicInteger();
+        return Executors.newFixedThreadPool(numThreads, r -> {
+            Thread t = new Thread(r, name + "-handler-" + counter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Init method: start worker threads.
+     * 
+     * @return
+     */
+    public QueueConsumerPool<ID, DATA> init() {
+        if (queue == null) {
+            throw new IllegalStateException("Queue is null.");
+        }
+        if (handler == null) {
+            throw new IllegalStateException("Message handler is null.");
+        }
+        if (numWorkers < 1) {
+            throw new IllegalStateException("Number of workers must be positive.");
+        }
+        if (executor == null) {
+            setExecutor(buildExecutor(), true);
+        }
+        if (maxConcurrentHandlers > 0) {
+            if (handlerExecutor == null) {
+                setHandlerExecutor(buildHandlerExecutor(), true);
+            }
+            handlerPermits = new Semaphore(maxConcurrentHandlers);
+        } else {
+            handlerPermits = null;
+        }
+        running = true;
+        aborted = false;
+        workersDone = new CountDownLatch(numWorkers);
+        for (int i = 0; i < numWorkers; i++) {
+            executor.execute(this::workerLoop);
+        }
+        return this;
+    }
+
+    /**
+     * Destroy method: {@link #shutdown()} and wait for workers to finish, up
+     * to {@link #getShutdownTimeoutMs()}, then {@link #shutdownNow()}.
+     */
+    public void destroy() {
+        shutdown();
+        try {
+            if (!awaitTermination(shutdownTimeoutMs, TimeUnit.MILLISECONDS)) {
+                shutdownNow();
+                awaitTermination(shutdownTimeoutMs, TimeUnit.MILLISECONDS);
+            }
+        } catch (InterruptedException e) {
+            shutdownNow();
+            Thread.currentThread().interrupt();
+        } finally {
+            if (executor != null && myOwnExecutor) {
+                executor.shutdownNow();
+                executor = null;
+            }
+            if (handlerExecutor != null && myOwnHandlerExecutor) {
+                handlerExecutor.shutdownNow();
+                handlerExecutor = null;
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void close() {
+        destroy();
+    }
+
+    /**
+     * Stop taking new messages; messages that have already been taken are
+     * processed. This method does not wait for workers to finish, use
+     * {@link #awaitTermination(long, TimeUnit)} for that purpose.
+     */
+    public void shutdown() {
+        running = false;
+    }
+
+    /**
+     * Stop taking new messages; messages that have already been taken but not
+     * yet processed are re-queued, and worker threads are interrupted.
+     * Handlers that are running are not interrupted.
+     */
+    public void shutdownNow() {
+        running = false;
+        aborted = true;
+        if (executor != null && myOwnExecutor) {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Block until all workers and in-flight handlers have finished after a
+     * shutdown request, or the timeout occurs.
+     * 
+     * @param timeout
+     * @param unit
+     * @return {@code true} if all workers and handlers have finished
+     * @throws InterruptedException
+     */
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        if (workersDone != null && !workersDone.await(timeout, unit)) {
+            return false;
+        }
+        Semaphore permits = handlerPermits;
+        if (permits != null) {
+            long remaining = Math.max(0, deadline - System.nanoTime());
+            if (!permits.tryAcquire(maxConcurrentHandlers, remaining, TimeUnit.NANOSECONDS)) {
+                return false;
+            }
+            permits.release(maxConcurrentHandlers);
+        }
+        return true;
+    }
+
+    /*----------------------------------------------------------------------*/
+
+    private long nextBackoff(long backoffMs) {
+        return Math.min(Math.max(1, backoffMs * 2), Math.max(1, maxBackoffMs));
+    }
+
+    private void park(long ms) {
+        LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(ms));
+    }
+
+    /**
+     * Take the next batch of messages. When the pool is running and the queue
+     * is empty, block up to {@link #getIdleWaitMs()} for a message.
+     * 
+     * @return
+     */
+    protected List<IQueueMessage<ID, DATA>> takeBatch() {
+        if (batchSize > 1) {
+            List<IQueueMessage<ID, DATA>> msgs = queue.take(batchSize);
+            if (!msgs.isEmpty()) {
+                return msgs;
+            }
+        } else {
+            IQueueMessage<ID, DATA> msg = queue.take();
+            if (msg != null) {
+                return Collections.singletonList(msg);
+            }
+        }
+        if (running && idleWaitMs > 0) {
+            IQueueMessage<ID, DATA> msg = queue.take(idleWaitMs, TimeUnit.MILLISECONDS);
+            if (msg != null) {
+                return Collections.singletonList(msg);
+            }
+        }
+        return Collections.emptyList();
+    }
+
+    /**
+     * Pass a message to the handler, then finish or re-queue it.
+     * 
+     * @param msg
+     */
+    protected void process(IQueueMessage<ID, DATA> msg) {
+        boolean ok;
+        try {
+            ok = handler.handle(queue, msg);
+        } catch (Exception e) {
+            LOGGER.warn("Error while handling message [" + msg.getId() + "]: " + e.getMessage(),
+                    e);
+            counterErrors.incrementAndGet();
+            ok = false;
+        }
+        try {
+            if (ok) {
+                queue.finish(msg);
+                counterFinished.incrementAndGet();
+            } else {
+                queue.requeue(msg);
+                counterRequeued.incrementAndGet();
+            }
+        } catch (Exception e) {
+            LOGGER.error("Error while " + (ok ? "finishing" : "re-queuing") + " message ["
+                    + msg.getId() + "]: " + e.getMessage(), e);
+            counterErrors.incrementAndGet();
+        }
+    }
+
+    private void requeueSilentQuietly(IQueueMessage<ID, DATA> msg) {
+        try {
+            queue.requeueSilent(msg);
+        } catch (Exception e) {
+            LOGGER.error("Error while re-queuing message [" + msg.getId() + "]: " + e.getMessage(),
+                    e);
+            counterErrors.incrementAndGet();
+        }
+    }
+
+    /**
+     * Dispatch a message to the handler executor, blocking while
+     * {@link #getMaxConcurrentHandlers()} messages are in flight.
+     * 
+     * @param msg
+     */
+    private void dispatch(IQueueMessage<ID, DATA> msg) {
+        Semaphore permits = handlerPermits;
+        try {
+            while (!permits.tryAcquire(idleWaitMs > 0 ? idleWaitMs : 1,
+                    TimeUnit.MILLISECONDS)) {
+                if (aborted) {
+                    requeueSilentQuietly(msg);
+                    return;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            requeueSilentQuietly(msg);
+            return;
+        }
+        try {
+            handlerExecutor.execute(() -> {
+                try {
+                    if (aborted) {
+                        requeueSilentQuietly(msg);
+                    } else {
+                        process(msg);
+                    }
+                } finally {
+                    permits.release();
+                }
+            });
+        } catch (Exception e) {
+            permits.release();
+            LOGGER.error("Error while dispatching message [" + msg.getId() + "]: " + e.getMessage(),
+                    e);
+            counterErrors.incrementAndGet();
+            requeueSilentQuietly(msg);
+        }
+    }
+
+    private void workerLoop() {
+        long backoffMs = 0;
+        try {
+            while (!aborted && (running || drainOnShutdown)) {
+                List<IQueueMessage<ID, DATA>> msgs;
+                try {
+                    msgs = takeBatch();
+                } catch (QueueException.EphemeralIsFull e) {
+                    /* back-pressure: let in-flight messages be finished */
+                    backoffMs = nextBackoff(backoffMs);
+                    park(backoffMs);
+                    continue;
+                } catch (Exception e) {
+                    LOGGER.error("Error while taking messages: " + e.getMessage(), e);
+                    counterErrors.incrementAndGet();
+                    backoffMs = nextBackoff(backoffMs);
+                    park(backoffMs);
+                    continue;
+                }
+                if (msgs.isEmpty()) {
+                    if (!running) {
+                        if (handlerPermits != null
+                                && handlerPermits.availablePermits() < maxConcurrentHandlers) {
+                            /* draining: in-flight handlers may re-queue messages */
+                            backoffMs = nextBackoff(backoffMs);
+                            park(backoffMs);
+                            continue;
+                        }
+                        /* draining: queue is empty */
+                        break;
+                    }
+                    if (idleWaitMs <= 0) {
+                        /* takeBatch() did not block: do not spin on an empty queue */
+                        backoffMs = nextBackoff(backoffMs);
+                        park(backoffMs);
+                    }
+                    continue;
+                }
+                backoffMs = 0;
+                for (IQueueMessage<ID, DATA> msg : msgs) {
+                    if (aborted) {
+                        requeueSilentQuietly(msg);
+                    } else if (handlerPermits != null) {
+                        dispatch(msg);
+                    } else {
+                        process(msg);
+                    }
+                }
+            }
+        } finally {
+            workersDone.countDown();
+        }
+    }
+}
@@ -10,6 +10,7 @@ public abstract class AbstractEphemeralSupportQueue<ID, DATA> extends AbstractQu
 
     private boolean ephemeralDisabled = false;
     private int ephemeralMaxSize = 0;
+    private long orphanIndexGranularityMs = 0;
 
     /**
      * Is ephemeral storage disabled?
@@ -64,4 +65,38 @@ public abstract class AbstractEphemeralSupportQueue<ID, DATA> extends AbstractQu
         return this;
     }
 
+    /**
+     * Width (in milliseconds) of the time buckets of the orphan index, a
+     * value less than {@code 1} means the orphan index is disabled (default).
+     * 
+     * @return
+     * @since 0.7.1.3
+     */
+    public long getOrphanIndexGranularityMs() {
+        return orphanIndexGranularityMs;
+    }
+
+    /**
+     * Enable the orphan index: messages in ephemeral storage are also indexed
+     * in time buckets of {@code orphanIndexGranularityMs} by queue timestamp,
+     * so that {@link #getOrphanMessages(long)} only visits expired buckets
+     * instead of scanning the whole ephemeral storage. Must be set before the
+     * queue is initialized.
+     * 
+     * <p>
+     * Supported by in-memory queues ({@link InmemQueue},
+     * {@link DisruptorQueue}); ignored by other implementations.
+     * </p>
+     * 
+     * @param orphanIndexGranularityMs
+     *            a value less than {@code 1} disables the orphan index
+     * @return
+     * @since 0.7.1.3
+     */
+    public AbstractEphemeralSupportQueue<ID, DATA> setOrphanIndexGranularityMs(
+            long orphanIndexGranularityMs) {
+        this.orphanIndexGranularityMs = orphanIndexGranularityMs;
+        return this;
+    }
+
 }
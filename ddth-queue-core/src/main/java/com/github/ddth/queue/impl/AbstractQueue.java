@@ -1,6 +1,14 @@
 package com.github.ddth.queue.impl;
 
-import com.github.ddth.commons.utils.SerializationUtils;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.github.ddth.queue.IAsyncQueue;
+import com.github.ddth.queue.IMessageCodec;
 import com.github.ddth.queue.IQueue;
 import com.github.ddth.queue.IQueueMessage;
 import com.github.ddth.queue.IQueueMessageFactory;
@@ -13,11 +21,27 @@ import com.github.ddth.queue.utils.QueueException;
  * @author Thanh Nguyen <btnguyen2k@gmail.com>
  * @since 0.5.0
  */
-public abstract class AbstractQueue<ID, DATA> implements IQueue<ID, DATA>, AutoCloseable {
+public abstract class AbstractQueue<ID, DATA>
+        implements IQueue<ID, DATA>, IAsyncQueue<ID, DATA>, AutoCloseable {
 
     private String queueName;
     private IQueueObserver<ID, DATA> observer;
     private IQueueMessageFactory<ID, DATA> messageFactory;
+    private IMessageCodec<ID, DATA> messageCodec = new SerializationMessageCodec<>();
+    private boolean ownershipTransfer = false;
+    private long takeMinBackoffMs = DEFAULT_TAKE_MIN_BACKOFF_MS;
+    private long takeMaxBackoffMs = DEFAULT_TAKE_MAX_BACKOFF_MS;
+
+    /**
+     * Default max number of pending tasks of the executor that backs
+     * asynchronous operations.
+     * 
+     * @since 0.7.1.3
+     */
+    public final static int DEFAULT_ASYNC_QUEUE_SIZE = 1024;
+
+    private volatile ExecutorService asyncExecutor;
+    private boolean myOwnAsyncExecutor = true;
 
     /**
      * Get queue's name.
@@ -82,6 +106,212 @@ public abstract class AbstractQueue<ID, DATA> implements IQueue<ID, DATA>, AutoC
         return this;
     }
 
+    /**
+     * Codec used by {@link #serialize(IQueueMessage)} and
+     * {@link #deserialize(byte[], Class)} (default:
+     * {@link SerializationMessageCodec}).
+     * 
+     * @return
+     * @since 0.7.1.3
+     */
+    public IMessageCodec<ID, DATA> getMessageCodec() {
+        return messageCodec;
+    }
+
+    /**
+     * Codec used by {@link #serialize(IQueueMessage)} and
+     * {@link #deserialize(byte[], Class)}. Set to {@code null} to use the
+     * default {@link SerializationMessageCodec}.
+     * 
+     * <p>
+     * Note: messages already stored with one codec may not be readable by
+     * another one.
+     * </p>
+     * 
+     * @param messageCodec
+     * @return
+     * @since 0.7.1.3
+     */
+    public AbstractQueue<ID, DATA> setMessageCodec(IMessageCodec<ID, DATA> messageCodec) {
+        this.messageCodec = messageCodec != null ? messageCodec
+                : new SerializationMessageCodec<>();
+        return this;
+    }
+
+    /**
+     * Ownership-transfer mode (default {@code false}).
+     * 
+     * @return
+     * @since 0.7.1.3
+     */
+    public boolean isOwnershipTransfer() {
+        return ownershipTransfer;
+    }
+
+    /**
+     * Ownership-transfer mode: if enabled, {@code queue}/{@code requeue}
+     * methods take ownership of the passed message (and may modify and keep
+     * it) instead of working on a clone. The caller must not use nor modify a
+     * message after passing it to the queue.
+     * 
+     * <p>
+     * In-memory queues keep the passed object itself, so this mode saves one
+     * message allocation per operation.
+     * </p>
+     * 
+     * @param ownershipTransfer
+     * @return
+     * @since 0.7.1.3
+     */
+    public AbstractQueue<ID, DATA> setOwnershipTransfer(boolean ownershipTransfer) {
+        this.ownershipTransfer = ownershipTransfer;
+        return this;
+    }
+
+    /**
+     * Get the message instance a {@code queue}/{@code requeue} operation works
+     * on: the passed message itself in ownership-transfer mode, a clone of it
+     * otherwise.
+     * 
+     * @param msg
+     * @return
+     * @since 0.7.1.3
+     */
+    protected IQueueMessage<ID, DATA> claimMessage(IQueueMessage<ID, DATA> msg) {
+        return ownershipTransfer ? msg : msg.clone();
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @since 0.7.1.3
+     */
+    @Override
+    public long getTakeMinBackoffMs() {
+        return takeMinBackoffMs;
+    }
+
+    /**
+     * Min back-off time (in milliseconds) when polling the queue in
+     * {@link #take(long, TimeUnit)}.
+     * 
+     * @param takeMinBackoffMs
+     * @return
+     * @since 0.7.1.3
+     */
+    public AbstractQueue<ID, DATA> setTakeMinBackoffMs(long takeMinBackoffMs) {
+        this.takeMinBackoffMs = takeMinBackoffMs;
+        return this;
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @since 0.7.1.3
+     */
+    @Override
+    public long getTakeMaxBackoffMs() {
+        return takeMaxBackoffMs;
+    }
+
+    /**
+     * Max back-off time (in milliseconds) when polling the queue in
+     * {@link #take(long, TimeUnit)}.
+     * 
+     * @param takeMaxBackoffMs
+     * @return
+     * @since 0.7.1.3
+     */
+    public AbstractQueue<ID, DATA> setTakeMaxBackoffMs(long takeMaxBackoffMs) {
+        this.takeMaxBackoffMs = takeMaxBackoffMs;
+        return this;
+    }
+
+    /**
+     * Get the {@link ExecutorService} that backs asynchronous operations.
+     * 
+     * @return
+     * @since 0.7.1.3
+     */
+    public ExecutorService getAsyncExecutor() {
+        return asyncExecutor;
+    }
+
+    /**
+     * Set the {@link ExecutorService} that backs asynchronous operations.
+     * 
+     * @param asyncExecutor
+     * @param setMyOwnAsyncExecutor
+     * @return
+     * @since 0.7.1.3
+     */
+    protected AbstractQueue<ID, DATA> setAsyncExecutor(ExecutorService asyncExecutor,
+            boolean setMyOwnAsyncExecutor) {
+        if (myOwnAsyncExecutor && this.asyncExecutor != null) {
+            this.asyncExecutor.shutdown();
+        }
+        this.asyncExecutor = asyncExecutor;
+        myOwnAsyncExecutor = setMyOwnAsyncExecutor;
+        return this;
+    }
+
+    /**
+     * Set the {@link ExecutorService} that backs asynchronous operations. The
+     * supplied executor is not shut down when this queue is destroyed.
+     * 
+     * @param asyncExecutor
+     * @return
+     * @since 0.7.1.3
+     */
+    public AbstractQueue<ID, DATA> setAsyncExecutor(ExecutorService asyncExecutor) {
+        return setAsyncExecutor(asyncExecutor, false);
+    }
+
+    /**
+     * Build an {@link ExecutorService} for my own use.
+     * 
+     * <p>
+     * The built executor has one thread per available processor and a bounded
+     * task queue of {@link #DEFAULT_ASYNC_QUEUE_SIZE}; when the task queue is
+     * full the task is run on the calling thread, which throttles callers
+     * that submit faster than the backend can keep up.
+     * </p>
+     * 
+     * @return
+     * @since 0.7.1.3
+     */
+    protected ExecutorService buildAsyncExecutor() {
+        int numThreads = Runtime.getRuntime().availableProcessors();
+        String prefix = getClass().getSimpleName() + "-async-";
+        AtomicInteger counter = new AtomicInteger();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(numThreads, numThreads, 60,
+                TimeUnit.SECONDS, new ArrayBlockingQueue<>(DEFAULT_ASYNC_QUEUE_SIZE), r -> {
+                    Thread t = new Thread(r, prefix + counter.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                }, new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Get the {@link ExecutorService} that backs asynchronous operations,
+     * building one if none has been set.
+     * 
+     * @return
+     * @since 0.7.1.3
+     */
+    protected ExecutorService asyncExecutor() {
+        if (asyncExecutor == null) {
+            synchronized (this) {
+                if (asyncExecutor == null) {
+                    setAsyncExecutor(buildAsyncExecutor(), true);
+                }
+            }
+        }
+        return asyncExecutor;
+    }
+
     /**
      * Initializing method.
      * 
@@ -108,6 +338,10 @@ public abstract class AbstractQueue<ID, DATA> implements IQueue<ID, DATA>, AutoC
         if (observer != null) {
             observer.preDestroy(this);
         }
+        if (asyncExecutor != null && myOwnAsyncExecutor) {
+            asyncExecutor.shutdown();
+            asyncExecutor = null;
+        }
         if (observer != null) {
             observer.postDestroy(this);
         }
@@ -152,14 +386,14 @@ public abstract class AbstractQueue<ID, DATA> implements IQueue<ID, DATA>, AutoC
     }
 
     /**
-     * Serialize a queue message to bytes.
+     * Serialize a queue message to bytes, using {@link #getMessageCodec()}.
      * 
      * @param queueMsg
      * @return
      * @since 0.7.0
      */
     protected byte[] serialize(IQueueMessage<ID, DATA> queueMsg) {
-        return queueMsg != null ? SerializationUtils.toByteArray(queueMsg) : null;
+        return queueMsg != null ? messageCodec.encode(queueMsg) : null;
     }
 
     /**
@@ -177,7 +411,7 @@ public abstract class AbstractQueue<ID, DATA> implements IQueue<ID, DATA>, AutoC
 
     /**
      * Deserialize a queue message from bytes (was generated by
-     * {@link #serialize(IQueueMessage)}.
+     * {@link #serialize(IQueueMessage)}, using {@link #getMessageCodec()}.
      * 
      * @param data
      * @param clazz
@@ -185,7 +419,53 @@ public abstract class AbstractQueue<ID, DATA> implements IQueue<ID, DATA>, AutoC
      * @since 0.7.0
      */
     protected <T extends IQueueMessage<ID, DATA>> T deserialize(byte[] data, Class<T> clazz) {
-        return data != null ? SerializationUtils.fromByteArray(data, clazz) : null;
+        return data != null ? messageCodec.decode(data, clazz) : null;
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * <p>
+     * This implementation runs {@link #queue(IQueueMessage)} on the
+     * {@link #getAsyncExecutor()}. Sub-classes whose backend has an
+     * asynchronous client should override this method.
+     * </p>
+     * 
+     * @since 0.7.1.3
+     */
+    @Override
+    public CompletableFuture<Boolean> queueAsync(IQueueMessage<ID, DATA> msg) {
+        return CompletableFuture.supplyAsync(() -> queue(msg), asyncExecutor());
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * <p>
+     * This implementation runs {@link #take()} on the
+     * {@link #getAsyncExecutor()}.
+     * </p>
+     * 
+     * @since 0.7.1.3
+     */
+    @Override
+    public CompletableFuture<IQueueMessage<ID, DATA>> takeAsync() {
+        return CompletableFuture.supplyAsync(() -> take(), asyncExecutor());
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * <p>
+     * This implementation runs {@link #finish(IQueueMessage)} on the
+     * {@link #getAsyncExecutor()}.
+     * </p>
+     * 
+     * @since 0.7.1.3
+     */
+    @Override
+    public CompletableFuture<Void> finishAsync(IQueueMessage<ID, DATA> msg) {
+        return CompletableFuture.runAsync(() -> finish(msg), asyncExecutor());
     }
 
     /**
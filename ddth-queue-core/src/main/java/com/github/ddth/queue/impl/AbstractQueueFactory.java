@@ -7,6 +7,7 @@ import java.util.concurrent.TimeUnit;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.github.ddth.queue.IMessageCodec;
 import com.github.ddth.queue.IQueueFactory;
 import com.github.ddth.queue.IQueueObserver;
 import com.github.ddth.queue.QueueSpec;
@@ -34,6 +35,7 @@ public abstract class AbstractQueueFactory<T extends AbstractQueue<ID, DATA>, ID
                 }
             }).build();
     private IQueueObserver<ID, DATA> defaultObserver;
+    private IMessageCodec<ID, DATA> defaultMessageCodec;
 
     private boolean defaultEphemeralDisabled = false;
     private int defaultMaxSize = QueueSpec.NO_BOUNDARY,
@@ -130,6 +132,31 @@ public abstract class AbstractQueueFactory<T extends AbstractQueue<ID, DATA>, ID
         return this;
     }
 
+    /**
+     * Get default codec to encode/decode queue messages ({@code null}: use
+     * queue's default).
+     * 
+     * @return
+     * @since 0.7.1.3
+     */
+    public IMessageCodec<ID, DATA> getDefaultMessageCodec() {
+        return defaultMessageCodec;
+    }
+
+    /**
+     * Set default codec to encode/decode queue messages ({@code null}: use
+     * queue's default).
+     * 
+     * @param defaultMessageCodec
+     * @return
+     * @since 0.7.1.3
+     */
+    public AbstractQueueFactory<T, ID, DATA> setDefaultMessageCodec(
+            IMessageCodec<ID, DATA> defaultMessageCodec) {
+        this.defaultMessageCodec = defaultMessageCodec;
+        return this;
+    }
+
     public AbstractQueueFactory<T, ID, DATA> init() {
         return this;
     }
@@ -168,6 +195,9 @@ public abstract class AbstractQueueFactory<T extends AbstractQueue<ID, DATA>, ID
      */
     protected void initQueue(T queue, QueueSpec spec) throws Exception {
         queue.setObserver(defaultObserver);
+        if (defaultMessageCodec != null) {
+            queue.setMessageCodec(defaultMessageCodec);
+        }
         queue.init();
     }
 
@@ -1,7 +1,7 @@
 package com.github.ddth.queue.impl;
 
 import java.util.Collection;
-import java.util.Date;
+import java.util.concurrent.TimeUnit;
 
 import javax.jms.BytesMessage;
 import javax.jms.Connection;
@@ -317,9 +317,9 @@ public abstract class ActiveMqQueue<ID, DATA> extends AbstractQueue<ID, DATA> {
      */
     @Override
     public boolean queue(IQueueMessage<ID, DATA> _msg) {
-        IQueueMessage<ID, DATA> msg = _msg.clone();
-        Date now = new Date();
-        msg.setNumRequeues(0).setQueueTimestamp(now).setTimestamp(now);
+        IQueueMessage<ID, DATA> msg = claimMessage(_msg);
+        long now = System.currentTimeMillis();
+        msg.setNumRequeues(0).setQueueTimestampMillis(now).setTimestampMillis(now);
         return putToQueue(msg);
     }
 
@@ -328,9 +328,9 @@ public abstract class ActiveMqQueue<ID, DATA> extends AbstractQueue<ID, DATA> {
      */
     @Override
     public boolean requeue(IQueueMessage<ID, DATA> _msg) {
-        IQueueMessage<ID, DATA> msg = _msg.clone();
-        Date now = new Date();
-        msg.incNumRequeues().setQueueTimestamp(now);
+        IQueueMessage<ID, DATA> msg = claimMessage(_msg);
+        long now = System.currentTimeMillis();
+        msg.incNumRequeues().setQueueTimestampMillis(now);
         return putToQueue(msg);
     }
 
@@ -339,7 +339,7 @@ public abstract class ActiveMqQueue<ID, DATA> extends AbstractQueue<ID, DATA> {
      */
     @Override
     public boolean requeueSilent(IQueueMessage<ID, DATA> _msg) {
-        IQueueMessage<ID, DATA> msg = _msg.clone();
+        IQueueMessage<ID, DATA> msg = claimMessage(_msg);
         return putToQueue(msg);
     }
 
@@ -359,11 +359,38 @@ public abstract class ActiveMqQueue<ID, DATA> extends AbstractQueue<ID, DATA> {
      */
     @Override
     public IQueueMessage<ID, DATA> take() throws QueueException.EphemeralIsFull {
+        return takeFromConsumer(1000);
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * <p>
+     * This method blocks on {@link MessageConsumer#receive(long)}.
+     * </p>
+     * 
+     * @since 0.7.1.3
+     */
+    @Override
+    public IQueueMessage<ID, DATA> take(long timeout, TimeUnit unit) throws QueueException {
+        return takeFromConsumer(unit.toMillis(timeout));
+    }
+
+    /**
+     * Receive a message from the consumer, waiting up to {@code timeoutMs}
+     * milliseconds.
+     * 
+     * @param timeoutMs
+     *            a value less than {@code 1} means "do not wait"
+     * @return
+     * @since 0.7.1.3
+     */
+    protected IQueueMessage<ID, DATA> takeFromConsumer(long timeoutMs) {
         try {
             MessageConsumer consumer = getMessageConsumer();
             synchronized (consumer) {
-                // Message message = consumer.receiveNoWait();
-                Message message = consumer.receive(1000);
+                Message message = timeoutMs > 0 ? consumer.receive(timeoutMs)
+                        : consumer.receiveNoWait();
                 if (message instanceof BytesMessage) {
                     BytesMessage msg = (BytesMessage) message;
                     byte[] buff = new byte[(int) msg.getBodyLength()];
@@ -1,9 +1,10 @@
 package com.github.ddth.queue.impl;
 
 import java.text.MessageFormat;
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Date;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
 import org.slf4j.Logger;
@@ -214,6 +215,13 @@ public abstract class BaseRedisQueue<ID, DATA> extends AbstractEphemeralSupportQ
      */
     private String SCRIPT_TAKE;
 
+    /**
+     * LUA script to take a batch of messages out of queue.
+     * 
+     * @since 0.7.1.3
+     */
+    private String SCRIPT_TAKE_MANY;
+
     /**
      * LUA script to move a message from ephemeral storage to queue storage.
      */
@@ -244,6 +252,33 @@ public abstract class BaseRedisQueue<ID, DATA> extends AbstractEphemeralSupportQ
         return this;
     }
 
+    /**
+     * LUA script to take a batch of messages out of queue.
+     * 
+     * @return
+     * @since 0.7.1.3
+     */
+    public String getScriptTakeMany() {
+        return SCRIPT_TAKE_MANY;
+    }
+
+    /**
+     * LUA script to take a batch of messages out of queue.
+     * 
+     * <p>
+     * Normally queue implementations will build this script; no need to "set"
+     * it from outside.
+     * </p>
+     * 
+     * @param scriptTakeMany
+     * @return
+     * @since 0.7.1.3
+     */
+    public BaseRedisQueue<ID, DATA> setScriptTakeMany(String scriptTakeMany) {
+        SCRIPT_TAKE_MANY = scriptTakeMany;
+        return this;
+    }
+
     /**
      * LUA script to move a message from ephemeral storage to queue storage.
      * 
@@ -315,6 +350,29 @@ public abstract class BaseRedisQueue<ID, DATA> extends AbstractEphemeralSupportQ
         SCRIPT_TAKE = MessageFormat.format(SCRIPT_TAKE, _redisListName, _redisSortedSetName,
                 _redisHashName);
 
+        /*
+         * Script details: same as SCRIPT_TAKE, but loops up to ARGV[2] times
+         * and returns contents of all taken messages as an array.
+         * 
+         * Note: Lua's table constructor is quoted as it conflicts with
+         * MessageFormat's placeholders.
+         */
+        if (isEphemeralDisabled()) {
+            SCRIPT_TAKE_MANY = "local result='{}'; for i=1,tonumber(ARGV[2]) do "
+                    + "local qid=redis.call(\"lpop\",\"{0}\"); if not qid then break end; "
+                    + "local qcontent=redis.call(\"hget\", \"{2}\", qid); "
+                    + "redis.call(\"hdel\", \"{2}\", qid); "
+                    + "if qcontent then result[#result+1]=qcontent end end; return result";
+        } else {
+            SCRIPT_TAKE_MANY = "local result='{}'; for i=1,tonumber(ARGV[2]) do "
+                    + "local qid=redis.call(\"lpop\",\"{0}\"); if not qid then break end; "
+                    + "redis.call(\"zadd\", \"{1}\", ARGV[1], qid); "
+                    + "local qcontent=redis.call(\"hget\", \"{2}\", qid); "
+                    + "if qcontent then result[#result+1]=qcontent end end; return result";
+        }
+        SCRIPT_TAKE_MANY = MessageFormat.format(SCRIPT_TAKE_MANY, _redisListName,
+                _redisSortedSetName, _redisHashName);
+
         /*
          * Script details: remove qId from the SortedSet and rpush it to the
          * List, atomically.
@@ -402,6 +460,26 @@ public abstract class BaseRedisQueue<ID, DATA> extends AbstractEphemeralSupportQ
      */
     protected abstract boolean storeNew(IQueueMessage<ID, DATA> msg);
 
+    /**
+     * Store a batch of new messages (called by {@link #queueAll(Collection)}).
+     * 
+     * <p>
+     * This method calls {@link #storeNew(IQueueMessage)} for each message. Sub-class
+     * should override this method to store all messages in one round-trip.
+     * </p>
+     * 
+     * @param msgs
+     * @return
+     * @since 0.7.1.3
+     */
+    protected boolean storeNew(Collection<IQueueMessage<ID, DATA>> msgs) {
+        boolean result = true;
+        for (IQueueMessage<ID, DATA> msg : msgs) {
+            result &= storeNew(msg);
+        }
+        return result;
+    }
+
     /**
      * Re-store an old message (called by {@link #requeue(IQueueMessage)} or
      * {@link #requeueSilent(IQueueMessage)}.
@@ -416,20 +494,40 @@ public abstract class BaseRedisQueue<ID, DATA> extends AbstractEphemeralSupportQ
      */
     @Override
     public boolean queue(IQueueMessage<ID, DATA> _msg) {
-        IQueueMessage<ID, DATA> msg = _msg.clone();
-        Date now = new Date();
-        msg.setNumRequeues(0).setQueueTimestamp(now).setTimestamp(now);
+        IQueueMessage<ID, DATA> msg = claimMessage(_msg);
+        long now = System.currentTimeMillis();
+        msg.setNumRequeues(0).setQueueTimestampMillis(now).setTimestampMillis(now);
         return storeNew(msg);
     }
 
+    /**
+     * {@inheritDoc}
+     * 
+     * @since 0.7.1.3
+     */
+    @Override
+    public boolean queueAll(Collection<? extends IQueueMessage<ID, DATA>> _msgs) {
+        if (_msgs == null || _msgs.isEmpty()) {
+            return true;
+        }
+        List<IQueueMessage<ID, DATA>> msgs = new ArrayList<>(_msgs.size());
+        long now = System.currentTimeMillis();
+        for (IQueueMessage<ID, DATA> _msg : _msgs) {
+            IQueueMessage<ID, DATA> msg = claimMessage(_msg);
+            msg.setNumRequeues(0).setQueueTimestampMillis(now).setTimestampMillis(now);
+            msgs.add(msg);
+        }
+        return storeNew(msgs);
+    }
+
     /**
      * {@inheritDoc}
      */
     @Override
     public boolean requeue(IQueueMessage<ID, DATA> _msg) {
-        IQueueMessage<ID, DATA> msg = _msg.clone();
-        Date now = new Date();
-        msg.incNumRequeues().setQueueTimestamp(now);
+        IQueueMessage<ID, DATA> msg = claimMessage(_msg);
+        long now = System.currentTimeMillis();
+        msg.incNumRequeues().setQueueTimestampMillis(now);
         return isEphemeralDisabled() ? storeNew(msg) : storeOld(msg);
     }
 
@@ -438,7 +536,7 @@ public abstract class BaseRedisQueue<ID, DATA> extends AbstractEphemeralSupportQ
      */
     @Override
     public boolean requeueSilent(IQueueMessage<ID, DATA> msg) {
-        return isEphemeralDisabled() ? storeNew(msg.clone()) : storeOld(msg.clone());
+        return isEphemeralDisabled() ? storeNew(claimMessage(msg)) : storeOld(claimMessage(msg));
     }
 
     /**
@@ -1,19 +1,34 @@
 package com.github.ddth.queue.impl;
 
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Date;
-import java.util.HashSet;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.LockSupport;
 import java.util.concurrent.locks.ReentrantLock;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import com.github.ddth.queue.IQueue;
+import com.github.ddth.queue.IQueueEventHandler;
 import com.github.ddth.queue.IQueueMessage;
 import com.github.ddth.queue.utils.QueueException;
+import com.lmax.disruptor.BatchEventProcessor;
+import com.lmax.disruptor.BusySpinWaitStrategy;
 import com.lmax.disruptor.EventFactory;
+import com.lmax.disruptor.InsufficientCapacityException;
+import com.lmax.disruptor.LiteBlockingWaitStrategy;
 import com.lmax.disruptor.RingBuffer;
 import com.lmax.disruptor.Sequence;
+import com.lmax.disruptor.SequenceBarrier;
+import com.lmax.disruptor.YieldingWaitStrategy;
 
 /**
  * In-Memory implementation of {@link IQueue} using LMAX Disruptor library.
@@ -22,37 +37,293 @@ import com.lmax.disruptor.Sequence;
  * Implementation:
  * <ul>
  * <li>A Disruptor's {@link RingBuffer} to be the queue storage.</li>
- * <li>A {@link ConcurrentMap} as ephemeral storage.</li>
+ * <li>An {@link EphemeralStorage} as ephemeral storage.</li>
+ * </ul>
+ * </p>
+ * 
+ * <p>
+ * Producer/consumer modes:
+ * <ul>
+ * <li>Single-producer (default): producers are serialized by a lock, so are
+ * consumers.</li>
+ * <li>Multi-producer ({@link #setMultiProducer(boolean)}): the ring buffer is
+ * created with {@link RingBuffer#createMultiProducer(EventFactory, int)};
+ * producers claim slots with the Disruptor's own CAS, and consumers claim
+ * slots with a CAS on the consumed sequence. Neither {@code queue} nor
+ * {@code take} acquires a lock.</li>
  * </ul>
  * </p>
  * 
+ * <p>
+ * Push mode: if event handlers are registered (see
+ * {@link #addEventHandler(IQueueEventHandler)}) before {@link #init()}, each
+ * handler runs on its own thread, driven by a Disruptor's
+ * {@link BatchEventProcessor}, and receives every message in sequence order
+ * with end-of-batch notification. In push mode, {@code take} and
+ * {@code requeue} are not supported; each handler has its own ephemeral
+ * storage, bounded by {@link #getEphemeralMaxSize()} (a handler whose
+ * ephemeral storage is full waits for messages to be finished), and
+ * re-queues messages to itself only via
+ * {@link EventConsumer#requeue(IQueueMessage)}.
+ * </p>
+ * 
  * @author Thanh Ba Nguyen <bnguyen2k@gmail.com>
  * @since 0.4.0
  * @see https://lmax-exchange.github.io/disruptor/
  */
 public class DisruptorQueue<ID, DATA> extends AbstractEphemeralSupportQueue<ID, DATA> {
 
+    /**
+     * How consumers wait for messages in {@link DisruptorQueue#take(long, TimeUnit)}.
+     * 
+     * @since 0.7.1.3
+     */
+    public static enum WaitStrategy {
+        /**
+         * Consumers park on a condition, producers signal it when there are
+         * waiting consumers (lowest CPU usage, highest latency).
+         */
+        BLOCKING,
+        /**
+         * Consumers spin for a while then {@link Thread#yield()}.
+         */
+        YIELDING,
+        /**
+         * Consumers spin (lowest latency, burns one core per waiting
+         * consumer).
+         */
+        BUSY_SPIN
+    }
+
+    /**
+     * Number of spins before a {@link WaitStrategy#YIELDING} consumer starts
+     * yielding.
+     */
+    private final static int SPIN_TRIES = 100;
+
+    /**
+     * How long an event handler parks between checks while its ephemeral
+     * storage is full.
+     */
+    private final static long EPHEMERAL_FULL_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    /**
+     * A handler registered in push mode, with its own ephemeral storage.
+     * 
+     * @since 0.7.1.3
+     */
+    public class EventConsumer {
+        private final IQueueEventHandler<ID, DATA> handler;
+        private EphemeralStorage<ID, DATA> ephemeralStorage;
+        private SequenceBarrier barrier;
+        private BatchEventProcessor<Event<ID, DATA>> processor;
+        private final AtomicLong numErrors = new AtomicLong();
+
+        private EventConsumer(IQueueEventHandler<ID, DATA> handler) {
+            this.handler = handler;
+        }
+
+        public IQueueEventHandler<ID, DATA> getHandler() {
+            return handler;
+        }
+
+        /**
+         * Sequence of the last message processed by the handler.
+         * 
+         * @return
+         */
+        public long getSequence() {
+            return processor != null ? processor.getSequence().get() : -1;
+        }
+
+        /**
+         * Number of messages whose handling threw an exception.
+         * 
+         * @return
+         */
+        public long getNumErrors() {
+            return numErrors.get();
+        }
+
+        /**
+         * Finish a message that the handler did not finish by returning
+         * {@code true}.
+         * 
+         * @param msg
+         */
+        public void finish(IQueueMessage<ID, DATA> msg) {
+            if (ephemeralStorage != null) {
+                ephemeralStorage.remove(msg.getId());
+            }
+        }
+
+        /**
+         * Re-deliver a message to this handler only (other handlers do not
+         * receive it again), increasing its re-queue count.
+         * 
+         * @param msg
+         * @return
+         * @throws QueueException.QueueIsFull
+         *             if the ring buffer is full
+         */
+        public boolean requeue(IQueueMessage<ID, DATA> msg) throws QueueException.QueueIsFull {
+            return redeliver(msg, true);
+        }
+
+        /**
+         * Re-deliver a message to this handler only (other handlers do not
+         * receive it again), without increasing its re-queue count.
+         * 
+         * @param msg
+         * @return
+         * @throws QueueException.QueueIsFull
+         *             if the ring buffer is full
+         */
+        public boolean requeueSilent(IQueueMessage<ID, DATA> msg)
+                throws QueueException.QueueIsFull {
+            return redeliver(msg, false);
+        }
+
+        private boolean redeliver(IQueueMessage<ID, DATA> _msg, boolean incNumRequeues)
+                throws QueueException.QueueIsFull {
+            IQueueMessage<ID, DATA> msg = claimMessage(_msg);
+            if (incNumRequeues) {
+                msg.incNumRequeues().setQueueTimestampMillis(System.currentTimeMillis());
+            }
+            /*
+             * remove before publishing: once published, the handler may
+             * receive the message and put it back to its ephemeral storage
+             */
+            IQueueMessage<ID, DATA> removed = ephemeralStorage != null
+                    ? ephemeralStorage.remove(msg.getId()) : null;
+            try {
+                putToRingBuffer(msg, this);
+            } catch (QueueException.QueueIsFull e) {
+                if (removed != null) {
+                    ephemeralStorage.add(removed);
+                }
+                throw e;
+            }
+            return true;
+        }
+
+        /**
+         * Number of messages in the handler's ephemeral storage.
+         * 
+         * @return
+         */
+        public int ephemeralSize() {
+            return ephemeralStorage != null ? ephemeralStorage.size() : 0;
+        }
+
+        /**
+         * Get all orphan messages (messages that were delivered to the handler
+         * but not finished for a long time) of the handler.
+         * 
+         * @param thresholdTimestampMs
+         * @return
+         */
+        public Collection<IQueueMessage<ID, DATA>> getOrphanMessages(long thresholdTimestampMs) {
+            return ephemeralStorage != null
+                    ? ephemeralStorage.getOrphanMessages(thresholdTimestampMs) : null;
+        }
+
+        /**
+         * Wait until the handler's ephemeral storage has room for one more
+         * message (or the processor is halted).
+         * 
+         * @return {@code false} if the processor was halted while waiting
+         */
+        private boolean awaitEphemeralRoom() {
+            int ephemeralMaxSize = getEphemeralMaxSize();
+            if (ephemeralMaxSize <= 0) {
+                return true;
+            }
+            while (ephemeralStorage.size() >= ephemeralMaxSize) {
+                if (barrier.isAlerted()) {
+                    return false;
+                }
+                LockSupport.parkNanos(EPHEMERAL_FULL_PARK_NANOS);
+            }
+            return true;
+        }
+
+        private void onEvent(Event<ID, DATA> event, long sequence, boolean endOfBatch) {
+            if (event.getTarget() != null && event.getTarget() != this) {
+                // re-delivery to another handler
+                return;
+            }
+            IQueueMessage<ID, DATA> msg = event.get();
+            if (ephemeralStorage != null) {
+                if (!awaitEphemeralRoom()) {
+                    return;
+                }
+                ephemeralStorage.add(msg);
+            }
+            boolean done;
+            try {
+                done = handler.onMessage(msg, sequence, endOfBatch);
+            } catch (Exception e) {
+                done = false;
+                numErrors.incrementAndGet();
+                LOGGER.warn("Error while handling message [" + msg.getId() + "]: "
+                        + e.getMessage(), e);
+            }
+            if (done) {
+                finish(msg);
+            }
+        }
+    }
+
     private final static class Event<ID, DATA> {
         private IQueueMessage<ID, DATA> value;
+        private Object target;
 
         public void set(IQueueMessage<ID, DATA> value) {
+            set(value, null);
+        }
+
+        /**
+         * @param value
+         * @param target
+         *            the only {@link EventConsumer} to receive the message,
+         *            {@code null} for all
+         */
+        public void set(IQueueMessage<ID, DATA> value, Object target) {
             this.value = value;
+            this.target = target;
         }
 
         public IQueueMessage<ID, DATA> get() {
             return value;
         }
+
+        public Object getTarget() {
+            return target;
+        }
     }
 
+    private final Logger LOGGER = LoggerFactory.getLogger(DisruptorQueue.class);
+
     private final EventFactory<Event<ID, DATA>> EVENT_FACTORY = () -> new Event<ID, DATA>();
     private final Lock LOCK_TAKE = new ReentrantLock();
     private final Lock LOCK_PUT = new ReentrantLock();
-    private ConcurrentMap<Object, IQueueMessage<ID, DATA>> ephemeralStorage;
+    private final Lock LOCK_WAIT = new ReentrantLock();
+    private final Condition CONDITION_NOT_EMPTY = LOCK_WAIT.newCondition();
+    private final AtomicInteger numWaiters = new AtomicInteger(0);
+    private final AtomicLong numPublishes = new AtomicLong(0);
+    private EphemeralStorage<ID, DATA> ephemeralStorage;
 
     private RingBuffer<Event<ID, DATA>> ringBuffer;
     private Sequence consumedSeq;
     private long knownPublishedSeq;
     private int ringSize = 1024;
+    private boolean multiProducer = false;
+    private WaitStrategy waitStrategy = WaitStrategy.BLOCKING;
+
+    private final List<EventConsumer> eventConsumers = new ArrayList<>();
+    private ExecutorService eventHandlerExecutor;
+    private boolean myOwnEventHandlerExecutor = true;
 
     public DisruptorQueue() {
     }
@@ -100,6 +371,185 @@ public class DisruptorQueue<ID, DATA> extends AbstractEphemeralSupportQueue<ID,
         return this;
     }
 
+    /**
+     * Is the lock-free multi-producer mode enabled?
+     * 
+     * @return
+     * @since 0.7.1.3
+     */
+    public boolean isMultiProducer() {
+        return multiProducer;
+    }
+
+    /**
+     * Enable/Disable the lock-free multi-producer mode (default
+     * {@code false}). Must be set before {@link #init()}.
+     * 
+     * <p>
+     * In multi-producer mode, slots of the ring buffer are not cleared after
+     * being consumed; a taken message is referenced by the ring buffer until
+     * its slot is reused.
+     * </p>
+     * 
+     * @param multiProducer
+     * @return
+     * @since 0.7.1.3
+     */
+    public DisruptorQueue<ID, DATA> setMultiProducer(boolean multiProducer) {
+        this.multiProducer = multiProducer;
+        return this;
+    }
+
+    /**
+     * How consumers wait for messages in {@link #take(long, TimeUnit)}
+     * (default {@link WaitStrategy#BLOCKING}).
+     * 
+     * @return
+     * @since 0.7.1.3
+     */
+    public WaitStrategy getWaitStrategy() {
+        return waitStrategy;
+    }
+
+    /**
+     * How consumers wait for messages in {@link #take(long, TimeUnit)}. Must
+     * be set before {@link #init()}.
+     * 
+     * @param waitStrategy
+     *            {@code null} to reset to {@link WaitStrategy#BLOCKING}
+     * @return
+     * @since 0.7.1.3
+     */
+    public DisruptorQueue<ID, DATA> setWaitStrategy(WaitStrategy waitStrategy) {
+        this.waitStrategy = waitStrategy != null ? waitStrategy : WaitStrategy.BLOCKING;
+        return this;
+    }
+
+    /**
+     * Register a handler to receive messages in push mode. Must be called
+     * before {@link #init()}.
+     * 
+     * @param handler
+     * @return the registration, used to finish messages and to inspect the
+     *         handler's ephemeral storage
+     * @since 0.7.1.3
+     */
+    public EventConsumer addEventHandler(IQueueEventHandler<ID, DATA> handler) {
+        if (handler == null) {
+            throw new NullPointerException("Event handler is null!");
+        }
+        if (ringBuffer != null) {
+            throw new IllegalStateException(
+                    "Event handlers must be registered before the queue is initialized.");
+        }
+        EventConsumer eventConsumer = new EventConsumer(handler);
+        eventConsumers.add(eventConsumer);
+        return eventConsumer;
+    }
+
+    /**
+     * Handlers registered in push mode.
+     * 
+     * @return
+     * @since 0.7.1.3
+     */
+    public List<EventConsumer> getEventConsumers() {
+        return new ArrayList<>(eventConsumers);
+    }
+
+    /**
+     * Is this queue in push mode (event handlers have been registered)?
+     * 
+     * @return
+     * @since 0.7.1.3
+     */
+    public boolean isPushMode() {
+        return !eventConsumers.isEmpty();
+    }
+
+    /**
+     * Executor that runs event handlers in push mode, must have at least one
+     * thread per handler.
+     * 
+     * @return
+     * @since 0.7.1.3
+     */
+    public ExecutorService getEventHandlerExecutor() {
+        return eventHandlerExecutor;
+    }
+
+    /**
+     * Executor that runs event handlers in push mode, must have at least one
+     * thread per handler.
+     * 
+     * @param eventHandlerExecutor
+     * @param setMyOwnEventHandlerExecutor
+     * @return
+     * @since 0.7.1.3
+     */
+    protected DisruptorQueue<ID, DATA> setEventHandlerExecutor(
+            ExecutorService eventHandlerExecutor, boolean setMyOwnEventHandlerExecutor) {
+        if (myOwnEventHandlerExecutor && this.eventHandlerExecutor != null) {
+            this.eventHandlerExecutor.shutdown();
+        }
+        this.eventHandlerExecutor = eventHandlerExecutor;
+        myOwnEventHandlerExecutor = setMyOwnEventHandlerExecutor;
+        return this;
+    }
+
+    /**
+     * Executor that runs event handlers in push mode, must have at least one
+     * thread per handler. The supplied executor is not shut down when this
+     * queue is destroyed. If not set, one daemon thread per handler is
+     * created.
+     * 
+     * @param eventHandlerExecutor
+     * @return
+     * @since 0.7.1.3
+     */
+    public DisruptorQueue<ID, DATA> setEventHandlerExecutor(
+            ExecutorService eventHandlerExecutor) {
+        return setEventHandlerExecutor(eventHandlerExecutor, false);
+    }
+
+    /**
+     * Build the Disruptor's wait strategy matching {@link #getWaitStrategy()}.
+     * 
+     * <p>
+     * In pull mode, consumers of this queue do not wait on a Disruptor's
+     * sequence barrier, so the ring buffer's wait strategy is only ever
+     * signalled by producers; in push mode, event handlers wait on it. A
+     * non-blocking or lite-blocking strategy is used so that publishing never
+     * takes a lock.
+     * </p>
+     * 
+     * @return
+     * @since 0.7.1.3
+     */
+    protected com.lmax.disruptor.WaitStrategy buildDisruptorWaitStrategy() {
+        switch (waitStrategy) {
+        case BUSY_SPIN:
+            return new BusySpinWaitStrategy();
+        case YIELDING:
+            return new YieldingWaitStrategy();
+        default:
+            return new LiteBlockingWaitStrategy();
+        }
+    }
+
+    /**
+     * Create an ephemeral storage. Sub-classes whose message id is a
+     * {@code Long} can override this method to return
+     * {@link EphemeralStorage#newLongIdInstance(int)}.
+     * 
+     * @param initialCapacity
+     * @return
+     * @since 0.7.1.3
+     */
+    protected EphemeralStorage<ID, DATA> createEphemeralStorage(int initialCapacity) {
+        return EphemeralStorage.newInstance(initialCapacity);
+    }
+
     /**
      * Init method.
      * 
@@ -107,27 +557,98 @@ public class DisruptorQueue<ID, DATA> extends AbstractEphemeralSupportQueue<ID,
      * @throws Exception
      */
     public DisruptorQueue<ID, DATA> init() throws Exception {
-        /* single producer "seems" to offer better performance */
-        ringBuffer = RingBuffer.createSingleProducer(EVENT_FACTORY, ringSize);
-        // ringBuffer = RingBuffer.createMultiProducer(EVENT_FACTORY, ringSize);
+        /* single producer "seems" to offer better performance with few producers */
+        ringBuffer = multiProducer
+                ? RingBuffer.createMultiProducer(EVENT_FACTORY, ringSize,
+                        buildDisruptorWaitStrategy())
+                : RingBuffer.createSingleProducer(EVENT_FACTORY, ringSize,
+                        buildDisruptorWaitStrategy());
 
         if (!isEphemeralDisabled()) {
             int ephemeralBoundSize = Math.max(0, getEphemeralMaxSize());
-            ephemeralStorage = new ConcurrentHashMap<>(
-                    ephemeralBoundSize > 0 ? Math.min(ephemeralBoundSize, ringSize) : ringSize);
+            ephemeralStorage = createEphemeralStorage(
+                    ephemeralBoundSize > 0 ? Math.min(ephemeralBoundSize, ringSize) : ringSize)
+                            .setOrphanIndexGranularityMs(getOrphanIndexGranularityMs());
         }
 
         consumedSeq = new Sequence();
-        ringBuffer.addGatingSequences(consumedSeq);
         long cursor = ringBuffer.getCursor();
         consumedSeq.set(cursor);
         knownPublishedSeq = cursor;
+        if (isPushMode()) {
+            startEventConsumers();
+        } else {
+            ringBuffer.addGatingSequences(consumedSeq);
+        }
 
         super.init();
 
         return this;
     }
 
+    /**
+     * Start one {@link BatchEventProcessor} per registered handler; the
+     * processors' sequences gate the producers.
+     * 
+     * @since 0.7.1.3
+     */
+    protected void startEventConsumers() {
+        if (eventHandlerExecutor == null) {
+            AtomicInteger counter = new AtomicInteger();
+            setEventHandlerExecutor(Executors.newFixedThreadPool(eventConsumers.size(), r -> {
+                Thread t = new Thread(r, getClass().getSimpleName() + "-handler-"
+                        + counter.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            }), true);
+        }
+        int ephemeralBoundSize = Math.max(0, getEphemeralMaxSize());
+        for (EventConsumer eventConsumer : eventConsumers) {
+            if (!isEphemeralDisabled()) {
+                eventConsumer.ephemeralStorage = createEphemeralStorage(
+                        ephemeralBoundSize > 0 ? Math.min(ephemeralBoundSize, ringSize)
+                                : ringSize)
+                                .setOrphanIndexGranularityMs(getOrphanIndexGranularityMs());
+            }
+            SequenceBarrier barrier = ringBuffer.newBarrier();
+            BatchEventProcessor<Event<ID, DATA>> processor = new BatchEventProcessor<>(
+                    ringBuffer, barrier, eventConsumer::onEvent);
+            processor.getSequence().set(ringBuffer.getCursor());
+            ringBuffer.addGatingSequences(processor.getSequence());
+            eventConsumer.barrier = barrier;
+            eventConsumer.processor = processor;
+        }
+        for (EventConsumer eventConsumer : eventConsumers) {
+            eventHandlerExecutor.execute(eventConsumer.processor);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * <p>
+     * In push mode, event handlers are halted.
+     * </p>
+     * 
+     * @since 0.7.1.3
+     */
+    @Override
+    public void destroy() {
+        try {
+            for (EventConsumer eventConsumer : eventConsumers) {
+                if (eventConsumer.processor != null) {
+                    eventConsumer.processor.halt();
+                }
+            }
+            if (eventHandlerExecutor != null && myOwnEventHandlerExecutor) {
+                eventHandlerExecutor.shutdown();
+                eventHandlerExecutor = null;
+            }
+        } finally {
+            super.destroy();
+        }
+    }
+
     /**
      * Put a message to the ring buffer.
      * 
@@ -136,13 +657,36 @@ public class DisruptorQueue<ID, DATA> extends AbstractEphemeralSupportQueue<ID,
      *             if the ring buffer is full
      */
     protected void putToRingBuffer(IQueueMessage<ID, DATA> msg) throws QueueException.QueueIsFull {
+        putToRingBuffer(msg, null);
+    }
+
+    /**
+     * Put a message to the ring buffer.
+     * 
+     * @param msg
+     * @param target
+     *            in push mode, the only handler to receive the message,
+     *            {@code null} for all
+     * @throws QueueException.QueueIsFull
+     *             if the ring buffer is full
+     * @since 0.7.1.3
+     */
+    protected void putToRingBuffer(IQueueMessage<ID, DATA> msg, EventConsumer target)
+            throws QueueException.QueueIsFull {
         if (msg == null) {
             throw new NullPointerException("Supplied queue message is null!");
         }
+        if (multiProducer) {
+            if (!ringBuffer.tryPublishEvent((event, _seq) -> event.set(msg, target))) {
+                throw new QueueException.QueueIsFull(getRingSize());
+            }
+            signalNotEmpty();
+            return;
+        }
         LOCK_PUT.lock();
         try {
             if (!ringBuffer.tryPublishEvent((event, _seq) -> {
-                event.set(msg);
+                event.set(msg, target);
                 knownPublishedSeq = _seq > knownPublishedSeq ? _seq : knownPublishedSeq;
             })) {
                 throw new QueueException.QueueIsFull(getRingSize());
@@ -150,6 +694,7 @@ public class DisruptorQueue<ID, DATA> extends AbstractEphemeralSupportQueue<ID,
         } finally {
             LOCK_PUT.unlock();
         }
+        signalNotEmpty();
     }
 
     /**
@@ -160,24 +705,172 @@ public class DisruptorQueue<ID, DATA> extends AbstractEphemeralSupportQueue<ID,
      */
     @Override
     public boolean queue(IQueueMessage<ID, DATA> _msg) throws QueueException.QueueIsFull {
-        IQueueMessage<ID, DATA> msg = _msg.clone();
-        Date now = new Date();
-        msg.setNumRequeues(0).setQueueTimestamp(now).setTimestamp(now);
+        IQueueMessage<ID, DATA> msg = claimMessage(_msg);
+        long now = System.currentTimeMillis();
+        msg.setNumRequeues(0).setQueueTimestampMillis(now).setTimestampMillis(now);
         putToRingBuffer(msg);
         return true;
     }
 
+    /**
+     * Put a batch of messages to the ring buffer by claiming a contiguous
+     * sequence range.
+     * 
+     * @param msgs
+     * @throws QueueException.QueueIsFull
+     *             if the ring buffer does not have enough free slots for all
+     *             messages
+     * @since 0.7.1.3
+     */
+    protected void putToRingBuffer(List<IQueueMessage<ID, DATA>> msgs)
+            throws QueueException.QueueIsFull {
+        int n = msgs.size();
+        if (n > getRingSize()) {
+            throw new QueueException.QueueIsFull(getRingSize());
+        }
+        if (multiProducer) {
+            long hi;
+            try {
+                hi = ringBuffer.tryNext(n);
+            } catch (InsufficientCapacityException e) {
+                throw new QueueException.QueueIsFull(getRingSize());
+            }
+            long lo = hi - (n - 1);
+            try {
+                for (long seq = lo; seq <= hi; seq++) {
+                    ringBuffer.get(seq).set(msgs.get((int) (seq - lo)));
+                }
+            } finally {
+                ringBuffer.publish(lo, hi);
+            }
+            signalNotEmpty();
+            return;
+        }
+        LOCK_PUT.lock();
+        try {
+            long hi;
+            try {
+                hi = ringBuffer.tryNext(n);
+            } catch (InsufficientCapacityException e) {
+                throw new QueueException.QueueIsFull(getRingSize());
+            }
+            long lo = hi - (n - 1);
+            try {
+                for (long seq = lo; seq <= hi; seq++) {
+                    ringBuffer.get(seq).set(msgs.get((int) (seq - lo)));
+                }
+            } finally {
+                ringBuffer.publish(lo, hi);
+                knownPublishedSeq = hi > knownPublishedSeq ? hi : knownPublishedSeq;
+            }
+        } finally {
+            LOCK_PUT.unlock();
+        }
+        signalNotEmpty();
+    }
+
+    /**
+     * Wake up consumers blocked in {@link #take(long, TimeUnit)}, if any.
+     * 
+     * <p>
+     * The ring buffer publishes its cursor with an ordered (not volatile)
+     * store, which may be reordered after the load of the number of waiters:
+     * a consumer could then see the old cursor and the producer no waiter.
+     * Incrementing {@link #numPublishes} is a full fence between the two,
+     * pairing with the increment of the number of waiters in
+     * {@link #awaitNotEmpty(long)}. Consumers only block with
+     * {@link WaitStrategy#BLOCKING}, so other strategies skip it.
+     * </p>
+     * 
+     * @since 0.7.1.3
+     */
+    protected void signalNotEmpty() {
+        if (waitStrategy != WaitStrategy.BLOCKING) {
+            return;
+        }
+        numPublishes.incrementAndGet();
+        if (numWaiters.get() > 0) {
+            LOCK_WAIT.lock();
+            try {
+                CONDITION_NOT_EMPTY.signalAll();
+            } finally {
+                LOCK_WAIT.unlock();
+            }
+        }
+    }
+
+    /**
+     * Block the calling thread until the ring buffer has unconsumed messages
+     * or the timeout elapses.
+     * 
+     * @param nanos
+     *            max time to wait, in nanoseconds
+     * @return remaining time to wait, in nanoseconds
+     * @throws InterruptedException
+     * @since 0.7.1.3
+     */
+    protected long awaitNotEmpty(long nanos) throws InterruptedException {
+        // full fence before reading the cursor, see signalNotEmpty()
+        numWaiters.incrementAndGet();
+        try {
+            LOCK_WAIT.lock();
+            try {
+                while (nanos > 0 && ringBuffer.getCursor() <= consumedSeq.get()) {
+                    nanos = CONDITION_NOT_EMPTY.awaitNanos(nanos);
+                }
+                return nanos;
+            } finally {
+                LOCK_WAIT.unlock();
+            }
+        } finally {
+            numWaiters.decrementAndGet();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * <p>
+     * All messages are published to the ring buffer as one contiguous
+     * sequence range.
+     * </p>
+     * 
+     * @throws QueueException.QueueIsFull
+     *             if the ring buffer does not have enough free slots for all
+     *             messages
+     * @since 0.7.1.3
+     */
+    @Override
+    public boolean queueAll(Collection<? extends IQueueMessage<ID, DATA>> _msgs)
+            throws QueueException.QueueIsFull {
+        if (_msgs == null || _msgs.isEmpty()) {
+            return true;
+        }
+        List<IQueueMessage<ID, DATA>> msgs = new ArrayList<>(_msgs.size());
+        long now = System.currentTimeMillis();
+        for (IQueueMessage<ID, DATA> _msg : _msgs) {
+            IQueueMessage<ID, DATA> msg = claimMessage(_msg);
+            msg.setNumRequeues(0).setQueueTimestampMillis(now).setTimestampMillis(now);
+            msgs.add(msg);
+        }
+        putToRingBuffer(msgs);
+        return true;
+    }
+
     /**
      * {@inheritDoc}
      * 
      * @throws QueueException.QueueIsFull
      *             if the ring buffer is full
+     * @throws QueueException.OperationNotSupported
+     *             in push mode, use {@link EventConsumer#requeue(IQueueMessage)}
      */
     @Override
     public boolean requeue(IQueueMessage<ID, DATA> _msg) throws QueueException.QueueIsFull {
-        IQueueMessage<ID, DATA> msg = _msg.clone();
-        Date now = new Date();
-        msg.incNumRequeues().setQueueTimestamp(now);
+        ensurePullMode();
+        IQueueMessage<ID, DATA> msg = claimMessage(_msg);
+        long now = System.currentTimeMillis();
+        msg.incNumRequeues().setQueueTimestampMillis(now);
         putToRingBuffer(msg);
         if (!isEphemeralDisabled()) {
             ephemeralStorage.remove(msg.getId());
@@ -190,10 +883,14 @@ public class DisruptorQueue<ID, DATA> extends AbstractEphemeralSupportQueue<ID,
      * 
      * @throws QueueException.QueueIsFull
      *             if the ring buffer is full
+     * @throws QueueException.OperationNotSupported
+     *             in push mode, use
+     *             {@link EventConsumer#requeueSilent(IQueueMessage)}
      */
     @Override
     public boolean requeueSilent(IQueueMessage<ID, DATA> _msg) throws QueueException.QueueIsFull {
-        IQueueMessage<ID, DATA> msg = _msg.clone();
+        ensurePullMode();
+        IQueueMessage<ID, DATA> msg = claimMessage(_msg);
         putToRingBuffer(msg);
         if (!isEphemeralDisabled()) {
             ephemeralStorage.remove(msg.getId());
@@ -209,6 +906,22 @@ public class DisruptorQueue<ID, DATA> extends AbstractEphemeralSupportQueue<ID,
         if (!isEphemeralDisabled()) {
             ephemeralStorage.remove(msg.getId());
         }
+        for (EventConsumer eventConsumer : eventConsumers) {
+            eventConsumer.finish(msg);
+        }
+    }
+
+    /**
+     * In push mode, messages are delivered to event handlers and can not be
+     * taken.
+     * 
+     * @throws QueueException.OperationNotSupported
+     */
+    private void ensurePullMode() throws QueueException.OperationNotSupported {
+        if (isPushMode()) {
+            throw new QueueException.OperationNotSupported(
+                    "Queue is in push mode, messages are delivered to event handlers.");
+        }
     }
 
     /**
@@ -217,6 +930,9 @@ public class DisruptorQueue<ID, DATA> extends AbstractEphemeralSupportQueue<ID,
      * @return the available message or {@code null} if the ring buffer is empty
      */
     protected IQueueMessage<ID, DATA> takeFromRingBuffer() {
+        if (multiProducer) {
+            return casTakeFromRingBuffer();
+        }
         LOCK_TAKE.lock();
         try {
             long l = consumedSeq.get() + 1;
@@ -240,6 +956,32 @@ public class DisruptorQueue<ID, DATA> extends AbstractEphemeralSupportQueue<ID,
         }
     }
 
+    /**
+     * Lock-free version of {@link #takeFromRingBuffer()}: the message is read
+     * from its slot, then the slot is claimed by a CAS on the consumed
+     * sequence. While the CAS has not succeeded, the consumed sequence (which
+     * gates producers) has not moved past the slot, so the slot can not be
+     * overwritten in between.
+     * 
+     * @return
+     * @since 0.7.1.3
+     */
+    protected IQueueMessage<ID, DATA> casTakeFromRingBuffer() {
+        while (true) {
+            long current = consumedSeq.get();
+            long next = current + 1;
+            if (next > ringBuffer.getCursor() || !ringBuffer.isAvailable(next)) {
+                // empty, or the next slot has been claimed but not yet
+                // published
+                return null;
+            }
+            IQueueMessage<ID, DATA> msg = ringBuffer.get(next).get();
+            if (consumedSeq.compareAndSet(current, next)) {
+                return msg;
+            }
+        }
+    }
+
     /**
      * {@inheritDoc}
      * 
@@ -248,6 +990,7 @@ public class DisruptorQueue<ID, DATA> extends AbstractEphemeralSupportQueue<ID,
      */
     @Override
     public IQueueMessage<ID, DATA> take() throws QueueException.EphemeralIsFull {
+        ensurePullMode();
         if (!isEphemeralDisabled()) {
             int ephemeralMaxSize = getEphemeralMaxSize();
             if (ephemeralMaxSize > 0 && ephemeralStorage.size() >= ephemeralMaxSize) {
@@ -256,11 +999,161 @@ public class DisruptorQueue<ID, DATA> extends AbstractEphemeralSupportQueue<ID,
         }
         IQueueMessage<ID, DATA> msg = takeFromRingBuffer();
         if (msg != null && !isEphemeralDisabled()) {
-            ephemeralStorage.putIfAbsent(msg.getId(), msg);
+            ephemeralStorage.add(msg);
+        }
+        return msg;
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * <p>
+     * How consumers wait depends on {@link #getWaitStrategy()}. With
+     * {@link WaitStrategy#BLOCKING}, consumers block on a condition that is
+     * signalled when messages are published to the ring buffer (similar to
+     * Disruptor's {@code BlockingWaitStrategy}), so idle consumers do not
+     * spin; producers only pay for the signal when there are blocked
+     * consumers.
+     * </p>
+     * 
+     * @throws QueueException.EphemeralIsFull
+     *             if the ephemeral storage is full
+     * @since 0.7.1.3
+     */
+    @Override
+    public IQueueMessage<ID, DATA> take(long timeout, TimeUnit unit)
+            throws QueueException.EphemeralIsFull {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        int counter = SPIN_TRIES;
+        IQueueMessage<ID, DATA> msg = take();
+        while (msg == null) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0 || Thread.currentThread().isInterrupted()) {
+                return null;
+            }
+            switch (waitStrategy) {
+            case BUSY_SPIN:
+                break;
+            case YIELDING:
+                if (counter > 0) {
+                    counter--;
+                } else {
+                    Thread.yield();
+                }
+                break;
+            default:
+                try {
+                    awaitNotEmpty(remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return null;
+                }
+            }
+            msg = take();
         }
         return msg;
     }
 
+    /**
+     * Drain up to {@code maxMessages} messages from the ring buffer.
+     * 
+     * @param maxMessages
+     * @return
+     * @since 0.7.1.3
+     */
+    protected List<IQueueMessage<ID, DATA>> takeFromRingBuffer(int maxMessages) {
+        if (multiProducer) {
+            return casTakeFromRingBuffer(maxMessages);
+        }
+        List<IQueueMessage<ID, DATA>> result = new ArrayList<>();
+        LOCK_TAKE.lock();
+        try {
+            long l = consumedSeq.get() + 1;
+            if (l > knownPublishedSeq) {
+                knownPublishedSeq = ringBuffer.getCursor();
+            }
+            long hi = Math.min(knownPublishedSeq, l + maxMessages - 1);
+            if (l <= hi) {
+                try {
+                    for (long seq = l; seq <= hi; seq++) {
+                        Event<ID, DATA> eventHolder = ringBuffer.get(seq);
+                        result.add(eventHolder.get());
+                        eventHolder.set(null);
+                    }
+                } finally {
+                    consumedSeq.set(hi);
+                }
+            }
+            return result;
+        } finally {
+            LOCK_TAKE.unlock();
+        }
+    }
+
+    /**
+     * Lock-free version of {@link #takeFromRingBuffer(int)}: messages of the
+     * contiguous published range are read, then the whole range is claimed by
+     * one CAS on the consumed sequence.
+     * 
+     * @param maxMessages
+     * @return
+     * @since 0.7.1.3
+     */
+    protected List<IQueueMessage<ID, DATA>> casTakeFromRingBuffer(int maxMessages) {
+        List<IQueueMessage<ID, DATA>> result = new ArrayList<>();
+        while (true) {
+            long current = consumedSeq.get();
+            long limit = Math.min(ringBuffer.getCursor(), current + maxMessages);
+            long hi = current;
+            while (hi < limit && ringBuffer.isAvailable(hi + 1)) {
+                hi++;
+                result.add(ringBuffer.get(hi).get());
+            }
+            if (hi == current || consumedSeq.compareAndSet(current, hi)) {
+                return result;
+            }
+            result.clear();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * <p>
+     * Messages are drained from the ring buffer in one go.
+     * </p>
+     * 
+     * @throws QueueException.EphemeralIsFull
+     *             if the ephemeral storage is full
+     * @since 0.7.1.3
+     */
+    @Override
+    public List<IQueueMessage<ID, DATA>> take(int maxMessages)
+            throws QueueException.EphemeralIsFull {
+        ensurePullMode();
+        int numMessages = maxMessages;
+        if (!isEphemeralDisabled()) {
+            int ephemeralMaxSize = getEphemeralMaxSize();
+            if (ephemeralMaxSize > 0) {
+                int ephemeralSize = ephemeralStorage.size();
+                if (ephemeralSize >= ephemeralMaxSize) {
+                    throw new QueueException.EphemeralIsFull(ephemeralMaxSize);
+                }
+                numMessages = Math.min(numMessages, ephemeralMaxSize - ephemeralSize);
+            }
+        }
+        if (numMessages < 1) {
+            return new ArrayList<>();
+        }
+        List<IQueueMessage<ID, DATA>> result = takeFromRingBuffer(numMessages);
+        if (!isEphemeralDisabled()) {
+            for (IQueueMessage<ID, DATA> msg : result) {
+                ephemeralStorage.add(msg);
+            }
+        }
+        return result;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -269,12 +1162,11 @@ public class DisruptorQueue<ID, DATA> extends AbstractEphemeralSupportQueue<ID,
         if (isEphemeralDisabled()) {
             return null;
         }
-        Collection<IQueueMessage<ID, DATA>> orphanMessages = new HashSet<>();
-        long now = System.currentTimeMillis();
-        ephemeralStorage.forEach((key, msg) -> {
-            if (msg.getQueueTimestamp().getTime() + thresholdTimestampMs < now)
-                orphanMessages.add(msg);
-        });
+        Collection<IQueueMessage<ID, DATA>> orphanMessages = ephemeralStorage
+                .getOrphanMessages(thresholdTimestampMs);
+        for (EventConsumer eventConsumer : eventConsumers) {
+            orphanMessages.addAll(eventConsumer.getOrphanMessages(thresholdTimestampMs));
+        }
         return orphanMessages;
     }
 
@@ -303,7 +1195,8 @@ public class DisruptorQueue<ID, DATA> extends AbstractEphemeralSupportQueue<ID,
      */
     @Override
     public int queueSize() {
-        return (int) (ringBuffer.getCursor() - consumedSeq.get());
+        long consumed = isPushMode() ? ringBuffer.getMinimumGatingSequence() : consumedSeq.get();
+        return (int) (ringBuffer.getCursor() - consumed);
     }
 
     /**
@@ -311,6 +1204,13 @@ public class DisruptorQueue<ID, DATA> extends AbstractEphemeralSupportQueue<ID,
      */
     @Override
     public int ephemeralSize() {
-        return !isEphemeralDisabled() ? ephemeralStorage.size() : 0;
+        if (isEphemeralDisabled()) {
+            return 0;
+        }
+        int result = ephemeralStorage.size();
+        for (EventConsumer eventConsumer : eventConsumers) {
+            result += eventConsumer.ephemeralSize();
+        }
+        return result;
     }
 }
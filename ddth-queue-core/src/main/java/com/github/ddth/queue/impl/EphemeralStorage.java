@@ -0,0 +1,344 @@
+package com.github.ddth.queue.impl;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.Consumer;
+
+import com.github.ddth.queue.IQueueMessage;
+import com.github.ddth.queue.utils.ConcurrentLongObjectMap;
+
+/**
+ * Ephemeral storage of in-memory queues: holds messages that have been taken
+ * but not yet finished, keyed by message id.
+ *
+ * <p>
+ * Implementations:
+ * <ul>
+ * <li>{@link #newInstance(int)}: backed by a {@link ConcurrentHashMap}, any id
+ * type.</li>
+ * <li>{@link #newLongIdInstance(int)}: backed by a
+ * {@link ConcurrentLongObjectMap}, for {@code Long} ids; adding and removing a
+ * message neither boxes the id nor allocates a map node.</li>
+ * </ul>
+ * </p>
+ *
+ * <p>
+ * Orphan index: if enabled (see {@link #setOrphanIndexGranularityMs(long)}),
+ * messages are also indexed in time buckets by their queue timestamp, so that
+ * {@link #getOrphanMessages(long)} only visits buckets that have expired
+ * instead of the whole storage. Buckets are keyed by queue timestamp, not by
+ * take time: a message that waited long in the queue is an orphan as soon as
+ * it is taken, so orphans are not expired leases and must not be re-queued
+ * blindly.
+ * </p>
+ *
+ * @author Thanh Ba Nguyen <bnguyen2k@gmail.com>
+ * @since 0.7.1.3
+ */
+public abstract class EphemeralStorage<ID, DATA> {
+
+    /**
+     * Create an ephemeral storage for messages of any id type.
+     *
+     * @param initialCapacity
+     * @return
+     */
+    public static <ID, DATA> EphemeralStorage<ID, DATA> newInstance(int initialCapacity) {
+        return new MapEphemeralStorage<>(initialCapacity);
+    }
+
+    /**
+     * Create an ephemeral storage for messages with {@code Long} ids.
+     *
+     * @param initialCapacity
+     * @return
+     */
+    public static <DATA> EphemeralStorage<Long, DATA> newLongIdInstance(int initialCapacity) {
+        return new LongIdEphemeralStorage<>(initialCapacity);
+    }
+
+    private OrphanIndex<ID, DATA> orphanIndex;
+
+    /**
+     * Enable the orphan index. Must be called before the storage is used.
+     *
+     * @param granularityMs
+     *            width of a time bucket; a value less than {@code 1}
+     *            disables the index
+     * @return
+     */
+    public EphemeralStorage<ID, DATA> setOrphanIndexGranularityMs(long granularityMs) {
+        orphanIndex = granularityMs > 0 ? new OrphanIndex<>(granularityMs) : null;
+        return this;
+    }
+
+    /**
+     * Add a message, if no message with the same id is in the storage.
+     *
+     * @param msg
+     */
+    public void add(IQueueMessage<ID, DATA> msg) {
+        if (doAdd(msg) && orphanIndex != null) {
+            orphanIndex.add(msg);
+        }
+    }
+
+    /**
+     * Remove a message.
+     *
+     * @param id
+     * @return the removed message, {@code null} if not found
+     */
+    public IQueueMessage<ID, DATA> remove(ID id) {
+        IQueueMessage<ID, DATA> msg = doRemove(id);
+        if (msg != null && orphanIndex != null) {
+            orphanIndex.remove(msg);
+        }
+        return msg;
+    }
+
+    /**
+     * Add a message, if no message with the same id is in the storage.
+     *
+     * @param msg
+     * @return {@code true} if the message has been added
+     */
+    protected abstract boolean doAdd(IQueueMessage<ID, DATA> msg);
+
+    /**
+     * Remove a message.
+     *
+     * @param id
+     * @return the removed message, {@code null} if not found
+     */
+    protected abstract IQueueMessage<ID, DATA> doRemove(ID id);
+
+    /**
+     * Get a message.
+     *
+     * @param id
+     * @return {@code null} if not found
+     */
+    public abstract IQueueMessage<ID, DATA> get(ID id);
+
+    /**
+     * Number of messages in the storage.
+     *
+     * @return
+     */
+    public abstract int size();
+
+    /**
+     * Visit all messages in the storage.
+     *
+     * @param action
+     */
+    public abstract void forEach(Consumer<? super IQueueMessage<ID, DATA>> action);
+
+    /**
+     * Get all messages whose {@code queue timestamp + thresholdTimestampMs} is
+     * before now.
+     *
+     * @param thresholdTimestampMs
+     * @return
+     */
+    public Collection<IQueueMessage<ID, DATA>> getOrphanMessages(long thresholdTimestampMs) {
+        Collection<IQueueMessage<ID, DATA>> orphanMessages = new HashSet<>();
+        long threshold = System.currentTimeMillis() - thresholdTimestampMs;
+        if (orphanIndex != null) {
+            orphanIndex.collectExpired(threshold, this, orphanMessages);
+        } else {
+            forEach(msg -> {
+                if (msg.getQueueTimestampMillis() < threshold)
+                    orphanMessages.add(msg);
+            });
+        }
+        return orphanMessages;
+    }
+
+    /*----------------------------------------------------------------------*/
+
+    /**
+     * Messages indexed in buckets of {@code granularityMs} by queue timestamp.
+     *
+     * <p>
+     * The index may hold stale entries (e.g. an entry re-added by a bucket
+     * migration racing with a removal): entries are validated against the
+     * storage when collected, and stale ones are dropped then. It never
+     * misses an in-flight message: an entry is only added to a bucket that
+     * is not being removed, and a bucket being removed has its entries
+     * migrated to its replacement.
+     * </p>
+     */
+    private static class OrphanIndex<ID, DATA> {
+        private static class Bucket<ID, DATA> {
+            private final ConcurrentMap<Object, IQueueMessage<ID, DATA>> entries //
+                    = new ConcurrentHashMap<>();
+            private volatile boolean removed = false;
+        }
+
+        private static class LastBucket<ID, DATA> {
+            private final long key;
+            private final Bucket<ID, DATA> bucket;
+
+            LastBucket(long key, Bucket<ID, DATA> bucket) {
+                this.key = key;
+                this.bucket = bucket;
+            }
+        }
+
+        private final long granularityMs;
+        private final ConcurrentSkipListMap<Long, Bucket<ID, DATA>> buckets //
+                = new ConcurrentSkipListMap<>();
+        /* most messages fall in the same (latest) bucket: skip the skip-list lookup */
+        private volatile LastBucket<ID, DATA> lastBucket;
+
+        OrphanIndex(long granularityMs) {
+            this.granularityMs = granularityMs;
+        }
+
+        private long bucketKey(IQueueMessage<ID, DATA> msg) {
+            return Math.floorDiv(msg.getQueueTimestampMillis(), granularityMs);
+        }
+
+        private Bucket<ID, DATA> getBucket(long key, boolean create) {
+            LastBucket<ID, DATA> last = lastBucket;
+            if (last != null && last.key == key && !last.bucket.removed) {
+                return last.bucket;
+            }
+            Bucket<ID, DATA> bucket = create ? buckets.computeIfAbsent(key, k -> new Bucket<>())
+                    : buckets.get(key);
+            if (create) {
+                lastBucket = new LastBucket<>(key, bucket);
+            }
+            return bucket;
+        }
+
+        void add(IQueueMessage<ID, DATA> msg) {
+            long key = bucketKey(msg);
+            while (true) {
+                Bucket<ID, DATA> bucket = getBucket(key, true);
+                bucket.entries.put(msg.getId(), msg);
+                if (!bucket.removed) {
+                    return;
+                }
+                // the bucket is being removed, its replacement will get the
+                // entry either from the remover's migration or from this retry
+                buckets.remove(key, bucket);
+            }
+        }
+
+        void remove(IQueueMessage<ID, DATA> msg) {
+            long key = bucketKey(msg);
+            Bucket<ID, DATA> bucket = getBucket(key, false);
+            if (bucket != null) {
+                bucket.entries.remove(msg.getId(), msg);
+                if (bucket.entries.isEmpty()
+                        && key < Math.floorDiv(System.currentTimeMillis(), granularityMs)) {
+                    // past buckets do not receive many new entries: drop them
+                    // as soon as they are empty
+                    removeBucket(key, bucket);
+                }
+            }
+        }
+
+        private void removeBucket(long key, Bucket<ID, DATA> bucket) {
+            bucket.removed = true;
+            buckets.remove(key, bucket);
+            // entries added before the bucket was marked removed
+            for (IQueueMessage<ID, DATA> msg : bucket.entries.values()) {
+                add(msg);
+            }
+        }
+
+        void collectExpired(long threshold, EphemeralStorage<ID, DATA> storage,
+                Collection<IQueueMessage<ID, DATA>> result) {
+            long lastKey = Math.floorDiv(threshold, granularityMs);
+            for (Map.Entry<Long, Bucket<ID, DATA>> e : buckets.headMap(lastKey, true)
+                    .entrySet()) {
+                Bucket<ID, DATA> bucket = e.getValue();
+                for (IQueueMessage<ID, DATA> msg : bucket.entries.values()) {
+                    if (storage.get(msg.getId()) != msg) {
+                        bucket.entries.remove(msg.getId(), msg);
+                    } else if (msg.getQueueTimestampMillis() < threshold) {
+                        result.add(msg);
+                    }
+                }
+                if (bucket.entries.isEmpty()) {
+                    removeBucket(e.getKey(), bucket);
+                }
+            }
+        }
+    }
+
+    private static class MapEphemeralStorage<ID, DATA> extends EphemeralStorage<ID, DATA> {
+        private final ConcurrentMap<Object, IQueueMessage<ID, DATA>> storage;
+
+        MapEphemeralStorage(int initialCapacity) {
+            storage = new ConcurrentHashMap<>(Math.max(16, initialCapacity));
+        }
+
+        @Override
+        protected boolean doAdd(IQueueMessage<ID, DATA> msg) {
+            return storage.putIfAbsent(msg.getId(), msg) == null;
+        }
+
+        @Override
+        protected IQueueMessage<ID, DATA> doRemove(ID id) {
+            return storage.remove(id);
+        }
+
+        @Override
+        public IQueueMessage<ID, DATA> get(ID id) {
+            return storage.get(id);
+        }
+
+        @Override
+        public int size() {
+            return storage.size();
+        }
+
+        @Override
+        public void forEach(Consumer<? super IQueueMessage<ID, DATA>> action) {
+            storage.values().forEach(action);
+        }
+    }
+
+    private static class LongIdEphemeralStorage<DATA> extends EphemeralStorage<Long, DATA> {
+        private final ConcurrentLongObjectMap<IQueueMessage<Long, DATA>> storage;
+
+        LongIdEphemeralStorage(int initialCapacity) {
+            storage = new ConcurrentLongObjectMap<>(initialCapacity,
+                    Runtime.getRuntime().availableProcessors() * 4);
+        }
+
+        @Override
+        protected boolean doAdd(IQueueMessage<Long, DATA> msg) {
+            return storage.putIfAbsent(msg.getId().longValue(), msg) == null;
+        }
+
+        @Override
+        protected IQueueMessage<Long, DATA> doRemove(Long id) {
+            return storage.remove(id.longValue());
+        }
+
+        @Override
+        public IQueueMessage<Long, DATA> get(Long id) {
+            return storage.get(id.longValue());
+        }
+
+        @Override
+        public int size() {
+            return storage.size();
+        }
+
+        @Override
+        public void forEach(Consumer<? super IQueueMessage<Long, DATA>> action) {
+            storage.forEachValue(action);
+        }
+    }
+}
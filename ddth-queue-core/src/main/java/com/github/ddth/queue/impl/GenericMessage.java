@@ -12,6 +12,11 @@ import com.github.ddth.queue.IPartitionSupport;
 /**
  * A generic implementation of {@link IMessage}
  * 
+ * <p>
+ * Timestamp is stored as epoch milliseconds; the {@link Date} returned by
+ * {@link #getTimestamp()} is created lazily (since v0.7.1.3).
+ * </p>
+ * 
  * @author Thanh Nguyen <btnguyen2k@gmail.com>
  * @since 0.7.0
  */
@@ -35,7 +40,8 @@ public class GenericMessage<ID, DATA> implements IMessage<ID, DATA>, Cloneable,
 
     private ID id;
     private DATA data;
-    private Date timestamp = new Date();
+    private long timestamp = System.currentTimeMillis();
+    private transient Date timestampView;
     private String partitionKey;
 
     /**
@@ -73,7 +79,15 @@ public class GenericMessage<ID, DATA> implements IMessage<ID, DATA>, Cloneable,
      */
     @Override
     public Date getTimestamp() {
-        return timestamp;
+        if (timestamp == NO_TIMESTAMP) {
+            return null;
+        }
+        Date view = timestampView;
+        if (view == null || view.getTime() != timestamp) {
+            view = new Date(timestamp);
+            timestampView = view;
+        }
+        return view;
     }
 
     /**
@@ -81,7 +95,30 @@ public class GenericMessage<ID, DATA> implements IMessage<ID, DATA>, Cloneable,
      */
     @Override
     public GenericMessage<ID, DATA> setTimestamp(Date timestamp) {
-        this.timestamp = timestamp;
+        this.timestamp = timestamp != null ? timestamp.getTime() : NO_TIMESTAMP;
+        this.timestampView = timestamp;
+        return this;
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @since 0.7.1.3
+     */
+    @Override
+    public long getTimestampMillis() {
+        return timestamp;
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @since 0.7.1.3
+     */
+    @Override
+    public GenericMessage<ID, DATA> setTimestampMillis(long timestampMillis) {
+        this.timestamp = timestampMillis;
+        this.timestampView = null;
         return this;
     }
 
@@ -147,7 +184,8 @@ public class GenericMessage<ID, DATA> implements IMessage<ID, DATA>, Cloneable,
     public String toString() {
         ToStringBuilder tsb = new ToStringBuilder(this, ToStringStyle.SHORT_PREFIX_STYLE);
         tsb.append("id", id).append("data", data)
-                .append("time", DateFormatUtils.toString(timestamp, DateFormatUtils.DF_ISO8601))
+                .append("time",
+                        DateFormatUtils.toString(getTimestamp(), DateFormatUtils.DF_ISO8601))
                 .append("partition", partitionKey);
         return tsb.toString();
     }
@@ -11,6 +11,12 @@ import com.github.ddth.queue.IQueueMessage;
 /**
  * A generic implementation of {@link IQueueMessage}
  * 
+ * <p>
+ * Timestamps are stored as epoch milliseconds; the {@link Date}s returned by
+ * {@link #getTimestamp()} and {@link #getQueueTimestamp()} are created lazily
+ * (since v0.7.1.3).
+ * </p>
+ * 
  * @author Thanh Nguyen <btnguyen2k@gmail.com>
  * @since 0.6.0
  */
@@ -33,7 +39,8 @@ public class GenericQueueMessage<ID, DATA> extends GenericMessage<ID, DATA>
         return msg;
     }
 
-    private Date queueTimestamp = new Date();
+    private long queueTimestamp = System.currentTimeMillis();
+    private transient Date queueTimestampView;
     private int numRequeues = 0;
 
     /**
@@ -105,7 +112,15 @@ public class GenericQueueMessage<ID, DATA> extends GenericMessage<ID, DATA>
      */
     @Override
     public Date getQueueTimestamp() {
-        return queueTimestamp;
+        if (queueTimestamp == NO_TIMESTAMP) {
+            return null;
+        }
+        Date view = queueTimestampView;
+        if (view == null || view.getTime() != queueTimestamp) {
+            view = new Date(queueTimestamp);
+            queueTimestampView = view;
+        }
+        return view;
     }
 
     /**
@@ -113,7 +128,41 @@ public class GenericQueueMessage<ID, DATA> extends GenericMessage<ID, DATA>
      */
     @Override
     public GenericQueueMessage<ID, DATA> setQueueTimestamp(Date timestamp) {
-        this.queueTimestamp = timestamp;
+        this.queueTimestamp = timestamp != null ? timestamp.getTime() : NO_TIMESTAMP;
+        this.queueTimestampView = timestamp;
+        return this;
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @since 0.7.1.3
+     */
+    @Override
+    public long getQueueTimestampMillis() {
+        return queueTimestamp;
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @since 0.7.1.3
+     */
+    @Override
+    public GenericQueueMessage<ID, DATA> setQueueTimestampMillis(long timestampMillis) {
+        this.queueTimestamp = timestampMillis;
+        this.queueTimestampView = null;
+        return this;
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @since 0.7.1.3
+     */
+    @Override
+    public GenericQueueMessage<ID, DATA> setTimestampMillis(long timestampMillis) {
+        super.setTimestampMillis(timestampMillis);
         return this;
     }
 
@@ -200,7 +249,7 @@ public class GenericQueueMessage<ID, DATA> extends GenericMessage<ID, DATA>
     public String toString() {
         ToStringBuilder tsb = new ToStringBuilder(this, ToStringStyle.SHORT_PREFIX_STYLE);
         tsb.append("queue_time",
-                DateFormatUtils.toString(queueTimestamp, DateFormatUtils.DF_ISO8601))
+                DateFormatUtils.toString(getQueueTimestamp(), DateFormatUtils.DF_ISO8601))
                 .append("num_requeues", numRequeues).appendSuper(super.toString());
         return tsb.toString();
     }
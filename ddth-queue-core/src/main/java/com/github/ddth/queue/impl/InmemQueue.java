@@ -1,18 +1,18 @@
 package com.github.ddth.queue.impl;
 
 import java.util.Collection;
-import java.util.Date;
-import java.util.HashSet;
 import java.util.Queue;
 import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentLinkedQueue;
-import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 
 import com.github.ddth.queue.IQueue;
 import com.github.ddth.queue.IQueueMessage;
 import com.github.ddth.queue.QueueSpec;
+import com.github.ddth.queue.utils.MpmcArrayQueue;
+import com.github.ddth.queue.utils.OffHeapByteQueue;
 import com.github.ddth.queue.utils.QueueException;
 
 /**
@@ -21,8 +21,10 @@ import com.github.ddth.queue.utils.QueueException;
  * <p>
  * Implementation:
  * <ul>
- * <li>A {@link Queue} as queue storage.</li>
- * <li>A {@link ConcurrentMap} as ephemeral storage.</li>
+ * <li>A {@link Queue} as queue storage (or an {@link OffHeapByteQueue} with
+ * {@link Engine#OFF_HEAP}); optionally split into shards, see
+ * {@link #setNumShards(int)}.</li>
+ * <li>An {@link EphemeralStorage} as ephemeral storage.</li>
  * </ul>
  * </p>
  * 
@@ -31,8 +33,40 @@ import com.github.ddth.queue.utils.QueueException;
  */
 public class InmemQueue<ID, DATA> extends AbstractEphemeralSupportQueue<ID, DATA> {
 
-    private Queue<IQueueMessage<ID, DATA>> queue;
-    private ConcurrentMap<Object, IQueueMessage<ID, DATA>> ephemeralStorage;
+    /**
+     * Queue storage engines.
+     * 
+     * @since 0.7.1.3
+     */
+    public static enum Engine {
+        /**
+         * {@link ArrayBlockingQueue}/{@link LinkedBlockingQueue} if bounded,
+         * {@link ConcurrentLinkedQueue} otherwise.
+         */
+        DEFAULT,
+
+        /**
+         * Lock-free multi-producer/multi-consumer array ring
+         * ({@link MpmcArrayQueue}), queue must be bounded.
+         */
+        RING_BUFFER,
+
+        /**
+         * Serialized messages in direct memory segments
+         * ({@link OffHeapByteQueue}), bounded by number of bytes and/or
+         * number of messages.
+         */
+        OFF_HEAP
+    }
+
+    private Engine engine = Engine.DEFAULT;
+
+    private Queue<IQueueMessage<ID, DATA>>[] queues;
+    private OffHeapByteQueue[] offHeapQueues;
+    private int numShards = 1;
+    private long offHeapMaxBytes = 0;
+    private int offHeapSegmentSize = OffHeapByteQueue.DEFAULT_SEGMENT_SIZE;
+    private EphemeralStorage<ID, DATA> ephemeralStorage;
 
     /**
      * A value less than {@code 1} mean "no boundary".
@@ -68,11 +102,157 @@ public class InmemQueue<ID, DATA> extends AbstractEphemeralSupportQueue<ID, DATA
         return this;
     }
 
+    /**
+     * Number of shards the queue storage is split into (default {@code 1}).
+     * 
+     * @return
+     * @since 0.7.1.3
+     */
+    public int getNumShards() {
+        return numShards;
+    }
+
+    /**
+     * Split the queue storage into shards, to remove the single contention
+     * point of one shared queue under many producers and consumers.
+     * 
+     * <p>
+     * Each thread has a home shard (chosen by thread id). A producer puts
+     * to its home shard, spilling over to the next shards if it is full; a
+     * consumer takes from its home shard and steals from the next shards if
+     * it is empty. Messages are FIFO within a shard, but there is no global
+     * FIFO order across shards. {@link #getBoundary()} and
+     * {@link #getOffHeapMaxBytes()} are split evenly (rounded up) over the
+     * shards. With more than one shard, {@link #take(long, TimeUnit)} polls
+     * with back-off instead of blocking.
+     * </p>
+     * 
+     * @param numShards
+     *            a value less than {@code 1} is treated as {@code 1}, e.g.
+     *            {@code Runtime.getRuntime().availableProcessors()}
+     * @return
+     * @since 0.7.1.3
+     */
+    public InmemQueue<ID, DATA> setNumShards(int numShards) {
+        this.numShards = Math.max(1, numShards);
+        return this;
+    }
+
+    /**
+     * Queue storage engine (default {@link Engine#DEFAULT}).
+     * 
+     * @return
+     * @since 0.7.1.3
+     */
+    public Engine getEngine() {
+        return engine;
+    }
+
+    /**
+     * Queue storage engine.
+     * 
+     * <p>
+     * {@link Engine#RING_BUFFER} avoids the lock convoy of
+     * {@link LinkedBlockingQueue}/{@link ArrayBlockingQueue} under many
+     * concurrent producers and consumers. It requires a boundary, which is
+     * rounded up to the next power of two. With this engine,
+     * {@link #take(long, TimeUnit)} polls with back-off instead of blocking.
+     * </p>
+     * 
+     * <p>
+     * {@link Engine#OFF_HEAP} keeps queued messages out of the Java heap: a
+     * message is serialized (see {@link #getMessageCodec()}) when put to the
+     * queue and deserialized when taken, so a large backlog costs neither heap
+     * nor GC time. Taken messages (in the ephemeral storage) are on-heap. See
+     * {@link #setOffHeapMaxBytes(long)} and
+     * {@link #setOffHeapSegmentSize(int)}.
+     * </p>
+     * 
+     * @param engine
+     * @return
+     * @since 0.7.1.3
+     */
+    public InmemQueue<ID, DATA> setEngine(Engine engine) {
+        this.engine = engine != null ? engine : Engine.DEFAULT;
+        return this;
+    }
+
+    /**
+     * Max number of bytes (serialized messages plus a {@code 4}-byte header
+     * each) held by the {@link Engine#OFF_HEAP} engine.
+     * 
+     * @return
+     * @since 0.7.1.3
+     */
+    public long getOffHeapMaxBytes() {
+        return offHeapMaxBytes;
+    }
+
+    /**
+     * Max number of bytes (serialized messages plus a {@code 4}-byte header
+     * each) held by the {@link Engine#OFF_HEAP} engine. The engine is also
+     * bounded by {@link #getBoundary()}, if set. Direct memory allocated by
+     * the engine is bounded accordingly, see {@link OffHeapByteQueue}.
+     * 
+     * @param offHeapMaxBytes
+     *            a value less than {@code 1} means "no boundary"
+     * @return
+     * @since 0.7.1.3
+     */
+    public InmemQueue<ID, DATA> setOffHeapMaxBytes(long offHeapMaxBytes) {
+        this.offHeapMaxBytes = offHeapMaxBytes;
+        return this;
+    }
+
+    /**
+     * Size (in bytes) of a direct memory segment of the {@link Engine#OFF_HEAP}
+     * engine (default {@link OffHeapByteQueue#DEFAULT_SEGMENT_SIZE}).
+     * 
+     * @return
+     * @since 0.7.1.3
+     */
+    public int getOffHeapSegmentSize() {
+        return offHeapSegmentSize;
+    }
+
+    /**
+     * Size (in bytes) of a direct memory segment of the {@link Engine#OFF_HEAP}
+     * engine. A message larger than a segment gets a segment of its own.
+     * 
+     * @param offHeapSegmentSize
+     * @return
+     * @since 0.7.1.3
+     */
+    public InmemQueue<ID, DATA> setOffHeapSegmentSize(int offHeapSegmentSize) {
+        this.offHeapSegmentSize = offHeapSegmentSize;
+        return this;
+    }
+
+    /**
+     * Number of bytes of direct memory currently allocated by the
+     * {@link Engine#OFF_HEAP} engine ({@code 0} for other engines).
+     * 
+     * @return
+     * @since 0.7.1.3
+     */
+    public long getOffHeapAllocatedBytes() {
+        long result = 0;
+        OffHeapByteQueue[] offHeapQueues = this.offHeapQueues;
+        if (offHeapQueues != null) {
+            for (OffHeapByteQueue offHeapQueue : offHeapQueues) {
+                result += offHeapQueue.allocatedBytes();
+            }
+        }
+        return result;
+    }
+
     /**
      * This method will create a {@link Queue} instance with the following
      * rules:
      * 
      * <ul>
+     * <li>If {@link #getEngine()} is {@link Engine#RING_BUFFER}, a
+     * {@link MpmcArrayQueue} is created ({@link #boundary} must be set).</li>
      * <li>If {@link #boundary} is set and larger than {@code 1024}, a
      * {@link LinkedBlockingQueue} is created; if {@link #boundary} is less than
      * or equals to {@code 1024}, an {@link ArrayBlockingQueue} is created
@@ -84,6 +264,13 @@ public class InmemQueue<ID, DATA> extends AbstractEphemeralSupportQueue<ID, DATA
      * @return
      */
     protected Queue<IQueueMessage<ID, DATA>> createQueue(int boundary) {
+        if (engine == Engine.RING_BUFFER) {
+            if (boundary < 1) {
+                throw new IllegalStateException(
+                        "Engine " + engine + " requires a bounded queue, boundary: " + boundary);
+            }
+            return new MpmcArrayQueue<>(boundary);
+        }
         if (boundary > 0) {
             if (boundary > 1024) {
                 return new LinkedBlockingQueue<>(boundary);
@@ -95,16 +282,47 @@ public class InmemQueue<ID, DATA> extends AbstractEphemeralSupportQueue<ID, DATA
         }
     }
 
+    /**
+     * Create the ephemeral storage. Sub-classes whose message id is a
+     * {@code Long} can override this method to return
+     * {@link EphemeralStorage#newLongIdInstance(int)}.
+     * 
+     * @param initialCapacity
+     * @return
+     * @since 0.7.1.3
+     */
+    protected EphemeralStorage<ID, DATA> createEphemeralStorage(int initialCapacity) {
+        return EphemeralStorage.newInstance(initialCapacity);
+    }
+
     /**
      * Init method.
      * 
      * @return
      * @throws Exception
      */
+    @SuppressWarnings("unchecked")
     public InmemQueue<ID, DATA> init() throws Exception {
-        queue = createQueue(boundary);
+        int shardBoundary = boundary > 0 ? (boundary + numShards - 1) / numShards : boundary;
+        if (engine == Engine.OFF_HEAP) {
+            long shardMaxBytes = offHeapMaxBytes > 0
+                    ? (offHeapMaxBytes + numShards - 1) / numShards : offHeapMaxBytes;
+            offHeapQueues = new OffHeapByteQueue[numShards];
+            for (int i = 0; i < numShards; i++) {
+                offHeapQueues[i] = new OffHeapByteQueue(offHeapSegmentSize, shardMaxBytes,
+                        shardBoundary);
+            }
+        } else {
+            queues = new Queue[numShards];
+            for (int i = 0; i < numShards; i++) {
+                queues[i] = createQueue(shardBoundary);
+            }
+        }
         if (!isEphemeralDisabled()) {
-            ephemeralStorage = new ConcurrentHashMap<>();
+            int ephemeralBoundSize = Math.max(0, getEphemeralMaxSize());
+            ephemeralStorage = createEphemeralStorage(ephemeralBoundSize > 0
+                    ? Math.min(ephemeralBoundSize, 1024) : 1024)
+                            .setOrphanIndexGranularityMs(getOrphanIndexGranularityMs());
         }
 
         super.init();
@@ -112,6 +330,35 @@ public class InmemQueue<ID, DATA> extends AbstractEphemeralSupportQueue<ID, DATA
         return this;
     }
 
+    /**
+     * {@inheritDoc}
+     * 
+     * @since 0.7.1.3
+     */
+    @Override
+    public void destroy() {
+        try {
+            if (offHeapQueues != null) {
+                for (OffHeapByteQueue offHeapQueue : offHeapQueues) {
+                    offHeapQueue.clear();
+                }
+                offHeapQueues = null;
+            }
+        } finally {
+            super.destroy();
+        }
+    }
+
+    /**
+     * Home shard of the calling thread.
+     * 
+     * @param numShards
+     * @return
+     */
+    private static int homeShard(int numShards) {
+        return numShards == 1 ? 0 : (int) (Thread.currentThread().getId() % numShards);
+    }
+
     /**
      * Puts a message to the queue buffer.
      * 
@@ -121,9 +368,26 @@ public class InmemQueue<ID, DATA> extends AbstractEphemeralSupportQueue<ID, DATA
      * 
      */
     protected void putToQueue(IQueueMessage<ID, DATA> msg) throws QueueException.QueueIsFull {
-        if (!queue.offer(msg)) {
-            throw new QueueException.QueueIsFull(getBoundary());
+        if (offHeapQueues != null) {
+            byte[] data = serialize(msg);
+            int n = offHeapQueues.length, home = homeShard(n);
+            for (int i = 0; i < n; i++) {
+                if (offHeapQueues[(home + i) % n].offer(data)) {
+                    return;
+                }
+            }
+            throw offHeapMaxBytes > 0
+                    ? new QueueException.QueueIsFull("Queue storage is full (max bytes: "
+                            + offHeapMaxBytes + ", max size: " + boundary + ")!")
+                    : new QueueException.QueueIsFull(getBoundary());
+        }
+        int n = queues.length, home = homeShard(n);
+        for (int i = 0; i < n; i++) {
+            if (queues[(home + i) % n].offer(msg)) {
+                return;
+            }
         }
+        throw new QueueException.QueueIsFull(getBoundary());
     }
 
     /**
@@ -134,9 +398,9 @@ public class InmemQueue<ID, DATA> extends AbstractEphemeralSupportQueue<ID, DATA
      */
     @Override
     public boolean queue(IQueueMessage<ID, DATA> _msg) throws QueueException.QueueIsFull {
-        IQueueMessage<ID, DATA> msg = _msg.clone();
-        Date now = new Date();
-        msg.setNumRequeues(0).setQueueTimestamp(now).setTimestamp(now);
+        IQueueMessage<ID, DATA> msg = claimMessage(_msg);
+        long now = System.currentTimeMillis();
+        msg.setNumRequeues(0).setQueueTimestampMillis(now).setTimestampMillis(now);
         putToQueue(msg);
         return true;
     }
@@ -149,9 +413,9 @@ public class InmemQueue<ID, DATA> extends AbstractEphemeralSupportQueue<ID, DATA
      */
     @Override
     public boolean requeue(IQueueMessage<ID, DATA> _msg) throws QueueException.QueueIsFull {
-        IQueueMessage<ID, DATA> msg = _msg.clone();
-        Date now = new Date();
-        msg.incNumRequeues().setQueueTimestamp(now);
+        IQueueMessage<ID, DATA> msg = claimMessage(_msg);
+        long now = System.currentTimeMillis();
+        msg.incNumRequeues().setQueueTimestampMillis(now);
         putToQueue(msg);
         if (!isEphemeralDisabled()) {
             ephemeralStorage.remove(msg.getId());
@@ -167,7 +431,7 @@ public class InmemQueue<ID, DATA> extends AbstractEphemeralSupportQueue<ID, DATA
      */
     @Override
     public boolean requeueSilent(IQueueMessage<ID, DATA> _msg) throws QueueException.QueueIsFull {
-        IQueueMessage<ID, DATA> msg = _msg.clone();
+        IQueueMessage<ID, DATA> msg = claimMessage(_msg);
         putToQueue(msg);
         if (!isEphemeralDisabled()) {
             ephemeralStorage.remove(msg.getId());
@@ -191,26 +455,103 @@ public class InmemQueue<ID, DATA> extends AbstractEphemeralSupportQueue<ID, DATA
      * @return
      */
     protected IQueueMessage<ID, DATA> takeFromQueue() {
-        return queue.poll();
+        if (offHeapQueues != null) {
+            int n = offHeapQueues.length, home = homeShard(n);
+            for (int i = 0; i < n; i++) {
+                byte[] data = offHeapQueues[(home + i) % n].poll();
+                if (data != null) {
+                    return deserialize(data);
+                }
+            }
+            return null;
+        }
+        int n = queues.length, home = homeShard(n);
+        for (int i = 0; i < n; i++) {
+            IQueueMessage<ID, DATA> msg = queues[(home + i) % n].poll();
+            if (msg != null) {
+                return msg;
+            }
+        }
+        return null;
     }
 
     /**
-     * {@inheritDoc}
+     * Takes a message from the internal queue, waiting up to the specified
+     * wait time if necessary for a message to become available. Only called
+     * if the queue storage has a single, blocking, shard.
      * 
-     * @throws QueueException.EphemeralIsFull
-     *             if the ephemeral storage is full
+     * @param timeout
+     * @param unit
+     * @return
+     * @throws InterruptedException
+     * @since 0.7.1.3
      */
-    @Override
-    public IQueueMessage<ID, DATA> take() throws QueueException.EphemeralIsFull {
+    protected IQueueMessage<ID, DATA> takeFromQueue(long timeout, TimeUnit unit)
+            throws InterruptedException {
+        if (offHeapQueues != null) {
+            return deserialize(offHeapQueues[0].poll(timeout, unit));
+        }
+        return ((BlockingQueue<IQueueMessage<ID, DATA>>) queues[0]).poll(timeout, unit);
+    }
+
+    private void ensureEphemeralNotFull() throws QueueException.EphemeralIsFull {
         if (!isEphemeralDisabled()) {
             int ephemeralMaxSize = getEphemeralMaxSize();
             if (ephemeralMaxSize > 0 && ephemeralStorage.size() >= ephemeralMaxSize) {
                 throw new QueueException.EphemeralIsFull(ephemeralMaxSize);
             }
         }
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @throws QueueException.EphemeralIsFull
+     *             if the ephemeral storage is full
+     */
+    @Override
+    public IQueueMessage<ID, DATA> take() throws QueueException.EphemeralIsFull {
+        ensureEphemeralNotFull();
         IQueueMessage<ID, DATA> msg = takeFromQueue();
         if (msg != null && !isEphemeralDisabled()) {
-            ephemeralStorage.putIfAbsent(msg.getId(), msg);
+            ephemeralStorage.add(msg);
+        }
+        return msg;
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * <p>
+     * If the queue is bounded (backed by a {@link BlockingQueue}), this method
+     * blocks on {@link BlockingQueue#poll(long, TimeUnit)}; with
+     * {@link Engine#OFF_HEAP} it blocks on
+     * {@link OffHeapByteQueue#poll(long, TimeUnit)}. Otherwise (or if the
+     * queue storage has more than one shard) it falls back to the polling
+     * implementation of the super class.
+     * </p>
+     * 
+     * @throws QueueException.EphemeralIsFull
+     *             if the ephemeral storage is full
+     * @since 0.7.1.3
+     */
+    @Override
+    public IQueueMessage<ID, DATA> take(long timeout, TimeUnit unit) throws QueueException {
+        boolean blocking = offHeapQueues != null ? offHeapQueues.length == 1
+                : queues.length == 1 && queues[0] instanceof BlockingQueue;
+        if (!blocking) {
+            return super.take(timeout, unit);
+        }
+        ensureEphemeralNotFull();
+        IQueueMessage<ID, DATA> msg;
+        try {
+            msg = takeFromQueue(timeout, unit);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+        if (msg != null && !isEphemeralDisabled()) {
+            ephemeralStorage.add(msg);
         }
         return msg;
     }
@@ -223,13 +564,7 @@ public class InmemQueue<ID, DATA> extends AbstractEphemeralSupportQueue<ID, DATA
         if (isEphemeralDisabled()) {
             return null;
         }
-        Collection<IQueueMessage<ID, DATA>> orphanMessages = new HashSet<>();
-        long now = System.currentTimeMillis();
-        ephemeralStorage.forEach((key, msg) -> {
-            if (msg.getQueueTimestamp().getTime() + thresholdTimestampMs < now)
-                orphanMessages.add(msg);
-        });
-        return orphanMessages;
+        return ephemeralStorage.getOrphanMessages(thresholdTimestampMs);
     }
 
 //    /**
@@ -257,7 +592,17 @@ public class InmemQueue<ID, DATA> extends AbstractEphemeralSupportQueue<ID, DATA
      */
     @Override
     public int queueSize() {
-        return queue.size();
+        int size = 0;
+        if (offHeapQueues != null) {
+            for (OffHeapByteQueue offHeapQueue : offHeapQueues) {
+                size += offHeapQueue.size();
+            }
+        } else {
+            for (Queue<IQueueMessage<ID, DATA>> queue : queues) {
+                size += queue.size();
+            }
+        }
+        return size;
     }
 
     /**
@@ -2,9 +2,10 @@ package com.github.ddth.queue.impl;
 
 import java.sql.Connection;
 import java.text.MessageFormat;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.Date;
+import java.util.List;
 import java.util.Map;
 
 import javax.sql.DataSource;
@@ -43,6 +44,7 @@ public abstract class JdbcQueue<ID, DATA> extends AbstractEphemeralSupportQueue<
 
     public final static int DEFAULT_MAX_RETRIES = 3;
     public final static int DEFAULT_TRANX_ISOLATION_LEVEL = Connection.TRANSACTION_READ_COMMITTED;
+    public final static int DEFAULT_MAX_BATCH_INSERT_ROWS = 100;
 
     private Logger LOGGER = LoggerFactory.getLogger(JdbcQueue.class);
 
@@ -56,6 +58,7 @@ public abstract class JdbcQueue<ID, DATA> extends AbstractEphemeralSupportQueue<
     private boolean myOwnJdbcHelper = false;
     private int maxRetries = DEFAULT_MAX_RETRIES;
     private int transactionIsolationLevel = DEFAULT_TRANX_ISOLATION_LEVEL;
+    private int maxBatchInsertRows = DEFAULT_MAX_BATCH_INSERT_ROWS;
 
     private AtomicLongMap<String> retryCounter = AtomicLongMap.create();
 
@@ -191,6 +194,30 @@ public abstract class JdbcQueue<ID, DATA> extends AbstractEphemeralSupportQueue<
         return maxRetries;
     }
 
+    /**
+     * Max number of rows to be inserted by one multi-row INSERT statement (see
+     * {@link #queueAll(Collection)}).
+     * 
+     * @return
+     * @since 0.7.1.3
+     */
+    public int getMaxBatchInsertRows() {
+        return maxBatchInsertRows;
+    }
+
+    /**
+     * Max number of rows to be inserted by one multi-row INSERT statement (see
+     * {@link #queueAll(Collection)}).
+     * 
+     * @param maxBatchInsertRows
+     * @return
+     * @since 0.7.1.3
+     */
+    public JdbcQueue<ID, DATA> setMaxBatchInsertRows(int maxBatchInsertRows) {
+        this.maxBatchInsertRows = maxBatchInsertRows;
+        return this;
+    }
+
     /*----------------------------------------------------------------------*/
 
     /**
@@ -289,6 +316,59 @@ public abstract class JdbcQueue<ID, DATA> extends AbstractEphemeralSupportQueue<
      */
     protected abstract boolean putToQueueStorage(Connection conn, IQueueMessage<ID, DATA> msg);
 
+    /**
+     * Put a batch of messages to tail of the queue storage.
+     * 
+     * <p>
+     * This method calls {@link #putToQueueStorage(Connection, IQueueMessage)}
+     * for each message. Sub-class should override this method to put all
+     * messages with multi-row INSERT statements (see
+     * {@link #buildMultiRowInsertSql(String, int)}).
+     * </p>
+     * 
+     * @param conn
+     * @param msgs
+     * @return
+     * @since 0.7.1.3
+     */
+    protected boolean putToQueueStorage(Connection conn, Collection<IQueueMessage<ID, DATA>> msgs) {
+        boolean result = true;
+        for (IQueueMessage<ID, DATA> msg : msgs) {
+            result &= putToQueueStorage(conn, msg);
+        }
+        return result;
+    }
+
+    /**
+     * Build a multi-row INSERT statement from a single-row one.
+     * 
+     * <p>
+     * E.g. {@code INSERT INTO t (a, b) VALUES (?, ?)} with {@code numRows=3}
+     * becomes {@code INSERT INTO t (a, b) VALUES (?, ?), (?, ?), (?, ?)}.
+     * </p>
+     * 
+     * @param sqlInsert
+     *            single-row INSERT statement, must end with the
+     *            {@code VALUES (...)} clause
+     * @param numRows
+     * @return
+     * @since 0.7.1.3
+     */
+    protected static String buildMultiRowInsertSql(String sqlInsert, int numRows) {
+        int pos = sqlInsert.toUpperCase().lastIndexOf("VALUES");
+        if (pos < 0) {
+            throw new IllegalArgumentException("Not an INSERT...VALUES statement: " + sqlInsert);
+        }
+        String prefix = sqlInsert.substring(0, pos + 6);
+        String row = sqlInsert.substring(pos + 6).trim();
+        StringBuilder sb = new StringBuilder(prefix.length() + (row.length() + 2) * numRows);
+        sb.append(prefix).append(' ').append(row);
+        for (int i = 1; i < numRows; i++) {
+            sb.append(", ").append(row);
+        }
+        return sb.toString();
+    }
+
     /**
      * Put a message to the ephemeral storage.
      * 
@@ -344,8 +424,8 @@ public abstract class JdbcQueue<ID, DATA> extends AbstractEphemeralSupportQueue<
     protected boolean _queueWithRetries(Connection conn, IQueueMessage<ID, DATA> msg,
             int numRetries, int maxRetries) {
         try {
-            Date now = new Date();
-            msg.setNumRequeues(0).setQueueTimestamp(now).setTimestamp(now);
+            long now = System.currentTimeMillis();
+            msg.setNumRequeues(0).setQueueTimestampMillis(now).setTimestampMillis(now);
             return putToQueueStorage(conn, msg);
         } catch (DuplicatedValueException dve) {
             LOGGER.warn(dve.getMessage(), dve);
@@ -379,7 +459,7 @@ public abstract class JdbcQueue<ID, DATA> extends AbstractEphemeralSupportQueue<
         }
         try {
             try (Connection conn = jdbcHelper.getConnection()) {
-                return _queueWithRetries(conn, msg.clone(), 0, this.maxRetries);
+                return _queueWithRetries(conn, claimMessage(msg), 0, this.maxRetries);
             }
         } catch (Exception e) {
             final String logMsg = "(queue) Exception [" + e.getClass().getName() + "]: "
@@ -389,6 +469,104 @@ public abstract class JdbcQueue<ID, DATA> extends AbstractEphemeralSupportQueue<
         }
     }
 
+    /**
+     * Queue a batch of messages in one transaction, retry if deadlock.
+     * 
+     * <p>
+     * If one of the messages is duplicated, the transaction is rolled back and
+     * messages are queued one by one (see
+     * {@link #_queueWithRetries(Connection, IQueueMessage, int, int)}).
+     * </p>
+     * 
+     * <p>
+     * Note: the supplied queue messages are mutable.
+     * </p>
+     * 
+     * @param conn
+     * @param msgs
+     * @param numRetries
+     * @param maxRetries
+     * @return
+     * @since 0.7.1.3
+     */
+    protected boolean _queueAllWithRetries(Connection conn, Collection<IQueueMessage<ID, DATA>> msgs,
+            int numRetries, int maxRetries) {
+        try {
+            jdbcHelper.startTransaction(conn);
+            conn.setTransactionIsolation(transactionIsolationLevel);
+            long now = System.currentTimeMillis();
+            for (IQueueMessage<ID, DATA> msg : msgs) {
+                msg.setNumRequeues(0).setQueueTimestampMillis(now).setTimestampMillis(now);
+            }
+            boolean result = putToQueueStorage(conn, msgs);
+            jdbcHelper.commitTransaction(conn);
+            return result;
+        } catch (DuplicatedValueException dve) {
+            jdbcHelper.rollbackTransaction(conn);
+            LOGGER.warn(dve.getMessage(), dve);
+            return _queueOneByOne(conn, msgs, maxRetries);
+        } catch (DaoException de) {
+            jdbcHelper.rollbackTransaction(conn);
+            if (de.getCause() instanceof DuplicateKeyException) {
+                LOGGER.warn(de.getMessage(), de);
+                return _queueOneByOne(conn, msgs, maxRetries);
+            }
+            if (de.getCause() instanceof ConcurrencyFailureException) {
+                if (numRetries > maxRetries) {
+                    throw new QueueException(de);
+                } else {
+                    incRetryCounter("_queueAllWithRetries");
+                    return _queueAllWithRetries(conn, msgs, numRetries + 1, maxRetries);
+                }
+            }
+            throw de;
+        } catch (Exception e) {
+            jdbcHelper.rollbackTransaction(conn);
+            throw e instanceof QueueException ? (QueueException) e : new QueueException(e);
+        }
+    }
+
+    private boolean _queueOneByOne(Connection conn, Collection<IQueueMessage<ID, DATA>> msgs,
+            int maxRetries) {
+        boolean result = true;
+        for (IQueueMessage<ID, DATA> msg : msgs) {
+            result &= _queueWithRetries(conn, msg, 0, maxRetries);
+        }
+        return result;
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * <p>
+     * All messages are queued in one transaction.
+     * </p>
+     * 
+     * @since 0.7.1.3
+     */
+    @Override
+    public boolean queueAll(Collection<? extends IQueueMessage<ID, DATA>> msgs) {
+        if (msgs == null || msgs.isEmpty()) {
+            return true;
+        }
+        List<IQueueMessage<ID, DATA>> clonedMsgs = new ArrayList<>(msgs.size());
+        for (IQueueMessage<ID, DATA> msg : msgs) {
+            if (msg != null) {
+                clonedMsgs.add(claimMessage(msg));
+            }
+        }
+        try {
+            try (Connection conn = jdbcHelper.getConnection()) {
+                return _queueAllWithRetries(conn, clonedMsgs, 0, this.maxRetries);
+            }
+        } catch (Exception e) {
+            final String logMsg = "(queueAll) Exception [" + e.getClass().getName() + "]: "
+                    + e.getMessage();
+            LOGGER.error(logMsg, e);
+            throw e instanceof QueueException ? (QueueException) e : new QueueException(e);
+        }
+    }
+
     /**
      * Re-queue a message, retry if deadlock.
      * 
@@ -421,8 +599,8 @@ public abstract class JdbcQueue<ID, DATA> extends AbstractEphemeralSupportQueue<
             if (!isEphemeralDisabled()) {
                 removeFromEphemeralStorage(conn, msg);
             }
-            Date now = new Date();
-            msg.incNumRequeues().setQueueTimestamp(now);
+            long now = System.currentTimeMillis();
+            msg.incNumRequeues().setQueueTimestampMillis(now);
             boolean result = putToQueueStorage(conn, msg);
             jdbcHelper.commitTransaction(conn);
             return result;
@@ -467,7 +645,7 @@ public abstract class JdbcQueue<ID, DATA> extends AbstractEphemeralSupportQueue<
         }
         try {
             try (Connection conn = jdbcHelper.getConnection()) {
-                return _requeueWithRetries(conn, msg.clone(), 0, this.maxRetries);
+                return _requeueWithRetries(conn, claimMessage(msg), 0, this.maxRetries);
             }
         } catch (Exception e) {
             final String logMsg = "(requeue) Exception [" + e.getClass().getName() + "]: "
@@ -548,7 +726,7 @@ public abstract class JdbcQueue<ID, DATA> extends AbstractEphemeralSupportQueue<
         }
         try {
             try (Connection conn = jdbcHelper.getConnection()) {
-                return _requeueSilentWithRetries(conn, msg.clone(), 0, this.maxRetries);
+                return _requeueSilentWithRetries(conn, claimMessage(msg), 0, this.maxRetries);
             }
         } catch (Exception e) {
             final String logMsg = "(requeueSilent) Exception [" + e.getClass().getName() + "]: "
@@ -715,6 +893,76 @@ public abstract class JdbcQueue<ID, DATA> extends AbstractEphemeralSupportQueue<
         }
     }
 
+    /**
+     * Take a batch of messages from queue, retry if deadlock.
+     * 
+     * <p>
+     * This method calls {@link #_takeWithRetries(Connection, int, int)} until
+     * {@code maxMessages} messages have been taken or the queue is empty.
+     * Sub-class may override this method to take all messages with one
+     * statement.
+     * </p>
+     * 
+     * @param conn
+     * @param maxMessages
+     * @param numRetries
+     * @param maxRetries
+     * @return
+     * @since 0.7.1.3
+     */
+    protected List<IQueueMessage<ID, DATA>> _takeManyWithRetries(Connection conn,
+            int maxMessages, int numRetries, int maxRetries) {
+        List<IQueueMessage<ID, DATA>> result = new ArrayList<>();
+        while (result.size() < maxMessages) {
+            IQueueMessage<ID, DATA> msg = _takeWithRetries(conn, numRetries, maxRetries);
+            if (msg == null) {
+                break;
+            }
+            result.add(msg);
+        }
+        return result;
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * <p>
+     * All messages are taken using one single database connection.
+     * </p>
+     * 
+     * @throws QueueException.EphemeralIsFull
+     *             if the ephemeral storage is full
+     * @since 0.7.1.3
+     */
+    @Override
+    public List<IQueueMessage<ID, DATA>> take(int maxMessages)
+            throws QueueException.EphemeralIsFull {
+        if (maxMessages < 1) {
+            return new ArrayList<>();
+        }
+        try {
+            try (Connection conn = jdbcHelper.getConnection()) {
+                int numMessages = maxMessages;
+                if (!isEphemeralDisabled()) {
+                    int ephemeralMaxSize = getEphemeralMaxSize();
+                    if (ephemeralMaxSize > 0) {
+                        int ephemeralSize = ephemeralSize(conn);
+                        if (ephemeralSize >= ephemeralMaxSize) {
+                            throw new QueueException.EphemeralIsFull(ephemeralMaxSize);
+                        }
+                        numMessages = Math.min(numMessages, ephemeralMaxSize - ephemeralSize);
+                    }
+                }
+                return _takeManyWithRetries(conn, numMessages, 0, this.maxRetries);
+            }
+        } catch (Exception e) {
+            final String logMsg = "(take) Exception [" + e.getClass().getName() + "]: "
+                    + e.getMessage();
+            LOGGER.error(logMsg, e);
+            throw e instanceof QueueException ? (QueueException) e : new QueueException(e);
+        }
+    }
+
     /**
      * Get all orphan messages (messages that were left in ephemeral storage for
      * a long time), retry if deadlock.
@@ -1,8 +1,8 @@
 package com.github.ddth.queue.impl;
 
 import java.util.Collection;
-import java.util.Date;
 import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.lang3.StringUtils;
@@ -259,27 +259,52 @@ public abstract class KafkaQueue<ID, DATA> extends AbstractQueue<ID, DATA> {
      * @since 0.3.3
      */
     protected IQueueMessage<ID, DATA> takeFromQueue() {
-        KafkaMessage kMsg = kafkaClient.consumeMessage(consumerGroupId, true, topicName, 1000,
-                TimeUnit.MILLISECONDS);
+        return takeFromQueue(1000, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Takes a message from Kafka queue, waiting up to the specified wait time
+     * if necessary for a message to become available.
+     *
+     * @param timeout
+     * @param unit
+     * @return
+     * @since 0.7.1.3
+     */
+    protected IQueueMessage<ID, DATA> takeFromQueue(long timeout, TimeUnit unit) {
+        KafkaMessage kMsg = kafkaClient.consumeMessage(consumerGroupId, true, topicName, timeout,
+                unit);
         return kMsg != null ? deserialize(kMsg.content()) : null;
     }
 
     /**
-     * Puts a message to Kafka queue, partitioning message by
-     * {@link IQueueMessage#qId()}
+     * Build the {@link KafkaMessage} to send, partitioning message by
+     * {@link IPartitionSupport#getPartitionKey()} or {@link IQueueMessage#getId()}.
      *
      * @param msg
      * @return
+     * @since 0.7.1.3
      */
-    protected boolean putToQueue(IQueueMessage<ID, DATA> msg) {
+    protected KafkaMessage toKafkaMessage(IQueueMessage<ID, DATA> msg) {
         byte[] msgData = serialize(msg);
         Object pKey = msg instanceof IPartitionSupport ? ((IPartitionSupport) msg).getPartitionKey()
                 : msg.getId();
         if (pKey == null) {
             pKey = msg.getId();
         }
-        KafkaMessage kMsg = pKey != null ? new KafkaMessage(topicName, pKey.toString(), msgData)
+        return pKey != null ? new KafkaMessage(topicName, pKey.toString(), msgData)
                 : new KafkaMessage(topicName, msgData);
+    }
+
+    /**
+     * Puts a message to Kafka queue, partitioning message by
+     * {@link IQueueMessage#qId()}
+     *
+     * @param msg
+     * @return
+     */
+    protected boolean putToQueue(IQueueMessage<ID, DATA> msg) {
+        KafkaMessage kMsg = toKafkaMessage(msg);
         if (sendAsync) {
             return kafkaClient.sendMessageRaw(producerType, kMsg) != null;
         } else {
@@ -292,20 +317,52 @@ public abstract class KafkaQueue<ID, DATA> extends AbstractQueue<ID, DATA> {
      */
     @Override
     public boolean queue(IQueueMessage<ID, DATA> _msg) {
-        IQueueMessage<ID, DATA> msg = _msg.clone();
-        Date now = new Date();
-        msg.setNumRequeues(0).setQueueTimestamp(now).setTimestamp(now);
+        IQueueMessage<ID, DATA> msg = claimMessage(_msg);
+        long now = System.currentTimeMillis();
+        msg.setNumRequeues(0).setQueueTimestampMillis(now).setTimestampMillis(now);
         return putToQueue(msg);
     }
 
+    /**
+     * {@inheritDoc}
+     *
+     * <p>
+     * The message is sent with the Kafka producer's callback API, the returned
+     * future is completed when the broker acknowledges the message (according
+     * to {@link #getProducerType()}).
+     * </p>
+     *
+     * @since 0.7.1.3
+     */
+    @Override
+    public CompletableFuture<Boolean> queueAsync(IQueueMessage<ID, DATA> _msg) {
+        CompletableFuture<Boolean> result = new CompletableFuture<>();
+        try {
+            IQueueMessage<ID, DATA> msg = claimMessage(_msg);
+            long now = System.currentTimeMillis();
+            msg.setNumRequeues(0).setQueueTimestampMillis(now).setTimestampMillis(now);
+            kafkaClient.sendMessageRaw(producerType, toKafkaMessage(msg), (metadata, e) -> {
+                if (e != null) {
+                    result.completeExceptionally(new QueueException(e));
+                } else {
+                    result.complete(metadata != null);
+                }
+            });
+        } catch (Exception e) {
+            result.completeExceptionally(
+                    e instanceof QueueException ? (QueueException) e : new QueueException(e));
+        }
+        return result;
+    }
+
     /**
      * {@inheritDoc}
      */
     @Override
     public boolean requeue(final IQueueMessage<ID, DATA> _msg) {
-        IQueueMessage<ID, DATA> msg = _msg.clone();
-        Date now = new Date();
-        msg.incNumRequeues().setQueueTimestamp(now);
+        IQueueMessage<ID, DATA> msg = claimMessage(_msg);
+        long now = System.currentTimeMillis();
+        msg.incNumRequeues().setQueueTimestampMillis(now);
         return putToQueue(msg);
     }
 
@@ -314,7 +371,7 @@ public abstract class KafkaQueue<ID, DATA> extends AbstractQueue<ID, DATA> {
      */
     @Override
     public boolean requeueSilent(IQueueMessage<ID, DATA> _msg) {
-        IQueueMessage<ID, DATA> msg = _msg.clone();
+        IQueueMessage<ID, DATA> msg = claimMessage(_msg);
         return putToQueue(msg);
     }
 
@@ -334,6 +391,16 @@ public abstract class KafkaQueue<ID, DATA> extends AbstractQueue<ID, DATA> {
         return takeFromQueue();
     }
 
+    /**
+     * {@inheritDoc}
+     *
+     * @since 0.7.1.3
+     */
+    @Override
+    public IQueueMessage<ID, DATA> take(long timeout, TimeUnit unit) {
+        return takeFromQueue(timeout, unit);
+    }
+
     /**
      * {@inheritDoc}
      *
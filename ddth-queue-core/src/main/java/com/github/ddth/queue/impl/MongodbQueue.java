@@ -3,6 +3,7 @@ package com.github.ddth.queue.impl;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
+import java.util.List;
 import java.util.function.Consumer;
 
 import org.apache.commons.lang3.StringUtils;
@@ -25,6 +26,7 @@ import com.mongodb.client.model.Filters;
 import com.mongodb.client.model.FindOneAndDeleteOptions;
 import com.mongodb.client.model.FindOneAndUpdateOptions;
 import com.mongodb.client.model.IndexOptions;
+import com.mongodb.client.model.InsertManyOptions;
 import com.mongodb.client.model.ReplaceOptions;
 import com.mongodb.client.model.Sorts;
 import com.mongodb.client.model.Updates;
@@ -293,6 +295,8 @@ public abstract class MongodbQueue<ID, DATA> extends AbstractEphemeralSupportQue
     // private final static UpdateOptions UPDATE_OPTIONS = new
     // UpdateOptions().upsert(true);
     private final static ReplaceOptions REPLACE_OPTIONS = new ReplaceOptions().upsert(true);
+    private final static InsertManyOptions INSERT_MANY_OPTIONS = new InsertManyOptions()
+            .ordered(true);
 
     /**
      * Insert/Update the message to collection.
@@ -317,25 +321,62 @@ public abstract class MongodbQueue<ID, DATA> extends AbstractEphemeralSupportQue
         return true;
     }
 
+    /**
+     * Insert a batch of new messages to collection in one
+     * {@code insertMany} call.
+     * 
+     * @param msgs
+     * @return
+     * @since 0.7.1.3
+     */
+    protected boolean insertToCollection(Collection<IQueueMessage<ID, DATA>> msgs) {
+        List<Document> docs = new ArrayList<>(msgs.size());
+        for (IQueueMessage<ID, DATA> msg : msgs) {
+            docs.add(toDocument(msg));
+        }
+        getCollection().insertMany(docs, INSERT_MANY_OPTIONS);
+        return true;
+    }
+
     /**
      * {@inheritDoc}
      */
     @Override
     public boolean queue(IQueueMessage<ID, DATA> _msg) {
-        IQueueMessage<ID, DATA> msg = _msg.clone();
-        Date now = new Date();
-        msg.setNumRequeues(0).setQueueTimestamp(now).setTimestamp(now);
+        IQueueMessage<ID, DATA> msg = claimMessage(_msg);
+        long now = System.currentTimeMillis();
+        msg.setNumRequeues(0).setQueueTimestampMillis(now).setTimestampMillis(now);
         return insertToCollection(msg);
     }
 
+    /**
+     * {@inheritDoc}
+     * 
+     * @since 0.7.1.3
+     */
+    @Override
+    public boolean queueAll(Collection<? extends IQueueMessage<ID, DATA>> _msgs) {
+        if (_msgs == null || _msgs.isEmpty()) {
+            return true;
+        }
+        List<IQueueMessage<ID, DATA>> msgs = new ArrayList<>(_msgs.size());
+        long now = System.currentTimeMillis();
+        for (IQueueMessage<ID, DATA> _msg : _msgs) {
+            IQueueMessage<ID, DATA> msg = claimMessage(_msg);
+            msg.setNumRequeues(0).setQueueTimestampMillis(now).setTimestampMillis(now);
+            msgs.add(msg);
+        }
+        return insertToCollection(msgs);
+    }
+
     /**
      * {@inheritDoc}
      */
     @Override
     public boolean requeue(IQueueMessage<ID, DATA> _msg) {
-        IQueueMessage<ID, DATA> msg = _msg.clone();
-        Date now = new Date();
-        msg.incNumRequeues().setQueueTimestamp(now);
+        IQueueMessage<ID, DATA> msg = claimMessage(_msg);
+        long now = System.currentTimeMillis();
+        msg.incNumRequeues().setQueueTimestampMillis(now);
         return upsertToCollection(msg);
     }
 
@@ -344,7 +385,7 @@ public abstract class MongodbQueue<ID, DATA> extends AbstractEphemeralSupportQue
      */
     @Override
     public boolean requeueSilent(IQueueMessage<ID, DATA> _msg) {
-        IQueueMessage<ID, DATA> msg = _msg.clone();
+        IQueueMessage<ID, DATA> msg = claimMessage(_msg);
         return upsertToCollection(msg);
     }
 
@@ -5,7 +5,10 @@ import java.net.URISyntaxException;
 import java.security.KeyManagementException;
 import java.security.NoSuchAlgorithmException;
 import java.util.Collection;
-import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
 import java.util.concurrent.TimeoutException;
 
 import org.apache.commons.lang3.StringUtils;
@@ -14,6 +17,7 @@ import com.github.ddth.queue.IQueue;
 import com.github.ddth.queue.IQueueMessage;
 import com.github.ddth.queue.utils.QueueException;
 import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.ConfirmListener;
 import com.rabbitmq.client.Connection;
 import com.rabbitmq.client.ConnectionFactory;
 import com.rabbitmq.client.GetResponse;
@@ -152,6 +156,59 @@ public abstract class RabbitMqQueue<ID, DATA> extends AbstractQueue<ID, DATA> {
         return consumerChannel;
     }
 
+    private volatile Channel confirmChannel;
+    private final ConcurrentNavigableMap<Long, CompletableFuture<Boolean>> pendingConfirms
+            = new ConcurrentSkipListMap<>();
+
+    /**
+     * Get the {@link Channel} dedicated for sending messages asynchronously.
+     * The channel is put in "publisher confirms" mode.
+     *
+     * @return
+     * @throws IOException
+     * @throws TimeoutException
+     * @since 0.7.1.3
+     */
+    protected Channel getConfirmChannel() throws IOException, TimeoutException {
+        Channel result = confirmChannel;
+        if (result == null) {
+            synchronized (this) {
+                result = confirmChannel;
+                if (result == null) {
+                    Channel channel = createChannel();
+                    channel.confirmSelect();
+                    channel.addConfirmListener(new ConfirmListener() {
+                        @Override
+                        public void handleAck(long deliveryTag, boolean multiple) {
+                            completeConfirms(deliveryTag, multiple, true);
+                        }
+
+                        @Override
+                        public void handleNack(long deliveryTag, boolean multiple) {
+                            completeConfirms(deliveryTag, multiple, false);
+                        }
+                    });
+                    confirmChannel = result = channel;
+                }
+            }
+        }
+        return result;
+    }
+
+    private void completeConfirms(long deliveryTag, boolean multiple, boolean value) {
+        if (multiple) {
+            Map<Long, CompletableFuture<Boolean>> confirmed = pendingConfirms.headMap(deliveryTag,
+                    true);
+            confirmed.values().forEach(f -> f.complete(value));
+            confirmed.clear();
+        } else {
+            CompletableFuture<Boolean> f = pendingConfirms.remove(deliveryTag);
+            if (f != null) {
+                f.complete(value);
+            }
+        }
+    }
+
     /*----------------------------------------------------------------------*/
     /**
      * 
@@ -202,6 +259,11 @@ public abstract class RabbitMqQueue<ID, DATA> extends AbstractQueue<ID, DATA> {
             closeQuietly(connection);
             closeQuietly(producerChannel);
             closeQuietly(consumerChannel);
+            closeQuietly(confirmChannel);
+            confirmChannel = null;
+            pendingConfirms.values().forEach(f -> f.completeExceptionally(
+                    new QueueException("Queue has been destroyed before message was confirmed.")));
+            pendingConfirms.clear();
 
             if (connectionFactory != null && myOwnConnectionFactory) {
                 connectionFactory = null;
@@ -249,20 +311,57 @@ public abstract class RabbitMqQueue<ID, DATA> extends AbstractQueue<ID, DATA> {
      */
     @Override
     public boolean queue(IQueueMessage<ID, DATA> _msg) {
-        IQueueMessage<ID, DATA> msg = _msg.clone();
-        Date now = new Date();
-        msg.setNumRequeues(0).setQueueTimestamp(now).setTimestamp(now);
+        IQueueMessage<ID, DATA> msg = claimMessage(_msg);
+        long now = System.currentTimeMillis();
+        msg.setNumRequeues(0).setQueueTimestampMillis(now).setTimestampMillis(now);
         return putToQueue(msg);
     }
 
+    /**
+     * {@inheritDoc}
+     *
+     * <p>
+     * The message is published on a channel in "publisher confirms" mode, the
+     * returned future is completed with {@code true} when the broker acks the
+     * message, or {@code false} if the broker nacks it.
+     * </p>
+     *
+     * @since 0.7.1.3
+     */
+    @Override
+    public CompletableFuture<Boolean> queueAsync(IQueueMessage<ID, DATA> _msg) {
+        CompletableFuture<Boolean> result = new CompletableFuture<>();
+        try {
+            IQueueMessage<ID, DATA> msg = claimMessage(_msg);
+            long now = System.currentTimeMillis();
+            msg.setNumRequeues(0).setQueueTimestampMillis(now).setTimestampMillis(now);
+            byte[] msgData = serialize(msg);
+            Channel channel = getConfirmChannel();
+            synchronized (channel) {
+                long seqNo = channel.getNextPublishSeqNo();
+                pendingConfirms.put(seqNo, result);
+                try {
+                    channel.basicPublish("", queueName, null, msgData);
+                } catch (Exception e) {
+                    pendingConfirms.remove(seqNo);
+                    throw e;
+                }
+            }
+        } catch (Exception e) {
+            result.completeExceptionally(
+                    e instanceof QueueException ? (QueueException) e : new QueueException(e));
+        }
+        return result;
+    }
+
     /**
      * {@inheritDoc}
      */
     @Override
     public boolean requeue(IQueueMessage<ID, DATA> _msg) {
-        IQueueMessage<ID, DATA> msg = _msg.clone();
-        Date now = new Date();
-        msg.incNumRequeues().setQueueTimestamp(now);
+        IQueueMessage<ID, DATA> msg = claimMessage(_msg);
+        long now = System.currentTimeMillis();
+        msg.incNumRequeues().setQueueTimestampMillis(now);
         return putToQueue(msg);
     }
 
@@ -271,7 +370,7 @@ public abstract class RabbitMqQueue<ID, DATA> extends AbstractQueue<ID, DATA> {
      */
     @Override
     public boolean requeueSilent(IQueueMessage<ID, DATA> _msg) {
-        IQueueMessage<ID, DATA> msg = _msg.clone();
+        IQueueMessage<ID, DATA> msg = claimMessage(_msg);
         return putToQueue(msg);
     }
 
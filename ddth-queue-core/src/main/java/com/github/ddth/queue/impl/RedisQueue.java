@@ -1,5 +1,9 @@
 package com.github.ddth.queue.impl;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
 import com.github.ddth.commons.redis.JedisConnector;
 import com.github.ddth.commons.redis.JedisUtils;
 import com.github.ddth.queue.IQueue;
@@ -150,6 +154,32 @@ public abstract class RedisQueue<ID, DATA> extends BaseRedisQueue<ID, DATA> {
         }
     }
 
+    /**
+     * {@inheritDoc}
+     * 
+     * <p>
+     * All messages are stored in one MULTI/EXEC transaction.
+     * </p>
+     * 
+     * @since 0.7.1.3
+     */
+    @Override
+    protected boolean storeNew(Collection<IQueueMessage<ID, DATA>> msgs) {
+        try (Jedis jedis = getJedisConnector().getJedis()) {
+            Transaction jt = jedis.multi();
+
+            for (IQueueMessage<ID, DATA> msg : msgs) {
+                byte[] field = msg.getId().toString().getBytes(QueueUtils.UTF8);
+                byte[] data = serialize(msg);
+                jt.hset(getRedisHashNameAsBytes(), field, data);
+                jt.rpush(getRedisListNameAsBytes(), field);
+            }
+
+            jt.exec();
+            return true;
+        }
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -194,6 +224,52 @@ public abstract class RedisQueue<ID, DATA> extends BaseRedisQueue<ID, DATA> {
         }
     }
 
+    /**
+     * {@inheritDoc}
+     * 
+     * <p>
+     * All messages are taken with one LUA script call.
+     * </p>
+     * 
+     * @throws QueueException.EphemeralIsFull
+     *             if the ephemeral storage is full
+     * @since 0.7.1.3
+     */
+    @Override
+    public List<IQueueMessage<ID, DATA>> take(int maxMessages)
+            throws QueueException.EphemeralIsFull {
+        List<IQueueMessage<ID, DATA>> result = new ArrayList<>();
+        int numMessages = maxMessages;
+        if (!isEphemeralDisabled()) {
+            int ephemeralMaxSize = getEphemeralMaxSize();
+            if (ephemeralMaxSize > 0) {
+                int ephemeralSize = ephemeralSize();
+                if (ephemeralSize >= ephemeralMaxSize) {
+                    throw new QueueException.EphemeralIsFull(ephemeralMaxSize);
+                }
+                numMessages = Math.min(numMessages, ephemeralMaxSize - ephemeralSize);
+            }
+        }
+        if (numMessages < 1) {
+            return result;
+        }
+        try (Jedis jedis = getJedisConnector().getJedis()) {
+            long now = System.currentTimeMillis();
+            Object response = jedis.eval(getScriptTakeMany().getBytes(QueueUtils.UTF8), 0,
+                    String.valueOf(now).getBytes(QueueUtils.UTF8),
+                    String.valueOf(numMessages).getBytes(QueueUtils.UTF8));
+            if (response instanceof List) {
+                for (Object item : (List<?>) response) {
+                    if (item != null) {
+                        result.add(deserialize(item instanceof byte[] ? (byte[]) item
+                                : item.toString().getBytes(QueueUtils.UTF8)));
+                    }
+                }
+            }
+            return result;
+        }
+    }
+
     // /**
     // * {@inheritDoc}
     // */
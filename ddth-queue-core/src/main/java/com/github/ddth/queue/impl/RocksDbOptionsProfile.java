@@ -0,0 +1,383 @@
+package com.github.ddth.queue.impl;
+
+import java.util.Collection;
+
+import org.rocksdb.BlockBasedTableConfig;
+import org.rocksdb.ColumnFamilyOptions;
+import org.rocksdb.CompactionOptionsFIFO;
+import org.rocksdb.CompactionOptionsUniversal;
+import org.rocksdb.CompactionStyle;
+import org.rocksdb.CompressionType;
+import org.rocksdb.DBOptions;
+import org.rocksdb.RocksObject;
+import org.rocksdb.SkipListMemTableConfig;
+
+import com.github.ddth.commons.rocksdb.RocksDbUtils;
+
+/**
+ * RocksDB tuning for {@link RocksDbQueue}s: builds the {@link DBOptions} and
+ * {@link ColumnFamilyOptions} a queue (or a {@link RocksDbQueueStore}) is
+ * opened with.
+ * 
+ * <p>
+ * Options start from {@link RocksDbUtils#buildDbOptions()} and
+ * {@link RocksDbUtils#buildColumnFamilyOptions()}; a setting left at
+ * {@code 0} (or {@code null}) keeps the value of these defaults. The queue
+ * ColumnFamily is append-at-tail/delete-at-head, which leaves a growing range
+ * of tombstones in front of the head after large drains; settings that only
+ * make sense for it (compaction style,
+ * {@link #setDeleteCompactionThreshold(long)}) are not applied to the other
+ * ColumnFamilies.
+ * </p>
+ * 
+ * @author Thanh Ba Nguyen <bnguyen2k@gmail.com>
+ * @since 0.7.1.3
+ */
+public class RocksDbOptionsProfile {
+
+    /**
+     * Profile tuned for queue workloads: universal compaction of the queue
+     * ColumnFamily, skip-list memtable with look-ahead for sequential inserts,
+     * {@code 64MB} block cache, {@code 32MB} write buffers, LZ4 compression
+     * and a compaction of the queue ColumnFamily every {@code 100,000}
+     * deleted messages.
+     * 
+     * @return
+     */
+    public static RocksDbOptionsProfile newQueueWorkloadProfile() {
+        return new RocksDbOptionsProfile().setQueueCompactionStyle(CompactionStyle.UNIVERSAL)
+                .setMemTableLookahead(16).setBlockCacheSize(64 * 1024 * 1024)
+                .setWriteBufferSize(32 * 1024 * 1024).setMaxWriteBufferNumber(4)
+                .setCompressionType(CompressionType.LZ4_COMPRESSION)
+                .setDeleteCompactionThreshold(100_000);
+    }
+
+    private CompactionStyle queueCompactionStyle;
+    private long fifoMaxTableFilesSize = 1024L * 1024 * 1024;
+    private long memTableLookahead = 0;
+    private long blockCacheSize = 0;
+    private long writeBufferSize = 0;
+    private int maxWriteBufferNumber = 0;
+    private long dbWriteBufferSize = 0;
+    private CompressionType compressionType;
+    private int backgroundThreads = 0;
+    private long deleteCompactionThreshold = 0;
+    /* built once, guarded by this */
+    private BlockBasedTableConfig tableFormatConfig;
+
+    /**
+     * Compaction style of the queue ColumnFamily, {@code null} to keep the
+     * default one.
+     * 
+     * @return
+     */
+    public CompactionStyle getQueueCompactionStyle() {
+        return queueCompactionStyle;
+    }
+
+    /**
+     * Compaction style of the queue ColumnFamily.
+     * 
+     * <p>
+     * {@link CompactionStyle#UNIVERSAL} rewrites fewer times than
+     * {@link CompactionStyle#LEVEL} and drops tombstones sooner for
+     * append/delete workloads. {@link CompactionStyle#FIFO} never rewrites:
+     * it deletes the oldest files once the ColumnFamily exceeds
+     * {@link #getFifoMaxTableFilesSize()}, <strong>including messages that
+     * have not been taken yet</strong>; use it only for queues that may
+     * drop their oldest messages.
+     * </p>
+     * 
+     * @param queueCompactionStyle
+     * @return
+     */
+    public RocksDbOptionsProfile setQueueCompactionStyle(CompactionStyle queueCompactionStyle) {
+        this.queueCompactionStyle = queueCompactionStyle;
+        return this;
+    }
+
+    /**
+     * Max total size (in bytes) of the queue ColumnFamily's files, used with
+     * {@link CompactionStyle#FIFO} only.
+     * 
+     * @return
+     */
+    public long getFifoMaxTableFilesSize() {
+        return fifoMaxTableFilesSize;
+    }
+
+    /**
+     * Max total size (in bytes) of the queue ColumnFamily's files with
+     * {@link CompactionStyle#FIFO} (default {@code 1GB}).
+     * 
+     * @param fifoMaxTableFilesSize
+     * @return
+     */
+    public RocksDbOptionsProfile setFifoMaxTableFilesSize(long fifoMaxTableFilesSize) {
+        this.fifoMaxTableFilesSize = fifoMaxTableFilesSize;
+        return this;
+    }
+
+    /**
+     * Look-ahead of the skip-list memtable, {@code 0} to keep the default
+     * memtable.
+     * 
+     * @return
+     */
+    public long getMemTableLookahead() {
+        return memTableLookahead;
+    }
+
+    /**
+     * Look-ahead of the skip-list memtable: inserts in key order (queue
+     * messages) start searching from the last insert position instead of
+     * from the top of the list.
+     * 
+     * @param memTableLookahead
+     * @return
+     */
+    public RocksDbOptionsProfile setMemTableLookahead(long memTableLookahead) {
+        this.memTableLookahead = memTableLookahead;
+        return this;
+    }
+
+    /**
+     * Size (in bytes) of the block cache.
+     * 
+     * @return
+     */
+    public long getBlockCacheSize() {
+        return blockCacheSize;
+    }
+
+    /**
+     * Size (in bytes) of the block cache.
+     * 
+     * @param blockCacheSize
+     * @return
+     */
+    public RocksDbOptionsProfile setBlockCacheSize(long blockCacheSize) {
+        synchronized (this) {
+            this.blockCacheSize = blockCacheSize;
+            tableFormatConfig = null;
+        }
+        return this;
+    }
+
+    /**
+     * Size (in bytes) of a memtable.
+     * 
+     * @return
+     */
+    public long getWriteBufferSize() {
+        return writeBufferSize;
+    }
+
+    /**
+     * Size (in bytes) of a memtable.
+     * 
+     * @param writeBufferSize
+     * @return
+     */
+    public RocksDbOptionsProfile setWriteBufferSize(long writeBufferSize) {
+        this.writeBufferSize = writeBufferSize;
+        return this;
+    }
+
+    /**
+     * Max number of memtables (active and being flushed) of a ColumnFamily.
+     * 
+     * @return
+     */
+    public int getMaxWriteBufferNumber() {
+        return maxWriteBufferNumber;
+    }
+
+    /**
+     * Max number of memtables (active and being flushed) of a ColumnFamily.
+     * 
+     * @param maxWriteBufferNumber
+     * @return
+     */
+    public RocksDbOptionsProfile setMaxWriteBufferNumber(int maxWriteBufferNumber) {
+        this.maxWriteBufferNumber = maxWriteBufferNumber;
+        return this;
+    }
+
+    /**
+     * Max total size (in bytes) of memtables across all ColumnFamilies.
+     * 
+     * @return
+     */
+    public long getDbWriteBufferSize() {
+        return dbWriteBufferSize;
+    }
+
+    /**
+     * Max total size (in bytes) of memtables across all ColumnFamilies, useful
+     * with a {@link RocksDbQueueStore} hosting many queues.
+     * 
+     * @param dbWriteBufferSize
+     * @return
+     */
+    public RocksDbOptionsProfile setDbWriteBufferSize(long dbWriteBufferSize) {
+        this.dbWriteBufferSize = dbWriteBufferSize;
+        return this;
+    }
+
+    /**
+     * Compression of data blocks, {@code null} to keep the default one.
+     * 
+     * @return
+     */
+    public CompressionType getCompressionType() {
+        return compressionType;
+    }
+
+    /**
+     * Compression of data blocks, e.g. {@link CompressionType#LZ4_COMPRESSION}.
+     * 
+     * @param compressionType
+     * @return
+     */
+    public RocksDbOptionsProfile setCompressionType(CompressionType compressionType) {
+        this.compressionType = compressionType;
+        return this;
+    }
+
+    /**
+     * Number of background flush/compaction threads.
+     * 
+     * @return
+     */
+    public int getBackgroundThreads() {
+        return backgroundThreads;
+    }
+
+    /**
+     * Number of background flush/compaction threads.
+     * 
+     * @param backgroundThreads
+     * @return
+     */
+    public RocksDbOptionsProfile setBackgroundThreads(int backgroundThreads) {
+        this.backgroundThreads = backgroundThreads;
+        return this;
+    }
+
+    /**
+     * Number of messages taken from a queue after which its queue
+     * ColumnFamily is compacted in background ({@code 0}: disabled).
+     * 
+     * @return
+     */
+    public long getDeleteCompactionThreshold() {
+        return deleteCompactionThreshold;
+    }
+
+    /**
+     * Number of messages taken from a queue after which its queue
+     * ColumnFamily is compacted in background, to reclaim the tombstones
+     * {@code take} would otherwise have to skip ({@code 0} disables).
+     * 
+     * @param deleteCompactionThreshold
+     * @return
+     */
+    public RocksDbOptionsProfile setDeleteCompactionThreshold(long deleteCompactionThreshold) {
+        this.deleteCompactionThreshold = deleteCompactionThreshold;
+        return this;
+    }
+
+    /*----------------------------------------------------------------------*/
+
+    /**
+     * Build DB options.
+     * 
+     * @return
+     */
+    public DBOptions buildDbOptions() {
+        DBOptions dbOptions = RocksDbUtils.buildDbOptions();
+        dbOptions.setCreateIfMissing(true).setCreateMissingColumnFamilies(true);
+        if (backgroundThreads > 0) {
+            dbOptions.setIncreaseParallelism(backgroundThreads);
+        }
+        if (dbWriteBufferSize > 0) {
+            dbOptions.setDbWriteBufferSize(dbWriteBufferSize);
+        }
+        return dbOptions;
+    }
+
+    /**
+     * Table format of ColumnFamilies, built once and reused by all
+     * ColumnFamily options built by this profile.
+     * 
+     * @return
+     */
+    private synchronized BlockBasedTableConfig tableFormatConfig() {
+        if (tableFormatConfig == null) {
+            tableFormatConfig = new BlockBasedTableConfig().setBlockCacheSize(blockCacheSize);
+        }
+        return tableFormatConfig;
+    }
+
+    /**
+     * Build options of metadata/ephemeral ColumnFamilies.
+     * 
+     * @return
+     */
+    public ColumnFamilyOptions buildColumnFamilyOptions() {
+        ColumnFamilyOptions cfOptions = RocksDbUtils.buildColumnFamilyOptions();
+        if (blockCacheSize > 0) {
+            cfOptions.setTableFormatConfig(tableFormatConfig());
+        }
+        if (writeBufferSize > 0) {
+            cfOptions.setWriteBufferSize(writeBufferSize);
+        }
+        if (maxWriteBufferNumber > 0) {
+            cfOptions.setMaxWriteBufferNumber(maxWriteBufferNumber);
+        }
+        if (compressionType != null) {
+            cfOptions.setCompressionType(compressionType);
+        }
+        if (memTableLookahead > 0) {
+            cfOptions.setMemTableConfig(
+                    new SkipListMemTableConfig().setLookahead(memTableLookahead));
+        }
+        return cfOptions;
+    }
+
+    /**
+     * Build options of queue ColumnFamilies: a copy of {@code cfOptions}
+     * (built by {@link #buildColumnFamilyOptions()}) with the queue
+     * compaction style. The copy shares the table factory of
+     * {@code cfOptions}, hence its block cache.
+     * 
+     * <p>
+     * Compaction options created for the compaction style are added to
+     * {@code resources}: they are not released with the returned options and
+     * must be closed after them.
+     * </p>
+     * 
+     * @param cfOptions
+     * @param resources
+     * @return
+     */
+    public ColumnFamilyOptions buildQueueColumnFamilyOptions(ColumnFamilyOptions cfOptions,
+            Collection<RocksObject> resources) {
+        ColumnFamilyOptions queueCfOptions = new ColumnFamilyOptions(cfOptions);
+        if (queueCompactionStyle != null) {
+            queueCfOptions.setCompactionStyle(queueCompactionStyle);
+            if (queueCompactionStyle == CompactionStyle.FIFO) {
+                CompactionOptionsFIFO fifo = new CompactionOptionsFIFO()
+                        .setMaxTableFilesSize(fifoMaxTableFilesSize);
+                resources.add(fifo);
+                queueCfOptions.setCompactionOptionsFIFO(fifo);
+            } else if (queueCompactionStyle == CompactionStyle.UNIVERSAL) {
+                CompactionOptionsUniversal universal = new CompactionOptionsUniversal();
+                resources.add(universal);
+                queueCfOptions.setCompactionOptionsUniversal(universal);
+            }
+        }
+        return queueCfOptions;
+    }
+}
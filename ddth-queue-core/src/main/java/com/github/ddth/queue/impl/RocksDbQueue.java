@@ -2,9 +2,19 @@ package com.github.ddth.queue.impl;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Date;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
@@ -52,19 +62,158 @@ public abstract class RocksDbQueue<ID, DATA> extends AbstractEphemeralSupportQue
     public final static String DEFAULT_CFNAME_QUEUE = "queue";
     public final static String DEFAULT_CFNAME_METADATA = "metadata";
     public final static String DEFAULT_CFNAME_EPHEMERAL = "ephemeral";
+    /**
+     * @since 0.7.1.3
+     */
+    public final static String DEFAULT_CFNAME_EPHEMERAL_INDEX = "ephemeral_index";
+
+    /**
+     * Format of keys of the queue storage.
+     * 
+     * @since 0.7.1.3
+     */
+    public static enum KeyFormat {
+        /**
+         * 32-byte lowercase hex string of a 128-bit time-based id (legacy
+         * format).
+         */
+        HEX_128(0),
+
+        /**
+         * 8-byte big-endian sequence number.
+         */
+        SEQUENCE_64(8),
+
+        /**
+         * 16-byte big-endian timestamp (epoch millis) followed by a sequence
+         * number.
+         */
+        TIMESTAMP_SEQUENCE_128(16);
+
+        private final int keyLength;
+
+        KeyFormat(int keyLength) {
+            this.keyLength = keyLength;
+        }
+
+        /**
+         * Key length in bytes ({@code 0} if not binary).
+         * 
+         * @return
+         */
+        public int getKeyLength() {
+            return keyLength;
+        }
+    }
+
+    /**
+     * Sequence numbers are persisted in blocks of this size: after a restart,
+     * the sequence resumes from the end of the last reserved block.
+     */
+    private final static long KEY_SEQUENCE_BLOCK = 1024;
+    /**
+     * Timestamps are persisted in blocks of this length (milliseconds), see
+     * {@link #KEY_SEQUENCE_BLOCK}.
+     */
+    private final static long KEY_TIMESTAMP_BLOCK_MS = 1000;
 
     private byte[] lastFetchedId = null;
+    private KeyFormat keyFormat = KeyFormat.HEX_128;
+    /* guarded by lockPut, or confined to the group-commit writer thread */
+    private long keySequence, keySequenceHighWater, keyTimestamp, keyTimestampHighWater;
     private Lock lockPut = new ReentrantLock(), lockTake = new ReentrantLock();
 
+    /**
+     * Messages waiting to be written by the group-commit writer.
+     */
+    private final static class PendingGroup {
+        private final List<byte[]> values = new ArrayList<>();
+        private final List<byte[]> ephemeralKeysToDelete = new ArrayList<>();
+        private final CompletableFuture<Void> done = new CompletableFuture<>();
+        private long createdNanos;
+    }
+
+    private boolean groupCommit = false;
+    private int groupCommitMaxMessages = 1024;
+    private long groupCommitMaxDelayMicros = 1000;
+    /* guarded by lockPut */
+    private PendingGroup pendingGroup;
+    private final Condition groupCommitSignal = lockPut.newCondition();
+    private volatile boolean groupCommitRunning = false;
+    private Thread groupCommitThread;
+    private WriteBatch batchGroupCommit;
+
+    /**
+     * A counter persisted in the metadata ColumnFamily. Each counter only
+     * grows and is only updated by holders of one lock, so that the value
+     * written in a batch is always the latest one.
+     */
+    private final static class PersistentCounter {
+        private final byte[] key;
+        private final AtomicLong value = new AtomicLong();
+        private long staged;
+
+        PersistentCounter(String key) {
+            this.key = key.getBytes(QueueUtils.UTF8);
+        }
+
+        long get() {
+            return value.get();
+        }
+
+        /**
+         * Adds the counter's new value to a batch.
+         */
+        void stage(WriteBatch batch, ColumnFamilyHandle cf, long delta) throws RocksDBException {
+            staged = value.get() + delta;
+            if (delta != 0) {
+                batch.put(cf, key, ByteBuffer.allocate(8).putLong(staged).array());
+            }
+        }
+
+        /**
+         * Applies the staged value, once the batch has been written.
+         */
+        void commit() {
+            value.set(staged);
+        }
+    }
+
+    /* messages written to queue storage, guarded by lockPut (or the group-commit writer) */
+    private final PersistentCounter counterQueueIn = new PersistentCounter("counter-queue-in");
+    /* messages removed from queue storage, guarded by lockTake */
+    private final PersistentCounter counterQueueOut = new PersistentCounter("counter-queue-out");
+    /* messages added to ephemeral storage (not replaced), guarded by lockTake and lockEphemeral */
+    private final PersistentCounter counterEphemeralIn //
+            = new PersistentCounter("counter-ephemeral-in");
+    /* messages removed from ephemeral storage, guarded by lockEphemeral */
+    private final PersistentCounter counterEphemeralOut //
+            = new PersistentCounter("counter-ephemeral-out");
+    private final Lock lockEphemeral = new ReentrantLock();
+    private WriteBatch batchFinish;
+
+    private int prefetchSize = 0;
+    /* messages already moved to ephemeral storage, not yet handed out */
+    private final ConcurrentLinkedQueue<IQueueMessage<ID, DATA>> prefetchBuffer //
+            = new ConcurrentLinkedQueue<>();
+
     private String storageDir = DEFAULT_STORAGE_DIR + "/" + System.currentTimeMillis();
     private String cfNameQueue = DEFAULT_CFNAME_QUEUE, cfNameMetadata = DEFAULT_CFNAME_METADATA,
-            cfNameEphemeral = DEFAULT_CFNAME_EPHEMERAL;
+            cfNameEphemeral = DEFAULT_CFNAME_EPHEMERAL,
+            cfNameEphemeralIndex = DEFAULT_CFNAME_EPHEMERAL_INDEX;
     private DBOptions dbOptions;
     private ReadOptions readOptions;
     private WriteOptions writeOptions;
     private RocksDbWrapper rocksDbWrapper;
+    private RocksDbQueueStore store, ownStore;
+    private RocksDbOptionsProfile optionsProfile;
+    private long deleteCompactionThreshold = 0;
+    private final AtomicLong deletesSinceCompaction = new AtomicLong();
+    private final AtomicBoolean compacting = new AtomicBoolean(false);
+    private volatile Thread compactionThread;
+    private RocksDB rocksDb;
     private WriteBatch batchPutToQueue, batchTake;
-    private ColumnFamilyHandle cfQueue, cfMetadata, cfEphemeral;
+    private ColumnFamilyHandle cfQueue, cfMetadata, cfEphemeral, cfEphemeralIndex;
     private RocksIterator itQueue, itEphemeral;
 
     /**
@@ -153,6 +302,260 @@ public abstract class RocksDbQueue<ID, DATA> extends AbstractEphemeralSupportQue
         return this;
     }
 
+    /**
+     * Name of the ColumnFamily to index ephemeral messages by queue
+     * timestamp.
+     * 
+     * @return
+     * @since 0.7.1.3
+     */
+    public String getCfNameEphemeralIndex() {
+        return cfNameEphemeralIndex;
+    }
+
+    /**
+     * Sets name of the ColumnFamily to index ephemeral messages by queue
+     * timestamp.
+     * 
+     * <p>
+     * Each ephemeral message has an entry keyed by {@code (queue timestamp,
+     * message id)} in this ColumnFamily, written and deleted in the same
+     * {@link WriteBatch} as the message itself, so that
+     * {@link #getOrphanMessages(long)} only scans entries that have expired.
+     * </p>
+     * 
+     * @param cfNameEphemeralIndex
+     * @return
+     * @since 0.7.1.3
+     */
+    public RocksDbQueue<ID, DATA> setCfNameEphemeralIndex(String cfNameEphemeralIndex) {
+        this.cfNameEphemeralIndex = cfNameEphemeralIndex;
+        return this;
+    }
+
+    /**
+     * Shared store this queue lives in, {@code null} if the queue has its own
+     * RocksDB instance (default).
+     * 
+     * @return
+     * @since 0.7.1.3
+     */
+    public RocksDbQueueStore getStore() {
+        return store;
+    }
+
+    /**
+     * Makes this queue live in a shared store (must be initialized before this
+     * queue), in the ColumnFamilies named by {@link #getCfNameQueue()},
+     * {@link #getCfNameMetadata()}, {@link #getCfNameEphemeral()} and
+     * {@link #getCfNameEphemeralIndex()}: queues sharing a store must use
+     * distinct names. {@link #getStorageDir()} is not used in this mode.
+     * 
+     * @param store
+     * @return
+     * @since 0.7.1.3
+     */
+    public RocksDbQueue<ID, DATA> setStore(RocksDbQueueStore store) {
+        this.store = store;
+        return this;
+    }
+
+    /**
+     * RocksDB options profile, {@code null} means RocksDB options of
+     * {@code RocksDbUtils} (default).
+     * 
+     * @return
+     * @since 0.7.1.3
+     */
+    public RocksDbOptionsProfile getOptionsProfile() {
+        return optionsProfile;
+    }
+
+    /**
+     * Sets RocksDB options profile. Must be set before {@link #init()}.
+     * 
+     * <p>
+     * For a queue in a shared store (see {@link #setStore(RocksDbQueueStore)}),
+     * RocksDB options are those of the store's profile; only
+     * {@link RocksDbOptionsProfile#getDeleteCompactionThreshold()} of this
+     * profile (or of the store's one, if not set) is used.
+     * </p>
+     * 
+     * @param optionsProfile
+     * @return
+     * @since 0.7.1.3
+     */
+    public RocksDbQueue<ID, DATA> setOptionsProfile(RocksDbOptionsProfile optionsProfile) {
+        this.optionsProfile = optionsProfile;
+        return this;
+    }
+
+    /**
+     * Format of keys of the queue storage (default {@link KeyFormat#HEX_128}).
+     * 
+     * @return
+     * @since 0.7.1.3
+     */
+    public KeyFormat getKeyFormat() {
+        return keyFormat;
+    }
+
+    /**
+     * Format of keys of the queue storage.
+     * 
+     * <p>
+     * Binary formats ({@link KeyFormat#SEQUENCE_64},
+     * {@link KeyFormat#TIMESTAMP_SEQUENCE_128}) keep the insertion order with
+     * 4x/2x smaller keys than {@link KeyFormat#HEX_128}, which means smaller
+     * SST files and cheaper key comparisons; a key is generated by
+     * incrementing a counter instead of generating an id. The sequence is
+     * persisted (in blocks) in the metadata ColumnFamily.
+     * </p>
+     * 
+     * <p>
+     * Switching the format of an existing storage: remaining messages are not
+     * lost, but messages with keys of the former format are taken after
+     * (binary) or before (hex) the ones with keys of the new format.
+     * </p>
+     * 
+     * @param keyFormat
+     * @return
+     * @since 0.7.1.3
+     */
+    public RocksDbQueue<ID, DATA> setKeyFormat(KeyFormat keyFormat) {
+        this.keyFormat = keyFormat != null ? keyFormat : KeyFormat.HEX_128;
+        return this;
+    }
+
+    /**
+     * Is group-commit mode enabled (default {@code false})?
+     * 
+     * @return
+     * @since 0.7.1.3
+     */
+    public boolean isGroupCommit() {
+        return groupCommit;
+    }
+
+    /**
+     * Enable/Disable group-commit mode. Must be set before {@link #init()}.
+     * 
+     * <p>
+     * In group-commit mode, concurrent {@code queue}/{@code requeue} calls
+     * append their messages to a shared pending group; a single writer thread
+     * writes the group in one {@link WriteBatch} (one WAL write/sync) when it
+     * has {@link #getGroupCommitMaxMessages()} messages or its oldest message
+     * has waited {@link #getGroupCommitMaxDelayMicros()} microseconds. Each
+     * caller returns once the group containing its message has been written,
+     * so durability is the same as without group commit (see
+     * {@link WriteOptions#setSync(boolean)}), with far fewer WAL syncs under
+     * concurrent producers.
+     * </p>
+     * 
+     * @param groupCommit
+     * @return
+     * @since 0.7.1.3
+     */
+    public RocksDbQueue<ID, DATA> setGroupCommit(boolean groupCommit) {
+        this.groupCommit = groupCommit;
+        return this;
+    }
+
+    /**
+     * Max number of messages of a group in group-commit mode (default
+     * {@code 1024}).
+     * 
+     * @return
+     * @since 0.7.1.3
+     */
+    public int getGroupCommitMaxMessages() {
+        return groupCommitMaxMessages;
+    }
+
+    /**
+     * Max number of messages of a group in group-commit mode: a group is
+     * written as soon as it is full.
+     * 
+     * @param groupCommitMaxMessages
+     * @return
+     * @since 0.7.1.3
+     */
+    public RocksDbQueue<ID, DATA> setGroupCommitMaxMessages(int groupCommitMaxMessages) {
+        this.groupCommitMaxMessages = Math.max(1, groupCommitMaxMessages);
+        return this;
+    }
+
+    /**
+     * Max time (in microseconds) a message waits for its group to fill up in
+     * group-commit mode (default {@code 1000}).
+     * 
+     * @return
+     * @since 0.7.1.3
+     */
+    public long getGroupCommitMaxDelayMicros() {
+        return groupCommitMaxDelayMicros;
+    }
+
+    /**
+     * Max time (in microseconds) a message waits for its group to fill up in
+     * group-commit mode. With {@code 0}, a group is written as soon as the
+     * writer is free: messages queued while the previous group is being
+     * written still form the next group.
+     * 
+     * @param groupCommitMaxDelayMicros
+     * @return
+     * @since 0.7.1.3
+     */
+    public RocksDbQueue<ID, DATA> setGroupCommitMaxDelayMicros(long groupCommitMaxDelayMicros) {
+        this.groupCommitMaxDelayMicros = Math.max(0, groupCommitMaxDelayMicros);
+        return this;
+    }
+
+    /**
+     * Number of messages a consumer reads ahead in prefetch mode ({@code 0}
+     * means prefetch mode is disabled, default).
+     * 
+     * @return
+     * @since 0.7.1.3
+     */
+    public int getPrefetchSize() {
+        return prefetchSize;
+    }
+
+    /**
+     * Enable prefetch mode by setting a value greater than {@code 0}. Must be
+     * set before {@link #init()}.
+     * 
+     * <p>
+     * In prefetch mode, {@code take} hands out messages from an in-memory
+     * buffer without locking. When the buffer is empty, one consumer reads up
+     * to {@code prefetchSize} messages from the queue's iterator, which stays
+     * positioned at the head of the queue between reads (it is only re-seeked
+     * once it has reached the end), and moves them to ephemeral storage in one
+     * {@link WriteBatch}, together with the last-fetched-id.
+     * </p>
+     * 
+     * <p>
+     * Notes:
+     * <ul>
+     * <li>Prefetched messages count toward ephemeral storage's size (and
+     * {@link #getEphemeralMaxSize()}) as soon as they are read.</li>
+     * <li>Buffered messages are put back to queue storage by
+     * {@link #destroy()}. If the process crashes, they are found in
+     * ephemeral storage (see {@link #getOrphanMessages(long)}), or are lost if
+     * ephemeral storage is disabled.</li>
+     * </ul>
+     * </p>
+     * 
+     * @param prefetchSize
+     * @return
+     * @since 0.7.1.3
+     */
+    public RocksDbQueue<ID, DATA> setPrefetchSize(int prefetchSize) {
+        this.prefetchSize = Math.max(0, prefetchSize);
+        return this;
+    }
+
     /*----------------------------------------------------------------------*/
 
     /**
@@ -162,31 +565,73 @@ public abstract class RocksDbQueue<ID, DATA> extends AbstractEphemeralSupportQue
      * @throws Exception
      */
     public RocksDbQueue<ID, DATA> init() throws Exception {
-        File STORAGE_DIR = new File(storageDir);
-        LOGGER.info("Storage Directory: " + STORAGE_DIR.getAbsolutePath());
-        try {
-            FileUtils.forceMkdir(STORAGE_DIR);
-        } catch (IOException e) {
-            throw new RuntimeException(e);
+        File STORAGE_DIR = store == null && optionsProfile == null ? new File(storageDir) : null;
+        if (STORAGE_DIR != null) {
+            LOGGER.info("Storage Directory: " + STORAGE_DIR.getAbsolutePath());
+            try {
+                FileUtils.forceMkdir(STORAGE_DIR);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
         }
 
         try {
             batchPutToQueue = new WriteBatch();
             batchTake = new WriteBatch();
+            batchFinish = new WriteBatch();
 
-            dbOptions = RocksDbUtils.buildDbOptions();
-            rocksDbWrapper = RocksDbWrapper.openReadWrite(STORAGE_DIR, dbOptions, null, null,
-                    new String[] { cfNameEphemeral, cfNameMetadata, cfNameQueue });
-            readOptions = rocksDbWrapper.getReadOptions();
-            writeOptions = rocksDbWrapper.getWriteOptions();
+            if (store == null && optionsProfile != null) {
+                // per-ColumnFamily options: open through a store of our own
+                ownStore = new RocksDbQueueStore().setStorageDir(storageDir)
+                        .setOptionsProfile(optionsProfile)
+                        .setQueueColumnFamilyMatcher(cfNameQueue::equals).init();
+            }
+            RocksDbQueueStore store = this.store != null ? this.store : ownStore;
+            RocksDbOptionsProfile profile = optionsProfile != null ? optionsProfile
+                    : store != null ? store.getOptionsProfile() : null;
+            deleteCompactionThreshold = profile != null ? profile.getDeleteCompactionThreshold()
+                    : 0;
+            if (store == null) {
+                dbOptions = RocksDbUtils.buildDbOptions();
+                rocksDbWrapper = RocksDbWrapper.openReadWrite(STORAGE_DIR, dbOptions, null, null,
+                        new String[] { cfNameEphemeral, cfNameEphemeralIndex, cfNameMetadata,
+                                cfNameQueue });
+                rocksDb = rocksDbWrapper.getRocksDb();
+                readOptions = rocksDbWrapper.getReadOptions();
+                writeOptions = rocksDbWrapper.getWriteOptions();
+
+                cfEphemeral = rocksDbWrapper.getColumnFamilyHandle(cfNameEphemeral);
+                cfEphemeralIndex = rocksDbWrapper.getColumnFamilyHandle(cfNameEphemeralIndex);
+                cfMetadata = rocksDbWrapper.getColumnFamilyHandle(cfNameMetadata);
+                cfQueue = rocksDbWrapper.getColumnFamilyHandle(cfNameQueue);
+            } else {
+                ColumnFamilyHandle[] handles = store.acquireColumnFamilies(cfNameEphemeral,
+                        cfNameEphemeralIndex, cfNameMetadata, cfNameQueue);
+                rocksDb = store.getRocksDb();
+                readOptions = store.getReadOptions();
+                writeOptions = store.getWriteOptions();
 
-            cfEphemeral = rocksDbWrapper.getColumnFamilyHandle(cfNameEphemeral);
-            cfMetadata = rocksDbWrapper.getColumnFamilyHandle(cfNameMetadata);
-            cfQueue = rocksDbWrapper.getColumnFamilyHandle(cfNameQueue);
+                cfEphemeral = handles[0];
+                cfEphemeralIndex = handles[1];
+                cfMetadata = handles[2];
+                cfQueue = handles[3];
+            }
 
-            itQueue = rocksDbWrapper.getIterator(cfNameQueue);
-            itEphemeral = rocksDbWrapper.getIterator(cfNameEphemeral);
+            itQueue = rocksDb.newIterator(cfQueue, readOptions);
+            itEphemeral = rocksDb.newIterator(cfEphemeral, readOptions);
             lastFetchedId = loadLastFetchedId();
+            initKeySequence();
+            initCounters();
+            initEphemeralIndex();
+
+            if (groupCommit) {
+                batchGroupCommit = new WriteBatch();
+                groupCommitRunning = true;
+                groupCommitThread = new Thread(this::runGroupCommitWriter,
+                        getClass().getSimpleName() + "-group-commit");
+                groupCommitThread.setDaemon(true);
+                groupCommitThread.start();
+            }
         } catch (Exception e) {
             destroy();
             throw e instanceof RuntimeException ? (RuntimeException) e : new RuntimeException(e);
@@ -201,6 +646,24 @@ public abstract class RocksDbQueue<ID, DATA> extends AbstractEphemeralSupportQue
      * Destroy method.
      */
     public void destroy() {
+        try {
+            returnPrefetchedMessages();
+        } catch (Exception e) {
+            LOGGER.error(e.getMessage(), e);
+        }
+        try {
+            Thread compactionThread = this.compactionThread;
+            if (compactionThread != null) {
+                compactionThread.join();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            stopGroupCommitWriter();
+        } catch (Exception e) {
+            LOGGER.error(e.getMessage(), e);
+        }
         try {
             super.destroy();
         } finally {
@@ -210,12 +673,25 @@ public abstract class RocksDbQueue<ID, DATA> extends AbstractEphemeralSupportQue
                 LOGGER.error(e.getMessage(), e);
             }
 
-            RocksDbUtils.closeRocksObjects(batchPutToQueue, batchTake, dbOptions);
+            RocksDbUtils.closeRocksObjects(itQueue, itEphemeral, batchPutToQueue, batchTake,
+                    batchFinish, batchGroupCommit, dbOptions);
 
-            try {
-                rocksDbWrapper.close();
-            } catch (Exception e) {
-                LOGGER.error(e.getMessage(), e);
+            RocksDbQueueStore store = this.store != null ? this.store : ownStore;
+            if (store != null) {
+                if (cfQueue != null) {
+                    store.releaseColumnFamilies(cfNameEphemeral, cfNameEphemeralIndex,
+                            cfNameMetadata, cfNameQueue);
+                }
+                if (ownStore != null) {
+                    ownStore.destroy();
+                    ownStore = null;
+                }
+            } else if (rocksDbWrapper != null) {
+                try {
+                    rocksDbWrapper.close();
+                } catch (Exception e) {
+                    LOGGER.error(e.getMessage(), e);
+                }
             }
         }
     }
@@ -231,9 +707,8 @@ public abstract class RocksDbQueue<ID, DATA> extends AbstractEphemeralSupportQue
      * @return
      * @since 0.4.0.1
      */
-    private byte[] loadLastFetchedId() {
-        // return rocksDbWrapper.get(cfMetadata, readOptions, keyLastFetchedId);
-        return rocksDbWrapper.get(cfNameMetadata, readOptions, keyLastFetchedId);
+    private byte[] loadLastFetchedId() throws RocksDBException {
+        return rocksDb.get(cfMetadata, readOptions, keyLastFetchedIdBytes);
     }
 
     /**
@@ -242,28 +717,492 @@ public abstract class RocksDbQueue<ID, DATA> extends AbstractEphemeralSupportQue
      * @param lastFetchedId
      * @since 0.4.0.1
      */
-    private void saveLastFetchedId(byte[] lastFetchedId) {
-        if (lastFetchedId != null) {
-            rocksDbWrapper.put(cfNameMetadata, writeOptions, keyLastFetchedId, lastFetchedId);
+    private void saveLastFetchedId(byte[] lastFetchedId) throws RocksDBException {
+        if (lastFetchedId != null && rocksDb != null) {
+            rocksDb.put(cfMetadata, writeOptions, keyLastFetchedIdBytes, lastFetchedId);
+        }
+    }
+
+    private final static String keyKeySequence = "key-sequence";
+    private final static byte[] keyKeySequenceBytes = keyKeySequence.getBytes(QueueUtils.UTF8);
+
+    /**
+     * Restores the key sequence of binary key formats.
+     * 
+     * @since 0.7.1.3
+     */
+    private void initKeySequence() throws RocksDBException {
+        int keyLength = keyFormat.getKeyLength();
+        if (keyLength == 0) {
+            return;
+        }
+        if (lastFetchedId != null && lastFetchedId.length != keyLength) {
+            // last-fetched-id of another key format: start from the first key
+            // so that messages with keys of the new format are not skipped
+            lastFetchedId = null;
+        }
+        byte[] data = rocksDb.get(cfMetadata, readOptions, keyKeySequenceBytes);
+        ByteBuffer buff = data != null && data.length == 16 ? ByteBuffer.wrap(data) : null;
+        keyTimestampHighWater = keyTimestamp = buff != null ? buff.getLong() : 0;
+        keySequenceHighWater = keySequence = buff != null ? buff.getLong() : 0;
+    }
+
+    /**
+     * Generates the next queue key. Must be called while holding
+     * {@link #lockPut}, or by the group-commit writer (keys must be written
+     * in the order they are generated, see {@link #take()}); the key sequence
+     * is persisted through {@code batch} if needed.
+     * 
+     * @param batch
+     * @return
+     * @since 0.7.1.3
+     */
+    private byte[] nextQueueKey(WriteBatch batch) throws RocksDBException {
+        if (keyFormat == KeyFormat.HEX_128) {
+            return QueueUtils.IDGEN.generateId128Hex().toLowerCase().getBytes(QueueUtils.UTF8);
+        }
+        long sequence = keySequence++;
+        boolean persist = false;
+        if (sequence >= keySequenceHighWater) {
+            keySequenceHighWater = sequence + KEY_SEQUENCE_BLOCK;
+            persist = true;
+        }
+        if (keyFormat == KeyFormat.SEQUENCE_64) {
+            if (persist) {
+                persistKeySequence(batch);
+            }
+            return ByteBuffer.allocate(8).putLong(sequence).array();
+        }
+        // timestamp never goes back, even if the clock does
+        long timestamp = Math.max(System.currentTimeMillis(), keyTimestamp);
+        keyTimestamp = timestamp;
+        if (timestamp > keyTimestampHighWater) {
+            keyTimestampHighWater = timestamp + KEY_TIMESTAMP_BLOCK_MS;
+            persist = true;
+        }
+        if (persist) {
+            persistKeySequence(batch);
+        }
+        return ByteBuffer.allocate(16).putLong(timestamp).putLong(sequence).array();
+    }
+
+    private void persistKeySequence(WriteBatch batch) throws RocksDBException {
+        byte[] value = ByteBuffer.allocate(16).putLong(keyTimestampHighWater)
+                .putLong(keySequenceHighWater).array();
+        batch.put(cfMetadata, keyKeySequenceBytes, value);
+    }
+
+    /**
+     * Loads the size counters. Storage created by an older version has no
+     * counters: they are initialized by counting queue and ephemeral
+     * messages once.
+     * 
+     * @throws RocksDBException
+     * @since 0.7.1.3
+     */
+    private void initCounters() throws RocksDBException {
+        PersistentCounter[] counters = { counterQueueIn, counterQueueOut, counterEphemeralIn,
+                counterEphemeralOut };
+        boolean missing = false;
+        for (PersistentCounter counter : counters) {
+            byte[] data = rocksDb.get(cfMetadata, readOptions, counter.key);
+            if (data != null && data.length == 8) {
+                counter.value.set(ByteBuffer.wrap(data).getLong());
+            } else {
+                missing = true;
+            }
+        }
+        if (missing) {
+            long[] values = { countKeys(itQueue), 0, countKeys(itEphemeral), 0 };
+            try {
+                for (int i = 0; i < counters.length; i++) {
+                    batchTake.put(cfMetadata, counters[i].key,
+                            ByteBuffer.allocate(8).putLong(values[i]).array());
+                }
+                rocksDb.write(writeOptions, batchTake);
+            } finally {
+                batchTake.clear();
+            }
+            for (int i = 0; i < counters.length; i++) {
+                counters[i].value.set(values[i]);
+            }
+        }
+    }
+
+    private static long countKeys(RocksIterator it) {
+        long count = 0;
+        for (it.seekToFirst(); it.isValid(); it.next()) {
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Builds the key of a message's entry in the ephemeral index: 8-byte
+     * queue timestamp (sign bit flipped, so that keys sort by timestamp)
+     * followed by the message's ephemeral key.
+     * 
+     * @param queueTimestamp
+     * @param ephemeralKey
+     * @return
+     * @since 0.7.1.3
+     */
+    private static byte[] ephemeralIndexKey(long queueTimestamp, byte[] ephemeralKey) {
+        return ByteBuffer.allocate(8 + ephemeralKey.length)
+                .putLong(queueTimestamp ^ Long.MIN_VALUE).put(ephemeralKey).array();
+    }
+
+    private final static byte[] EMPTY_VALUE = new byte[0];
+
+    private final static String keyEphemeralIndexBuilt = "ephemeral-index-built";
+    private final static byte[] keyEphemeralIndexBuiltBytes = keyEphemeralIndexBuilt
+            .getBytes(QueueUtils.UTF8);
+
+    /**
+     * Builds the ephemeral index from ephemeral storage, if it has not been
+     * built yet (storage created by an older version).
+     * 
+     * @throws RocksDBException
+     * @since 0.7.1.3
+     */
+    private void initEphemeralIndex() throws RocksDBException {
+        if (rocksDb.get(cfMetadata, readOptions, keyEphemeralIndexBuiltBytes) != null) {
+            return;
+        }
+        try {
+            for (itEphemeral.seekToFirst(); itEphemeral.isValid(); itEphemeral.next()) {
+                IQueueMessage<ID, DATA> msg = deserialize(itEphemeral.value());
+                if (msg != null) {
+                    batchTake.put(cfEphemeralIndex,
+                            ephemeralIndexKey(msg.getQueueTimestampMillis(), itEphemeral.key()),
+                            EMPTY_VALUE);
+                }
+                if (batchTake.count() >= 1024) {
+                    rocksDb.write(writeOptions, batchTake);
+                    batchTake.clear();
+                }
+            }
+            batchTake.put(cfMetadata, keyEphemeralIndexBuiltBytes, EMPTY_VALUE);
+            rocksDb.write(writeOptions, batchTake);
+        } finally {
+            batchTake.clear();
+        }
+    }
+
+    /**
+     * Adds a message to ephemeral storage (and its index) in a batch. Must be
+     * called while holding {@link #lockEphemeral}.
+     * 
+     * @param batch
+     * @param msg
+     * @param value
+     * @param keysInBatch
+     *            ephemeral keys already added to the batch, or {@code null}
+     *            if the batch holds no other ephemeral message
+     * @return {@code true} if the message is new to ephemeral storage,
+     *         {@code false} if it replaces a message with the same id
+     * @since 0.7.1.3
+     */
+    private boolean putToEphemeral(WriteBatch batch, IQueueMessage<ID, DATA> msg, byte[] value,
+            Set<ByteBuffer> keysInBatch) throws RocksDBException {
+        byte[] key = msg.getId().toString().getBytes(QueueUtils.UTF8);
+        boolean isNew = (keysInBatch == null || keysInBatch.add(ByteBuffer.wrap(key)))
+                && rocksDb.get(cfEphemeral, readOptions, key, EMPTY_VALUE) == RocksDB.NOT_FOUND;
+        batch.put(cfEphemeral, key, value);
+        batch.put(cfEphemeralIndex, ephemeralIndexKey(msg.getQueueTimestampMillis(), key),
+                EMPTY_VALUE);
+        return isNew;
+    }
+
+    /**
+     * Adds deletion of an ephemeral message (and its index entry) to a batch,
+     * if the message exists. Must be called while holding
+     * {@link #lockEphemeral}.
+     * 
+     * @param batch
+     * @param key
+     * @param queueTimestamp
+     *            queue timestamp of the message, or
+     *            {@link IQueueMessage#NO_TIMESTAMP} to read it from the
+     *            stored message
+     * @return {@code true} if the message exists
+     * @throws RocksDBException
+     * @since 0.7.1.3
+     */
+    private boolean deleteFromEphemeral(WriteBatch batch, byte[] key, long queueTimestamp)
+            throws RocksDBException {
+        byte[] value = rocksDb.get(cfEphemeral, readOptions, key);
+        if (value == null) {
+            return false;
+        }
+        batch.delete(cfEphemeral, key);
+        if (queueTimestamp == IQueueMessage.NO_TIMESTAMP) {
+            IQueueMessage<ID, DATA> msg = deserialize(value);
+            queueTimestamp = msg != null ? msg.getQueueTimestampMillis() : queueTimestamp;
+        }
+        if (queueTimestamp != IQueueMessage.NO_TIMESTAMP) {
+            // an index entry left behind (e.g. timestamp changed by the
+            // caller) is dropped by the next orphan scan
+            batch.delete(cfEphemeralIndex, ephemeralIndexKey(queueTimestamp, key));
+        }
+        return true;
+    }
+
+    /**
+     * Adds deletions of existing ephemeral messages to a batch. Must be called
+     * while holding {@link #lockEphemeral}.
+     * 
+     * @param batch
+     * @param keys
+     * @return number of messages to be deleted
+     * @throws RocksDBException
+     * @since 0.7.1.3
+     */
+    private int deleteFromEphemeral(WriteBatch batch, Collection<byte[]> keys)
+            throws RocksDBException {
+        int count = 0;
+        Set<ByteBuffer> deleted = keys.size() > 1 ? new HashSet<>() : null;
+        for (byte[] key : keys) {
+            if ((deleted == null || deleted.add(ByteBuffer.wrap(key)))
+                    && deleteFromEphemeral(batch, key, IQueueMessage.NO_TIMESTAMP)) {
+                count++;
+            }
         }
+        return count;
+    }
+
+    /**
+     * The batch that may have persisted the key sequence has not been
+     * written: force the next key to persist it again.
+     * 
+     * @since 0.7.1.3
+     */
+    private void discardKeySequenceHighWater() {
+        keySequenceHighWater = keySequence;
+        keyTimestampHighWater = 0;
+    }
+
+    /*----------------------------------------------------------------------*/
+
+    /**
+     * Appends messages to the pending group and waits until the group has
+     * been written.
+     * 
+     * @param values
+     * @param ephemeralKeyToDelete
+     * @throws RocksDBException
+     * @since 0.7.1.3
+     */
+    private void groupCommit(Collection<byte[]> values, byte[] ephemeralKeyToDelete)
+            throws RocksDBException {
+        PendingGroup group;
+        lockPut.lock();
+        try {
+            if (!groupCommitRunning) {
+                throw new QueueException("Group-commit writer is not running.");
+            }
+            group = pendingGroup;
+            if (group == null) {
+                group = pendingGroup = new PendingGroup();
+                group.createdNanos = System.nanoTime();
+                groupCommitSignal.signal();
+            }
+            group.values.addAll(values);
+            if (ephemeralKeyToDelete != null) {
+                group.ephemeralKeysToDelete.add(ephemeralKeyToDelete);
+            }
+            if (group.values.size() >= groupCommitMaxMessages) {
+                groupCommitSignal.signal();
+            }
+        } finally {
+            lockPut.unlock();
+        }
+        try {
+            group.done.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RocksDBException) {
+                throw (RocksDBException) cause;
+            }
+            throw cause instanceof RuntimeException ? (RuntimeException) cause
+                    : new QueueException(cause);
+        }
+    }
+
+    /**
+     * Waits for the next group to be ready.
+     * 
+     * @return {@code null} if the writer has been stopped and there is no
+     *         pending message
+     * @throws InterruptedException
+     */
+    private PendingGroup awaitPendingGroup() throws InterruptedException {
+        lockPut.lock();
+        try {
+            while (pendingGroup == null) {
+                if (!groupCommitRunning) {
+                    return null;
+                }
+                groupCommitSignal.await();
+            }
+            long deadline = pendingGroup.createdNanos + groupCommitMaxDelayMicros * 1000;
+            while (groupCommitRunning && pendingGroup.values.size() < groupCommitMaxMessages) {
+                long nanos = deadline - System.nanoTime();
+                if (nanos <= 0) {
+                    break;
+                }
+                groupCommitSignal.awaitNanos(nanos);
+            }
+            PendingGroup group = pendingGroup;
+            pendingGroup = null;
+            return group;
+        } finally {
+            lockPut.unlock();
+        }
+    }
+
+    private void runGroupCommitWriter() {
+        try {
+            PendingGroup group;
+            while ((group = awaitPendingGroup()) != null) {
+                boolean written = false;
+                boolean deleteFromEphemeral = !group.ephemeralKeysToDelete.isEmpty();
+                if (deleteFromEphemeral) {
+                    lockEphemeral.lock();
+                }
+                try {
+                    for (byte[] value : group.values) {
+                        batchGroupCommit.put(cfQueue, nextQueueKey(batchGroupCommit), value);
+                    }
+                    counterQueueIn.stage(batchGroupCommit, cfMetadata, group.values.size());
+                    if (deleteFromEphemeral) {
+                        counterEphemeralOut.stage(batchGroupCommit, cfMetadata,
+                                deleteFromEphemeral(batchGroupCommit,
+                                        group.ephemeralKeysToDelete));
+                    }
+                    rocksDb.write(writeOptions, batchGroupCommit);
+                    written = true;
+                    counterQueueIn.commit();
+                    if (deleteFromEphemeral) {
+                        counterEphemeralOut.commit();
+                    }
+                    group.done.complete(null);
+                } catch (Throwable e) {
+                    group.done.completeExceptionally(e);
+                } finally {
+                    batchGroupCommit.clear();
+                    if (!written) {
+                        discardKeySequenceHighWater();
+                    }
+                    if (deleteFromEphemeral) {
+                        lockEphemeral.unlock();
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Stops the group-commit writer, after pending messages have been written.
+     * 
+     * @throws InterruptedException
+     * @since 0.7.1.3
+     */
+    private void stopGroupCommitWriter() throws InterruptedException {
+        if (groupCommitThread == null) {
+            return;
+        }
+        lockPut.lock();
+        try {
+            groupCommitRunning = false;
+            groupCommitSignal.signalAll();
+        } finally {
+            lockPut.unlock();
+        }
+        groupCommitThread.join();
+        groupCommitThread = null;
     }
 
     protected boolean putToQueue(IQueueMessage<ID, DATA> msg, boolean removeFromEphemeral)
             throws RocksDBException {
         byte[] value = serialize(msg);
+        byte[] ephemeralKey = removeFromEphemeral && !isEphemeralDisabled()
+                ? msg.getId().toString().getBytes(QueueUtils.UTF8) : null;
+        if (groupCommitThread != null) {
+            groupCommit(Collections.singletonList(value), ephemeralKey);
+            return true;
+        }
         lockPut.lock();
         try {
-            byte[] key = QueueUtils.IDGEN.generateId128Hex().toLowerCase()
-                    .getBytes(QueueUtils.UTF8);
+            if (ephemeralKey != null) {
+                lockEphemeral.lock();
+            }
+            boolean written = false;
             try {
+                byte[] key = nextQueueKey(batchPutToQueue);
                 batchPutToQueue.put(cfQueue, key, value);
-                if (removeFromEphemeral && !isEphemeralDisabled()) {
-                    byte[] _key = msg.getId().toString().getBytes(QueueUtils.UTF8);
-                    batchPutToQueue.delete(cfEphemeral, _key);
+                counterQueueIn.stage(batchPutToQueue, cfMetadata, 1);
+                if (ephemeralKey != null) {
+                    counterEphemeralOut.stage(batchPutToQueue, cfMetadata, deleteFromEphemeral(
+                            batchPutToQueue, Collections.singletonList(ephemeralKey)));
+                }
+                rocksDb.write(writeOptions, batchPutToQueue);
+                written = true;
+                counterQueueIn.commit();
+                if (ephemeralKey != null) {
+                    counterEphemeralOut.commit();
                 }
-                rocksDbWrapper.write(writeOptions, batchPutToQueue);
             } finally {
                 batchPutToQueue.clear();
+                if (!written) {
+                    discardKeySequenceHighWater();
+                }
+                if (ephemeralKey != null) {
+                    lockEphemeral.unlock();
+                }
+            }
+            return true;
+        } finally {
+            lockPut.unlock();
+        }
+    }
+
+    /**
+     * Put a batch of messages to queue storage in one {@link WriteBatch}.
+     * 
+     * @param msgs
+     * @return
+     * @throws RocksDBException
+     * @since 0.7.1.3
+     */
+    protected boolean putToQueue(Collection<IQueueMessage<ID, DATA>> msgs)
+            throws RocksDBException {
+        List<byte[]> values = new ArrayList<>(msgs.size());
+        for (IQueueMessage<ID, DATA> msg : msgs) {
+            values.add(serialize(msg));
+        }
+        if (groupCommitThread != null) {
+            groupCommit(values, null);
+            return true;
+        }
+        lockPut.lock();
+        try {
+            boolean written = false;
+            try {
+                for (byte[] value : values) {
+                    batchPutToQueue.put(cfQueue, nextQueueKey(batchPutToQueue), value);
+                }
+                counterQueueIn.stage(batchPutToQueue, cfMetadata, values.size());
+                rocksDb.write(writeOptions, batchPutToQueue);
+                written = true;
+                counterQueueIn.commit();
+            } finally {
+                batchPutToQueue.clear();
+                if (!written) {
+                    discardKeySequenceHighWater();
+                }
             }
             return true;
         } finally {
@@ -276,9 +1215,9 @@ public abstract class RocksDbQueue<ID, DATA> extends AbstractEphemeralSupportQue
      */
     @Override
     public boolean queue(IQueueMessage<ID, DATA> _msg) {
-        IQueueMessage<ID, DATA> msg = _msg.clone();
-        Date now = new Date();
-        msg.setNumRequeues(0).setQueueTimestamp(now).setTimestamp(now);
+        IQueueMessage<ID, DATA> msg = claimMessage(_msg);
+        long now = System.currentTimeMillis();
+        msg.setNumRequeues(0).setQueueTimestampMillis(now).setTimestampMillis(now);
         try {
             return putToQueue(msg, false);
         } catch (RocksDBException e) {
@@ -286,14 +1225,42 @@ public abstract class RocksDbQueue<ID, DATA> extends AbstractEphemeralSupportQue
         }
     }
 
+    /**
+     * {@inheritDoc}
+     * 
+     * <p>
+     * All messages are written to queue storage in one {@link WriteBatch}.
+     * </p>
+     * 
+     * @since 0.7.1.3
+     */
+    @Override
+    public boolean queueAll(Collection<? extends IQueueMessage<ID, DATA>> _msgs) {
+        if (_msgs == null || _msgs.isEmpty()) {
+            return true;
+        }
+        List<IQueueMessage<ID, DATA>> msgs = new ArrayList<>(_msgs.size());
+        long now = System.currentTimeMillis();
+        for (IQueueMessage<ID, DATA> _msg : _msgs) {
+            IQueueMessage<ID, DATA> msg = claimMessage(_msg);
+            msg.setNumRequeues(0).setQueueTimestampMillis(now).setTimestampMillis(now);
+            msgs.add(msg);
+        }
+        try {
+            return putToQueue(msgs);
+        } catch (RocksDBException e) {
+            throw new QueueException(e);
+        }
+    }
+
     /**
      * {@inheritDoc}
      */
     @Override
     public boolean requeue(IQueueMessage<ID, DATA> _msg) {
-        IQueueMessage<ID, DATA> msg = _msg.clone();
-        Date now = new Date();
-        msg.incNumRequeues().setQueueTimestamp(now);
+        IQueueMessage<ID, DATA> msg = claimMessage(_msg);
+        long now = System.currentTimeMillis();
+        msg.incNumRequeues().setQueueTimestampMillis(now);
         try {
             return putToQueue(msg, true);
         } catch (RocksDBException e) {
@@ -307,7 +1274,7 @@ public abstract class RocksDbQueue<ID, DATA> extends AbstractEphemeralSupportQue
     @Override
     public boolean requeueSilent(IQueueMessage<ID, DATA> msg) {
         try {
-            return putToQueue(msg.clone(), true);
+            return putToQueue(claimMessage(msg), true);
         } catch (RocksDBException e) {
             throw new QueueException(e);
         }
@@ -319,8 +1286,206 @@ public abstract class RocksDbQueue<ID, DATA> extends AbstractEphemeralSupportQue
     @Override
     public void finish(IQueueMessage<ID, DATA> msg) {
         if (!isEphemeralDisabled()) {
-            String key = msg.getId().toString();
-            rocksDbWrapper.delete(cfNameEphemeral, writeOptions, key);
+            byte[] key = msg.getId().toString().getBytes(QueueUtils.UTF8);
+            lockEphemeral.lock();
+            try {
+                if (deleteFromEphemeral(batchFinish, key, msg.getQueueTimestampMillis())) {
+                    counterEphemeralOut.stage(batchFinish, cfMetadata, 1);
+                    rocksDb.write(writeOptions, batchFinish);
+                    counterEphemeralOut.commit();
+                }
+            } catch (RocksDBException e) {
+                throw new QueueException(e);
+            } finally {
+                batchFinish.clear();
+                lockEphemeral.unlock();
+            }
+        }
+    }
+
+    /**
+     * Counts messages deleted from queue storage and compacts it in background
+     * once {@link RocksDbOptionsProfile#getDeleteCompactionThreshold()} is
+     * reached.
+     * 
+     * @param numDeletes
+     * @since 0.7.1.3
+     */
+    private void onQueueDeletes(long numDeletes) {
+        if (deleteCompactionThreshold < 1
+                || deletesSinceCompaction.addAndGet(numDeletes) < deleteCompactionThreshold
+                || !compacting.compareAndSet(false, true)) {
+            return;
+        }
+        deletesSinceCompaction.set(0);
+        Thread thread = new Thread(() -> {
+            try {
+                rocksDb.compactRange(cfQueue);
+            } catch (Exception e) {
+                LOGGER.warn(e.getMessage(), e);
+            } finally {
+                compacting.set(false);
+            }
+        }, getClass().getSimpleName() + "-compaction");
+        thread.setDaemon(true);
+        compactionThread = thread;
+        thread.start();
+    }
+
+    /**
+     * Positions the queue's iterator at the first message after
+     * last-fetched-id. Must be called while holding {@link #lockTake}.
+     * 
+     * @since 0.7.1.3
+     */
+    private void seekQueueHead() {
+        if (lastFetchedId == null) {
+            itQueue.seekToFirst();
+        } else {
+            itQueue.seek(lastFetchedId);
+        }
+    }
+
+    /**
+     * Reads the next messages into the prefetch buffer. Must be called while
+     * holding {@link #lockTake}.
+     * 
+     * @return {@code false} if the queue is empty
+     * @throws QueueException.EphemeralIsFull
+     *             if the ephemeral storage is full
+     * @since 0.7.1.3
+     */
+    private boolean prefetch() throws QueueException.EphemeralIsFull {
+        int numMessages = prefetchSize;
+        if (!isEphemeralDisabled()) {
+            int ephemeralMaxSize = getEphemeralMaxSize();
+            if (ephemeralMaxSize > 0) {
+                int ephemeralSize = ephemeralSize();
+                if (ephemeralSize >= ephemeralMaxSize) {
+                    throw new QueueException.EphemeralIsFull(ephemeralMaxSize);
+                }
+                numMessages = Math.min(numMessages, ephemeralMaxSize - ephemeralSize);
+            }
+        }
+        if (!itQueue.isValid()) {
+            // reached the end of the queue last time: re-seek to see messages
+            // written since then
+            seekQueueHead();
+        }
+        List<IQueueMessage<ID, DATA>> fetched = new ArrayList<>(numMessages);
+        byte[] fetchedId = lastFetchedId;
+        int numRemoved = 0, numToEphemeral = 0;
+        Set<ByteBuffer> keysInBatch = new HashSet<>();
+        boolean written = false;
+        lockEphemeral.lock();
+        try {
+            while (fetched.size() < numMessages && itQueue.isValid()) {
+                fetchedId = itQueue.key();
+                byte[] value = itQueue.value();
+                IQueueMessage<ID, DATA> msg = deserialize(value);
+                batchTake.delete(cfQueue, fetchedId);
+                numRemoved++;
+                if (msg != null) {
+                    if (!isEphemeralDisabled()
+                            && putToEphemeral(batchTake, msg, value, keysInBatch)) {
+                        numToEphemeral++;
+                    }
+                    fetched.add(msg);
+                }
+                itQueue.next();
+            }
+            if (fetchedId != lastFetchedId) {
+                batchTake.put(cfMetadata, keyLastFetchedIdBytes, fetchedId);
+                counterQueueOut.stage(batchTake, cfMetadata, numRemoved);
+                counterEphemeralIn.stage(batchTake, cfMetadata, numToEphemeral);
+                rocksDb.write(writeOptions, batchTake);
+                lastFetchedId = fetchedId;
+                counterQueueOut.commit();
+                counterEphemeralIn.commit();
+                onQueueDeletes(numRemoved);
+            }
+            written = true;
+        } catch (RocksDBException e) {
+            throw new QueueException(e);
+        } finally {
+            batchTake.clear();
+            lockEphemeral.unlock();
+            if (!written) {
+                seekQueueHead();
+            }
+        }
+        prefetchBuffer.addAll(fetched);
+        return !fetched.isEmpty();
+    }
+
+    /**
+     * Takes a message in prefetch mode.
+     * 
+     * @return
+     * @throws QueueException.EphemeralIsFull
+     * @since 0.7.1.3
+     */
+    private IQueueMessage<ID, DATA> takePrefetched() throws QueueException.EphemeralIsFull {
+        IQueueMessage<ID, DATA> msg = prefetchBuffer.poll();
+        if (msg != null) {
+            return msg;
+        }
+        lockTake.lock();
+        try {
+            // another consumer may have refilled the buffer while we waited
+            msg = prefetchBuffer.poll();
+            while (msg == null && prefetch()) {
+                msg = prefetchBuffer.poll();
+            }
+            return msg;
+        } finally {
+            lockTake.unlock();
+        }
+    }
+
+    /**
+     * Takes a batch of messages in prefetch mode.
+     * 
+     * @param maxMessages
+     * @return
+     * @throws QueueException.EphemeralIsFull
+     * @since 0.7.1.3
+     */
+    private List<IQueueMessage<ID, DATA>> takePrefetched(int maxMessages)
+            throws QueueException.EphemeralIsFull {
+        List<IQueueMessage<ID, DATA>> result = new ArrayList<>();
+        drainPrefetchBuffer(result, maxMessages);
+        if (result.isEmpty() && maxMessages > 0) {
+            lockTake.lock();
+            try {
+                drainPrefetchBuffer(result, maxMessages);
+                while (result.isEmpty() && prefetch()) {
+                    drainPrefetchBuffer(result, maxMessages);
+                }
+            } finally {
+                lockTake.unlock();
+            }
+        }
+        return result;
+    }
+
+    private void drainPrefetchBuffer(List<IQueueMessage<ID, DATA>> result, int maxMessages) {
+        IQueueMessage<ID, DATA> msg;
+        while (result.size() < maxMessages && (msg = prefetchBuffer.poll()) != null) {
+            result.add(msg);
+        }
+    }
+
+    /**
+     * Puts messages left in the prefetch buffer back to queue storage.
+     * 
+     * @throws RocksDBException
+     * @since 0.7.1.3
+     */
+    private void returnPrefetchedMessages() throws RocksDBException {
+        IQueueMessage<ID, DATA> msg;
+        while ((msg = prefetchBuffer.poll()) != null) {
+            putToQueue(msg, true);
         }
     }
 
@@ -332,6 +1497,9 @@ public abstract class RocksDbQueue<ID, DATA> extends AbstractEphemeralSupportQue
      */
     @Override
     public IQueueMessage<ID, DATA> take() throws QueueException.EphemeralIsFull {
+        if (prefetchSize > 0) {
+            return takePrefetched();
+        }
         if (!isEphemeralDisabled()) {
             int ephemeralMaxSize = getEphemeralMaxSize();
             if (ephemeralMaxSize > 0 && ephemeralSize() >= ephemeralMaxSize) {
@@ -351,19 +1519,24 @@ public abstract class RocksDbQueue<ID, DATA> extends AbstractEphemeralSupportQue
             lastFetchedId = itQueue.key();
             byte[] value = itQueue.value();
             IQueueMessage<ID, DATA> msg = deserialize(value);
+            lockEphemeral.lock();
             try {
                 batchTake.delete(cfQueue, lastFetchedId);
                 // batchTake.put(cfMetadata, keyLastFetchedId, lastFetchedId);
                 batchTake.put(cfMetadata, keyLastFetchedIdBytes, lastFetchedId);
-                if (!isEphemeralDisabled() && msg != null) {
-                    byte[] _key = msg.getId().toString().getBytes(QueueUtils.UTF8);
-                    batchTake.put(cfEphemeral, _key, value);
-                }
-                rocksDbWrapper.write(writeOptions, batchTake);
+                boolean toEphemeral = !isEphemeralDisabled() && msg != null
+                        && putToEphemeral(batchTake, msg, value, null);
+                counterQueueOut.stage(batchTake, cfMetadata, 1);
+                counterEphemeralIn.stage(batchTake, cfMetadata, toEphemeral ? 1 : 0);
+                rocksDb.write(writeOptions, batchTake);
+                counterQueueOut.commit();
+                counterEphemeralIn.commit();
+                onQueueDeletes(1);
             } catch (RocksDBException e) {
                 throw new QueueException(e);
             } finally {
                 batchTake.clear();
+                lockEphemeral.unlock();
             }
             itQueue.next();
             return msg;
@@ -374,25 +1547,159 @@ public abstract class RocksDbQueue<ID, DATA> extends AbstractEphemeralSupportQue
 
     /**
      * {@inheritDoc}
+     * 
+     * <p>
+     * Messages are read from one iterator pass and moved to ephemeral storage
+     * in one {@link WriteBatch}.
+     * </p>
+     * 
+     * @throws QueueException.EphemeralIsFull
+     *             if the ephemeral storage is full
+     * @since 0.7.1.3
+     */
+    @Override
+    public List<IQueueMessage<ID, DATA>> take(int maxMessages)
+            throws QueueException.EphemeralIsFull {
+        if (prefetchSize > 0) {
+            return takePrefetched(maxMessages);
+        }
+        List<IQueueMessage<ID, DATA>> result = new ArrayList<>();
+        int numMessages = maxMessages;
+        if (!isEphemeralDisabled()) {
+            int ephemeralMaxSize = getEphemeralMaxSize();
+            if (ephemeralMaxSize > 0) {
+                int ephemeralSize = ephemeralSize();
+                if (ephemeralSize >= ephemeralMaxSize) {
+                    throw new QueueException.EphemeralIsFull(ephemeralMaxSize);
+                }
+                numMessages = Math.min(numMessages, ephemeralMaxSize - ephemeralSize);
+            }
+        }
+        if (numMessages < 1) {
+            return result;
+        }
+        lockTake.lock();
+        try {
+            if (lastFetchedId == null) {
+                itQueue.seekToFirst();
+            } else {
+                itQueue.seek(lastFetchedId);
+            }
+            byte[] fetchedId = lastFetchedId;
+            int numRemoved = 0, numToEphemeral = 0;
+            Set<ByteBuffer> keysInBatch = new HashSet<>();
+            lockEphemeral.lock();
+            try {
+                while (result.size() < numMessages && itQueue.isValid()) {
+                    fetchedId = itQueue.key();
+                    byte[] value = itQueue.value();
+                    IQueueMessage<ID, DATA> msg = deserialize(value);
+                    batchTake.delete(cfQueue, fetchedId);
+                    numRemoved++;
+                    if (msg != null) {
+                        if (!isEphemeralDisabled()
+                                && putToEphemeral(batchTake, msg, value, keysInBatch)) {
+                            numToEphemeral++;
+                        }
+                        result.add(msg);
+                    }
+                    itQueue.next();
+                }
+                if (fetchedId != lastFetchedId) {
+                    batchTake.put(cfMetadata, keyLastFetchedIdBytes, fetchedId);
+                    counterQueueOut.stage(batchTake, cfMetadata, numRemoved);
+                    counterEphemeralIn.stage(batchTake, cfMetadata, numToEphemeral);
+                    rocksDb.write(writeOptions, batchTake);
+                    lastFetchedId = fetchedId;
+                    counterQueueOut.commit();
+                    counterEphemeralIn.commit();
+                    onQueueDeletes(numRemoved);
+                }
+            } catch (RocksDBException e) {
+                throw new QueueException(e);
+            } finally {
+                batchTake.clear();
+                lockEphemeral.unlock();
+            }
+            return result;
+        } finally {
+            lockTake.unlock();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * <p>
+     * Range scan of the ephemeral index (see
+     * {@link #setCfNameEphemeralIndex(String)}) up to
+     * {@code now - thresholdTimestampMs}: only expired messages are read and
+     * deserialized.
+     * </p>
      */
     @Override
     public Collection<IQueueMessage<ID, DATA>> getOrphanMessages(long thresholdTimestampMs) {
         if (isEphemeralDisabled()) {
             return null;
         }
-        synchronized (itEphemeral) {
-            Collection<IQueueMessage<ID, DATA>> orphanMessages = new HashSet<>();
-            long now = System.currentTimeMillis();
-            itEphemeral.seekToFirst();
-            while (itEphemeral.isValid()) {
-                byte[] value = itEphemeral.value();
-                IQueueMessage<ID, DATA> msg = deserialize(value);
-                if (msg.getQueueTimestamp().getTime() + thresholdTimestampMs < now) {
+        Collection<IQueueMessage<ID, DATA>> orphanMessages = new HashSet<>();
+        List<byte[]> staleEntries = new ArrayList<>();
+        long threshold = System.currentTimeMillis() - thresholdTimestampMs;
+        try (RocksIterator it = rocksDb.newIterator(cfEphemeralIndex, readOptions)) {
+            for (it.seekToFirst(); it.isValid(); it.next()) {
+                byte[] indexKey = it.key();
+                ByteBuffer buff = ByteBuffer.wrap(indexKey);
+                long queueTimestamp = buff.getLong() ^ Long.MIN_VALUE;
+                if (queueTimestamp >= threshold) {
+                    break;
+                }
+                byte[] key = new byte[buff.remaining()];
+                buff.get(key);
+                byte[] value = rocksDb.get(cfEphemeral, readOptions, key);
+                IQueueMessage<ID, DATA> msg = value != null ? deserialize(value) : null;
+                if (msg != null && msg.getQueueTimestampMillis() == queueTimestamp) {
                     orphanMessages.add(msg);
+                } else {
+                    staleEntries.add(indexKey);
                 }
-                itEphemeral.next();
             }
-            return orphanMessages;
+        } catch (RocksDBException e) {
+            throw new QueueException(e);
+        }
+        if (!staleEntries.isEmpty()) {
+            removeStaleEphemeralIndexEntries(staleEntries);
+        }
+        return orphanMessages;
+    }
+
+    /**
+     * Removes index entries whose message is no longer in ephemeral storage
+     * (or has been re-indexed with another queue timestamp).
+     * 
+     * @param indexKeys
+     * @since 0.7.1.3
+     */
+    private void removeStaleEphemeralIndexEntries(List<byte[]> indexKeys) {
+        // take() is the only writer of index entries: check again while
+        // holding its lock, so that an entry re-added meanwhile is kept
+        lockTake.lock();
+        try (WriteBatch batch = new WriteBatch()) {
+            for (byte[] indexKey : indexKeys) {
+                ByteBuffer buff = ByteBuffer.wrap(indexKey);
+                long queueTimestamp = buff.getLong() ^ Long.MIN_VALUE;
+                byte[] key = new byte[buff.remaining()];
+                buff.get(key);
+                byte[] value = rocksDb.get(cfEphemeral, readOptions, key);
+                IQueueMessage<ID, DATA> msg = value != null ? deserialize(value) : null;
+                if (msg == null || msg.getQueueTimestampMillis() != queueTimestamp) {
+                    batch.delete(cfEphemeralIndex, indexKey);
+                }
+            }
+            rocksDb.write(writeOptions, batch);
+        } catch (RocksDBException e) {
+            LOGGER.warn(e.getMessage(), e);
+        } finally {
+            lockTake.unlock();
         }
     }
 
@@ -408,19 +1715,36 @@ public abstract class RocksDbQueue<ID, DATA> extends AbstractEphemeralSupportQue
 //        }
 //    }
 
+    private static int size(PersistentCounter in, PersistentCounter out) {
+        // read "out" first: a concurrent put/take can only make the result
+        // larger, never negative
+        long _out = out.get();
+        long size = in.get() - _out;
+        return size < 0 ? 0 : size > Integer.MAX_VALUE ? Integer.MAX_VALUE : (int) size;
+    }
+
     /**
      * {@inheritDoc}
+     * 
+     * <p>
+     * Exact number of messages in queue storage, maintained by counters that
+     * are persisted in the same {@link WriteBatch} as the messages.
+     * </p>
      */
     @Override
     public int queueSize() {
-        return (int) rocksDbWrapper.getEstimateNumKeys(cfNameQueue);
+        return size(counterQueueIn, counterQueueOut);
     }
 
     /**
      * {@inheritDoc}
+     * 
+     * <p>
+     * Exact number of messages in ephemeral storage, see {@link #queueSize()}.
+     * </p>
      */
     @Override
     public int ephemeralSize() {
-        return (int) rocksDbWrapper.getEstimateNumKeys(cfNameEphemeral);
+        return size(counterEphemeralIn, counterEphemeralOut);
     }
 }
@@ -15,13 +15,20 @@ public abstract class RocksDbQueueFactory<T extends RocksDbQueue<ID, DATA>, ID,
 
     public final static String SPEC_FIELD_STORAGE_DIR = "storage_dir";
     public final static String SPEC_FIELD_CF_EPHEMERAL = "cf_ephemeral";
+    /**
+     * @since 0.7.1.3
+     */
+    public final static String SPEC_FIELD_CF_EPHEMERAL_INDEX = "cf_ephemeral_index";
     public final static String SPEC_FIELD_CF_QUEUE = "cf_queue";
     public final static String SPEC_FIELD_CF_METADATA = "cf_metadata";
 
     private String defaultStorageDir;
+    private RocksDbQueueStore sharedStore;
+    private RocksDbOptionsProfile defaultOptionsProfile;
     private String defaultCfNameQueue = RocksDbQueue.DEFAULT_CFNAME_QUEUE,
             defaultCfNameMetaData = RocksDbQueue.DEFAULT_CFNAME_METADATA,
-            defaultCfNameEphemeral = RocksDbQueue.DEFAULT_CFNAME_EPHEMERAL;
+            defaultCfNameEphemeral = RocksDbQueue.DEFAULT_CFNAME_EPHEMERAL,
+            defaultCfNameEphemeralIndex = RocksDbQueue.DEFAULT_CFNAME_EPHEMERAL_INDEX;
 
     public String getDefaultStorageDir() {
         return defaultStorageDir;
@@ -32,6 +39,48 @@ public abstract class RocksDbQueueFactory<T extends RocksDbQueue<ID, DATA>, ID,
         return this;
     }
 
+    /**
+     * @since 0.7.1.3
+     */
+    public RocksDbQueueStore getSharedStore() {
+        return sharedStore;
+    }
+
+    /**
+     * Creates queues in a shared store instead of one RocksDB instance per
+     * queue. The default ColumnFamily names of each queue are then prefixed
+     * with {@code <queue name>_}, unless overridden by the queue's spec.
+     * 
+     * @param sharedStore
+     * @return
+     * @since 0.7.1.3
+     */
+    public RocksDbQueueFactory<T, ID, DATA> setSharedStore(RocksDbQueueStore sharedStore) {
+        this.sharedStore = sharedStore;
+        return this;
+    }
+
+    /**
+     * @since 0.7.1.3
+     */
+    public RocksDbOptionsProfile getDefaultOptionsProfile() {
+        return defaultOptionsProfile;
+    }
+
+    /**
+     * RocksDB options profile of created queues, see
+     * {@link RocksDbQueue#setOptionsProfile(RocksDbOptionsProfile)}.
+     * 
+     * @param defaultOptionsProfile
+     * @return
+     * @since 0.7.1.3
+     */
+    public RocksDbQueueFactory<T, ID, DATA> setDefaultOptionsProfile(
+            RocksDbOptionsProfile defaultOptionsProfile) {
+        this.defaultOptionsProfile = defaultOptionsProfile;
+        return this;
+    }
+
     public String getDefaultCfNameQueue() {
         return defaultCfNameQueue;
     }
@@ -60,6 +109,22 @@ public abstract class RocksDbQueueFactory<T extends RocksDbQueue<ID, DATA>, ID,
         return this;
     }
 
+    /**
+     * @since 0.7.1.3
+     */
+    public String getDefaultCfNameEphemeralIndex() {
+        return defaultCfNameEphemeralIndex;
+    }
+
+    /**
+     * @since 0.7.1.3
+     */
+    public RocksDbQueueFactory<T, ID, DATA> setDefaultCfNameEphemeralIndex(
+            String defaultCfNameEphemeralIndex) {
+        this.defaultCfNameEphemeralIndex = defaultCfNameEphemeralIndex;
+        return this;
+    }
+
     /**
      * {@inheritDoc}
      * 
@@ -85,12 +150,24 @@ public abstract class RocksDbQueueFactory<T extends RocksDbQueue<ID, DATA>, ID,
             queue.setStorageDir(storageDir);
         }
 
-        queue.setCfNameEphemeral(defaultCfNameEphemeral).setCfNameMetadata(defaultCfNameMetaData)
-                .setCfNameQueue(defaultCfNameQueue);
+        queue.setOptionsProfile(defaultOptionsProfile);
+        String cfPrefix = "";
+        if (sharedStore != null) {
+            queue.setStore(sharedStore);
+            cfPrefix = StringUtils.isBlank(spec.name) ? "" : spec.name + "_";
+        }
+        queue.setCfNameEphemeral(cfPrefix + defaultCfNameEphemeral)
+                .setCfNameMetadata(cfPrefix + defaultCfNameMetaData)
+                .setCfNameQueue(cfPrefix + defaultCfNameQueue)
+                .setCfNameEphemeralIndex(cfPrefix + defaultCfNameEphemeralIndex);
         String cfNameEphemeral = spec.getField(SPEC_FIELD_CF_EPHEMERAL);
         if (!StringUtils.isBlank(cfNameEphemeral)) {
             queue.setCfNameEphemeral(cfNameEphemeral);
         }
+        String cfNameEphemeralIndex = spec.getField(SPEC_FIELD_CF_EPHEMERAL_INDEX);
+        if (!StringUtils.isBlank(cfNameEphemeralIndex)) {
+            queue.setCfNameEphemeralIndex(cfNameEphemeralIndex);
+        }
         String cfNameMetadata = spec.getField(SPEC_FIELD_CF_METADATA);
         if (!StringUtils.isBlank(cfNameMetadata)) {
             queue.setCfNameMetadata(cfNameMetadata);
@@ -0,0 +1,290 @@
+package com.github.ddth.queue.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+
+import org.apache.commons.io.FileUtils;
+import org.rocksdb.ColumnFamilyDescriptor;
+import org.rocksdb.ColumnFamilyHandle;
+import org.rocksdb.ColumnFamilyOptions;
+import org.rocksdb.DBOptions;
+import org.rocksdb.Options;
+import org.rocksdb.ReadOptions;
+import org.rocksdb.RocksDB;
+import org.rocksdb.RocksDBException;
+import org.rocksdb.RocksObject;
+import org.rocksdb.WriteOptions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.ddth.commons.rocksdb.RocksDbUtils;
+import com.github.ddth.queue.utils.QueueUtils;
+
+/**
+ * A RocksDB instance shared by many {@link RocksDbQueue}s.
+ * 
+ * <p>
+ * Each queue keeps its messages in its own set of ColumnFamilies (see
+ * {@link RocksDbQueue#setCfNameQueue(String)} and friends), created on demand
+ * in the shared instance. All queues share one WAL, one set of background
+ * flush/compaction threads and one block cache, instead of one of each per
+ * queue.
+ * </p>
+ * 
+ * <p>
+ * Usage: create and {@link #init()} the store, then pass it to queues via
+ * {@link RocksDbQueue#setStore(RocksDbQueueStore)} (or to a factory via
+ * {@link RocksDbQueueFactory#setSharedStore(RocksDbQueueStore)}) before they
+ * are initialized. The store must be destroyed after all its queues.
+ * </p>
+ * 
+ * @author Thanh Ba Nguyen <bnguyen2k@gmail.com>
+ * @since 0.7.1.3
+ */
+public class RocksDbQueueStore {
+
+    private final Logger LOGGER = LoggerFactory.getLogger(RocksDbQueueStore.class);
+
+    private String storageDir = RocksDbQueue.DEFAULT_STORAGE_DIR + "/shared";
+    private DBOptions dbOptions;
+    private ColumnFamilyOptions cfOptions, queueCfOptions;
+    /* compaction options referenced by queueCfOptions */
+    private final List<RocksObject> cfResources = new ArrayList<>();
+    private RocksDbOptionsProfile optionsProfile;
+    private Predicate<String> queueColumnFamilyMatcher = name -> name
+            .equals(RocksDbQueue.DEFAULT_CFNAME_QUEUE)
+            || name.endsWith("_" + RocksDbQueue.DEFAULT_CFNAME_QUEUE);
+    private ReadOptions readOptions;
+    private WriteOptions writeOptions;
+    private RocksDB rocksDb;
+    /* guarded by this */
+    private final Map<String, ColumnFamilyHandle> cfHandles = new HashMap<>();
+    private final Set<String> cfInUse = new HashSet<>();
+
+    /**
+     * RocksDB's storage directory.
+     * 
+     * @return
+     */
+    public String getStorageDir() {
+        return storageDir;
+    }
+
+    /**
+     * Sets RocksDB's storage directory.
+     * 
+     * @param storageDir
+     * @return
+     */
+    public RocksDbQueueStore setStorageDir(String storageDir) {
+        this.storageDir = storageDir;
+        return this;
+    }
+
+    /**
+     * Options profile of the store, {@code null} means RocksDB options of
+     * {@code RocksDbUtils} (default).
+     * 
+     * @return
+     * @since 0.7.1.3
+     */
+    public RocksDbOptionsProfile getOptionsProfile() {
+        return optionsProfile;
+    }
+
+    /**
+     * Sets options profile of the store. Must be set before {@link #init()}.
+     * 
+     * @param optionsProfile
+     * @return
+     * @since 0.7.1.3
+     */
+    public RocksDbQueueStore setOptionsProfile(RocksDbOptionsProfile optionsProfile) {
+        this.optionsProfile = optionsProfile;
+        return this;
+    }
+
+    /**
+     * Tells which ColumnFamilies are queue ColumnFamilies, which get the
+     * queue-specific options of the {@link RocksDbOptionsProfile}. Options
+     * must be known when a ColumnFamily is opened, before queues claim it:
+     * by default, ColumnFamilies named {@code queue} or {@code *_queue} (as
+     * named by {@link RocksDbQueueFactory}).
+     * 
+     * @param queueColumnFamilyMatcher
+     * @return
+     * @since 0.7.1.3
+     */
+    public RocksDbQueueStore setQueueColumnFamilyMatcher(
+            Predicate<String> queueColumnFamilyMatcher) {
+        this.queueColumnFamilyMatcher = queueColumnFamilyMatcher;
+        return this;
+    }
+
+    private ColumnFamilyOptions columnFamilyOptions(String cfName) {
+        return queueCfOptions != null && queueColumnFamilyMatcher.test(cfName) ? queueCfOptions
+                : cfOptions;
+    }
+
+    /**
+     * Init method.
+     * 
+     * @return
+     * @throws Exception
+     */
+    public RocksDbQueueStore init() throws Exception {
+        File STORAGE_DIR = new File(storageDir);
+        LOGGER.info("Storage Directory: " + STORAGE_DIR.getAbsolutePath());
+        try {
+            FileUtils.forceMkdir(STORAGE_DIR);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+
+        try {
+            if (optionsProfile != null) {
+                dbOptions = optionsProfile.buildDbOptions();
+                cfOptions = optionsProfile.buildColumnFamilyOptions();
+                queueCfOptions = optionsProfile.buildQueueColumnFamilyOptions(cfOptions,
+                        cfResources);
+            } else {
+                dbOptions = RocksDbUtils.buildDbOptions();
+                dbOptions.setCreateIfMissing(true).setCreateMissingColumnFamilies(true);
+                cfOptions = RocksDbUtils.buildColumnFamilyOptions();
+            }
+            readOptions = RocksDbUtils.buildReadOptions();
+            writeOptions = RocksDbUtils.buildWriteOptions();
+
+            List<byte[]> cfNames = listColumnFamilies(STORAGE_DIR.getAbsolutePath());
+            List<ColumnFamilyDescriptor> cfDescriptors = new ArrayList<>();
+            for (byte[] cfName : cfNames) {
+                cfDescriptors.add(new ColumnFamilyDescriptor(cfName,
+                        columnFamilyOptions(new String(cfName, QueueUtils.UTF8))));
+            }
+            List<ColumnFamilyHandle> handles = new ArrayList<>();
+            rocksDb = RocksDB.open(dbOptions, STORAGE_DIR.getAbsolutePath(), cfDescriptors,
+                    handles);
+            synchronized (this) {
+                for (int i = 0; i < cfNames.size(); i++) {
+                    cfHandles.put(new String(cfNames.get(i), QueueUtils.UTF8), handles.get(i));
+                }
+            }
+        } catch (Exception e) {
+            destroy();
+            throw e instanceof RuntimeException ? (RuntimeException) e : new RuntimeException(e);
+        }
+
+        return this;
+    }
+
+    /**
+     * Destroy method.
+     */
+    public void destroy() {
+        synchronized (this) {
+            RocksDbUtils.closeRocksObjects(cfHandles.values().toArray(new ColumnFamilyHandle[0]));
+            cfHandles.clear();
+            cfInUse.clear();
+        }
+        try {
+            if (rocksDb != null) {
+                rocksDb.close();
+            }
+        } catch (Exception e) {
+            LOGGER.error(e.getMessage(), e);
+        } finally {
+            rocksDb = null;
+        }
+        RocksDbUtils.closeRocksObjects(readOptions, writeOptions, cfOptions, queueCfOptions,
+                dbOptions);
+        RocksDbUtils.closeRocksObjects(cfResources.toArray(new RocksObject[0]));
+        cfResources.clear();
+    }
+
+    private static List<byte[]> listColumnFamilies(String path) {
+        List<byte[]> cfNames = new ArrayList<>();
+        try (Options options = new Options()) {
+            List<byte[]> existing = RocksDB.listColumnFamilies(options, path);
+            if (existing != null) {
+                cfNames.addAll(existing);
+            }
+        } catch (RocksDBException e) {
+            // storage does not exist yet
+        }
+        boolean hasDefault = false;
+        for (byte[] cfName : cfNames) {
+            hasDefault |= Arrays.equals(cfName, RocksDB.DEFAULT_COLUMN_FAMILY);
+        }
+        if (!hasDefault) {
+            cfNames.add(0, RocksDB.DEFAULT_COLUMN_FAMILY);
+        }
+        return cfNames;
+    }
+
+    public RocksDB getRocksDb() {
+        return rocksDb;
+    }
+
+    public ReadOptions getReadOptions() {
+        return readOptions;
+    }
+
+    public WriteOptions getWriteOptions() {
+        return writeOptions;
+    }
+
+    /**
+     * Claims ColumnFamilies for a queue, creating those that do not exist.
+     * 
+     * @param cfNames
+     * @return handles of the ColumnFamilies, in the same order as
+     *         {@code cfNames}
+     * @throws RocksDBException
+     * @throws IllegalStateException
+     *             if one of the ColumnFamilies is already used by another
+     *             queue
+     */
+    public synchronized ColumnFamilyHandle[] acquireColumnFamilies(String... cfNames)
+            throws RocksDBException {
+        if (rocksDb == null) {
+            throw new IllegalStateException("Store has not been initialized.");
+        }
+        for (String cfName : cfNames) {
+            if (cfInUse.contains(cfName)) {
+                throw new IllegalStateException(
+                        "ColumnFamily [" + cfName + "] is already used by another queue.");
+            }
+        }
+        ColumnFamilyHandle[] result = new ColumnFamilyHandle[cfNames.length];
+        for (int i = 0; i < cfNames.length; i++) {
+            ColumnFamilyHandle handle = cfHandles.get(cfNames[i]);
+            if (handle == null) {
+                handle = rocksDb.createColumnFamily(new ColumnFamilyDescriptor(
+                        cfNames[i].getBytes(QueueUtils.UTF8), columnFamilyOptions(cfNames[i])));
+                cfHandles.put(cfNames[i], handle);
+            }
+            result[i] = handle;
+        }
+        cfInUse.addAll(Arrays.asList(cfNames));
+        return result;
+    }
+
+    /**
+     * Releases ColumnFamilies claimed by
+     * {@link #acquireColumnFamilies(String...)}. ColumnFamilies and their
+     * data are kept.
+     * 
+     * @param cfNames
+     */
+    public synchronized void releaseColumnFamilies(String... cfNames) {
+        cfInUse.removeAll(Arrays.asList(cfNames));
+    }
+}
@@ -0,0 +1,33 @@
+package com.github.ddth.queue.impl;
+
+import com.github.ddth.commons.utils.SerializationUtils;
+import com.github.ddth.queue.IMessageCodec;
+import com.github.ddth.queue.IMessage;
+
+/**
+ * Default {@link IMessageCodec} implementation that uses ddth-commons'
+ * {@link SerializationUtils} (messages implementing
+ * {@link com.github.ddth.commons.serialization.ISerializationSupport} are
+ * serialized by themselves, others via Kryo).
+ * 
+ * @author Thanh Ba Nguyen <bnguyen2k@gmail.com>
+ * @since 0.7.1.3
+ */
+public class SerializationMessageCodec<ID, DATA> implements IMessageCodec<ID, DATA> {
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public byte[] encode(IMessage<ID, DATA> msg) {
+        return msg != null ? SerializationUtils.toByteArray(msg) : null;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public <T extends IMessage<ID, DATA>> T decode(byte[] data, Class<T> clazz) {
+        return data != null ? SerializationUtils.fromByteArray(data, clazz) : null;
+    }
+}
@@ -1,5 +1,6 @@
 package com.github.ddth.queue.impl.universal;
 
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 import java.util.Date;
 import java.util.HashMap;
@@ -273,9 +274,54 @@ public abstract class BaseUniversalQueueMessage<ID> extends GenericQueueMessage<
         return setContent(content);
     }
 
+    /**
+     * Gets message's content as a read-only {@link ByteBuffer} view (no copy).
+     *
+     * @return
+     * @since 0.7.1.3
+     */
+    public ByteBuffer getContentAsByteBuffer() {
+        byte[] data = getData();
+        return data != null ? ByteBuffer.wrap(data).asReadOnlyBuffer() : null;
+    }
+
+    /**
+     * Sets message's content from the remaining bytes of a {@link ByteBuffer}.
+     *
+     * <p>
+     * If {@code content} is a heap buffer whose remaining bytes span its whole
+     * backing array (e.g. {@code ByteBuffer.wrap(bytes)}), the backing array is
+     * used as-is without copying; the caller must not modify it afterwards.
+     * Otherwise (slices, read-only or direct buffers), the remaining bytes are
+     * copied once. The buffer's position is not changed.
+     * </p>
+     *
+     * @param content
+     * @return
+     * @since 0.7.1.3
+     */
+    public BaseUniversalQueueMessage<ID> setContent(ByteBuffer content) {
+        if (content == null) {
+            setData(null);
+        } else if (content.hasArray() && content.arrayOffset() == 0 && content.position() == 0
+                && content.limit() == content.array().length) {
+            setData(content.array());
+        } else {
+            byte[] data = new byte[content.remaining()];
+            content.duplicate().get(data);
+            setData(data);
+        }
+        return this;
+    }
+
     /**
      * Sets message's content.
      * 
+     * <p>
+     * Note: {@code content} is copied; use {@link #setContent(ByteBuffer)}
+     * with {@code ByteBuffer.wrap(content)} to hand it over without copying.
+     * </p>
+     * 
      * @param content
      * @return
      * @since 0.7.0
@@ -0,0 +1,307 @@
+package com.github.ddth.queue.impl.universal;
+
+import java.lang.reflect.Modifier;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import com.github.ddth.pubsub.impl.universal.BaseUniversalMessage;
+import com.github.ddth.pubsub.impl.universal.UniversalIdIntMessage;
+import com.github.ddth.pubsub.impl.universal.UniversalIdStrMessage;
+import com.github.ddth.queue.IMessage;
+import com.github.ddth.queue.IMessageCodec;
+import com.github.ddth.queue.IPartitionSupport;
+import com.github.ddth.queue.IQueueMessage;
+import com.github.ddth.queue.utils.QueueException;
+import com.github.ddth.queue.utils.QueueUtils;
+
+/**
+ * Compact binary {@link IMessageCodec} for universal queue messages and
+ * universal pub/sub messages (message content is {@code byte[]}, message id is
+ * either a {@code long} or a {@code String}).
+ *
+ * <p>
+ * Encoded format: a fixed header followed by the raw payload bytes (no Json,
+ * no base64):
+ *
+ * <pre>
+ * byte    format marker ({@link #FORMAT_V1})
+ * byte    id type (0: null, 1: long, 2: String)
+ * long    id                       -- if id type is long
+ * int+utf8 id                      -- if id type is String
+ * long    timestamp (epoch millis, Long.MIN_VALUE if null)
+ * long    queue timestamp (epoch millis, Long.MIN_VALUE if null or not a queue message)
+ * int     number of re-queues (0 if not a queue message)
+ * int+utf8 partition key (length -1 if null)
+ * byte    1 if payload is not null, 0 otherwise
+ * byte[]  payload (remaining bytes)
+ * </pre>
+ * </p>
+ *
+ * <p>
+ * For migration, {@link #decode(byte[], Class)} falls back to the Json format
+ * generated by {@link BaseUniversalQueueMessage#toBytes()} (or
+ * {@link BaseUniversalMessage#toBytes()} for pub/sub messages) if the data
+ * does not start with {@link #FORMAT_V1}.
+ * </p>
+ *
+ * @author Thanh Ba Nguyen <bnguyen2k@gmail.com>
+ * @since 0.7.1.3
+ */
+public class UniversalBinaryMessageCodec<ID> implements IMessageCodec<ID, byte[]> {
+
+    /**
+     * Marker of the first byte of encoded data (can not be the first byte of a
+     * Json document).
+     */
+    public final static byte FORMAT_V1 = (byte) 0xB1;
+
+    private final static byte ID_NULL = 0, ID_LONG = 1, ID_STRING = 2;
+    private final static long NULL_TIMESTAMP = IMessage.NO_TIMESTAMP;
+
+    private static byte[] toUtf8(String str) {
+        return str != null ? str.getBytes(QueueUtils.UTF8) : null;
+    }
+
+    private static String readUtf8(ByteBuffer buff) {
+        int len = buff.getInt();
+        if (len < 0) {
+            return null;
+        }
+        String result = new String(buff.array(), buff.arrayOffset() + buff.position(), len,
+                QueueUtils.UTF8);
+        buff.position(buff.position() + len);
+        return result;
+    }
+
+    private static void putUtf8(ByteBuffer buff, byte[] utf8) {
+        if (utf8 == null) {
+            buff.putInt(-1);
+        } else {
+            buff.putInt(utf8.length).put(utf8);
+        }
+    }
+
+    private static byte idType(Object id) throws QueueException.CannotSerializeQueueMessage {
+        if (id == null) {
+            return ID_NULL;
+        }
+        if (id instanceof Long || id instanceof Integer || id instanceof Short
+                || id instanceof Byte) {
+            return ID_LONG;
+        }
+        if (id instanceof String) {
+            return ID_STRING;
+        }
+        throw new QueueException.CannotSerializeQueueMessage(
+                "Unsupported message id type [" + id.getClass().getName() + "].");
+    }
+
+    private static String partitionKey(IMessage<?, ?> msg) {
+        return msg instanceof IPartitionSupport ? ((IPartitionSupport) msg).getPartitionKey()
+                : null;
+    }
+
+    /**
+     * Calculate the number of bytes needed to encode a message.
+     * 
+     * @param msg
+     * @return
+     * @throws QueueException.CannotSerializeQueueMessage
+     *             if message's id type is not supported
+     */
+    public int encodedSize(IMessage<ID, byte[]> msg)
+            throws QueueException.CannotSerializeQueueMessage {
+        Object id = msg.getId();
+        byte idType = idType(id);
+        byte[] partitionKey = toUtf8(partitionKey(msg));
+        byte[] payload = msg.getData();
+        return 1 + 1 + (idType == ID_LONG ? 8 : 0)
+                + (idType == ID_STRING ? 4 + toUtf8((String) id).length : 0) + 8 + 8 + 4 + 4
+                + (partitionKey != null ? partitionKey.length : 0) + 1
+                + (payload != null ? payload.length : 0);
+    }
+
+    /**
+     * Encode a message into the supplied buffer, starting at its current
+     * position; the payload is copied straight from the message, so
+     * {@code dest} may be a (reused) direct buffer.
+     * 
+     * @param msg
+     * @param dest
+     *            must have at least {@link #encodedSize(IMessage)} bytes
+     *            remaining
+     * @return {@code dest}, positioned after the encoded message
+     * @throws QueueException.CannotSerializeQueueMessage
+     *             if message's id type is not supported
+     * @throws java.nio.BufferOverflowException
+     *             if {@code dest} is too small
+     */
+    public ByteBuffer encode(IMessage<ID, byte[]> msg, ByteBuffer dest)
+            throws QueueException.CannotSerializeQueueMessage {
+        Object id = msg.getId();
+        byte idType = idType(id);
+        dest.put(FORMAT_V1).put(idType);
+        if (idType == ID_LONG) {
+            dest.putLong(((Number) id).longValue());
+        } else if (idType == ID_STRING) {
+            putUtf8(dest, toUtf8((String) id));
+        }
+        dest.putLong(msg.getTimestampMillis());
+        if (msg instanceof IQueueMessage) {
+            IQueueMessage<?, ?> queueMsg = (IQueueMessage<?, ?>) msg;
+            dest.putLong(queueMsg.getQueueTimestampMillis());
+            dest.putInt(queueMsg.getNumRequeues());
+        } else {
+            dest.putLong(NULL_TIMESTAMP);
+            dest.putInt(0);
+        }
+        putUtf8(dest, toUtf8(partitionKey(msg)));
+        byte[] payload = msg.getData();
+        if (payload != null) {
+            dest.put((byte) 1).put(payload);
+        } else {
+            dest.put((byte) 0);
+        }
+        return dest;
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * <p>
+     * The returned array is sized exactly, and is the only copy of the payload
+     * made.
+     * </p>
+     */
+    @Override
+    public byte[] encode(IMessage<ID, byte[]> msg)
+            throws QueueException.CannotSerializeQueueMessage {
+        if (msg == null) {
+            return null;
+        }
+        ByteBuffer buff = ByteBuffer.allocate(encodedSize(msg));
+        return encode(msg, buff).array();
+    }
+
+    /**
+     * Create a new message instance to decode into.
+     *
+     * <p>
+     * If {@code clazz} is not a concrete class, a
+     * {@link UniversalIdIntQueueMessage} or {@link UniversalIdStrQueueMessage}
+     * (a {@link UniversalIdIntMessage} or {@link UniversalIdStrMessage} if
+     * {@code clazz} is a pub/sub message class) is created depending on the
+     * encoded id type.
+     * </p>
+     *
+     * @param clazz
+     * @param idType
+     * @return
+     */
+    protected Object newMessageInstance(Class<?> clazz, byte idType) throws Exception {
+        if (!clazz.isInterface() && !Modifier.isAbstract(clazz.getModifiers())) {
+            return clazz.newInstance();
+        }
+        if (BaseUniversalMessage.class.isAssignableFrom(clazz)) {
+            return idType == ID_STRING ? new UniversalIdStrMessage() : new UniversalIdIntMessage();
+        }
+        return idType == ID_STRING ? new UniversalIdStrQueueMessage()
+                : new UniversalIdIntQueueMessage();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @SuppressWarnings("unchecked")
+    @Override
+    public <T extends IMessage<ID, byte[]>> T decode(byte[] data, Class<T> clazz)
+            throws QueueException.CannotDeserializeQueueMessage {
+        if (data == null) {
+            return null;
+        }
+        if (data.length == 0 || data[0] != FORMAT_V1) {
+            return decodeJson(data, clazz);
+        }
+        try {
+            ByteBuffer buff = ByteBuffer.wrap(data);
+            buff.get();
+            byte idType = buff.get();
+            Object id;
+            switch (idType) {
+            case ID_NULL:
+                id = null;
+                break;
+            case ID_LONG:
+                id = buff.getLong();
+                break;
+            case ID_STRING:
+                id = readUtf8(buff);
+                break;
+            default:
+                throw new QueueException.CannotDeserializeQueueMessage(
+                        "Invalid message id type [" + idType + "].");
+            }
+            long timestamp = buff.getLong();
+            long queueTimestamp = buff.getLong();
+            int numRequeues = buff.getInt();
+            String partitionKey = readUtf8(buff);
+            byte[] payload = buff.get() != 0
+                    ? Arrays.copyOfRange(data, buff.position(), data.length) : null;
+
+            IMessage<ID, byte[]> msg = (IMessage<ID, byte[]>) newMessageInstance(clazz, idType);
+            msg.setId((ID) id);
+            msg.setTimestampMillis(timestamp);
+            if (msg instanceof IQueueMessage) {
+                ((IQueueMessage<ID, byte[]>) msg).setQueueTimestampMillis(queueTimestamp)
+                        .setNumRequeues(numRequeues);
+            }
+            msg.setData(payload);
+            if (msg instanceof IPartitionSupport) {
+                ((IPartitionSupport) msg).setPartitionKey(partitionKey);
+            }
+            return (T) msg;
+        } catch (QueueException.CannotDeserializeQueueMessage e) {
+            throw e;
+        } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+            throw new QueueException.CannotDeserializeQueueMessage("Truncated message data.", e);
+        } catch (Exception e) {
+            throw new QueueException.CannotDeserializeQueueMessage(e);
+        }
+    }
+
+    /**
+     * Decode a message encoded in Json format (generated by
+     * {@link BaseUniversalQueueMessage#toBytes()} or
+     * {@link BaseUniversalMessage#toBytes()}).
+     *
+     * @param data
+     * @param clazz
+     * @return
+     */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    protected <T extends IMessage<ID, byte[]>> T decodeJson(byte[] data, Class<T> clazz)
+            throws QueueException.CannotDeserializeQueueMessage {
+        if (BaseUniversalMessage.class.isAssignableFrom(clazz)) {
+            Class<? extends BaseUniversalMessage> targetClazz = !Modifier
+                    .isAbstract(clazz.getModifiers())
+                            ? (Class<? extends BaseUniversalMessage>) clazz
+                            : UniversalIdIntMessage.class;
+            try {
+                return (T) BaseUniversalMessage.fromBytes(data, targetClazz);
+            } catch (Exception e) {
+                throw new QueueException.CannotDeserializeQueueMessage(e);
+            }
+        }
+        Class<? extends BaseUniversalQueueMessage> targetClazz = BaseUniversalQueueMessage.class
+                .isAssignableFrom(clazz)
+                && !Modifier.isAbstract(clazz.getModifiers())
+                        ? (Class<? extends BaseUniversalQueueMessage>) clazz
+                        : UniversalIdIntQueueMessage.class;
+        try {
+            return (T) BaseUniversalQueueMessage.fromBytes(data, targetClazz);
+        } catch (Exception e) {
+            throw new QueueException.CannotDeserializeQueueMessage(e);
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package com.github.ddth.queue.impl.universal;
 
+import java.nio.ByteBuffer;
 import java.util.Date;
 import java.util.Map;
 
@@ -86,6 +87,35 @@ public class UniversalIdIntQueueMessage extends BaseUniversalQueueMessage<Long>
         return msg;
     }
 
+    /**
+     * Create a new {@link UniversalIdIntQueueMessage} object with specified
+     * content (see {@link #setContent(ByteBuffer)}).
+     * 
+     * @param content
+     * @return
+     * @since 0.7.1.3
+     */
+    public static UniversalIdIntQueueMessage newInstance(ByteBuffer content) {
+        UniversalIdIntQueueMessage msg = newInstance();
+        msg.setContent(content);
+        return msg;
+    }
+
+    /**
+     * Create a new {@link UniversalIdIntQueueMessage} object with specified id
+     * and content (see {@link #setContent(ByteBuffer)}).
+     * 
+     * @param id
+     * @param content
+     * @return
+     * @since 0.7.1.3
+     */
+    public static UniversalIdIntQueueMessage newInstance(Long id, ByteBuffer content) {
+        UniversalIdIntQueueMessage msg = newInstance(content);
+        msg.setId(id);
+        return msg;
+    }
+
     /**
      * Create a new {@link UniversalIdIntQueueMessage}.
      * 
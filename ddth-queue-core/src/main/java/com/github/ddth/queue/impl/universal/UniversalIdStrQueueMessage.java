@@ -1,5 +1,6 @@
 package com.github.ddth.queue.impl.universal;
 
+import java.nio.ByteBuffer;
 import java.util.Date;
 import java.util.Map;
 
@@ -86,6 +87,35 @@ public class UniversalIdStrQueueMessage extends BaseUniversalQueueMessage<String
         return msg;
     }
 
+    /**
+     * Create a new {@link UniversalIdStrQueueMessage} object with specified
+     * content (see {@link #setContent(ByteBuffer)}).
+     * 
+     * @param content
+     * @return
+     * @since 0.7.1.3
+     */
+    public static UniversalIdStrQueueMessage newInstance(ByteBuffer content) {
+        UniversalIdStrQueueMessage msg = newInstance();
+        msg.setContent(content);
+        return msg;
+    }
+
+    /**
+     * Create a new {@link UniversalIdStrQueueMessage} object with specified id
+     * and content (see {@link #setContent(ByteBuffer)}).
+     * 
+     * @param id
+     * @param content
+     * @return
+     * @since 0.7.1.3
+     */
+    public static UniversalIdStrQueueMessage newInstance(String id, ByteBuffer content) {
+        UniversalIdStrQueueMessage msg = newInstance(content);
+        msg.setId(id);
+        return msg;
+    }
+
     /**
      * Create a new {@link UniversalIdStrQueueMessage}.
      * 
@@ -3,8 +3,10 @@ package com.github.ddth.queue.impl.universal.idint;
 import java.sql.Connection;
 import java.text.MessageFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Date;
+import java.util.List;
 import java.util.Map;
 import java.util.stream.Stream;
 
@@ -189,6 +191,13 @@ public class AbstractLessLockingUniversalJdbcQueue
 
     protected String SQL_REQUEUE, SQL_REQUEUE_SILENT;
     protected String SQL_UPDATE_EPHEMERAL_ID_TAKE, SQL_CLEAR_EPHEMERAL_ID;
+    /**
+     * Same as {@link #SQL_UPDATE_EPHEMERAL_ID_TAKE}, but updates up to N rows
+     * (second parameter).
+     * 
+     * @since 0.7.1.3
+     */
+    protected String SQL_UPDATE_EPHEMERAL_ID_TAKE_MANY;
     protected String SQL_READ_BY_EPHEMERAL_ID;
 
     /**
@@ -242,6 +251,59 @@ public class AbstractLessLockingUniversalJdbcQueue
         }
     }
 
+    /**
+     * {@inheritDoc}
+     * 
+     * <p>
+     * Messages are inserted using multi-row INSERT statements, at most
+     * {@link #getMaxBatchInsertRows()} rows per statement.
+     * </p>
+     * 
+     * @since 0.7.1.3
+     */
+    @Override
+    protected boolean putToQueueStorage(Connection conn,
+            Collection<IQueueMessage<Long, byte[]>> msgs) {
+        List<Object[]> newRows = new ArrayList<>();
+        List<Object[]> reputRows = new ArrayList<>();
+        for (IQueueMessage<Long, byte[]> msg : msgs) {
+            Long qid = msg.getId();
+            if (qid == null || qid.longValue() == 0) {
+                newRows.add(new Object[] { msg.getTimestamp(), msg.getQueueTimestamp(),
+                        msg.getNumRequeues(), msg.getData() });
+            } else {
+                reputRows.add(new Object[] { qid, msg.getTimestamp(), msg.getQueueTimestamp(),
+                        msg.getNumRequeues(), msg.getData() });
+            }
+        }
+        int numRows = putRowsToQueueStorage(conn, SQL_PUT_NEW_TO_QUEUE, newRows)
+                + putRowsToQueueStorage(conn, SQL_REPUT_TO_QUEUE, reputRows);
+        return numRows >= msgs.size();
+    }
+
+    /**
+     * Insert rows to queue storage, using multi-row INSERT statements.
+     * 
+     * @param conn
+     * @param sqlInsert
+     *            single-row INSERT statement
+     * @param rows
+     * @return number of inserted rows
+     * @since 0.7.1.3
+     */
+    protected int putRowsToQueueStorage(Connection conn, String sqlInsert, List<Object[]> rows) {
+        int numRows = 0;
+        int maxRows = Math.max(1, getMaxBatchInsertRows());
+        for (int start = 0, n = rows.size(); start < n; start += maxRows) {
+            List<Object[]> chunk = rows.subList(start, Math.min(start + maxRows, n));
+            List<Object> params = new ArrayList<>();
+            chunk.forEach(row -> params.addAll(Arrays.asList(row)));
+            numRows += getJdbcHelper().execute(conn,
+                    buildMultiRowInsertSql(sqlInsert, chunk.size()), params.toArray());
+        }
+        return numRows;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -423,4 +485,50 @@ public class AbstractLessLockingUniversalJdbcQueue
         }
     }
 
+    /**
+     * {@inheritDoc}
+     * 
+     * <p>
+     * Messages are marked as taken with one single UPDATE statement (see
+     * {@link #SQL_UPDATE_EPHEMERAL_ID_TAKE_MANY}).
+     * </p>
+     * 
+     * @since 0.7.1.3
+     */
+    @Override
+    protected List<IQueueMessage<Long, byte[]>> _takeManyWithRetries(Connection conn,
+            int maxMessages, int numRetries, int maxRetries) {
+        if (SQL_UPDATE_EPHEMERAL_ID_TAKE_MANY == null) {
+            return super._takeManyWithRetries(conn, maxMessages, numRetries, maxRetries);
+        }
+        try {
+            List<IQueueMessage<Long, byte[]>> result = new ArrayList<>();
+            long ephemeralId = QueueUtils.IDGEN.generateId64();
+            int numRows = getJdbcHelper().execute(conn, SQL_UPDATE_EPHEMERAL_ID_TAKE_MANY,
+                    ephemeralId, maxMessages);
+            if (numRows > 0) {
+                try (Stream<Map<String, Object>> dbRows = getJdbcHelper()
+                        .executeSelectAsStream(conn, SQL_READ_BY_EPHEMERAL_ID, ephemeralId)) {
+                    dbRows.forEach(row -> result.add(UniversalIdIntQueueMessage.newInstance(row)));
+                }
+                if (getFifo()) {
+                    result.sort((a, b) -> a.getId().compareTo(b.getId()));
+                }
+            }
+            return result;
+        } catch (DaoException de) {
+            if (de.getCause() instanceof ConcurrencyFailureException) {
+                if (numRetries > maxRetries) {
+                    throw new QueueException(de);
+                } else {
+                    incRetryCounter("_takeManyWithRetries");
+                    return _takeManyWithRetries(conn, maxMessages, numRetries + 1, maxRetries);
+                }
+            }
+            throw de;
+        } catch (Exception e) {
+            throw e instanceof QueueException ? (QueueException) e : new QueueException(e);
+        }
+    }
+
 }
@@ -64,6 +64,15 @@ public class LessLockingUniversalMySQLQueue extends AbstractLessLockingUniversal
         SQL_UPDATE_EPHEMERAL_ID_TAKE = MessageFormat.format(SQL_UPDATE_EPHEMERAL_ID_TAKE,
                 getTableName(), COL_EPHEMERAL_ID);
 
+        /*
+         * Sets value of column COL_EPHEMERAL_ID for taking up to N queue
+         * messages
+         */
+        SQL_UPDATE_EPHEMERAL_ID_TAKE_MANY = "UPDATE {0} SET {1}=? WHERE {1}=0"
+                + (getFifo() ? (" ORDER BY " + COL_QUEUE_ID) : "") + " LIMIT ?";
+        SQL_UPDATE_EPHEMERAL_ID_TAKE_MANY = MessageFormat.format(
+                SQL_UPDATE_EPHEMERAL_ID_TAKE_MANY, getTableName(), COL_EPHEMERAL_ID);
+
         /*
          * Sets column COL_EPHEMERAL_ID's value to nil (used in action
          * "move message from ephemeral storage to queue")
@@ -58,6 +58,15 @@ public class LessLockingUniversalPgSQLQueue extends AbstractLessLockingUniversal
         SQL_UPDATE_EPHEMERAL_ID_TAKE = MessageFormat.format(SQL_UPDATE_EPHEMERAL_ID_TAKE,
                 getTableName(), COL_EPHEMERAL_ID, COL_QUEUE_ID);
 
+        /*
+         * Sets value of column COL_EPHEMERAL_ID for taking up to N queue
+         * messages
+         */
+        SQL_UPDATE_EPHEMERAL_ID_TAKE_MANY = "UPDATE {0} M SET {1}=? FROM (SELECT {2} FROM {0} WHERE {1}=0"
+                + (getFifo() ? (" ORDER BY {2}") : "") + " LIMIT ? FOR UPDATE) S WHERE M.{2}=S.{2}";
+        SQL_UPDATE_EPHEMERAL_ID_TAKE_MANY = MessageFormat.format(
+                SQL_UPDATE_EPHEMERAL_ID_TAKE_MANY, getTableName(), COL_EPHEMERAL_ID, COL_QUEUE_ID);
+
         /*
          * Sets column COL_EPHEMERAL_ID's value to nil (used in action
          * "move message from ephemeral storage to queue")
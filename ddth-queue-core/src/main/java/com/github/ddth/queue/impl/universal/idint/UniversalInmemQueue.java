@@ -1,6 +1,7 @@
 package com.github.ddth.queue.impl.universal.idint;
 
 import com.github.ddth.queue.IQueue;
+import com.github.ddth.queue.impl.EphemeralStorage;
 import com.github.ddth.queue.impl.universal.BaseUniversalInmemQueue;
 import com.github.ddth.queue.impl.universal.UniversalIdIntQueueMessage;
 import com.github.ddth.queue.impl.universal.UniversalIdIntQueueMessageFactory;
@@ -39,4 +40,27 @@ public class UniversalInmemQueue extends BaseUniversalInmemQueue<UniversalIdIntQ
         return this;
     }
 
+    /**
+     * {@inheritDoc}
+     * 
+     * <p>
+     * Message ids are {@code Long}s: a primitive-keyed storage is used.
+     * </p>
+     * 
+     * @since 0.7.1.3
+     */
+    @Override
+    protected EphemeralStorage<Long, byte[]> createEphemeralStorage(int initialCapacity) {
+        return EphemeralStorage.newLongIdInstance(initialCapacity);
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @since 0.7.1.3
+     */
+    @Override
+    protected UniversalIdIntQueueMessage deserialize(byte[] msgData) {
+        return deserialize(msgData, UniversalIdIntQueueMessage.class);
+    }
 }
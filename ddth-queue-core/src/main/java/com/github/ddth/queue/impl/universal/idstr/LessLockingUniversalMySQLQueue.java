@@ -50,6 +50,15 @@ public class LessLockingUniversalMySQLQueue extends AbstractLessLockingUniversal
         SQL_UPDATE_EPHEMERAL_ID_TAKE = MessageFormat.format(SQL_UPDATE_EPHEMERAL_ID_TAKE,
                 getTableName(), COL_EPHEMERAL_ID);
 
+        /*
+         * Sets value of column COL_EPHEMERAL_ID for taking up to N queue
+         * messages
+         */
+        SQL_UPDATE_EPHEMERAL_ID_TAKE_MANY = "UPDATE {0} SET {1}=? WHERE {1} IS null"
+                + (getFifo() ? (" ORDER BY " + COL_QUEUE_ID + " DESC") : "") + " LIMIT ?";
+        SQL_UPDATE_EPHEMERAL_ID_TAKE_MANY = MessageFormat.format(
+                SQL_UPDATE_EPHEMERAL_ID_TAKE_MANY, getTableName(), COL_EPHEMERAL_ID);
+
         SQL_CLEAR_EPHEMERAL_ID = "UPDATE {0} SET {1}=null WHERE {2}=?";
         SQL_CLEAR_EPHEMERAL_ID = MessageFormat.format(SQL_CLEAR_EPHEMERAL_ID, getTableName(),
                 COL_EPHEMERAL_ID, COL_QUEUE_ID);
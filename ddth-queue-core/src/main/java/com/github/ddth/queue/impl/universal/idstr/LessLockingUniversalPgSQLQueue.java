@@ -51,6 +51,16 @@ public class LessLockingUniversalPgSQLQueue extends AbstractLessLockingUniversal
         SQL_UPDATE_EPHEMERAL_ID_TAKE = MessageFormat.format(SQL_UPDATE_EPHEMERAL_ID_TAKE,
                 getTableName(), COL_EPHEMERAL_ID, COL_QUEUE_ID);
 
+        /*
+         * Sets value of column COL_EPHEMERAL_ID for taking up to N queue
+         * messages
+         */
+        SQL_UPDATE_EPHEMERAL_ID_TAKE_MANY = "UPDATE {0} M SET {1}=? FROM (SELECT {2} FROM {0} WHERE {1}=null"
+                + (getFifo() ? (" ORDER BY {2} DESC") : "")
+                + " LIMIT ? FOR UPDATE) S WHERE M.{2}=S.{2}";
+        SQL_UPDATE_EPHEMERAL_ID_TAKE_MANY = MessageFormat.format(
+                SQL_UPDATE_EPHEMERAL_ID_TAKE_MANY, getTableName(), COL_EPHEMERAL_ID, COL_QUEUE_ID);
+
         SQL_CLEAR_EPHEMERAL_ID = "UPDATE {0} SET {1}=null WHERE {2}=?";
         SQL_CLEAR_EPHEMERAL_ID = MessageFormat.format(SQL_CLEAR_EPHEMERAL_ID, getTableName(),
                 COL_EPHEMERAL_ID, COL_QUEUE_ID);
@@ -40,4 +40,13 @@ public class UniversalInmemQueue
         return this;
     }
 
+    /**
+     * {@inheritDoc}
+     * 
+     * @since 0.7.1.3
+     */
+    @Override
+    protected UniversalIdStrQueueMessage deserialize(byte[] msgData) {
+        return deserialize(msgData, UniversalIdStrQueueMessage.class);
+    }
 }
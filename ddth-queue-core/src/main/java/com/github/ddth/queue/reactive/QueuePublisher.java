@@ -0,0 +1,593 @@
+package com.github.ddth.queue.reactive;
+
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.ddth.queue.IQueue;
+import com.github.ddth.queue.IQueueMessage;
+import com.github.ddth.queue.impl.AbstractQueue;
+import com.github.ddth.queue.utils.QueueException;
+
+/**
+ * Reactive Streams {@link Publisher} that emits messages taken from an
+ * {@link IQueue}.
+ * 
+ * <p>
+ * Subscriber's demand ({@link Subscription#request(long)}) is mapped onto
+ * {@link IQueue#take(int)}: messages are taken in batches of up to
+ * {@link #getPrefetch()} messages into a per-subscription buffer, and only
+ * while there is outstanding demand. The total number of messages taken but
+ * not yet finished by this publisher is capped by {@link #getMaxInFlight()},
+ * so a slow subscriber stops the publisher from taking more messages instead
+ * of filling up the queue's ephemeral storage.
+ * </p>
+ * 
+ * <p>
+ * Acknowledgement:
+ * <ul>
+ * <li>If {@link #isAutoAck()} is {@code true} (default), a message is finished
+ * as soon as {@link Subscriber#onNext(Object)} returns.</li>
+ * <li>Otherwise, the subscriber must call {@link #ack(IQueueMessage)} (or
+ * {@link #nack(IQueueMessage)}) for each received message.</li>
+ * </ul>
+ * </p>
+ * 
+ * <p>
+ * Queues are unbounded streams: subscribers are only completed when the
+ * publisher is destroyed. Messages that have been taken but not yet emitted
+ * when a subscription is cancelled are put back to the queue with
+ * {@link IQueue#requeueSilent(IQueueMessage)}.
+ * </p>
+ * 
+ * @author Thanh Ba Nguyen <bnguyen2k@gmail.com>
+ * @since 0.7.1.3
+ */
+public class QueuePublisher<ID, DATA>
+        implements Publisher<IQueueMessage<ID, DATA>>, AutoCloseable {
+
+    private final Logger LOGGER = LoggerFactory.getLogger(QueuePublisher.class);
+
+    public final static int DEFAULT_PREFETCH = 16;
+    public final static int DEFAULT_MAX_IN_FLIGHT = 64;
+
+    private IQueue<ID, DATA> queue;
+    private int prefetch = DEFAULT_PREFETCH;
+    private int maxInFlight = DEFAULT_MAX_IN_FLIGHT;
+    private boolean autoAck = true;
+    private long minBackoffMs = AbstractQueue.DEFAULT_TAKE_MIN_BACKOFF_MS;
+    private long maxBackoffMs = AbstractQueue.DEFAULT_TAKE_MAX_BACKOFF_MS;
+
+    private ScheduledExecutorService executor;
+    private boolean myOwnExecutor = true;
+
+    private final AtomicInteger inFlight = new AtomicInteger(0);
+    private final Set<QueueSubscription> subscriptions = ConcurrentHashMap.newKeySet();
+
+    public QueuePublisher() {
+    }
+
+    public QueuePublisher(IQueue<ID, DATA> queue) {
+        setQueue(queue);
+    }
+
+    /**
+     * The queue to take messages from.
+     * 
+     * @return
+     */
+    public IQueue<ID, DATA> getQueue() {
+        return queue;
+    }
+
+    /**
+     * The queue to take messages from.
+     * 
+     * @param queue
+     * @return
+     */
+    public QueuePublisher<ID, DATA> setQueue(IQueue<ID, DATA> queue) {
+        this.queue = queue;
+        return this;
+    }
+
+    /**
+     * Max number of messages to take in one batch, per subscription (default
+     * {@link #DEFAULT_PREFETCH}).
+     * 
+     * @return
+     */
+    public int getPrefetch() {
+        return prefetch;
+    }
+
+    /**
+     * Max number of messages to take in one batch, per subscription.
+     * 
+     * @param prefetch
+     * @return
+     */
+    public QueuePublisher<ID, DATA> setPrefetch(int prefetch) {
+        this.prefetch = prefetch;
+        return this;
+    }
+
+    /**
+     * Max number of messages that have been taken but not yet finished, across
+     * all subscriptions (default {@link #DEFAULT_MAX_IN_FLIGHT}).
+     * 
+     * <p>
+     * Note: this value should not be larger than the queue's ephemeral max
+     * size (if bounded).
+     * </p>
+     * 
+     * @return
+     */
+    public int getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    /**
+     * Max number of messages that have been taken but not yet finished, across
+     * all subscriptions.
+     * 
+     * @param maxInFlight
+     * @return
+     */
+    public QueuePublisher<ID, DATA> setMaxInFlight(int maxInFlight) {
+        this.maxInFlight = maxInFlight;
+        return this;
+    }
+
+    /**
+     * If {@code true} (default), messages are finished as soon as
+     * {@link Subscriber#onNext(Object)} returns.
+     * 
+     * @return
+     */
+    public boolean isAutoAck() {
+        return autoAck;
+    }
+
+    /**
+     * If {@code true}, messages are finished as soon as
+     * {@link Subscriber#onNext(Object)} returns. Otherwise subscribers must
+     * call {@link #ack(IQueueMessage)} or {@link #nack(IQueueMessage)}.
+     * 
+     * @param autoAck
+     * @return
+     */
+    public QueuePublisher<ID, DATA> setAutoAck(boolean autoAck) {
+        this.autoAck = autoAck;
+        return this;
+    }
+
+    /**
+     * Min back-off time (in milliseconds) before polling an empty queue again.
+     * 
+     * @return
+     */
+    public long getMinBackoffMs() {
+        return minBackoffMs;
+    }
+
+    /**
+     * Min back-off time (in milliseconds) before polling an empty queue again.
+     * 
+     * @param minBackoffMs
+     * @return
+     */
+    public QueuePublisher<ID, DATA> setMinBackoffMs(long minBackoffMs) {
+        this.minBackoffMs = minBackoffMs;
+        return this;
+    }
+
+    /**
+     * Max back-off time (in milliseconds) before polling an empty queue again.
+     * 
+     * @return
+     */
+    public long getMaxBackoffMs() {
+        return maxBackoffMs;
+    }
+
+    /**
+     * Max back-off time (in milliseconds) before polling an empty queue again.
+     * 
+     * @param maxBackoffMs
+     * @return
+     */
+    public QueuePublisher<ID, DATA> setMaxBackoffMs(long maxBackoffMs) {
+        this.maxBackoffMs = maxBackoffMs;
+        return this;
+    }
+
+    /**
+     * The executor on which messages are taken and emitted.
+     * 
+     * @return
+     */
+    public ScheduledExecutorService getExecutor() {
+        return executor;
+    }
+
+    /**
+     * The executor on which messages are taken and emitted.
+     * 
+     * @param executor
+     * @param setMyOwnExecutor
+     * @return
+     */
+    protected QueuePublisher<ID, DATA> setExecutor(ScheduledExecutorService executor,
+            boolean setMyOwnExecutor) {
+        if (myOwnExecutor && this.executor != null) {
+            this.executor.shutdown();
+        }
+        this.executor = executor;
+        myOwnExecutor = setMyOwnExecutor;
+        return this;
+    }
+
+    /**
+     * The executor on which messages are taken and emitted. The supplied
+     * executor is not shut down when this publisher is destroyed.
+     * 
+     * @param executor
+     * @return
+     */
+    public QueuePublisher<ID, DATA> setExecutor(ScheduledExecutorService executor) {
+        return setExecutor(executor, false);
+    }
+
+    /**
+     * Number of messages that have been taken (or are being taken) but not
+     * yet finished.
+     * 
+     * @return
+     */
+    public int getNumInFlight() {
+        return inFlight.get();
+    }
+
+    /**
+     * Build a {@link ScheduledExecutorService} for my own use.
+     * 
+     * @return
+     */
+    protected ScheduledExecutorService buildExecutor() {
+        int numThreads = Runtime.getRuntime().availableProcessors();
+        AtomicInteger counter = new AtomicInteger();
+        return new ScheduledThreadPoolExecutor(numThreads, r -> {
+            Thread t = new Thread(r, "QueuePublisher-" + counter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Init method.
+     * 
+     * @return
+     */
+    public QueuePublisher<ID, DATA> init() {
+        if (queue == null) {
+            throw new IllegalStateException("Queue is null.");
+        }
+        if (executor == null) {
+            setExecutor(buildExecutor(), true);
+        }
+        return this;
+    }
+
+    /**
+     * Destroy method: completes all active subscriptions.
+     */
+    public void destroy() {
+        for (QueueSubscription subscription : subscriptions) {
+            subscription.complete();
+        }
+        if (executor != null && myOwnExecutor) {
+            executor.shutdown();
+            try {
+                executor.awaitTermination(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            executor = null;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void close() {
+        destroy();
+    }
+
+    /**
+     * Acknowledge a message: the message is finished and a slot is freed for
+     * the publisher to take more messages.
+     * 
+     * @param msg
+     */
+    public void ack(IQueueMessage<ID, DATA> msg) {
+        try {
+            queue.finish(msg);
+        } finally {
+            release();
+        }
+    }
+
+    /**
+     * Negative-acknowledge a message: the message is re-queued and a slot is
+     * freed for the publisher to take more messages.
+     * 
+     * @param msg
+     */
+    public void nack(IQueueMessage<ID, DATA> msg) {
+        try {
+            queue.requeue(msg);
+        } finally {
+            release();
+        }
+    }
+
+    /**
+     * Reserves up to {@code max} in-flight slots before taking messages, so
+     * that concurrent subscriptions never take more than
+     * {@link #getMaxInFlight()} messages in total.
+     * 
+     * @param max
+     * @return number of reserved slots
+     */
+    private int reserveInFlight(int max) {
+        for (;;) {
+            int current = inFlight.get();
+            int n = Math.min(max, maxInFlight - current);
+            if (n <= 0) {
+                return 0;
+            }
+            if (inFlight.compareAndSet(current, current + n)) {
+                return n;
+            }
+        }
+    }
+
+    private void release() {
+        if (inFlight.getAndDecrement() >= maxInFlight) {
+            /* we were at full capacity, wake up subscriptions */
+            for (QueueSubscription subscription : subscriptions) {
+                subscription.schedule();
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void subscribe(Subscriber<? super IQueueMessage<ID, DATA>> subscriber) {
+        if (subscriber == null) {
+            throw new NullPointerException("Subscriber is null.");
+        }
+        QueueSubscription subscription = new QueueSubscription(subscriber);
+        subscriptions.add(subscription);
+        subscriber.onSubscribe(subscription);
+    }
+
+    /**
+     * A subscription: all interactions with the subscriber happen in
+     * {@link #drain()}, which is serialized by {@link #wip}.
+     */
+    private class QueueSubscription implements Subscription {
+        private final Subscriber<? super IQueueMessage<ID, DATA>> subscriber;
+        private final Queue<IQueueMessage<ID, DATA>> buffer = new ArrayDeque<>();
+        private final AtomicLong requested = new AtomicLong(0);
+        private final AtomicInteger wip = new AtomicInteger(0);
+        private final AtomicBoolean retryScheduled = new AtomicBoolean(false);
+        private volatile boolean cancelled, completed;
+        private volatile Throwable error;
+        private boolean done;
+        private long backoffMs = minBackoffMs;
+
+        QueueSubscription(Subscriber<? super IQueueMessage<ID, DATA>> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                error = new IllegalArgumentException(
+                        "Number of requested elements must be positive (rule 3.9), got " + n);
+            } else {
+                long r, u;
+                do {
+                    r = requested.get();
+                    u = r + n;
+                    if (u < 0) {
+                        u = Long.MAX_VALUE;
+                    }
+                } while (!requested.compareAndSet(r, u));
+            }
+            schedule();
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void cancel() {
+            cancelled = true;
+            schedule();
+        }
+
+        void complete() {
+            completed = true;
+            schedule();
+        }
+
+        void schedule() {
+            if (wip.getAndIncrement() == 0) {
+                try {
+                    executor.execute(this::drainLoop);
+                } catch (Exception e) {
+                    LOGGER.warn(e.getMessage(), e);
+                    wip.set(0);
+                }
+            }
+        }
+
+        private void scheduleRetry() {
+            if (retryScheduled.compareAndSet(false, true)) {
+                long delay = backoffMs;
+                backoffMs = Math.min(backoffMs * 2, Math.max(minBackoffMs, maxBackoffMs));
+                try {
+                    executor.schedule(() -> {
+                        retryScheduled.set(false);
+                        schedule();
+                    }, delay, TimeUnit.MILLISECONDS);
+                } catch (Exception e) {
+                    retryScheduled.set(false);
+                }
+            }
+        }
+
+        private void drainLoop() {
+            int missed = 1;
+            for (;;) {
+                if (!done) {
+                    drain();
+                }
+                missed = wip.addAndGet(-missed);
+                if (missed == 0) {
+                    break;
+                }
+            }
+        }
+
+        private void terminate() {
+            done = true;
+            subscriptions.remove(this);
+            IQueueMessage<ID, DATA> msg;
+            while ((msg = buffer.poll()) != null) {
+                try {
+                    queue.requeueSilent(msg);
+                } catch (Exception e) {
+                    LOGGER.warn(e.getMessage(), e);
+                } finally {
+                    release();
+                }
+            }
+        }
+
+        /**
+         * Takes a batch of messages into the buffer.
+         * 
+         * @return {@code false} if nothing was taken
+         */
+        private boolean fill() {
+            int capacity = reserveInFlight(Math.max(1, prefetch));
+            if (capacity <= 0) {
+                /*
+                 * ack()/nack() will reschedule us; retry anyway in case the
+                 * slots were only reserved by another subscription's fill()
+                 */
+                scheduleRetry();
+                return false;
+            }
+            List<IQueueMessage<ID, DATA>> msgs = null;
+            try {
+                msgs = queue.take(capacity);
+            } catch (QueueException.EphemeralIsFull e) {
+                scheduleRetry();
+                return false;
+            } finally {
+                int unused = capacity - (msgs != null ? msgs.size() : 0);
+                if (unused > 0) {
+                    inFlight.addAndGet(-unused);
+                }
+            }
+            if (msgs.isEmpty()) {
+                scheduleRetry();
+                return false;
+            }
+            buffer.addAll(msgs);
+            backoffMs = minBackoffMs;
+            return true;
+        }
+
+        private void drain() {
+            if (cancelled) {
+                terminate();
+                return;
+            }
+            Throwable t = error;
+            if (t != null) {
+                terminate();
+                subscriber.onError(t);
+                return;
+            }
+            if (completed) {
+                terminate();
+                subscriber.onComplete();
+                return;
+            }
+            long r = requested.get();
+            long e = 0;
+            try {
+                while (e != r && !cancelled) {
+                    IQueueMessage<ID, DATA> msg = buffer.poll();
+                    if (msg == null) {
+                        if (!fill()) {
+                            break;
+                        }
+                        continue;
+                    }
+                    e++;
+                    try {
+                        subscriber.onNext(msg);
+                    } catch (Throwable ex) {
+                        /* rule 2.13: consider the subscription cancelled */
+                        LOGGER.warn("Subscriber threw exception from onNext: " + ex.getMessage(),
+                                ex);
+                        buffer.add(msg);
+                        cancelled = true;
+                        break;
+                    }
+                    if (autoAck) {
+                        ack(msg);
+                    }
+                }
+            } catch (Exception ex) {
+                terminate();
+                subscriber.onError(ex);
+                return;
+            } finally {
+                if (e != 0 && r != Long.MAX_VALUE) {
+                    requested.addAndGet(-e);
+                }
+            }
+            if (cancelled) {
+                terminate();
+            }
+        }
+    }
+}
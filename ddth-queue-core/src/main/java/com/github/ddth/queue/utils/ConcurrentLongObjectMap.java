@@ -0,0 +1,309 @@
+package com.github.ddth.queue.utils;
+
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * Concurrent hash map with primitive {@code long} keys.
+ *
+ * <p>
+ * The map is split into lock-striped segments; each segment is an
+ * open-addressing table (linear probing, backward-shift deletion) of a
+ * {@code long[]} of keys and an {@code Object[]} of values. Compared to a
+ * {@code ConcurrentHashMap<Long, V>}, keys are not boxed and no node is
+ * allocated per entry: {@link #putIfAbsent(long, Object)} and
+ * {@link #remove(long)} only allocate when a segment is resized.
+ * </p>
+ *
+ * <p>
+ * Notes:
+ * <ul>
+ * <li>{@code null} values are not permitted.</li>
+ * <li>{@link #size()} is not atomic with respect to concurrent
+ * modifications.</li>
+ * <li>{@link #forEach(EntryConsumer)} visits one segment at a time while
+ * holding the segment's lock; the callback must not modify the map.</li>
+ * </ul>
+ * </p>
+ *
+ * @author Thanh Ba Nguyen <bnguyen2k@gmail.com>
+ * @since 0.7.1.3
+ */
+public class ConcurrentLongObjectMap<V> {
+
+    /**
+     * Callback of {@link ConcurrentLongObjectMap#forEach(EntryConsumer)}.
+     */
+    @FunctionalInterface
+    public static interface EntryConsumer<V> {
+        void accept(long key, V value);
+    }
+
+    private final static int MIN_SEGMENT_CAPACITY = 16;
+    private final static int MAX_SEGMENT_CAPACITY = 1 << 30;
+
+    private static int nextPowerOf2(int n) {
+        return n <= 1 ? 1 : n >= MAX_SEGMENT_CAPACITY ? MAX_SEGMENT_CAPACITY
+                : Integer.highestOneBit(n - 1) << 1;
+    }
+
+    /**
+     * Spread the bits of a key (Fibonacci hashing), so that sequential keys
+     * are scattered over segments and slots.
+     *
+     * @param key
+     * @return
+     */
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    private final static class Segment<V> {
+        private long[] keys;
+        private Object[] values;
+        private int mask;
+        private volatile int size;
+
+        Segment(int capacity) {
+            keys = new long[capacity];
+            values = new Object[capacity];
+            mask = capacity - 1;
+        }
+
+        private int indexOf(long key, int h) {
+            int i = h & mask;
+            while (values[i] != null) {
+                if (keys[i] == key) {
+                    return i;
+                }
+                i = (i + 1) & mask;
+            }
+            return -1 - i;
+        }
+
+        @SuppressWarnings("unchecked")
+        synchronized V get(long key, int h) {
+            int i = indexOf(key, h);
+            return i >= 0 ? (V) values[i] : null;
+        }
+
+        @SuppressWarnings("unchecked")
+        synchronized V put(long key, int h, V value, boolean onlyIfAbsent) {
+            int i = indexOf(key, h);
+            if (i >= 0) {
+                V old = (V) values[i];
+                if (!onlyIfAbsent) {
+                    values[i] = value;
+                }
+                return old;
+            }
+            i = -1 - i;
+            keys[i] = key;
+            values[i] = value;
+            int newSize = size + 1;
+            size = newSize;
+            if (newSize > (values.length >> 1) + (values.length >> 2)) {
+                resize();
+            }
+            return null;
+        }
+
+        @SuppressWarnings("unchecked")
+        synchronized V remove(long key, int h) {
+            int i = indexOf(key, h);
+            if (i < 0) {
+                return null;
+            }
+            V old = (V) values[i];
+            // backward-shift deletion: move up following entries of the same
+            // probe sequence, so that lookups never need tombstones
+            int hole = i;
+            int j = (i + 1) & mask;
+            while (values[j] != null) {
+                int home = hash(keys[j]) & mask;
+                if (((j - home) & mask) >= ((j - hole) & mask)) {
+                    keys[hole] = keys[j];
+                    values[hole] = values[j];
+                    hole = j;
+                }
+                j = (j + 1) & mask;
+            }
+            values[hole] = null;
+            size = size - 1;
+            return old;
+        }
+
+        private void resize() {
+            if (values.length >= MAX_SEGMENT_CAPACITY) {
+                return;
+            }
+            long[] oldKeys = keys;
+            Object[] oldValues = values;
+            keys = new long[oldValues.length << 1];
+            values = new Object[oldValues.length << 1];
+            mask = values.length - 1;
+            for (int i = 0; i < oldValues.length; i++) {
+                if (oldValues[i] != null) {
+                    int j = hash(oldKeys[i]) & mask;
+                    while (values[j] != null) {
+                        j = (j + 1) & mask;
+                    }
+                    keys[j] = oldKeys[i];
+                    values[j] = oldValues[i];
+                }
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        synchronized void forEach(EntryConsumer<? super V> action) {
+            for (int i = 0; i < values.length; i++) {
+                if (values[i] != null) {
+                    action.accept(keys[i], (V) values[i]);
+                }
+            }
+        }
+
+        synchronized void clear() {
+            Arrays.fill(values, null);
+            size = 0;
+        }
+    }
+
+    private final Segment<V>[] segments;
+    private final int segmentShift;
+
+    public ConcurrentLongObjectMap() {
+        this(64, Runtime.getRuntime().availableProcessors() * 4);
+    }
+
+    /**
+     *
+     * @param initialCapacity
+     *            expected number of entries
+     * @param concurrencyLevel
+     *            expected number of concurrently updating threads, rounded
+     *            up to a power of two to be the number of segments
+     */
+    @SuppressWarnings("unchecked")
+    public ConcurrentLongObjectMap(int initialCapacity, int concurrencyLevel) {
+        int numSegments = Math.min(nextPowerOf2(Math.max(1, concurrencyLevel)), 1 << 16);
+        int segmentCapacity = Math.max(MIN_SEGMENT_CAPACITY,
+                nextPowerOf2(Math.max(0, initialCapacity) / numSegments * 2));
+        segments = new Segment[numSegments];
+        for (int i = 0; i < numSegments; i++) {
+            segments[i] = new Segment<>(segmentCapacity);
+        }
+        segmentShift = 32 - Integer.numberOfTrailingZeros(numSegments);
+    }
+
+    private Segment<V> segmentFor(int h) {
+        // high bits select the segment, low bits select the slot
+        return segments.length == 1 ? segments[0] : segments[h >>> segmentShift];
+    }
+
+    /**
+     * Get the value associated with a key.
+     *
+     * @param key
+     * @return {@code null} if the key is not in the map
+     */
+    public V get(long key) {
+        int h = hash(key);
+        return segmentFor(h).get(key, h);
+    }
+
+    /**
+     * Associate a value with a key.
+     *
+     * @param key
+     * @param value
+     * @return the previous value, {@code null} if none
+     */
+    public V put(long key, V value) {
+        if (value == null) {
+            throw new NullPointerException();
+        }
+        int h = hash(key);
+        return segmentFor(h).put(key, h, value, false);
+    }
+
+    /**
+     * Associate a value with a key, if the key is not already in the map.
+     *
+     * @param key
+     * @param value
+     * @return the current value, {@code null} if the value has been put
+     */
+    public V putIfAbsent(long key, V value) {
+        if (value == null) {
+            throw new NullPointerException();
+        }
+        int h = hash(key);
+        return segmentFor(h).put(key, h, value, true);
+    }
+
+    /**
+     * Remove a key from the map.
+     *
+     * @param key
+     * @return the removed value, {@code null} if the key was not in the map
+     */
+    public V remove(long key) {
+        int h = hash(key);
+        return segmentFor(h).remove(key, h);
+    }
+
+    /**
+     * Number of entries in the map.
+     *
+     * @return
+     */
+    public int size() {
+        long size = 0;
+        for (Segment<V> segment : segments) {
+            size += segment.size;
+        }
+        return size > Integer.MAX_VALUE ? Integer.MAX_VALUE : (int) size;
+    }
+
+    public boolean isEmpty() {
+        for (Segment<V> segment : segments) {
+            if (segment.size > 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Visit all entries of the map, without allocating.
+     *
+     * @param action
+     */
+    public void forEach(EntryConsumer<? super V> action) {
+        for (Segment<V> segment : segments) {
+            if (segment.size > 0) {
+                segment.forEach(action);
+            }
+        }
+    }
+
+    /**
+     * Visit all values of the map, without allocating.
+     *
+     * @param action
+     */
+    public void forEachValue(Consumer<? super V> action) {
+        forEach((key, value) -> action.accept(value));
+    }
+
+    /**
+     * Remove all entries.
+     */
+    public void clear() {
+        for (Segment<V> segment : segments) {
+            segment.clear();
+        }
+    }
+}
@@ -0,0 +1,257 @@
+package com.github.ddth.queue.utils;
+
+import java.util.AbstractQueue;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded, lock-free, multi-producer/multi-consumer queue backed by an array
+ * ring (Dmitry Vyukov's bounded MPMC queue).
+ * 
+ * <p>
+ * Each slot carries its own sequence number: a producer claims a slot by a CAS
+ * on the tail counter, writes the element then publishes the slot by
+ * advancing its sequence; a consumer does the same with the head counter.
+ * {@link #offer(Object)} and {@link #poll()} never block nor allocate. Head
+ * and tail counters are padded to live on separate cache lines, so that
+ * producers and consumers do not invalidate each other's counter.
+ * </p>
+ * 
+ * <p>
+ * Notes:
+ * <ul>
+ * <li>Capacity is rounded up to the next power of two.</li>
+ * <li>{@code null} elements are not permitted.</li>
+ * <li>{@link #size()} and {@link #iterator()} are best-effort (weakly
+ * consistent) under concurrent modification.</li>
+ * </ul>
+ * </p>
+ * 
+ * @author Thanh Ba Nguyen <bnguyen2k@gmail.com>
+ * @since 0.7.1.3
+ */
+public class MpmcArrayQueue<E> extends AbstractQueue<E> {
+
+    /*
+     * Padding: the counter's value is surrounded by 7 longs on each side, so
+     * that it never shares a (64-byte) cache line with another hot field.
+     * Fields of a super class are laid out before fields of its sub-classes.
+     */
+    static abstract class LhsPadding {
+        protected long p01, p02, p03, p04, p05, p06, p07;
+    }
+
+    static abstract class Value extends LhsPadding {
+        protected volatile long value;
+    }
+
+    static final class PaddedSequence extends Value {
+        protected long p11, p12, p13, p14, p15, p16, p17;
+
+        private static final AtomicLongFieldUpdater<Value> UPDATER = AtomicLongFieldUpdater
+                .newUpdater(Value.class, "value");
+
+        long get() {
+            return value;
+        }
+
+        boolean compareAndSet(long expect, long update) {
+            return UPDATER.compareAndSet(this, expect, update);
+        }
+    }
+
+    /**
+     * Compute the smallest power of two that is greater than or equal to
+     * {@code value}.
+     * 
+     * @param value
+     * @return
+     */
+    public static int roundToPowerOfTwo(int value) {
+        if (value > (1 << 30)) {
+            throw new IllegalArgumentException(
+                    "Capacity must not be greater than " + (1 << 30) + ".");
+        }
+        return value <= 2 ? 2 : 1 << (32 - Integer.numberOfLeadingZeros(value - 1));
+    }
+
+    private final int capacity;
+    private final int mask;
+    private final AtomicReferenceArray<E> buffer;
+    private final AtomicLongArray sequences;
+    private final PaddedSequence head = new PaddedSequence();
+    private final PaddedSequence tail = new PaddedSequence();
+
+    /**
+     * 
+     * @param capacity
+     *            queue's capacity, will be rounded up to the next power of two
+     */
+    public MpmcArrayQueue(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be positive.");
+        }
+        this.capacity = roundToPowerOfTwo(capacity);
+        this.mask = this.capacity - 1;
+        this.buffer = new AtomicReferenceArray<>(this.capacity);
+        this.sequences = new AtomicLongArray(this.capacity);
+        for (int i = 0; i < this.capacity; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    /**
+     * Queue's capacity (a power of two).
+     * 
+     * @return
+     */
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @return {@code false} if the queue is full
+     */
+    @Override
+    public boolean offer(E e) {
+        if (e == null) {
+            throw new NullPointerException();
+        }
+        long pos = tail.get();
+        while (true) {
+            int index = (int) (pos & mask);
+            long diff = sequences.get(index) - pos;
+            if (diff == 0) {
+                if (tail.compareAndSet(pos, pos + 1)) {
+                    buffer.lazySet(index, e);
+                    // publish: the slot is now readable by the consumer of
+                    // position [pos]
+                    sequences.lazySet(index, pos + 1);
+                    return true;
+                }
+                pos = tail.get();
+            } else if (diff < 0) {
+                // the slot has not been consumed one lap ago: queue is full
+                return false;
+            } else {
+                // another producer has claimed this position
+                pos = tail.get();
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @return {@code null} if the queue is empty
+     */
+    @Override
+    public E poll() {
+        long pos = head.get();
+        while (true) {
+            int index = (int) (pos & mask);
+            long diff = sequences.get(index) - (pos + 1);
+            if (diff == 0) {
+                if (head.compareAndSet(pos, pos + 1)) {
+                    E e = buffer.get(index);
+                    buffer.lazySet(index, null);
+                    // release: the slot is now writable by the producer of
+                    // position [pos + capacity]
+                    sequences.lazySet(index, pos + capacity);
+                    return e;
+                }
+                pos = head.get();
+            } else if (diff < 0) {
+                // the slot has not been published: queue is empty
+                return null;
+            } else {
+                // another consumer has claimed this position
+                pos = head.get();
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public E peek() {
+        while (true) {
+            long pos = head.get();
+            int index = (int) (pos & mask);
+            long diff = sequences.get(index) - (pos + 1);
+            if (diff < 0) {
+                return null;
+            }
+            E e = buffer.get(index);
+            if (e != null && head.get() == pos) {
+                return e;
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int size() {
+        while (true) {
+            long h = head.get();
+            long t = tail.get();
+            if (h == head.get()) {
+                long size = t - h;
+                return size <= 0 ? 0 : size >= capacity ? capacity : (int) size;
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isEmpty() {
+        return head.get() >= tail.get();
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * <p>
+     * The returned iterator walks over a snapshot of the elements that were in
+     * the queue when this method is called; it does not support
+     * {@link Iterator#remove()}.
+     * </p>
+     */
+    @Override
+    public Iterator<E> iterator() {
+        List<E> snapshot = new ArrayList<>();
+        long t = tail.get();
+        for (long pos = head.get(); pos < t; pos++) {
+            int index = (int) (pos & mask);
+            if (sequences.get(index) == pos + 1) {
+                E e = buffer.get(index);
+                if (e != null) {
+                    snapshot.add(e);
+                }
+            }
+        }
+        final Iterator<E> it = snapshot.iterator();
+        return new Iterator<E>() {
+            @Override
+            public boolean hasNext() {
+                return it.hasNext();
+            }
+
+            @Override
+            public E next() {
+                return it.next();
+            }
+        };
+    }
+}
@@ -0,0 +1,302 @@
+package com.github.ddth.queue.utils;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * FIFO queue of byte records stored in direct (off-heap) memory.
+ * 
+ * <p>
+ * Records are appended to a chain of fixed-size direct {@link ByteBuffer}
+ * segments, each record prefixed with its length. A record never spans two
+ * segments: if it does not fit in the remaining space of the last segment, a
+ * new segment is started (a record larger than the segment size gets a
+ * segment of its own). A segment is released once all its records have been
+ * polled; released segments are kept for reuse instead of allocating new
+ * ones, so that a steady queue does not keep allocating direct memory.
+ * </p>
+ * 
+ * <p>
+ * The queue can be bounded by number of bytes (sum of records' sizes plus
+ * their {@code 4}-byte headers) and/or by number of records. If bounded by
+ * number of bytes, all released segments are kept for reuse, so the direct
+ * memory allocated for regular segments stays below twice the bound plus two
+ * segments (a record never spans two segments, so the tail of a segment may
+ * be left unused); otherwise only a few are kept. Segments allocated for
+ * records larger than the segment size are never reused, their memory is
+ * reclaimed once they are garbage-collected.
+ * </p>
+ * 
+ * <p>
+ * Thread-safe: operations are guarded by a single lock; the lock is held
+ * while a record is copied in or out, but never while it is encoded or
+ * decoded by the caller.
+ * </p>
+ * 
+ * @author Thanh Ba Nguyen <bnguyen2k@gmail.com>
+ * @since 0.7.1.3
+ */
+public class OffHeapByteQueue {
+
+    /**
+     * Default segment size: {@code 1MB}.
+     */
+    public final static int DEFAULT_SEGMENT_SIZE = 1024 * 1024;
+
+    private final static int RECORD_HEADER_SIZE = 4;
+    private final static int MAX_FREE_SEGMENTS = 2;
+
+    private final static class Segment {
+        private final ByteBuffer buffer;
+        private int writePos = 0;
+        private int readPos = 0;
+
+        Segment(int capacity) {
+            buffer = ByteBuffer.allocateDirect(capacity);
+        }
+
+        int remaining() {
+            return buffer.capacity() - writePos;
+        }
+    }
+
+    private final int segmentSize;
+    private final long maxBytes;
+    private final int maxRecords;
+
+    private final ArrayDeque<Segment> segments = new ArrayDeque<>();
+    private final ArrayDeque<Segment> freeSegments = new ArrayDeque<>();
+    private long usedBytes = 0, allocatedBytes = 0;
+    private volatile int size = 0;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+
+    /**
+     * Create an unbounded queue with default segment size.
+     */
+    public OffHeapByteQueue() {
+        this(DEFAULT_SEGMENT_SIZE, 0, 0);
+    }
+
+    /**
+     * 
+     * @param segmentSize
+     *            size (in bytes) of a direct memory segment
+     * @param maxBytes
+     *            max number of bytes the queue can hold, a value less than
+     *            {@code 1} means "no boundary"
+     * @param maxRecords
+     *            max number of records the queue can hold, a value less than
+     *            {@code 1} means "no boundary"
+     */
+    public OffHeapByteQueue(int segmentSize, long maxBytes, int maxRecords) {
+        if (segmentSize <= RECORD_HEADER_SIZE) {
+            throw new IllegalArgumentException(
+                    "Segment size must be greater than " + RECORD_HEADER_SIZE + ".");
+        }
+        this.segmentSize = segmentSize;
+        this.maxBytes = maxBytes;
+        this.maxRecords = maxRecords;
+    }
+
+    public int getSegmentSize() {
+        return segmentSize;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public int getMaxRecords() {
+        return maxRecords;
+    }
+
+    private Segment newSegment(int minCapacity) {
+        if (minCapacity <= segmentSize) {
+            Segment segment = freeSegments.pollFirst();
+            if (segment != null) {
+                segment.writePos = segment.readPos = 0;
+                return segment;
+            }
+        }
+        Segment segment = new Segment(Math.max(segmentSize, minCapacity));
+        allocatedBytes += segment.buffer.capacity();
+        return segment;
+    }
+
+    private void releaseSegment(Segment segment) {
+        if (segment.buffer.capacity() == segmentSize
+                && (maxBytes > 0 || freeSegments.size() < MAX_FREE_SEGMENTS)) {
+            freeSegments.addLast(segment);
+        } else {
+            allocatedBytes -= segment.buffer.capacity();
+        }
+    }
+
+    /**
+     * Append a record to the tail of the queue.
+     * 
+     * @param record
+     * @return {@code false} if the queue is full
+     */
+    public boolean offer(byte[] record) {
+        int recordSize = RECORD_HEADER_SIZE + record.length;
+        lock.lock();
+        try {
+            if ((maxBytes > 0 && usedBytes + recordSize > maxBytes)
+                    || (maxRecords > 0 && size >= maxRecords)) {
+                return false;
+            }
+            Segment segment = segments.peekLast();
+            if (segment == null || segment.remaining() < recordSize) {
+                segment = newSegment(recordSize);
+                segments.addLast(segment);
+            }
+            ByteBuffer buffer = segment.buffer;
+            buffer.putInt(segment.writePos, record.length);
+            buffer.position(segment.writePos + RECORD_HEADER_SIZE);
+            buffer.put(record);
+            segment.writePos += recordSize;
+            usedBytes += recordSize;
+            size++;
+            notEmpty.signal();
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private byte[] dequeue() {
+        Segment segment = segments.peekFirst();
+        while (segment != null && segment.readPos >= segment.writePos
+                && segment != segments.peekLast()) {
+            // an empty (rewound) segment followed by a segment allocated for
+            // a record that did not fit in it
+            releaseSegment(segments.pollFirst());
+            segment = segments.peekFirst();
+        }
+        if (segment == null || segment.readPos >= segment.writePos) {
+            return null;
+        }
+        ByteBuffer buffer = segment.buffer;
+        int length = buffer.getInt(segment.readPos);
+        byte[] record = new byte[length];
+        buffer.position(segment.readPos + RECORD_HEADER_SIZE);
+        buffer.get(record);
+        segment.readPos += RECORD_HEADER_SIZE + length;
+        usedBytes -= RECORD_HEADER_SIZE + length;
+        size--;
+        if (segment.readPos >= segment.writePos) {
+            if (segment == segments.peekLast()) {
+                // queue is drained: rewind the last segment instead of
+                // releasing it
+                segment.writePos = segment.readPos = 0;
+            } else {
+                releaseSegment(segments.pollFirst());
+            }
+        }
+        return record;
+    }
+
+    /**
+     * Retrieve and remove the record at the head of the queue.
+     * 
+     * @return {@code null} if the queue is empty
+     */
+    public byte[] poll() {
+        if (size == 0) {
+            return null;
+        }
+        lock.lock();
+        try {
+            return dequeue();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Retrieve and remove the record at the head of the queue, waiting up to
+     * the specified wait time if necessary for a record to become available.
+     * 
+     * @param timeout
+     * @param unit
+     * @return {@code null} if the specified waiting time elapses before a
+     *         record is available
+     * @throws InterruptedException
+     */
+    public byte[] poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        lock.lockInterruptibly();
+        try {
+            while (size == 0) {
+                if (nanos <= 0) {
+                    return null;
+                }
+                nanos = notEmpty.awaitNanos(nanos);
+            }
+            return dequeue();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Number of records in the queue.
+     * 
+     * @return
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Number of bytes held by records currently in the queue (including
+     * headers).
+     * 
+     * @return
+     */
+    public long usedBytes() {
+        lock.lock();
+        try {
+            return usedBytes;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Number of bytes of direct memory currently allocated by the queue,
+     * including segments kept for reuse.
+     * 
+     * @return
+     */
+    public long allocatedBytes() {
+        lock.lock();
+        try {
+            return allocatedBytes;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Remove all records and release all segments. Direct memory is
+     * reclaimed once the segments are garbage-collected.
+     */
+    public void clear() {
+        lock.lock();
+        try {
+            segments.clear();
+            freeSegments.clear();
+            usedBytes = allocatedBytes = 0;
+            size = 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+}
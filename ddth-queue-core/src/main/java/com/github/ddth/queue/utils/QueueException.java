@@ -64,6 +64,14 @@ public class QueueException extends RuntimeException {
         public QueueIsFull(int maxSize) {
             super(MessageFormat.format("Queue storage is full (max size: {0})!", maxSize));
         }
+
+        /**
+         * @param msg
+         * @since 0.7.1.3
+         */
+        public QueueIsFull(String msg) {
+            super(msg);
+        }
     }
 
     /**
@@ -7,6 +7,7 @@ import org.junit.runners.Suite;
 
 @Suite.SuiteClasses({ 
     TestRedisPubSubHub.class,
+    TestRedisPubSubHubBinaryCodec.class,
     TestRedisPubSubMT.class 
 })
 
@@ -0,0 +1,53 @@
+package com.github.ddth.pubsub.test.universal.idstr.redis;
+
+import com.github.ddth.pubsub.IPubSubHub;
+import com.github.ddth.pubsub.impl.RedisPubSubHub;
+import com.github.ddth.pubsub.impl.universal.idstr.UniversalRedisPubSubHub;
+import com.github.ddth.pubsub.test.universal.BasePubSubFunctionalTest;
+import com.github.ddth.queue.impl.universal.UniversalBinaryMessageCodec;
+
+import junit.framework.Test;
+import junit.framework.TestSuite;
+
+/*
+ * mvn test -DskipTests=false -Dtest=com.github.ddth.pubsub.test.universal.idstr.redis.TestRedisPubSubHubBinaryCodec -DenableTestsRedis=true
+ */
+
+public class TestRedisPubSubHubBinaryCodec extends BasePubSubFunctionalTest<String> {
+    public TestRedisPubSubHubBinaryCodec(String testName) {
+        super(testName);
+    }
+
+    public static Test suite() {
+        return new TestSuite(TestRedisPubSubHubBinaryCodec.class);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected long catchupSleepMs() {
+        return 1000;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected IPubSubHub<String, byte[]> initPubSubHubInstance() throws Exception {
+        if (System.getProperty("enableTestsRedis") == null) {
+            return null;
+        }
+        String redisHost = System.getProperty("redis.host", "localhost");
+        String redisPort = System.getProperty("redis.port", "6379");
+        RedisPubSubHub<String, byte[]> hub = new UniversalRedisPubSubHub();
+        hub.setMessageCodec(new UniversalBinaryMessageCodec<String>());
+        hub.setRedisHostAndPort(redisHost + ":" + redisPort);
+        hub.init();
+        while (!hub.isReady()) {
+            Thread.sleep(1);
+        }
+        return hub;
+    }
+
+}
@@ -1,15 +1,32 @@
 package com.github.ddth.queue.test.universal;
 
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.junit.After;
 import org.junit.Before;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
 
 import com.github.ddth.commons.utils.IdGenerator;
+import com.github.ddth.queue.IAsyncQueue;
 import com.github.ddth.queue.IQueue;
 import com.github.ddth.queue.IQueueMessage;
 import com.github.ddth.queue.impl.AbstractEphemeralSupportQueue;
 import com.github.ddth.queue.impl.AbstractQueue;
+import com.github.ddth.queue.impl.universal.BaseUniversalQueueMessage;
+import com.github.ddth.queue.reactive.QueuePublisher;
 import com.github.ddth.queue.utils.QueueException;
 import com.github.ddth.queue.utils.QueueUtils;
 
@@ -112,6 +129,402 @@ public abstract class BaseQueueFunctionalTest<I> extends TestCase {
         }
     }
 
+    /**
+     * Queue a message with large content set from a direct {@link ByteBuffer},
+     * take it back:
+     * 
+     * <pre>
+     * - Taken message's content must equal the original content
+     * </pre>
+     * 
+     * @throws Exception
+     * @since 0.7.1.3
+     */
+    @org.junit.Test
+    public void testByteBufferContent() throws Exception {
+        if (queue == null) {
+            return;
+        }
+        IQueueMessage<I, byte[]> msg = queue.createMessage();
+        if (!(msg instanceof BaseUniversalQueueMessage)) {
+            return;
+        }
+
+        byte[] content = new byte[256 * 1024];
+        for (int i = 0; i < content.length; i++) {
+            content[i] = (byte) i;
+        }
+        ByteBuffer buff = ByteBuffer.allocateDirect(content.length);
+        buff.put(content).flip();
+        ((BaseUniversalQueueMessage<?>) msg).setContent(buff);
+        assertEquals(0, buff.position());
+        assertTrue(queue.queue(msg));
+
+        IQueueMessage<I, byte[]> takenMsg = queue.take(10, TimeUnit.SECONDS);
+        assertNotNull(takenMsg);
+        assertEquals(msg.getId(), takenMsg.getId());
+        assertEquals(ByteBuffer.wrap(content),
+                ((BaseUniversalQueueMessage<?>) takenMsg).getContentAsByteBuffer());
+        queue.finish(takenMsg);
+    }
+
+    /**
+     * 1. Queue a batch of messages:
+     * 
+     * <pre>
+     * - Queue size = batch size (or not supported)
+     * - Ephemeral size = 0 (or not supported)
+     * </pre>
+     * 
+     * 2. Take & finish all messages:
+     * 
+     * <pre>
+     * - All queued messages must be taken
+     * - Queue size = 0 (or not supported)
+     * - Ephemeral size = 0 (or not supported)
+     * </pre>
+     * 
+     * @throws Exception
+     * @since 0.7.1.3
+     */
+    @org.junit.Test
+    public void testQueueAll() throws Exception {
+        if (queue == null) {
+            return;
+        }
+
+        final int NUM_MSGS = EPHEMERAL_MAX_SIZE + 3;
+        Map<String, IQueueMessage<I, byte[]>> queuedMsgs = new HashMap<>();
+        List<IQueueMessage<I, byte[]>> msgs = new ArrayList<>();
+        for (int i = 0; i < NUM_MSGS; i++) {
+            String content = idGen.generateId128Ascii();
+            IQueueMessage<I, byte[]> msg = queue.createMessage(content.getBytes(QueueUtils.UTF8));
+            msgs.add(msg);
+            queuedMsgs.put(content, msg);
+        }
+
+        assertTrue(queue.queueAll(msgs));
+        int queueSize = queue.queueSize();
+        assertTrue(queueSize == NUM_MSGS || queueSize == IQueue.SIZE_NOT_SUPPORTED);
+        int ephemeralSize = queue.ephemeralSize();
+        assertTrue(ephemeralSize == 0 || ephemeralSize == IQueue.SIZE_NOT_SUPPORTED);
+
+        for (int i = 0; i < NUM_MSGS; i++) {
+            IQueueMessage<I, byte[]> msg = queue.take();
+            assertNotNull(msg);
+            String content = new String((byte[]) msg.getData(), QueueUtils.UTF8);
+            IQueueMessage<I, byte[]> queuedMsg = queuedMsgs.remove(content);
+            assertNotNull(queuedMsg);
+            assertEquals(queuedMsg.getId(), msg.getId());
+            queue.finish(msg);
+        }
+        assertTrue(queuedMsgs.isEmpty());
+        assertNull(queue.take());
+        queueSize = queue.queueSize();
+        assertTrue(queueSize == 0 || queueSize == IQueue.SIZE_NOT_SUPPORTED);
+        ephemeralSize = queue.ephemeralSize();
+        assertTrue(ephemeralSize == 0 || ephemeralSize == IQueue.SIZE_NOT_SUPPORTED);
+    }
+
+    /**
+     * 1. Queue <ephemeral-max-size> messages
+     * 
+     * <pre>
+     * - Queue size = n (or not supported)
+     * - Ephemeral size = 0 (or not supported)
+     * </pre>
+     * 
+     * 2. Take a batch of more than n messages:
+     * 
+     * <pre>
+     * - Exactly n messages must be taken
+     * - Queue size = 0 (or not supported)
+     * - Ephemeral size = n (or not supported)
+     * </pre>
+     * 
+     * 3. Finish taken messages:
+     * 
+     * <pre>
+     * - Taking another batch must return empty list
+     * - Queue size = 0 (or not supported)
+     * - Ephemeral size = 0 (or not supported)
+     * </pre>
+     * 
+     * @throws Exception
+     * @since 0.7.1.3
+     */
+    @org.junit.Test
+    public void testTakeMany() throws Exception {
+        if (queue == null) {
+            return;
+        }
+
+        final int NUM_MSGS = EPHEMERAL_MAX_SIZE;
+        Map<String, IQueueMessage<I, byte[]>> queuedMsgs = new HashMap<>();
+        for (int i = 0; i < NUM_MSGS; i++) {
+            String content = idGen.generateId128Ascii();
+            IQueueMessage<I, byte[]> msg = queue.createMessage(content.getBytes(QueueUtils.UTF8));
+            assertTrue(queue.queue(msg));
+            queuedMsgs.put(content, msg);
+        }
+        int queueSize = queue.queueSize();
+        assertTrue(queueSize == NUM_MSGS || queueSize == IQueue.SIZE_NOT_SUPPORTED);
+
+        List<IQueueMessage<I, byte[]>> takenMsgs = queue.take(NUM_MSGS + 10);
+        assertNotNull(takenMsgs);
+        assertEquals(NUM_MSGS, takenMsgs.size());
+        for (IQueueMessage<I, byte[]> msg : takenMsgs) {
+            String content = new String((byte[]) msg.getData(), QueueUtils.UTF8);
+            IQueueMessage<I, byte[]> queuedMsg = queuedMsgs.remove(content);
+            assertNotNull(queuedMsg);
+            assertEquals(queuedMsg.getId(), msg.getId());
+        }
+        assertTrue(queuedMsgs.isEmpty());
+        queueSize = queue.queueSize();
+        assertTrue(queueSize == 0 || queueSize == IQueue.SIZE_NOT_SUPPORTED);
+        int ephemeralSize = queue.ephemeralSize();
+        assertTrue(ephemeralSize == NUM_MSGS || ephemeralSize == IQueue.SIZE_NOT_SUPPORTED);
+
+        for (IQueueMessage<I, byte[]> msg : takenMsgs) {
+            queue.finish(msg);
+        }
+        assertTrue(queue.take(NUM_MSGS).isEmpty());
+        queueSize = queue.queueSize();
+        assertTrue(queueSize == 0 || queueSize == IQueue.SIZE_NOT_SUPPORTED);
+        ephemeralSize = queue.ephemeralSize();
+        assertTrue(ephemeralSize == 0 || ephemeralSize == IQueue.SIZE_NOT_SUPPORTED);
+    }
+
+    /**
+     * Blocking take:
+     * 
+     * <pre>
+     * - Take from empty queue: null is returned after the timeout
+     * - Queue a message from another thread while blocked: the message is returned
+     * </pre>
+     * 
+     * @throws Exception
+     * @since 0.7.1.3
+     */
+    @org.junit.Test
+    public void testTakeWithTimeout() throws Exception {
+        if (queue == null) {
+            return;
+        }
+
+        long t1 = System.currentTimeMillis();
+        assertNull(queue.take(200, TimeUnit.MILLISECONDS));
+        long t2 = System.currentTimeMillis();
+        assertTrue(t2 - t1 >= 150);
+
+        String content = idGen.generateId128Ascii();
+        IQueueMessage<I, byte[]> queuedMsg = queue.createMessage(content.getBytes(QueueUtils.UTF8));
+        Thread producer = new Thread(() -> {
+            try {
+                Thread.sleep(100);
+                queue.queue(queuedMsg);
+            } catch (InterruptedException e) {
+            }
+        });
+        producer.start();
+        IQueueMessage<I, byte[]> msg = queue.take(5, TimeUnit.SECONDS);
+        producer.join();
+        assertNotNull(msg);
+        assertEquals(queuedMsg.getId(), msg.getId());
+        assertEquals(content, new String((byte[]) msg.getData(), QueueUtils.UTF8));
+        queue.finish(msg);
+    }
+
+    /**
+     * Asynchronous queue/take/finish:
+     * 
+     * <pre>
+     * - All queueAsync futures must complete with true
+     * - All queued messages must be taken by takeAsync
+     * - Ephemeral size = 0 (or not supported) after finishAsync
+     * </pre>
+     * 
+     * @throws Exception
+     * @since 0.7.1.3
+     */
+    @org.junit.Test
+    public void testQueueAsync() throws Exception {
+        if (!(queue instanceof IAsyncQueue)) {
+            return;
+        }
+        IAsyncQueue<I, byte[]> asyncQueue = (IAsyncQueue<I, byte[]>) queue;
+
+        final int NUM_MSGS = EPHEMERAL_MAX_SIZE;
+        Map<String, IQueueMessage<I, byte[]>> queuedMsgs = new HashMap<>();
+        List<CompletableFuture<Boolean>> futures = new ArrayList<>();
+        for (int i = 0; i < NUM_MSGS; i++) {
+            String content = idGen.generateId128Ascii();
+            IQueueMessage<I, byte[]> msg = queue.createMessage(content.getBytes(QueueUtils.UTF8));
+            queuedMsgs.put(content, msg);
+            futures.add(asyncQueue.queueAsync(msg));
+        }
+        for (CompletableFuture<Boolean> f : futures) {
+            assertTrue(f.get(10, TimeUnit.SECONDS));
+        }
+
+        for (int i = 0; i < NUM_MSGS; i++) {
+            IQueueMessage<I, byte[]> msg = asyncQueue.takeAsync().get(10, TimeUnit.SECONDS);
+            assertNotNull(msg);
+            String content = new String((byte[]) msg.getData(), QueueUtils.UTF8);
+            IQueueMessage<I, byte[]> queuedMsg = queuedMsgs.remove(content);
+            assertNotNull(queuedMsg);
+            assertEquals(queuedMsg.getId(), msg.getId());
+            asyncQueue.finishAsync(msg).get(10, TimeUnit.SECONDS);
+        }
+        assertTrue(queuedMsgs.isEmpty());
+        int ephemeralSize = queue.ephemeralSize();
+        assertTrue(ephemeralSize == 0 || ephemeralSize == IQueue.SIZE_NOT_SUPPORTED);
+    }
+
+    /**
+     * Reactive publisher:
+     * 
+     * <pre>
+     * - Subscriber requests messages one by one, and acks each received message
+     * - All queued messages must be received
+     * - Number of in-flight messages never exceeds <ephemeral-max-size>
+     * - Ephemeral size = 0 (or not supported) after all messages are acked
+     * </pre>
+     * 
+     * @throws Exception
+     * @since 0.7.1.3
+     */
+    @org.junit.Test
+    public void testQueuePublisher() throws Exception {
+        if (queue == null) {
+            return;
+        }
+
+        final int NUM_MSGS = EPHEMERAL_MAX_SIZE * 5;
+        Map<String, IQueueMessage<I, byte[]>> queuedMsgs = new ConcurrentHashMap<>();
+        for (int i = 0; i < NUM_MSGS; i++) {
+            String content = idGen.generateId128Ascii();
+            IQueueMessage<I, byte[]> msg = queue.createMessage(content.getBytes(QueueUtils.UTF8));
+            assertTrue(queue.queue(msg));
+            queuedMsgs.put(content, msg);
+        }
+
+        CountDownLatch latch = new CountDownLatch(NUM_MSGS);
+        AtomicBoolean exceeded = new AtomicBoolean(false);
+        try (QueuePublisher<I, byte[]> publisher = new QueuePublisher<>(queue).setPrefetch(1)
+                .setMaxInFlight(EPHEMERAL_MAX_SIZE).setAutoAck(false).init()) {
+            publisher.subscribe(new Subscriber<IQueueMessage<I, byte[]>>() {
+                private Subscription subscription;
+
+                @Override
+                public void onSubscribe(Subscription s) {
+                    subscription = s;
+                    s.request(1);
+                }
+
+                @Override
+                public void onNext(IQueueMessage<I, byte[]> msg) {
+                    if (publisher.getNumInFlight() > EPHEMERAL_MAX_SIZE) {
+                        exceeded.set(true);
+                    }
+                    String content = new String((byte[]) msg.getData(), QueueUtils.UTF8);
+                    if (queuedMsgs.remove(content) != null) {
+                        latch.countDown();
+                    }
+                    publisher.ack(msg);
+                    subscription.request(1);
+                }
+
+                @Override
+                public void onError(Throwable t) {
+                }
+
+                @Override
+                public void onComplete() {
+                }
+            });
+            assertTrue(latch.await(10, TimeUnit.SECONDS));
+        }
+        assertFalse(exceeded.get());
+        assertTrue(queuedMsgs.isEmpty());
+        int ephemeralSize = queue.ephemeralSize();
+        assertTrue(ephemeralSize == 0 || ephemeralSize == IQueue.SIZE_NOT_SUPPORTED);
+    }
+
+    /**
+     * Reactive publisher, several subscriptions emitted from several threads:
+     * 
+     * <pre>
+     * - Each subscriber requests a batch of messages, then one per acked message
+     * - All queued messages must be received
+     * - Number of in-flight messages never exceeds <ephemeral-max-size>
+     * </pre>
+     * 
+     * @throws Exception
+     * @since 0.7.1.3
+     */
+    @org.junit.Test
+    public void testQueuePublisherMultipleSubscriptions() throws Exception {
+        if (queue == null) {
+            return;
+        }
+
+        final int NUM_MSGS = EPHEMERAL_MAX_SIZE * 50;
+        final int NUM_SUBSCRIBERS = 4;
+        Map<String, IQueueMessage<I, byte[]>> queuedMsgs = new ConcurrentHashMap<>();
+        for (int i = 0; i < NUM_MSGS; i++) {
+            String content = idGen.generateId128Ascii();
+            IQueueMessage<I, byte[]> msg = queue.createMessage(content.getBytes(QueueUtils.UTF8));
+            assertTrue(queue.queue(msg));
+            queuedMsgs.put(content, msg);
+        }
+
+        CountDownLatch latch = new CountDownLatch(NUM_MSGS);
+        AtomicBoolean exceeded = new AtomicBoolean(false);
+        ScheduledExecutorService executor = Executors.newScheduledThreadPool(NUM_SUBSCRIBERS);
+        try (QueuePublisher<I, byte[]> publisher = new QueuePublisher<>(queue)
+                .setPrefetch(EPHEMERAL_MAX_SIZE).setMaxInFlight(EPHEMERAL_MAX_SIZE)
+                .setAutoAck(false).setExecutor(executor).init()) {
+            for (int i = 0; i < NUM_SUBSCRIBERS; i++) {
+                publisher.subscribe(new Subscriber<IQueueMessage<I, byte[]>>() {
+                    private Subscription subscription;
+
+                    @Override
+                    public void onSubscribe(Subscription s) {
+                        subscription = s;
+                        s.request(EPHEMERAL_MAX_SIZE);
+                    }
+
+                    @Override
+                    public void onNext(IQueueMessage<I, byte[]> msg) {
+                        if (publisher.getNumInFlight() > EPHEMERAL_MAX_SIZE) {
+                            exceeded.set(true);
+                        }
+                        String content = new String((byte[]) msg.getData(), QueueUtils.UTF8);
+                        if (queuedMsgs.remove(content) != null) {
+                            latch.countDown();
+                        }
+                        publisher.ack(msg);
+                        subscription.request(1);
+                    }
+
+                    @Override
+                    public void onError(Throwable t) {
+                    }
+
+                    @Override
+                    public void onComplete() {
+                    }
+                });
+            }
+            assertTrue(latch.await(30, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdownNow();
+        }
+        assertFalse(exceeded.get());
+        assertTrue(queuedMsgs.isEmpty());
+    }
+
     /**
      * 1. Queue one message:
      * 
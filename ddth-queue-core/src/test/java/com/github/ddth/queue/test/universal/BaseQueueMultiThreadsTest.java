@@ -15,6 +15,7 @@ import org.junit.Before;
 import com.github.ddth.commons.utils.IdGenerator;
 import com.github.ddth.queue.IQueue;
 import com.github.ddth.queue.IQueueMessage;
+import com.github.ddth.queue.consumer.QueueConsumerPool;
 import com.github.ddth.queue.impl.AbstractQueue;
 import com.github.ddth.queue.utils.QueueException;
 import com.github.ddth.queue.utils.QueueException.EphemeralIsFull;
@@ -418,4 +419,71 @@ public abstract class BaseQueueMultiThreadsTest<I> extends TestCase {
                 + String.format("%,.1f", NUM_MSGS * 1000.0 / d) + " msg/s");
         verify(NUM_MSGS);
     }
+
+    /**
+     * @since 0.7.1.3
+     */
+    @org.junit.Test
+    public void test4P4CConsumerPool() throws Exception {
+        doTestConsumerPool(0);
+    }
+
+    /**
+     * @since 0.7.1.3
+     */
+    @org.junit.Test
+    public void test4P4CConsumerPoolConcurrentHandlers() throws Exception {
+        doTestConsumerPool(64);
+    }
+
+    /**
+     * @since 0.7.1.3
+     */
+    protected void doTestConsumerPool(int maxConcurrentHandlers) throws Exception {
+        if (queue == null) {
+            return;
+        }
+
+        final int NUM_MSGS = numTestMessages();
+        final int NUM_PRODUCERS = 4;
+        final int NUM_CONSUMER = 4;
+
+        long t1 = System.currentTimeMillis();
+        Thread[] producers = createProducerThreads(NUM_PRODUCERS, NUM_MSGS / NUM_PRODUCERS);
+        QueueConsumerPool<I, byte[]> pool = new QueueConsumerPool<I, byte[]>(queue, (q, msg) -> {
+            String content = new String(msg.getData(), QueueUtils.UTF8);
+            if (!STORAGE_RECEIVED.add(content)) {
+                throw new IllegalStateException("Something wrong!");
+            }
+            COUNTER_RECEIVED.incrementAndGet();
+            return true;
+        }).setNumWorkers(NUM_CONSUMER).setBatchSize(16).setIdleWaitMs(100)
+                .setMaxConcurrentHandlers(maxConcurrentHandlers);
+        pool.init();
+        try {
+            for (Thread th : producers) {
+                th.start();
+            }
+            for (Thread th : producers) {
+                th.join();
+            }
+            long t = System.currentTimeMillis();
+            while (COUNTER_RECEIVED.get() < NUM_MSGS && t - t1 < 60000) {
+                Thread.sleep(1);
+                t = System.currentTimeMillis();
+            }
+            long d = t - t1;
+            System.out.println(MessageFormat.format(
+                    "== [{0}] TEST - {1}P{2}C (consumer pool, {3} concurrent handlers)",
+                    getClass().getSimpleName(), NUM_PRODUCERS, NUM_CONSUMER,
+                    maxConcurrentHandlers));
+            System.out.println("  Msgs: " + NUM_MSGS + " - Sent: " + STORAGE_SENT.size()
+                    + " - Received: " + STORAGE_RECEIVED.size() + " / Duration: " + d + "ms - "
+                    + String.format("%,.1f", NUM_MSGS * 1000.0 / d) + " msg/s");
+        } finally {
+            pool.destroy();
+        }
+        verify(NUM_MSGS);
+        assertEquals(NUM_MSGS, pool.getNumFinished());
+    }
 }
@@ -7,7 +7,10 @@ import org.junit.runners.Suite;
 
 @Suite.SuiteClasses({ TestDisruptorQueue.class, TestDisruptorQueueLarge.class,
         TestDisruptorQueueLargeBoundEphemeralSize.class,
-        TestDisruptorQueueLargeEphemeralDisabled.class, TestDisruptorQueueSmall.class,
+        TestDisruptorQueueLargeEphemeralDisabled.class, TestDisruptorQueueMultiProducer.class,
+        TestDisruptorQueueMultiProducerEphemeralDisabled.class, TestDisruptorQueueOrphanIndex.class,
+        TestDisruptorQueuePushMode.class,
+        TestDisruptorQueueSmall.class,
         TestDisruptorQueueSmallBoundEphemeralSize.class,
         TestDisruptorQueueSmallEphemeralDisabled.class, TestDisruptorQueueXLarge.class,
         TestDisruptorQueueXLargeBoundEphemeralSize.class,
@@ -0,0 +1,38 @@
+package com.github.ddth.queue.test.universal.idint.disruptor;
+
+import com.github.ddth.queue.IQueue;
+import com.github.ddth.queue.impl.DisruptorQueue;
+import com.github.ddth.queue.impl.universal.idint.UniversalDisruptorQueue;
+import com.github.ddth.queue.test.universal.BaseQueueMultiThreadsTest;
+
+import junit.framework.Test;
+import junit.framework.TestSuite;
+
+/**
+ * Tests queue in lock-free multi-producer mode.
+ */
+public class TestDisruptorQueueMultiProducer extends BaseQueueMultiThreadsTest<Long> {
+    public TestDisruptorQueueMultiProducer(String testName) {
+        super(testName);
+    }
+
+    public static Test suite() {
+        return new TestSuite(TestDisruptorQueueMultiProducer.class);
+    }
+
+    @Override
+    protected IQueue<Long, byte[]> initQueueInstance() throws Exception {
+        if (System.getProperty("skipTestsDisruptor") != null) {
+            return null;
+        }
+        int ringSize = 8192;
+        DisruptorQueue<Long, byte[]> queue = new UniversalDisruptorQueue();
+        queue.setMultiProducer(true).setWaitStrategy(DisruptorQueue.WaitStrategy.BLOCKING)
+                .setRingSize(ringSize).setEphemeralDisabled(false).init();
+        return queue;
+    }
+
+    protected int numTestMessages() {
+        return 1024 * 1024;
+    }
+}
@@ -0,0 +1,246 @@
+package com.github.ddth.queue.test.universal.idint.disruptor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.github.ddth.queue.IQueueEventHandler;
+import com.github.ddth.queue.IQueueMessage;
+import com.github.ddth.queue.impl.DisruptorQueue;
+import com.github.ddth.queue.impl.universal.idint.UniversalDisruptorQueue;
+import com.github.ddth.queue.impl.universal.UniversalIdIntQueueMessage;
+import com.github.ddth.queue.utils.QueueException;
+
+/**
+ * Tests queue in push mode (event handlers).
+ */
+public class TestDisruptorQueuePushMode {
+
+    private static class RecordingHandler implements IQueueEventHandler<Long, byte[]> {
+        private final boolean finishOddIdsOnly;
+        private final AtomicInteger numMessages = new AtomicInteger();
+        private final AtomicInteger numBatches = new AtomicInteger();
+        private final AtomicLong lastSequence = new AtomicLong(-1);
+        private volatile boolean outOfOrder = false;
+        private volatile IQueueMessage<Long, byte[]> lastMessage;
+
+        RecordingHandler(boolean finishOddIdsOnly) {
+            this.finishOddIdsOnly = finishOddIdsOnly;
+        }
+
+        @Override
+        public boolean onMessage(IQueueMessage<Long, byte[]> msg, long sequence,
+                boolean endOfBatch) {
+            if (sequence != lastSequence.get() + 1) {
+                outOfOrder = true;
+            }
+            lastSequence.set(sequence);
+            lastMessage = msg;
+            numMessages.incrementAndGet();
+            if (endOfBatch) {
+                numBatches.incrementAndGet();
+            }
+            return !finishOddIdsOnly || msg.getId().longValue() % 2 == 1;
+        }
+    }
+
+    private static class NeverFinishHandler implements IQueueEventHandler<Long, byte[]> {
+        private final List<IQueueMessage<Long, byte[]>> messages = Collections
+                .synchronizedList(new ArrayList<>());
+
+        @Override
+        public boolean onMessage(IQueueMessage<Long, byte[]> msg, long sequence,
+                boolean endOfBatch) {
+            messages.add(msg);
+            return false;
+        }
+    }
+
+    private DisruptorQueue<Long, byte[]> queue;
+    private RecordingHandler handler1, handler2;
+    private DisruptorQueue<Long, byte[]>.EventConsumer consumer1, consumer2;
+
+    @Before
+    public void setUp() throws Exception {
+        if (System.getProperty("skipTestsDisruptor") != null) {
+            return;
+        }
+        handler1 = new RecordingHandler(false);
+        handler2 = new RecordingHandler(true);
+        queue = new UniversalDisruptorQueue();
+        queue.setRingSize(1024).setEphemeralDisabled(false);
+        consumer1 = queue.addEventHandler(handler1);
+        consumer2 = queue.addEventHandler(handler2);
+        queue.init();
+    }
+
+    @After
+    public void tearDown() {
+        if (queue != null) {
+            queue.destroy();
+        }
+    }
+
+    @Test
+    public void testPushMode() throws Exception {
+        if (queue == null) {
+            return;
+        }
+        final int numMsgs = 100000;
+        List<IQueueMessage<Long, byte[]>> even = new ArrayList<>();
+        for (int i = 1; i <= numMsgs; i++) {
+            IQueueMessage<Long, byte[]> msg = UniversalIdIntQueueMessage.newInstance((long) i,
+                    String.valueOf(i).getBytes());
+            while (true) {
+                try {
+                    queue.queue(msg);
+                    break;
+                } catch (QueueException.QueueIsFull e) {
+                    Thread.yield();
+                }
+            }
+            if (i % 2 == 0) {
+                even.add(msg);
+            }
+        }
+        long deadline = System.currentTimeMillis() + 30000;
+        while ((handler1.numMessages.get() < numMsgs || handler2.numMessages.get() < numMsgs)
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+
+        assertEquals(numMsgs, handler1.numMessages.get());
+        assertEquals(numMsgs, handler2.numMessages.get());
+        assertFalse(handler1.outOfOrder);
+        assertFalse(handler2.outOfOrder);
+        assertTrue(handler1.numBatches.get() > 0);
+        assertTrue(handler1.numBatches.get() <= numMsgs);
+        assertEquals(0, queue.queueSize());
+
+        assertEquals(0, consumer1.ephemeralSize());
+        assertEquals(numMsgs / 2, consumer2.ephemeralSize());
+        assertEquals(numMsgs / 2, queue.ephemeralSize());
+        for (IQueueMessage<Long, byte[]> msg : even) {
+            consumer2.finish(msg);
+        }
+        assertEquals(0, consumer2.ephemeralSize());
+
+        try {
+            queue.take();
+            fail("take() must not be supported in push mode");
+        } catch (QueueException.OperationNotSupported e) {
+        }
+    }
+
+    private static void awaitNumMessages(AtomicInteger counter, int expected)
+            throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (counter.get() < expected && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+
+    @Test
+    public void testRequeueInPushMode() throws Exception {
+        if (queue == null) {
+            return;
+        }
+        final int numMsgs = 10;
+        List<IQueueMessage<Long, byte[]>> even = new ArrayList<>();
+        for (int i = 1; i <= numMsgs; i++) {
+            IQueueMessage<Long, byte[]> msg = UniversalIdIntQueueMessage.newInstance((long) i,
+                    String.valueOf(i).getBytes());
+            queue.queue(msg);
+            if (i % 2 == 0) {
+                even.add(msg);
+            }
+        }
+        awaitNumMessages(handler1.numMessages, numMsgs);
+        awaitNumMessages(handler2.numMessages, numMsgs);
+        assertEquals(numMsgs / 2, consumer2.ephemeralSize());
+
+        try {
+            queue.requeue(even.get(0));
+            fail("requeue() must not be supported in push mode");
+        } catch (QueueException.OperationNotSupported e) {
+        }
+        try {
+            queue.requeueSilent(even.get(0));
+            fail("requeueSilent() must not be supported in push mode");
+        } catch (QueueException.OperationNotSupported e) {
+        }
+
+        // re-delivered to handler2 only
+        for (IQueueMessage<Long, byte[]> msg : even) {
+            consumer2.requeue(msg);
+        }
+        awaitNumMessages(handler2.numMessages, numMsgs + even.size());
+        Thread.sleep(100);
+        assertEquals(numMsgs + even.size(), handler2.numMessages.get());
+        assertEquals(numMsgs, handler1.numMessages.get());
+        assertFalse(handler2.outOfOrder);
+        assertNotNull(handler2.lastMessage);
+        assertEquals(even.get(even.size() - 1).getId(), handler2.lastMessage.getId());
+        assertEquals(1, handler2.lastMessage.getNumRequeues());
+        assertEquals(0, queue.queueSize());
+
+        // not finished again: back in handler2's ephemeral storage, once
+        assertEquals(0, consumer1.ephemeralSize());
+        assertEquals(numMsgs / 2, consumer2.ephemeralSize());
+        for (IQueueMessage<Long, byte[]> msg : even) {
+            consumer2.finish(msg);
+        }
+        assertEquals(0, queue.ephemeralSize());
+    }
+
+    @Test
+    public void testEphemeralMaxSizeInPushMode() throws Exception {
+        if (queue == null) {
+            return;
+        }
+        final int ephemeralMaxSize = 4;
+        final int numMsgs = 10;
+        NeverFinishHandler handler = new NeverFinishHandler();
+        DisruptorQueue<Long, byte[]> boundQueue = new UniversalDisruptorQueue();
+        boundQueue.setRingSize(16).setEphemeralDisabled(false)
+                .setEphemeralMaxSize(ephemeralMaxSize);
+        DisruptorQueue<Long, byte[]>.EventConsumer consumer = boundQueue
+                .addEventHandler(handler);
+        boundQueue.init();
+        try {
+            for (int i = 1; i <= numMsgs; i++) {
+                boundQueue.queue(UniversalIdIntQueueMessage.newInstance((long) i,
+                        String.valueOf(i).getBytes()));
+            }
+            Thread.sleep(200);
+            assertEquals(ephemeralMaxSize, handler.messages.size());
+            assertEquals(ephemeralMaxSize, consumer.ephemeralSize());
+
+            // finishing messages lets the handler receive more
+            consumer.finish(handler.messages.get(0));
+            consumer.finish(handler.messages.get(1));
+            long deadline = System.currentTimeMillis() + 10000;
+            while (handler.messages.size() < ephemeralMaxSize + 2
+                    && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            Thread.sleep(100);
+            assertEquals(ephemeralMaxSize + 2, handler.messages.size());
+            assertEquals(ephemeralMaxSize, consumer.ephemeralSize());
+        } finally {
+            boundQueue.destroy();
+        }
+    }
+}
@@ -7,9 +7,14 @@ import org.junit.runners.Suite;
 
 @Suite.SuiteClasses({ 
     TestInmemQueue.class,
+    TestInmemQueueOrphanIndex.class,
+    TestInmemQueueOwnershipTransfer.class,
     TestInmemQueueBoundLarge.class,
     TestInmemQueueBoundLargeBoundEphemeralSize.class,
     TestInmemQueueBoundLargeEphemeralDisabled.class,
+    TestInmemQueueBoundRingBuffer.class,
+    TestInmemQueueBoundRingBufferEphemeralDisabled.class,
+    TestInmemQueueBoundRingBufferSharded.class,
     TestInmemQueueBoundSmall.class,
     TestInmemQueueBoundSmallBoundEphemeralSize.class,
     TestInmemQueueBoundSmallEphemeralDisabled.class,
@@ -19,9 +24,12 @@ import org.junit.runners.Suite;
     TestInmemQueueBoundXSmall.class,
     TestInmemQueueBoundXSmallBoundEphemeralSize.class,
     TestInmemQueueBoundXSmallEphemeralDisabled.class,
+    TestInmemQueueOffHeap.class,
+    TestInmemQueueOffHeapEphemeralDisabled.class,
     TestInmemQueueUnbound.class,
     TestInmemQueueUnboundBoundEphemeralSize.class,
-    TestInmemQueueUnboundEphemeralDisabled.class
+    TestInmemQueueUnboundEphemeralDisabled.class,
+    TestInmemQueueUnboundSharded.class
 })
 
 /*
@@ -0,0 +1,35 @@
+package com.github.ddth.queue.test.universal.idint.inmem;
+
+import com.github.ddth.queue.IQueue;
+import com.github.ddth.queue.impl.InmemQueue;
+import com.github.ddth.queue.impl.universal.idint.UniversalInmemQueue;
+import com.github.ddth.queue.test.universal.BaseQueueMultiThreadsTest;
+
+import junit.framework.Test;
+import junit.framework.TestSuite;
+
+/**
+ * Tests bounded queue backed by the lock-free ring buffer engine, split into shards.
+ */
+public class TestInmemQueueBoundRingBufferSharded extends BaseQueueMultiThreadsTest<Long> {
+    public TestInmemQueueBoundRingBufferSharded(String testName) {
+        super(testName);
+    }
+
+    public static Test suite() {
+        return new TestSuite(TestInmemQueueBoundRingBufferSharded.class);
+    }
+
+    @Override
+    protected IQueue<Long, byte[]> initQueueInstance() throws Exception {
+        if (System.getProperty("skipTestsInmem") != null) {
+            return null;
+        }
+        int size = 8192;
+        InmemQueue<Long, byte[]> queue = new UniversalInmemQueue();
+        queue.setEngine(InmemQueue.Engine.RING_BUFFER).setBoundary(size).setNumShards(4)
+                .setEphemeralDisabled(false).init();
+        return queue;
+    }
+
+}
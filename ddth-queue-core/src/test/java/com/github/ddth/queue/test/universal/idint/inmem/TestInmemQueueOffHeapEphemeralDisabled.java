@@ -0,0 +1,34 @@
+package com.github.ddth.queue.test.universal.idint.inmem;
+
+import com.github.ddth.queue.IQueue;
+import com.github.ddth.queue.impl.InmemQueue;
+import com.github.ddth.queue.impl.universal.idint.UniversalInmemQueue;
+import com.github.ddth.queue.test.universal.BaseQueueMultiThreadsTest;
+
+import junit.framework.Test;
+import junit.framework.TestSuite;
+
+/**
+ * Tests queue backed by the off-heap engine, bounded by bytes, ephemeral storage disabled.
+ */
+public class TestInmemQueueOffHeapEphemeralDisabled extends BaseQueueMultiThreadsTest<Long> {
+    public TestInmemQueueOffHeapEphemeralDisabled(String testName) {
+        super(testName);
+    }
+
+    public static Test suite() {
+        return new TestSuite(TestInmemQueueOffHeapEphemeralDisabled.class);
+    }
+
+    @Override
+    protected IQueue<Long, byte[]> initQueueInstance() throws Exception {
+        if (System.getProperty("skipTestsInmem") != null) {
+            return null;
+        }
+        InmemQueue<Long, byte[]> queue = new UniversalInmemQueue();
+        queue.setEngine(InmemQueue.Engine.OFF_HEAP).setOffHeapMaxBytes(16 * 1024 * 1024)
+                .setOffHeapSegmentSize(64 * 1024).setEphemeralDisabled(true).init();
+        return queue;
+    }
+
+}
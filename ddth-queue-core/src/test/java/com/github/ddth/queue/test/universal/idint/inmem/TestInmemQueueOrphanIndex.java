@@ -0,0 +1,33 @@
+package com.github.ddth.queue.test.universal.idint.inmem;
+
+import com.github.ddth.queue.IQueue;
+import com.github.ddth.queue.impl.InmemQueue;
+import com.github.ddth.queue.impl.universal.idint.UniversalInmemQueue;
+import com.github.ddth.queue.test.universal.BaseQueueFunctionalTest;
+
+import junit.framework.Test;
+import junit.framework.TestSuite;
+
+/**
+ * Test queue functionality, with orphan index.
+ */
+public class TestInmemQueueOrphanIndex extends BaseQueueFunctionalTest<Long> {
+    public TestInmemQueueOrphanIndex(String testName) {
+        super(testName);
+    }
+
+    public static Test suite() {
+        return new TestSuite(TestInmemQueueOrphanIndex.class);
+    }
+
+    protected IQueue<Long, byte[]> initQueueInstance(int ephemeralMaxSize) throws Exception {
+        if (System.getProperty("skipTestsInmem") != null) {
+            return null;
+        }
+        InmemQueue<Long, byte[]> queue = new UniversalInmemQueue();
+        queue.setOrphanIndexGranularityMs(100).setEphemeralDisabled(false)
+                .setEphemeralMaxSize(ephemeralMaxSize).init();
+        return queue;
+    }
+
+}
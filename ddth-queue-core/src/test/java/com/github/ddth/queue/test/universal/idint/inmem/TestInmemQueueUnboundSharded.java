@@ -0,0 +1,33 @@
+package com.github.ddth.queue.test.universal.idint.inmem;
+
+import com.github.ddth.queue.IQueue;
+import com.github.ddth.queue.impl.InmemQueue;
+import com.github.ddth.queue.impl.universal.idint.UniversalInmemQueue;
+import com.github.ddth.queue.test.universal.BaseQueueMultiThreadsTest;
+
+import junit.framework.Test;
+import junit.framework.TestSuite;
+
+/**
+ * Tests unbounded queue split into shards.
+ */
+public class TestInmemQueueUnboundSharded extends BaseQueueMultiThreadsTest<Long> {
+    public TestInmemQueueUnboundSharded(String testName) {
+        super(testName);
+    }
+
+    public static Test suite() {
+        return new TestSuite(TestInmemQueueUnboundSharded.class);
+    }
+
+    @Override
+    protected IQueue<Long, byte[]> initQueueInstance() throws Exception {
+        if (System.getProperty("skipTestsInmem") != null) {
+            return null;
+        }
+        InmemQueue<Long, byte[]> queue = new UniversalInmemQueue();
+        queue.setNumShards(4).setEphemeralDisabled(false).init();
+        return queue;
+    }
+
+}
@@ -7,10 +7,19 @@ import org.junit.runners.Suite;
 
 @Suite.SuiteClasses({ 
     TestRocksDbQueue.class,
+    TestRocksDbQueueBinaryCodec.class,
+    TestRocksDbQueueCounters.class,
+    TestRocksDbQueueEphemeralIndex.class,
     TestRocksDbQueueLong.class,
     TestRocksDbQueueLongEphemeralDisabled.class,
     TestRocksDbQueueMT.class,
-    TestRocksDbQueueMTEphemeralDisabled.class
+    TestRocksDbQueueMTEphemeralDisabled.class,
+    TestRocksDbQueueMTGroupCommit.class,
+    TestRocksDbQueueMTOptionsProfile.class,
+    TestRocksDbQueueMTPrefetch.class,
+    TestRocksDbQueueMTTimestampKeys.class,
+    TestRocksDbQueueSequenceKeys.class,
+    TestRocksDbQueueSharedStore.class
 })
 
 /*
@@ -0,0 +1,187 @@
+package com.github.ddth.queue.test.universal.idint.rocksdb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.rocksdb.ColumnFamilyHandle;
+
+import com.github.ddth.queue.IQueueMessage;
+import com.github.ddth.queue.impl.RocksDbQueue;
+import com.github.ddth.queue.impl.RocksDbQueueStore;
+import com.github.ddth.queue.impl.universal.UniversalIdIntQueueMessage;
+import com.github.ddth.queue.impl.universal.idint.UniversalRocksDbQueue;
+import com.github.ddth.queue.utils.QueueUtils;
+
+/*
+ * mvn test -DskipTests=false -Dtest=com.github.ddth.queue.test.universal.idint.rocksdb.TestRocksDbQueueCounters -DenableTestsRocksDb=true
+ */
+
+/**
+ * Tests the persisted size counters: {@code queueSize()} and
+ * {@code ephemeralSize()} must stay exact across restarts.
+ */
+public class TestRocksDbQueueCounters {
+
+    private final static String[] COUNTER_KEYS = { "counter-queue-in", "counter-queue-out",
+            "counter-ephemeral-in", "counter-ephemeral-out" };
+
+    private File testDir;
+    private RocksDbQueue<Long, byte[]> queue;
+
+    @Before
+    public void setUp() throws Exception {
+        if (System.getProperty("enableTestsRocksDb") == null
+                && System.getProperty("enableTestsRocksDB") == null) {
+            return;
+        }
+        testDir = new File(FileUtils.getTempDirectory(),
+                String.valueOf(System.currentTimeMillis()));
+        reopen();
+    }
+
+    @After
+    public void tearDown() {
+        if (queue != null) {
+            queue.destroy();
+        }
+        if (testDir != null) {
+            FileUtils.deleteQuietly(testDir);
+        }
+    }
+
+    private void reopen() throws Exception {
+        if (queue != null) {
+            queue.destroy();
+        }
+        queue = new UniversalRocksDbQueue();
+        queue.setStorageDir(testDir.getAbsolutePath()).setEphemeralDisabled(false).init();
+    }
+
+    /**
+     * Checks sizes, then again after closing and reopening the storage.
+     */
+    private void assertSizes(int queueSize, int ephemeralSize) throws Exception {
+        assertEquals("queue size", queueSize, queue.queueSize());
+        assertEquals("ephemeral size", ephemeralSize, queue.ephemeralSize());
+        reopen();
+        assertEquals("queue size after reopen", queueSize, queue.queueSize());
+        assertEquals("ephemeral size after reopen", ephemeralSize, queue.ephemeralSize());
+    }
+
+    private void queueMessages(long... ids) {
+        for (long id : ids) {
+            queue.queue(UniversalIdIntQueueMessage.newInstance(id, String.valueOf(id).getBytes()));
+        }
+    }
+
+    @Test
+    public void testPutTakeFinishRequeue() throws Exception {
+        if (queue == null) {
+            return;
+        }
+        assertSizes(0, 0);
+
+        queueMessages(1, 2, 3, 4, 5, 6, 7, 8, 9, 10);
+        assertSizes(10, 0);
+
+        List<IQueueMessage<Long, byte[]>> taken = new ArrayList<>();
+        taken.add(queue.take());
+        taken.add(queue.take());
+        taken.addAll(queue.take(3));
+        assertEquals(5, taken.size());
+        assertSizes(5, 5);
+
+        queue.finish(taken.get(0));
+        queue.finish(taken.get(1));
+        assertSizes(5, 3);
+
+        // finishing a message twice, or one that was never taken, changes
+        // nothing
+        queue.finish(taken.get(0));
+        queue.finish(UniversalIdIntQueueMessage.newInstance(100L, new byte[0]));
+        assertSizes(5, 3);
+
+        queue.requeue(taken.get(2));
+        queue.requeueSilent(taken.get(3));
+        assertSizes(7, 1);
+
+        IQueueMessage<Long, byte[]> msg;
+        while ((msg = queue.take()) != null) {
+            taken.add(msg);
+        }
+        assertSizes(0, 8);
+
+        for (IQueueMessage<Long, byte[]> m : taken) {
+            queue.finish(m);
+        }
+        assertSizes(0, 0);
+    }
+
+    @Test
+    public void testTakeIdAlreadyInEphemeral() throws Exception {
+        if (queue == null) {
+            return;
+        }
+        queueMessages(1);
+        IQueueMessage<Long, byte[]> msg1 = queue.take();
+        assertNotNull(msg1);
+        assertSizes(0, 1);
+
+        // a second message with the same id replaces the ephemeral one
+        queueMessages(1);
+        assertNotNull(queue.take());
+        assertSizes(0, 1);
+
+        // same, with both messages taken in one batch
+        queueMessages(2, 2, 1);
+        assertEquals(3, queue.take(10).size());
+        assertSizes(0, 2);
+
+        queue.finish(msg1);
+        queue.finish(UniversalIdIntQueueMessage.newInstance(2L, new byte[0]));
+        assertSizes(0, 0);
+        assertNull(queue.take());
+    }
+
+    @Test
+    public void testRebuildCountersOfOldStorage() throws Exception {
+        if (queue == null) {
+            return;
+        }
+        queueMessages(1, 2, 3, 4, 5, 6);
+        IQueueMessage<Long, byte[]> msg = queue.take();
+        queue.take();
+        queue.destroy();
+        queue = null;
+
+        // storage written by a version without counters
+        RocksDbQueueStore store = new RocksDbQueueStore()
+                .setStorageDir(testDir.getAbsolutePath()).init();
+        try {
+            ColumnFamilyHandle cfMetadata = store
+                    .acquireColumnFamilies(RocksDbQueue.DEFAULT_CFNAME_METADATA)[0];
+            for (String key : COUNTER_KEYS) {
+                store.getRocksDb().delete(cfMetadata, store.getWriteOptions(),
+                        key.getBytes(QueueUtils.UTF8));
+            }
+        } finally {
+            store.destroy();
+        }
+
+        reopen();
+        assertSizes(4, 2);
+
+        queueMessages(7);
+        queue.finish(msg);
+        assertSizes(5, 1);
+    }
+}
@@ -0,0 +1,209 @@
+package com.github.ddth.queue.test.universal.idint.rocksdb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.rocksdb.ColumnFamilyHandle;
+import org.rocksdb.RocksIterator;
+
+import com.github.ddth.queue.IQueueMessage;
+import com.github.ddth.queue.impl.RocksDbQueue;
+import com.github.ddth.queue.impl.RocksDbQueueStore;
+import com.github.ddth.queue.impl.universal.UniversalIdIntQueueMessage;
+import com.github.ddth.queue.impl.universal.idint.UniversalRocksDbQueue;
+import com.github.ddth.queue.utils.QueueUtils;
+
+/*
+ * mvn test -DskipTests=false -Dtest=com.github.ddth.queue.test.universal.idint.rocksdb.TestRocksDbQueueEphemeralIndex -DenableTestsRocksDb=true
+ */
+
+/**
+ * Tests the ephemeral index (ephemeral messages keyed by queue timestamp)
+ * that {@code getOrphanMessages(long)} scans.
+ */
+public class TestRocksDbQueueEphemeralIndex {
+
+    private File testDir;
+    private RocksDbQueue<Long, byte[]> queue;
+
+    @Before
+    public void setUp() throws Exception {
+        if (System.getProperty("enableTestsRocksDb") == null
+                && System.getProperty("enableTestsRocksDB") == null) {
+            return;
+        }
+        testDir = new File(FileUtils.getTempDirectory(),
+                String.valueOf(System.currentTimeMillis()));
+        reopen();
+    }
+
+    @After
+    public void tearDown() {
+        if (queue != null) {
+            queue.destroy();
+        }
+        if (testDir != null) {
+            FileUtils.deleteQuietly(testDir);
+        }
+    }
+
+    private void reopen() throws Exception {
+        if (queue != null) {
+            queue.destroy();
+        }
+        queue = new UniversalRocksDbQueue();
+        queue.setStorageDir(testDir.getAbsolutePath()).setEphemeralDisabled(false).init();
+    }
+
+    /**
+     * Closes the queue, reads the queue timestamps of the index entries (in
+     * index order) then reopens the queue.
+     */
+    private List<Long> readIndex() throws Exception {
+        queue.destroy();
+        queue = null;
+        List<Long> result = new ArrayList<>();
+        RocksDbQueueStore store = new RocksDbQueueStore()
+                .setStorageDir(testDir.getAbsolutePath()).init();
+        try {
+            ColumnFamilyHandle cfIndex = store
+                    .acquireColumnFamilies(RocksDbQueue.DEFAULT_CFNAME_EPHEMERAL_INDEX)[0];
+            try (RocksIterator it = store.getRocksDb().newIterator(cfIndex,
+                    store.getReadOptions())) {
+                for (it.seekToFirst(); it.isValid(); it.next()) {
+                    result.add(ByteBuffer.wrap(it.key()).getLong() ^ Long.MIN_VALUE);
+                }
+            }
+        } finally {
+            store.destroy();
+        }
+        reopen();
+        return result;
+    }
+
+    /**
+     * Puts a message to ephemeral storage with the specified queue timestamp.
+     */
+    private IQueueMessage<Long, byte[]> putToEphemeral(long id, long queueTimestamp) {
+        queue.queue(UniversalIdIntQueueMessage.newInstance(id, String.valueOf(id).getBytes()));
+        IQueueMessage<Long, byte[]> msg = queue.take();
+        msg.setQueueTimestampMillis(queueTimestamp);
+        queue.requeueSilent(msg);
+        msg = queue.take();
+        assertEquals(Long.valueOf(id), msg.getId());
+        assertEquals(queueTimestamp, msg.getQueueTimestampMillis());
+        return msg;
+    }
+
+    private void assertOrphans(long thresholdTimestampMs, Long... expectedIds) {
+        Collection<IQueueMessage<Long, byte[]>> orphans = queue
+                .getOrphanMessages(thresholdTimestampMs);
+        Set<Long> ids = new TreeSet<>();
+        for (IQueueMessage<Long, byte[]> msg : orphans) {
+            ids.add(msg.getId());
+        }
+        assertEquals(orphans.size(), ids.size());
+        assertEquals(new TreeSet<>(Arrays.asList(expectedIds)), ids);
+    }
+
+    @Test
+    public void testOrphanMessagesCutoffAndOrdering() throws Exception {
+        if (queue == null) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        putToEphemeral(1, now + 3_600_000);
+        putToEphemeral(2, now - 10_000);
+        putToEphemeral(3, -1_000); // before the epoch
+        putToEphemeral(4, now - 3_600_000);
+
+        // index is sorted by queue timestamp, negative ones first
+        assertEquals(Arrays.asList(-1_000L, now - 3_600_000, now - 10_000, now + 3_600_000),
+                readIndex());
+
+        assertOrphans(3_600_000 * 2, 3L);
+        assertOrphans(60_000, 3L, 4L);
+        assertOrphans(5_000, 2L, 3L, 4L);
+        assertOrphans(-3_600_000 * 2, 1L, 2L, 3L, 4L);
+
+        // scanning does not remove live entries
+        assertEquals(4, readIndex().size());
+    }
+
+    @Test
+    public void testStaleIndexEntriesRemoved() throws Exception {
+        if (queue == null) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        IQueueMessage<Long, byte[]> msg1 = putToEphemeral(1, now - 3_000);
+        IQueueMessage<Long, byte[]> msg2 = putToEphemeral(2, now - 2_000);
+        IQueueMessage<Long, byte[]> msg3 = putToEphemeral(3, now - 1_000);
+        assertEquals(3, readIndex().size());
+
+        queue.finish(msg1);
+        assertEquals(Arrays.asList(now - 2_000, now - 1_000), readIndex());
+
+        // requeue changes the queue timestamp: the entry of the old one must
+        // be removed
+        queue.requeue(msg2);
+        assertEquals(Arrays.asList(now - 1_000), readIndex());
+
+        // finish with a queue timestamp other than the stored one leaves an
+        // entry behind, dropped by the next orphan scan
+        msg3.setQueueTimestampMillis(now - 500);
+        queue.finish(msg3);
+        assertEquals(Arrays.asList(now - 1_000), readIndex());
+        assertOrphans(0);
+        assertTrue(readIndex().isEmpty());
+
+        // re-taken message is indexed again
+        IQueueMessage<Long, byte[]> msg = queue.take();
+        assertEquals(Long.valueOf(2), msg.getId());
+        assertEquals(Arrays.asList(msg.getQueueTimestampMillis()), readIndex());
+    }
+
+    @Test
+    public void testRebuildIndexOfOldStorage() throws Exception {
+        if (queue == null) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        putToEphemeral(1, now + 3_600_000);
+        putToEphemeral(2, now - 1_000);
+        putToEphemeral(3, now - 2_000);
+        queue.destroy();
+        queue = null;
+
+        // storage written by a version without the ephemeral index
+        RocksDbQueueStore store = new RocksDbQueueStore()
+                .setStorageDir(testDir.getAbsolutePath()).init();
+        try {
+            ColumnFamilyHandle[] handles = store.acquireColumnFamilies(
+                    RocksDbQueue.DEFAULT_CFNAME_EPHEMERAL_INDEX,
+                    RocksDbQueue.DEFAULT_CFNAME_METADATA);
+            store.getRocksDb().dropColumnFamily(handles[0]);
+            store.getRocksDb().delete(handles[1], store.getWriteOptions(),
+                    "ephemeral-index-built".getBytes(QueueUtils.UTF8));
+        } finally {
+            store.destroy();
+        }
+
+        reopen();
+        assertOrphans(0, 2L, 3L);
+        assertEquals(Arrays.asList(now - 2_000, now - 1_000, now + 3_600_000), readIndex());
+    }
+}
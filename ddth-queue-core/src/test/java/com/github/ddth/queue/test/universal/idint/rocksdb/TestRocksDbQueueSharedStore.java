@@ -0,0 +1,64 @@
+package com.github.ddth.queue.test.universal.idint.rocksdb;
+
+import java.io.File;
+
+import org.apache.commons.io.FileUtils;
+
+import com.github.ddth.queue.IQueue;
+import com.github.ddth.queue.NoopQueueObserver;
+import com.github.ddth.queue.impl.RocksDbQueue;
+import com.github.ddth.queue.impl.RocksDbQueueStore;
+import com.github.ddth.queue.impl.universal.UniversalIdIntQueueMessage;
+import com.github.ddth.queue.impl.universal.idint.UniversalRocksDbQueue;
+import com.github.ddth.queue.test.universal.BaseQueueFunctionalTest;
+
+import junit.framework.Test;
+import junit.framework.TestSuite;
+
+/*
+ * mvn test -DskipTests=false -Dtest=com.github.ddth.queue.test.universal.idint.rocksdb.TestRocksDbQueueSharedStore -DenableTestsRocksDb=true
+ */
+
+public class TestRocksDbQueueSharedStore extends BaseQueueFunctionalTest<Long> {
+    public TestRocksDbQueueSharedStore(String testName) {
+        super(testName);
+    }
+
+    public static Test suite() {
+        return new TestSuite(TestRocksDbQueueSharedStore.class);
+    }
+
+    protected IQueue<Long, byte[]> initQueueInstance(int ephemeralMaxSize) throws Exception {
+        if (System.getProperty("enableTestsRocksDb") == null
+                && System.getProperty("enableTestsRocksDB") == null) {
+            return null;
+        }
+        File tempDir = FileUtils.getTempDirectory();
+        File testDir = new File(tempDir, String.valueOf(System.currentTimeMillis()));
+        RocksDbQueueStore store = new RocksDbQueueStore().setStorageDir(testDir.getAbsolutePath())
+                .init();
+
+        // another queue in the same store, its messages must not be visible
+        // to the queue under test
+        RocksDbQueue<Long, byte[]> neighbour = new UniversalRocksDbQueue();
+        neighbour.setStore(store).setCfNameQueue("neighbour_queue")
+                .setCfNameMetadata("neighbour_metadata").setCfNameEphemeral("neighbour_ephemeral")
+                .setCfNameEphemeralIndex("neighbour_ephemeral_index").init();
+        neighbour.queue(UniversalIdIntQueueMessage.newInstance(new byte[] { 1 }));
+
+        RocksDbQueue<Long, byte[]> queue = new UniversalRocksDbQueue();
+        queue.setObserver(new NoopQueueObserver<Long, byte[]>() {
+            @Override
+            public void postDestroy(IQueue<Long, byte[]> queue) {
+                neighbour.destroy();
+                store.destroy();
+                FileUtils.deleteQuietly(testDir);
+            }
+        });
+        queue.setStore(store).setCfNameQueue("test_queue").setCfNameMetadata("test_metadata")
+                .setCfNameEphemeral("test_ephemeral").setCfNameEphemeralIndex("test_ephemeral_index")
+                .setEphemeralDisabled(false).setEphemeralMaxSize(ephemeralMaxSize).init();
+        return queue;
+    }
+
+}
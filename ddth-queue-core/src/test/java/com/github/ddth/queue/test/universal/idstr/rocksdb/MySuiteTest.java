@@ -7,6 +7,7 @@ import org.junit.runners.Suite;
 
 @Suite.SuiteClasses({ 
     TestRocksDbQueue.class,
+    TestRocksDbQueueBinaryCodec.class,
     TestRocksDbQueueLong.class,
     TestRocksDbQueueLongEphemeralDisabled.class,
     TestRocksDbQueueMT.class,
@@ -0,0 +1,15 @@
+package com.github.ddth.queue.test.utils;
+
+import org.junit.runner.RunWith;
+import org.junit.runners.Suite;
+
+@RunWith(Suite.class)
+
+@Suite.SuiteClasses({ TestConcurrentLongObjectMap.class, TestOffHeapByteQueue.class })
+
+/*
+ * mvn test -DskipTests=false -Dtest=com.github.ddth.queue.test.utils.MySuiteTest
+ */
+
+public class MySuiteTest {
+}
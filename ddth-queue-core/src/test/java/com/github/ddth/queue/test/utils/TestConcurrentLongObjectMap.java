@@ -0,0 +1,290 @@
+package com.github.ddth.queue.test.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+import com.github.ddth.queue.utils.ConcurrentLongObjectMap;
+
+/**
+ * Direct tests of {@link ConcurrentLongObjectMap}.
+ */
+public class TestConcurrentLongObjectMap {
+
+    /**
+     * Table size of a map created with {@code (0, 1)}: one segment with the
+     * minimum capacity.
+     */
+    private final static int SEGMENT_CAPACITY = 16;
+
+    /**
+     * Home slot of a key in a single-segment map: same Fibonacci hashing as
+     * {@link ConcurrentLongObjectMap}.
+     */
+    private static int homeSlot(long key, int capacity) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & (capacity - 1);
+    }
+
+    private static List<Long> keysWithHomeSlot(int slot, int count) {
+        List<Long> result = new ArrayList<>();
+        for (long key = 1; result.size() < count; key++) {
+            if (homeSlot(key, SEGMENT_CAPACITY) == slot) {
+                result.add(key);
+            }
+        }
+        return result;
+    }
+
+    private static void assertContent(Map<Long, String> expected,
+            ConcurrentLongObjectMap<String> map) {
+        assertEquals(expected.size(), map.size());
+        for (Map.Entry<Long, String> e : expected.entrySet()) {
+            assertEquals(e.getValue(), map.get(e.getKey()));
+        }
+        AtomicLong count = new AtomicLong();
+        map.forEach((key, value) -> {
+            assertEquals(expected.get(key), value);
+            count.incrementAndGet();
+        });
+        assertEquals(expected.size(), count.get());
+    }
+
+    /**
+     * Keys whose probe sequence wraps from the last slot to the first ones:
+     * removing the head of the chain must shift the wrapped entries back, so
+     * that all of them (and a key whose home slot is taken by the chain) stay
+     * reachable.
+     */
+    @Test
+    public void testBackwardShiftDeletionWrappedChain() {
+        ConcurrentLongObjectMap<String> map = new ConcurrentLongObjectMap<>(0, 1);
+        List<Long> lastSlot = keysWithHomeSlot(SEGMENT_CAPACITY - 1, 4);
+        List<Long> firstSlot = keysWithHomeSlot(0, 2);
+        Map<Long, String> expected = new HashMap<>();
+        /* slots 15, 0, 1, 2 for the last-slot keys, then 3, 4 for first-slot keys */
+        for (long key : lastSlot) {
+            map.put(key, "v" + key);
+            expected.put(key, "v" + key);
+        }
+        for (long key : firstSlot) {
+            map.put(key, "v" + key);
+            expected.put(key, "v" + key);
+        }
+        assertContent(expected, map);
+
+        /* remove the head of the wrapped chain, then one in the middle */
+        assertEquals("v" + lastSlot.get(0), map.remove(lastSlot.get(0)));
+        expected.remove(lastSlot.get(0));
+        assertNull(map.get(lastSlot.get(0)));
+        assertContent(expected, map);
+
+        assertEquals("v" + lastSlot.get(2), map.remove(lastSlot.get(2)));
+        expected.remove(lastSlot.get(2));
+        assertContent(expected, map);
+
+        /* remove a first-slot key that was pushed behind the wrapped chain */
+        assertEquals("v" + firstSlot.get(0), map.remove(firstSlot.get(0)));
+        expected.remove(firstSlot.get(0));
+        assertContent(expected, map);
+
+        /* re-insert removed keys: they must not be duplicated */
+        for (long key : new long[] { lastSlot.get(0), lastSlot.get(2), firstSlot.get(0) }) {
+            assertNull(map.put(key, "w" + key));
+            expected.put(key, "w" + key);
+        }
+        assertContent(expected, map);
+        for (long key : new ArrayList<>(expected.keySet())) {
+            assertEquals(expected.remove(key), map.remove(key));
+            assertContent(expected, map);
+        }
+        assertTrue(map.isEmpty());
+    }
+
+    /**
+     * Random put/remove of colliding keys in a small single-segment table,
+     * checked against a {@link HashMap}.
+     */
+    @Test
+    public void testRandomCollidingOperations() {
+        ConcurrentLongObjectMap<String> map = new ConcurrentLongObjectMap<>(0, 1);
+        Map<Long, String> expected = new HashMap<>();
+        List<Long> keys = new ArrayList<>();
+        keys.addAll(keysWithHomeSlot(SEGMENT_CAPACITY - 1, 5));
+        keys.addAll(keysWithHomeSlot(0, 3));
+        keys.addAll(keysWithHomeSlot(1, 2));
+        Random random = new Random(1);
+        for (int i = 0; i < 100000; i++) {
+            long key = keys.get(random.nextInt(keys.size()));
+            if (random.nextBoolean()) {
+                String value = String.valueOf(i);
+                assertEquals(expected.put(key, value), map.put(key, value));
+            } else {
+                assertEquals(expected.remove(key), map.remove(key));
+            }
+            if (i % 97 == 0) {
+                assertContent(expected, map);
+            }
+        }
+        assertContent(expected, map);
+    }
+
+    @Test
+    public void testZeroAndNegativeKeys() {
+        ConcurrentLongObjectMap<String> map = new ConcurrentLongObjectMap<>();
+        /* key 0 is the default value of the key array: must not be found in an empty map */
+        assertNull(map.get(0));
+        assertNull(map.remove(0));
+        long[] keys = { 0, -1, -2, Long.MIN_VALUE, Long.MAX_VALUE, 1 };
+        for (long key : keys) {
+            assertNull(map.put(key, "v" + key));
+        }
+        assertEquals(keys.length, map.size());
+        for (long key : keys) {
+            assertEquals("v" + key, map.get(key));
+        }
+        assertEquals("v0", map.putIfAbsent(0, "other"));
+        assertEquals("v0", map.put(0, "w0"));
+        assertEquals("w0", map.get(0));
+
+        assertEquals("w0", map.remove(0));
+        assertNull(map.get(0));
+        assertNull(map.remove(0));
+        assertEquals("v" + Long.MIN_VALUE, map.remove(Long.MIN_VALUE));
+        assertEquals("v-1", map.remove(-1));
+        assertNull(map.get(-1));
+        assertEquals("v-2", map.get(-2));
+        assertEquals("v" + Long.MAX_VALUE, map.get(Long.MAX_VALUE));
+        assertEquals(3, map.size());
+
+        assertNull(map.putIfAbsent(0, "x0"));
+        assertEquals("x0", map.get(0));
+        map.clear();
+        assertTrue(map.isEmpty());
+        assertNull(map.get(0));
+        assertNull(map.get(-2));
+    }
+
+    /**
+     * Writers fill a single, minimum-sized segment (forcing many resizes)
+     * while readers keep looking up keys that have already been put: none
+     * may be missing at any time.
+     */
+    @Test
+    public void testResizeUnderLoad() throws Exception {
+        final int numWriters = 4, numReaders = 4, keysPerWriter = 50000;
+        ConcurrentLongObjectMap<Long> map = new ConcurrentLongObjectMap<>(0, 1);
+        AtomicLong[] progress = new AtomicLong[numWriters];
+        for (int i = 0; i < numWriters; i++) {
+            progress[i] = new AtomicLong();
+        }
+        AtomicBoolean writersDone = new AtomicBoolean(false);
+        AtomicReference<String> error = new AtomicReference<>();
+        CountDownLatch writersLatch = new CountDownLatch(numWriters);
+        List<Thread> threads = new ArrayList<>();
+        for (int w = 0; w < numWriters; w++) {
+            final int writer = w;
+            threads.add(new Thread(() -> {
+                for (long i = 0; i < keysPerWriter; i++) {
+                    long key = -(i * numWriters + writer);
+                    map.put(key, key);
+                    progress[writer].set(i + 1);
+                }
+                writersLatch.countDown();
+            }));
+        }
+        for (int r = 0; r < numReaders; r++) {
+            final long seed = r;
+            threads.add(new Thread(() -> {
+                Random random = new Random(seed);
+                while (!writersDone.get() && error.get() == null) {
+                    int writer = random.nextInt(numWriters);
+                    long n = progress[writer].get();
+                    if (n == 0) {
+                        continue;
+                    }
+                    long key = -((random.nextInt((int) n)) * (long) numWriters + writer);
+                    Long value = map.get(key);
+                    if (value == null || value.longValue() != key) {
+                        error.compareAndSet(null, "Key [" + key + "] => " + value);
+                    }
+                }
+            }));
+        }
+        threads.forEach(Thread::start);
+        writersLatch.await();
+        writersDone.set(true);
+        for (Thread t : threads) {
+            t.join();
+        }
+        assertNull(error.get());
+        assertEquals(numWriters * keysPerWriter, map.size());
+        for (long key = 0; key > -numWriters * keysPerWriter; key--) {
+            assertEquals(Long.valueOf(key), map.get(key));
+        }
+    }
+
+    /**
+     * Threads put and remove keys of their own ranges (all in one segment)
+     * concurrently; the final content must match what each thread expects.
+     */
+    @Test
+    public void testConcurrentPutRemove() throws Exception {
+        final int numThreads = 8, keysPerThread = 1000, numOps = 200000;
+        ConcurrentLongObjectMap<String> map = new ConcurrentLongObjectMap<>(0, 2);
+        List<Map<Long, String>> expectedPerThread = new ArrayList<>();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < numThreads; t++) {
+            final int thread = t;
+            Map<Long, String> expected = new HashMap<>();
+            expectedPerThread.add(expected);
+            threads.add(new Thread(() -> {
+                Random random = new Random(thread);
+                for (int i = 0; i < numOps; i++) {
+                    long key = (long) random.nextInt(keysPerThread) * numThreads + thread;
+                    switch (random.nextInt(3)) {
+                    case 0:
+                        map.put(key, thread + ":" + i);
+                        expected.put(key, thread + ":" + i);
+                        break;
+                    case 1:
+                        if (map.putIfAbsent(key, thread + ":" + i) == null) {
+                            expected.put(key, thread + ":" + i);
+                        }
+                        break;
+                    default:
+                        map.remove(key);
+                        expected.remove(key);
+                    }
+                }
+            }));
+        }
+        threads.forEach(Thread::start);
+        for (Thread t : threads) {
+            t.join();
+        }
+        Map<Long, String> expected = new HashMap<>();
+        expectedPerThread.forEach(expected::putAll);
+        assertContent(expected, map);
+        assertFalse(map.isEmpty());
+
+        for (long key : expected.keySet()) {
+            map.remove(key);
+        }
+        assertTrue(map.isEmpty());
+        assertEquals(0, map.size());
+    }
+}
@@ -0,0 +1,109 @@
+package com.github.ddth.queue.test.utils;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.github.ddth.queue.utils.OffHeapByteQueue;
+
+/**
+ * Direct tests of {@link OffHeapByteQueue}.
+ */
+public class TestOffHeapByteQueue {
+
+    private final static int SEGMENT_SIZE = 1024;
+
+    private static byte[] record(int length, int seed) {
+        byte[] result = new byte[length];
+        new Random(seed).nextBytes(result);
+        return result;
+    }
+
+    @Test
+    public void testFifo() {
+        OffHeapByteQueue queue = new OffHeapByteQueue(SEGMENT_SIZE, 0, 0);
+        for (int i = 0; i < 100; i++) {
+            assertTrue(queue.offer(record(i * 7 % 300, i)));
+        }
+        assertEquals(100, queue.size());
+        for (int i = 0; i < 100; i++) {
+            assertArrayEquals(record(i * 7 % 300, i), queue.poll());
+        }
+        assertNull(queue.poll());
+        assertEquals(0, queue.usedBytes());
+    }
+
+    @Test
+    public void testBoundedByBytes() {
+        // 4-byte header + 96-byte record: 10 records
+        OffHeapByteQueue queue = new OffHeapByteQueue(SEGMENT_SIZE, 1000, 0);
+        for (int i = 0; i < 10; i++) {
+            assertTrue(queue.offer(record(96, i)));
+        }
+        assertFalse(queue.offer(record(0, 0)));
+        assertEquals(1000, queue.usedBytes());
+        assertArrayEquals(record(96, 0), queue.poll());
+        assertTrue(queue.offer(record(96, 10)));
+    }
+
+    @Test
+    public void testBoundedByRecords() {
+        OffHeapByteQueue queue = new OffHeapByteQueue(SEGMENT_SIZE, 0, 3);
+        assertTrue(queue.offer(record(1, 0)));
+        assertTrue(queue.offer(record(1, 1)));
+        assertTrue(queue.offer(record(1, 2)));
+        assertFalse(queue.offer(record(1, 3)));
+        queue.poll();
+        assertTrue(queue.offer(record(1, 3)));
+    }
+
+    @Test
+    public void testBoundedQueueReusesSegments() {
+        final long maxBytes = 16 * SEGMENT_SIZE;
+        final long maxAllocatedBytes = 2 * maxBytes + 2 * SEGMENT_SIZE;
+        OffHeapByteQueue queue = new OffHeapByteQueue(SEGMENT_SIZE, maxBytes, 0);
+        Random random = new Random(1);
+        long peakAllocatedBytes = 0;
+        for (int round = 0; round < 100; round++) {
+            // fill up then drain (partially or totally), with record sizes
+            // that leave segment tails unused
+            int i = 0;
+            while (queue.offer(record(random.nextInt(SEGMENT_SIZE / 2), i++))) {
+                peakAllocatedBytes = Math.max(peakAllocatedBytes, queue.allocatedBytes());
+            }
+            int numToPoll = round % 2 == 0 ? queue.size() : queue.size() / 2;
+            for (int j = 0; j < numToPoll; j++) {
+                queue.poll();
+            }
+        }
+        assertTrue("allocated " + peakAllocatedBytes, peakAllocatedBytes <= maxAllocatedBytes);
+
+        // segments are kept, not allocated again
+        long allocatedBytes = queue.allocatedBytes();
+        while (queue.poll() != null) {
+        }
+        assertEquals(allocatedBytes, queue.allocatedBytes());
+        int i = 0;
+        while (queue.offer(record(SEGMENT_SIZE / 4, i++))) {
+        }
+        assertTrue(queue.allocatedBytes() <= allocatedBytes);
+    }
+
+    @Test
+    public void testRecordLargerThanSegment() {
+        OffHeapByteQueue queue = new OffHeapByteQueue(SEGMENT_SIZE, 0, 0);
+        assertTrue(queue.offer(record(10, 0)));
+        assertTrue(queue.offer(record(3 * SEGMENT_SIZE, 1)));
+        assertTrue(queue.offer(record(10, 2)));
+        assertArrayEquals(record(10, 0), queue.poll());
+        assertArrayEquals(record(3 * SEGMENT_SIZE, 1), queue.poll());
+        assertArrayEquals(record(10, 2), queue.poll());
+        assertNull(queue.poll());
+    }
+}